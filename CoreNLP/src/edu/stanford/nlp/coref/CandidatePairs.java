@@ -0,0 +1,207 @@
+package edu.stanford.nlp.coref;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.util.Pair;
+
+/**
+ * The candidate antecedents of every mention in a document, as pairs of positions in the
+ * document's sorted mentions (see {@link CorefUtils#getSortedMentions}).
+ * <br>
+ * The pairs are kept in two {@code int} arrays, grouped by anaphor in document order, so a
+ * document's pairs take eight bytes each rather than a boxed {@link Pair} in a map. The pairs of
+ * the anaphor at position {@code i} are those from {@link #start}{@code (i)} up to
+ * {@link #end}{@code (i)}, with their antecedents in the order {@link #windowed} finds them.
+ */
+public class CandidatePairs {
+
+  private final List<Mention> mentions;
+  private final int[] starts;
+  private final int[] antecedents;
+  private final int[] anaphors;
+
+  private CandidatePairs(List<Mention> mentions, int[] starts, int[] antecedents, int[] anaphors) {
+    this.mentions = mentions;
+    this.starts = starts;
+    this.antecedents = antecedents;
+    this.anaphors = anaphors;
+  }
+
+  /** Every pair of mentions, as {@link CorefUtils#getMentionPairs} gives them */
+  public static CandidatePairs all(List<Mention> sortedMentions) {
+    return windowed(sortedMentions, Integer.MAX_VALUE, 0);
+  }
+
+  /**
+   * The candidates {@link CorefUtils#heuristicFilter} chooses: the {@code maxMentionDistance}
+   * mentions before each mention, then, in order of the mention's content words, the earlier
+   * mentions within {@code maxMentionDistanceWithStringMatch} that share that word.
+   * <br>
+   * The mentions with each content word are found through an index of the document's content
+   * words, in which the ones within the distance are found by binary search on
+   * {@link Mention#mentionNum}, so the work and the number of pairs grow with the number of
+   * mentions times the distances rather than with its square. This relies on mentionNum being
+   * nondecreasing in sorted order, as the document preprocessor numbers them.
+   */
+  public static CandidatePairs windowed(List<Mention> sortedMentions, int maxMentionDistance,
+      int maxMentionDistanceWithStringMatch) {
+    int n = sortedMentions.size();
+
+    // the content words of each mention, as word ids, and the positions of the mentions with each word
+    Map<String, Integer> wordIds = new HashMap<>();
+    int[][] words = new int[n][];
+    int[] postingStarts = new int[1];
+    for (int i = 0; i < n; i++) {
+      List<String> contentWords = CorefUtils.getContentWords(sortedMentions.get(i));
+      words[i] = new int[contentWords.size()];
+      for (int w = 0; w < words[i].length; w++) {
+        Integer id = wordIds.get(contentWords.get(w));
+        if (id == null) {
+          id = wordIds.size();
+          wordIds.put(contentWords.get(w), id);
+          if (id + 1 >= postingStarts.length) {
+            postingStarts = Arrays.copyOf(postingStarts, 2 * (id + 2));
+          }
+        }
+        words[i][w] = id;
+        postingStarts[id + 1]++;
+      }
+    }
+    int numWords = wordIds.size();
+    for (int w = 0; w < numWords; w++) {
+      postingStarts[w + 1] += postingStarts[w];
+    }
+    int[] postings = new int[postingStarts[numWords]];
+    int[] postingEnds = Arrays.copyOf(postingStarts, numWords);
+    int[] mentionNums = new int[n];
+    for (int i = 0; i < n; i++) {
+      mentionNums[i] = sortedMentions.get(i).mentionNum;
+      for (int w : words[i]) {
+        postings[postingEnds[w]++] = i;
+      }
+    }
+
+    int[] starts = new int[n + 1];
+    int[] antecedents = new int[Math.max(16, n)];
+    int[] anaphors = new int[antecedents.length];
+    int size = 0;
+    // the last anaphor each mention was made a candidate of, plus one, to skip duplicates
+    int[] added = new int[n];
+    for (int i = 0; i < n; i++) {
+      int windowStart = (int) Math.max(0, (long) i - maxMentionDistance);
+      long needed = size + (i - windowStart);
+      for (int w : words[i]) {
+        needed += postingEnds[w] - postingStarts[w];
+      }
+      if (needed > antecedents.length) {
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * antecedents.length));
+        antecedents = Arrays.copyOf(antecedents, capacity);
+        anaphors = Arrays.copyOf(anaphors, capacity);
+      }
+
+      for (int j = windowStart; j < i; j++) {
+        added[j] = i + 1;
+        antecedents[size] = j;
+        anaphors[size++] = i;
+      }
+      int minMentionNum = (int) Math.max(Integer.MIN_VALUE,
+          (long) mentionNums[i] - maxMentionDistanceWithStringMatch);
+      for (int w : words[i]) {
+        int p = lowerBound(postings, postingStarts[w], postingEnds[w], mentionNums, minMentionNum);
+        for (; p < postingEnds[w] && mentionNums[postings[p]] < mentionNums[i]; p++) {
+          int j = postings[p];
+          if (added[j] != i + 1) {
+            added[j] = i + 1;
+            antecedents[size] = j;
+            anaphors[size++] = i;
+          }
+        }
+      }
+      starts[i + 1] = size;
+    }
+    return new CandidatePairs(sortedMentions, starts, Arrays.copyOf(antecedents, size),
+        Arrays.copyOf(anaphors, size));
+  }
+
+  /** The first index in {@code postings[from, to)} of a mention numbered at least {@code mentionNum} */
+  private static int lowerBound(int[] postings, int from, int to, int[] mentionNums, int mentionNum) {
+    while (from < to) {
+      int middle = (from + to) >>> 1;
+      if (mentionNums[postings[middle]] < mentionNum) {
+        from = middle + 1;
+      } else {
+        to = middle;
+      }
+    }
+    return from;
+  }
+
+  public int numMentions() {
+    return mentions.size();
+  }
+
+  /** The mention at a position in sorted order */
+  public Mention mention(int position) {
+    return mentions.get(position);
+  }
+
+  /** The number of pairs */
+  public int size() {
+    return antecedents.length;
+  }
+
+  /** The index of the first pair whose anaphor is the mention at a position */
+  public int start(int anaphor) {
+    return starts[anaphor];
+  }
+
+  /** One past the index of the last pair whose anaphor is the mention at a position */
+  public int end(int anaphor) {
+    return starts[anaphor + 1];
+  }
+
+  /** The position of the antecedent of a pair */
+  public int antecedent(int pair) {
+    return antecedents[pair];
+  }
+
+  /** The position of the anaphor of a pair */
+  public int anaphor(int pair) {
+    return anaphors[pair];
+  }
+
+  /** The pair's mention ids, with the antecedent first */
+  public Pair<Integer, Integer> mentionIds(int pair) {
+    return new Pair<>(mentions.get(antecedents[pair]).mentionID, mentions.get(anaphors[pair]).mentionID);
+  }
+
+  /** The pairs keyed by mention ids, all labeled false, as {@link CorefUtils#getUnlabeledMentionPairs} gives them */
+  public Map<Pair<Integer, Integer>, Boolean> toUnlabeledMap() {
+    Map<Pair<Integer, Integer>, Boolean> pairs = new HashMap<>();
+    for (int pair = 0; pair < antecedents.length; pair++) {
+      pairs.put(mentionIds(pair), false);
+    }
+    return pairs;
+  }
+
+  /** The candidate antecedent ids of each mention id that has any, as {@link CorefUtils#heuristicFilter} gives them */
+  public Map<Integer, List<Integer>> toCandidateAntecedents() {
+    Map<Integer, List<Integer>> mentionToCandidateAntecedents = new HashMap<>();
+    for (int i = 0; i < mentions.size(); i++) {
+      if (starts[i] < starts[i + 1]) {
+        List<Integer> candidateAntecedents = new ArrayList<>(starts[i + 1] - starts[i]);
+        for (int pair = starts[i]; pair < starts[i + 1]; pair++) {
+          candidateAntecedents.add(mentions.get(antecedents[pair]).mentionID);
+        }
+        mentionToCandidateAntecedents.put(mentions.get(i).mentionID, candidateAntecedents);
+      }
+    }
+    return mentionToCandidateAntecedents;
+  }
+
+}
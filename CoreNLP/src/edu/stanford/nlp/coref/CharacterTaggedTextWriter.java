@@ -0,0 +1,221 @@
+package edu.stanford.nlp.coref;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Writes coref-annotated sentences as text with {@code <character name="...">mention</character>}
+ * tags around the mentions of character chains, turning the paragraph delimiter "# ." into
+ * newlines.
+ * <br>
+ * Tokens are written straight to the output with their tags; no sentence strings are built.
+ * The normalized name of each chain is computed once, when the chains are set. The per-token
+ * tag tables are kept between sentences and documents, so one writer should be reused for
+ * everything a thread writes. A writer is not threadsafe.
+ */
+public class CharacterTaggedTextWriter {
+
+  private static final String PARAGRAPH_DELIMITER = "# .";
+  private static final String END_TAG = "</character>";
+
+  private static final Pattern NAME_PUNCTUATION = Pattern.compile("[,\\.\\!\\? \\h']");
+  private static final Pattern UNDERSCORES = Pattern.compile("_+");
+  private static final Pattern LEADING_UNDERSCORE = Pattern.compile("^_");
+  private static final Pattern TRAILING_UNDERSCORE = Pattern.compile("_$");
+
+  private Writer out;
+  /** Chain id to begin tag for that chain's character */
+  private final Map<Integer, String> beginTags = new HashMap<>();
+  /** Chain id to normalized character name */
+  private final Map<Integer, String> names = new HashMap<>();
+  /** Character name to normalized name, kept across calls to {@link #setCharacters} */
+  private final Map<String, String> normalizedNames = new HashMap<>();
+  private final Set<String> characters = new HashSet<>();
+
+  // Per-token tags for the current sentence. Begin tags are kept as linked lists through
+  // tagNext, newest first, which is the order they are written in.
+  private int[] beginHead = new int[64];
+  private int[] endCount = new int[64];
+  private String[] tagPool = new String[16];
+  private int[] tagNext = new int[16];
+  private int poolSize;
+  private Mention[] tagged = new Mention[16];
+
+  // A '#' (and the space after it) that has not been written yet because a following "."
+  // would turn it into a newline
+  private boolean pendingHash;
+
+  /** Turns a character name into the form used in tags and character lists. */
+  public static String normalizeName(String character) {
+    String name = String.join("_", character.split(" "));
+    name = NAME_PUNCTUATION.matcher(name).replaceAll("");
+    name = UNDERSCORES.matcher(name).replaceAll("_");
+    name = LEADING_UNDERSCORE.matcher(name).replaceAll("");
+    return TRAILING_UNDERSCORE.matcher(name).replaceAll("");
+  }
+
+  /** Starts a new document: subsequent sentences go to {@code out} and the character set is cleared. */
+  public void startDocument(Writer out, Map<Integer, String> idToCharacter) {
+    this.out = out;
+    characters.clear();
+    normalizedNames.clear();
+    setCharacters(idToCharacter);
+  }
+
+  /**
+   * Sets the character of each chain to tag, keeping the output and the characters written so
+   * far. Used when a document is annotated in several parts whose chain ids differ.
+   */
+  public void setCharacters(Map<Integer, String> idToCharacter) {
+    beginTags.clear();
+    names.clear();
+    for (Map.Entry<Integer, String> entry : idToCharacter.entrySet()) {
+      if (entry.getValue().isEmpty()) {
+        continue;
+      }
+      String name = normalizedNames.computeIfAbsent(entry.getValue(), CharacterTaggedTextWriter::normalizeName);
+      names.put(entry.getKey(), name);
+      beginTags.put(entry.getKey(), "<character name=\"" + name + "\">");
+    }
+  }
+
+  /** The normalized names of all characters tagged since the document was started. */
+  public Set<String> characters() {
+    return characters;
+  }
+
+  public void writeSentences(List<CoreMap> sentences) throws IOException {
+    for (CoreMap sentence : sentences) {
+      writeSentence(sentence);
+    }
+  }
+
+  public void writeSentence(CoreMap sentence) throws IOException {
+    List<Mention> mentions = sentence.get(CorefCoreAnnotations.CorefMentionsAnnotation.class);
+    if (mentions.isEmpty()) {
+      String text = sentence.get(CoreAnnotations.TextAnnotation.class);
+      if (text.equals(PARAGRAPH_DELIMITER)) {
+        out.write('\n');
+      } else if (text.endsWith(" " + PARAGRAPH_DELIMITER)) {
+        out.write(text, 0, text.lastIndexOf(" " + PARAGRAPH_DELIMITER));
+        out.write('\n');
+      } else {
+        out.write(sentence.toString());
+        out.write(' ');
+      }
+      return;
+    }
+
+    List<CoreLabel> words = mentions.get(0).sentenceWords;
+    clearTags(words.size());
+    int numTagged = sortedCharacterMentions(mentions);
+    for (int i = 0; i < numTagged; i++) {
+      Mention m = tagged[i];
+      String beginTag = beginTags.get(m.corefClusterID);
+      pushBeginTag(m.startIndex, beginTag);
+      // the end tag excludes a final possessive 's
+      if (m.startIndex + 1 == m.endIndex || ! words.get(m.endIndex - 1).word().equals("'s")) {
+        endCount[m.endIndex - 1]++;
+      } else {
+        endCount[m.endIndex - 2]++;
+      }
+      characters.add(names.get(m.corefClusterID));
+    }
+
+    for (int i = 0; i < words.size(); i++) {
+      writeToken(i, words.get(i).word());
+    }
+    if (pendingHash) {
+      out.write("# ");
+      pendingHash = false;
+    }
+  }
+
+  private void clearTags(int numWords) {
+    if (beginHead.length < numWords) {
+      beginHead = new int[Math.max(numWords, 2 * beginHead.length)];
+      endCount = new int[beginHead.length];
+    }
+    Arrays.fill(beginHead, 0, numWords, -1);
+    Arrays.fill(endCount, 0, numWords, 0);
+    poolSize = 0;
+  }
+
+  private void pushBeginTag(int word, String beginTag) {
+    if (poolSize == tagPool.length) {
+      tagPool = Arrays.copyOf(tagPool, 2 * poolSize);
+      tagNext = Arrays.copyOf(tagNext, 2 * poolSize);
+    }
+    tagPool[poolSize] = beginTag;
+    tagNext[poolSize] = beginHead[word];
+    beginHead[word] = poolSize;
+    poolSize++;
+  }
+
+  /**
+   * Collects the mentions of chains with a character into {@code tagged}, stably sorted by
+   * start index.
+   *
+   * @return the number of such mentions
+   */
+  private int sortedCharacterMentions(List<Mention> mentions) {
+    if (tagged.length < mentions.size()) {
+      tagged = new Mention[Math.max(mentions.size(), 2 * tagged.length)];
+    }
+    int n = 0;
+    for (Mention m : mentions) {
+      if ( ! beginTags.containsKey(m.corefClusterID)) {
+        continue;
+      }
+      // insertion sort; sentences have few mentions
+      int j = n;
+      while (j > 0 && tagged[j - 1].startIndex > m.startIndex) {
+        tagged[j] = tagged[j - 1];
+        j--;
+      }
+      tagged[j] = m;
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Writes a token followed by a space, replacing any "# ." that spans the space between this
+   * token and the next with a newline.
+   */
+  private void writeToken(int i, String word) throws IOException {
+    boolean hasBegin = beginHead[i] >= 0;
+    int start = 0;
+    if (pendingHash) {
+      pendingHash = false;
+      if ( ! hasBegin && word.startsWith(".")) {
+        out.write('\n');
+        start = 1;
+      } else {
+        out.write("# ");
+      }
+    }
+    for (int tag = beginHead[i]; tag >= 0; tag = tagNext[tag]) {
+      out.write(tagPool[tag]);
+    }
+    int ends = endCount[i];
+    if (ends == 0 && word.endsWith("#") && start < word.length()) {
+      out.write(word, start, word.length() - 1 - start);
+      pendingHash = true;
+      return;
+    }
+    out.write(word, start, word.length() - start);
+    for (int e = 0; e < ends; e++) {
+      out.write(END_TAG);
+    }
+    out.write(' ');
+  }
+
+}
@@ -0,0 +1,287 @@
+package edu.stanford.nlp.coref;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.logging.Redwood;
+
+/**
+ * Runs {@link CorefSystem#writeCharacterOutput} over a collection of stories with a pool of
+ * worker threads that all share one {@link StanfordCoreNLP} pipeline, so the models are only
+ * loaded once per JVM.
+ * <br>
+ * Outputs are first written to temporary files next to their final location and then moved
+ * into place, {@code .coref.txt} before {@code .chars}, so a story either has complete outputs
+ * or none. Finished stories are appended to a progress manifest; on restart, stories listed in
+ * the manifest (or that already have a {@code .chars} file) are skipped, and anything that was
+ * in flight when the previous run was killed is redone from scratch.
+ * <br>
+ * The outputs and the manifest are named after the story's file name alone, so two stories with
+ * the same name in different directories are refused rather than written over each other.
+ */
+public class CorefBatchRunner {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(CorefBatchRunner.class);
+
+  public static final String DEFAULT_MANIFEST_NAME = ".coref_progress";
+
+  private static final String DONE = "done";
+  private static final String TMP_SUFFIX = ".tmp";
+
+  /** How many documents a worker processes between throughput reports. */
+  private static final int REPORT_EVERY = 50;
+
+  private final StanfordCoreNLP pipeline;
+  private final File charListsDir;
+  private final File outputsDir;
+  private final int numThreads;
+  private final File manifest;
+  /** If not null, stories are annotated window by window instead of all at once. */
+  private final WindowedStoryCoref windowed;
+
+  public CorefBatchRunner(StanfordCoreNLP pipeline, File charListsDir, File outputsDir,
+                          int numThreads, File manifest) {
+    this(pipeline, charListsDir, outputsDir, numThreads, manifest, null);
+  }
+
+  public CorefBatchRunner(StanfordCoreNLP pipeline, File charListsDir, File outputsDir,
+                          int numThreads, File manifest, WindowedStoryCoref windowed) {
+    this.pipeline = pipeline;
+    this.charListsDir = charListsDir;
+    this.outputsDir = outputsDir;
+    this.numThreads = numThreads <= 0 ? Runtime.getRuntime().availableProcessors() : numThreads;
+    this.manifest = manifest;
+    this.windowed = windowed;
+  }
+
+  /**
+   * Lists the stories under {@code textsDir}. Directory splits (as made by RunCoreNLP.py)
+   * are flattened so that a single JVM can process all of them; {@link #run} refuses a list
+   * in which two stories have the same name.
+   */
+  public static List<File> listStories(File textsDir) {
+    List<File> stories = new ArrayList<>();
+    File[] children = textsDir.listFiles();
+    if (children == null) {
+      throw new IllegalArgumentException("Not a directory: " + textsDir);
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        stories.addAll(listStories(child));
+      } else {
+        stories.add(child);
+      }
+    }
+    return stories;
+  }
+
+  /** Processes every story that is not already finished and blocks until all are done. */
+  public void run(List<File> textFiles) throws IOException, InterruptedException {
+    checkUniqueNames(textFiles);
+    Set<String> finished = readManifest();
+    Queue<File> todo = new ConcurrentLinkedQueue<>();
+    for (File textFile : textFiles) {
+      String textFilename = textFile.getName();
+      if (finished.contains(textFilename) || charListFile(textFilename).exists()) {
+        log.info("Already processed " + textFilename);
+      } else {
+        todo.add(textFile);
+      }
+    }
+    log.info("Processing " + todo.size() + " of " + textFiles.size() + " stories on "
+        + numThreads + " threads");
+
+    try (PrintWriter manifestWriter = new PrintWriter(new OutputStreamWriter(
+        new FileOutputStream(manifest, true), StandardCharsets.UTF_8))) {
+      List<Worker> workers = new ArrayList<>();
+      List<Thread> threads = new ArrayList<>();
+      long start = System.nanoTime();
+      for (int i = 0; i < numThreads; i++) {
+        Worker worker = new Worker(i, todo, manifestWriter);
+        Thread thread = new Thread(worker, "coref-batch-" + i);
+        workers.add(worker);
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      // the workers' times overlap, so the batch's throughput is over the wall clock time of the run
+      WorkerStats total = new WorkerStats();
+      for (Worker worker : workers) {
+        log.info(worker.stats.report("worker " + worker.id));
+        total.addCounts(worker.stats);
+      }
+      total.nanos = System.nanoTime() - start;
+      log.info(total.report("total (wall clock)"));
+    }
+  }
+
+  /** Throws an IllegalArgumentException if two stories would write the same outputs */
+  static void checkUniqueNames(List<File> textFiles) {
+    Map<String, File> byName = new HashMap<>();
+    for (File textFile : textFiles) {
+      File other = byName.put(textFile.getName(), textFile);
+      if (other != null) {
+        throw new IllegalArgumentException("Stories " + other + " and " + textFile
+            + " have the same name, so they would write the same outputs");
+      }
+    }
+  }
+
+  private Set<String> readManifest() throws IOException {
+    Set<String> finished = new HashSet<>();
+    if ( ! manifest.exists()) {
+      return finished;
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t");
+        // a line cut short by a kill has fewer fields and is ignored
+        if (fields.length >= 4 && fields[0].equals(DONE)) {
+          finished.add(fields[1]);
+        }
+      }
+    }
+    return finished;
+  }
+
+  private File charListFile(String textFilename) {
+    return new File(charListsDir, textFilename + ".chars");
+  }
+
+  private File storyFile(String textFilename) {
+    return new File(outputsDir, textFilename + ".coref.txt");
+  }
+
+  /** Processes one story, committing both outputs only once they are completely written. */
+  private int process(File textFile) throws IOException {
+    String textFilename = textFile.getName();
+    File storyOut = storyFile(textFilename);
+    File charsOut = charListFile(textFilename);
+    File storyTmp = new File(storyOut.getPath() + TMP_SUFFIX);
+    File charsTmp = new File(charsOut.getPath() + TMP_SUFFIX);
+
+    int tokens;
+    try (Writer storyWriter = new BufferedWriter(new FileWriter(storyTmp));
+         Writer charsWriter = new BufferedWriter(new FileWriter(charsTmp))) {
+      tokens = writeCharacterOutput(textFile, storyWriter, charsWriter);
+    } catch (IOException | RuntimeException e) {
+      storyTmp.delete();
+      charsTmp.delete();
+      throw e;
+    }
+    // .chars last: its presence marks the story as done for older drivers
+    moveIntoPlace(storyTmp, storyOut);
+    moveIntoPlace(charsTmp, charsOut);
+    return tokens;
+  }
+
+  /** Annotates one story and writes its outputs, returning its number of tokens */
+  int writeCharacterOutput(File textFile, Writer storyWriter, Writer charsWriter) throws IOException {
+    if (windowed == null) {
+      return CorefSystem.writeCharacterOutput(pipeline, textFile, storyWriter, charsWriter);
+    } else {
+      return windowed.writeCharacterOutput(textFile, storyWriter, charsWriter);
+    }
+  }
+
+  private static void moveIntoPlace(File from, File to) throws IOException {
+    Path source = from.toPath();
+    Path target = to.toPath();
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void writeError(String textFilename, Exception e) {
+    try (PrintWriter errorWriter = new PrintWriter(new FileWriter(new File(textFilename + ".error"), true))) {
+      e.printStackTrace(errorWriter);
+    } catch (IOException ioe) {
+      log.warn("Could not write error file for " + textFilename + ": " + ioe);
+    }
+  }
+
+
+  private class Worker implements Runnable {
+    private final int id;
+    private final Queue<File> todo;
+    private final PrintWriter manifestWriter;
+    private final WorkerStats stats = new WorkerStats();
+
+    Worker(int id, Queue<File> todo, PrintWriter manifestWriter) {
+      this.id = id;
+      this.todo = todo;
+      this.manifestWriter = manifestWriter;
+    }
+
+    @Override
+    public void run() {
+      File textFile;
+      while ((textFile = todo.poll()) != null) {
+        String textFilename = textFile.getName();
+        log.info("processing " + textFilename);
+        long start = System.nanoTime();
+        try {
+          int tokens = process(textFile);
+          long elapsed = System.nanoTime() - start;
+          stats.record(tokens, elapsed);
+          synchronized (manifestWriter) {
+            manifestWriter.println(DONE + '\t' + textFilename + '\t' + tokens + '\t' + elapsed / 1000000);
+            manifestWriter.flush();
+          }
+          if (stats.docs % REPORT_EVERY == 0) {
+            log.info(stats.report("worker " + id));
+          }
+        } catch (Exception e) {
+          stats.errors++;
+          writeError(textFilename, e);
+        }
+      }
+    }
+  }
+
+
+  /** Throughput counters for a single worker, or for the whole run; only touched by one thread at a time. */
+  private static class WorkerStats {
+    int docs;
+    int errors;
+    long tokens;
+    long nanos;
+
+    void record(int docTokens, long docNanos) {
+      docs++;
+      tokens += docTokens;
+      nanos += docNanos;
+    }
+
+    /** Adds the documents, errors and tokens of another worker, but not its time */
+    void addCounts(WorkerStats other) {
+      docs += other.docs;
+      errors += other.errors;
+      tokens += other.tokens;
+    }
+
+    String report(String name) {
+      double seconds = nanos / 1e9;
+      return String.format("%s: %d docs (%d errors), %d tokens in %.1fs; %.2f docs/sec, %.1f tokens/sec",
+          name, docs, errors, tokens, seconds,
+          seconds == 0 ? 0.0 : docs / seconds, seconds == 0 ? 0.0 : tokens / seconds);
+    }
+  }
+
+}
@@ -56,6 +56,14 @@ public class CorefProperties {
     return PropertiesUtils.getBool(props, "coref.removeSingletonClusters", true);
   }
 
+  /**
+   * Whether the clusters of a document are reused for the next document on the same thread once
+   * its coref chains are made; see {@link edu.stanford.nlp.coref.data.DocumentArena}
+   */
+  public static boolean useDocumentArena(Properties props) {
+    return PropertiesUtils.getBool(props, "coref.documentArena", false);
+  }
+
   // ---------- Heuristic Mention Filtering ----------
 
   public static int maxMentionDistance(Properties props) {
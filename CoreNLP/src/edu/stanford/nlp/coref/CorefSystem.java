@@ -8,7 +8,8 @@ import edu.stanford.nlp.coref.data.*;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.util.Generics;
-import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.logging.Redwood;
 
 import edu.stanford.nlp.coref.data.CorefChain;
@@ -26,7 +27,8 @@ public class CorefSystem {
     private final CorefAlgorithm corefAlgorithm;
     private final boolean removeSingletonClusters;
     private final boolean verbose;
-    private static HashMap<String, Integer> perDocNerCharacterCounts;
+    private static final ThreadLocal<CharacterTaggedTextWriter> TAGGED_TEXT_WRITER =
+        ThreadLocal.withInitial(CharacterTaggedTextWriter::new);
 
     public CorefSystem(Properties props) {
         try {
@@ -66,7 +68,6 @@ public class CorefSystem {
         }
 
         InputDoc doc = new InputDoc(ann);
-        perDocNerCharacterCounts = new HashMap<>();
 
 //        System.out.println("Tokens\n");
 
@@ -112,20 +113,27 @@ public class CorefSystem {
 //            }
 //        }
 
-        CorefUtils.checkForInterrupt();
-        corefAlgorithm.runCoref(document);
-        if (removeSingletonClusters) {
-            CorefUtils.removeSingletonClusters(document);
-        }
-        CorefUtils.checkForInterrupt();
+        try {
+            CorefUtils.checkForInterrupt();
+            corefAlgorithm.runCoref(document);
+            if (removeSingletonClusters) {
+                CorefUtils.removeSingletonClusters(document);
+            }
+            CorefUtils.checkForInterrupt();
 
-        Map<Integer, CorefChain> result = Generics.newHashMap();
-        for (CorefCluster c : document.corefClusters.values()) {
-            result.put(c.clusterID, new CorefChain(c, document.positions));
-			System.err.println("CorefSystem annotate character:::::::");
-			System.err.println(c.character);
+            Map<Integer, CorefChain> result = Generics.newHashMap();
+            for (CorefCluster c : document.corefClusters.values()) {
+                result.put(c.clusterID, new CorefChain(c, document.positions));
+				System.err.println("CorefSystem annotate character:::::::");
+				System.err.println(c.character);
+            }
+            ann.set(CorefCoreAnnotations.CorefChainAnnotation.class, result);
+        } finally {
+            // an algorithm that fails must not leave the document's clusters out of the arena
+            if (document.arena != null) {
+                document.arena.release(document);
+            }
         }
-        ann.set(CorefCoreAnnotations.CorefChainAnnotation.class, result);
     }
 
     public void runOnConll(Properties props) throws Exception {
@@ -177,6 +185,18 @@ public class CorefSystem {
         writerAfterCoref.close();
     }
 
+    /**
+     * Runs coref over every story in a directory and writes the character-tagged text
+     * ({@code .coref.txt}) and the character list ({@code .chars}) for each one.
+     * <br>
+     * Usage: {@code CorefSystem textsDir charListsDir outputsDir [-threads N] [-manifest file]
+     * [-window N [-windowOverlap K]]}
+     * <br>
+     * All workers share a single {@link StanfordCoreNLP} pipeline; see {@link CorefBatchRunner}
+     * for how outputs are committed and how an interrupted run resumes. With {@code -window},
+     * long stories are annotated N paragraphs at a time with K paragraphs of overlap
+     * (see {@link WindowedStoryCoref}).
+     */
     public static void main(String[] args) throws Exception {
 
         File textsDir = new File("../" + args[0]);
@@ -184,197 +204,103 @@ public class CorefSystem {
         File charListsDir = new File(args[1]);
 
         File outputsDir = new File(args[2]);
-        
+
+        Properties batchProps = StringUtils.argsToProperties(Arrays.copyOfRange(args, 3, args.length));
+        int threads = PropertiesUtils.getInt(batchProps, "threads", 1);
+        File manifest = new File(PropertiesUtils.getString(batchProps, "manifest",
+            new File(charListsDir, CorefBatchRunner.DEFAULT_MANIFEST_NAME).getPath()));
+        int windowParagraphs = PropertiesUtils.getInt(batchProps, "window", 0);
+        int overlapParagraphs = PropertiesUtils.getInt(batchProps, "windowOverlap", 2);
+
         Properties props = new Properties();
         props.setProperty("annotators", "tokenize,ssplit,pos,lemma,ner,parse,coref");
 		props.setProperty("tokenize.whitespace", "true");
         StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
-        String textFilename;
 
-        File[] textFiles = textsDir.listFiles();
-        System.err.println(String.valueOf(textFiles.length) + " files found");
-//        int gc_cnt = 0, max_gc_cnt = 50;
+        List<File> textFiles = CorefBatchRunner.listStories(textsDir);
+        System.err.println(String.valueOf(textFiles.size()) + " files found");
 
-        // Process all texts in textsDir
-        for (File textFile : textFiles) {
-            textFilename = textFile.getName();
-
-            // Check if the file is already processed
-            File charListOutput = new File(charListsDir.getPath() + "/" + textFilename + ".chars");
-            if (charListOutput.exists()) {
-            	System.err.println("Already processed " + textFilename);
-            	continue;
-            }
-
-            // If not, process
-            System.err.println("processing " + textFilename);
-
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader(textFile));
-                StringBuilder textBuilder = new StringBuilder();
-                String s;
-
-                while ((s = reader.readLine()) != null) {
-                    textBuilder.append(s);
-                }
+        WindowedStoryCoref windowed = windowParagraphs > 0 ?
+            new WindowedStoryCoref(pipeline, windowParagraphs, overlapParagraphs) : null;
+        new CorefBatchRunner(pipeline, charListsDir, outputsDir, threads, manifest, windowed).run(textFiles);
+    }
 
-                Annotation document = new Annotation(textBuilder.toString());
+    /**
+     * Annotates a single story and writes its character-tagged text and character list.
+     *
+     * @return the number of tokens in the story
+     */
+    public static int writeCharacterOutput(StanfordCoreNLP pipeline, File textFile,
+                                           Writer outputWriter, Writer charListWriter) throws IOException {
+        Annotation document = new Annotation(readStory(textFile));
 
-                // Run the annotation pipeline on entire document
-                pipeline.annotate(document);
+        // Run the annotation pipeline on entire document
+        pipeline.annotate(document);
 
-                StringBuilder outputBuilder = new StringBuilder();
+        CharacterTaggedTextWriter taggedWriter = taggedTextWriter();
+        taggedWriter.startDocument(outputWriter, characterNames(document));
+        taggedWriter.writeSentences(document.get(CoreAnnotations.SentencesAnnotation.class));
+        outputWriter.flush();
 
-                BufferedWriter outputWriter = new BufferedWriter(
-                    new FileWriter(
-                        new File(outputsDir.getPath() + "/" + textFilename + ".coref.txt")
-                    )
-                );
+        writeCharacterList(taggedWriter.characters(), charListWriter);
 
-                HashMap<Integer, String> idToCharacter = new HashMap<>();
-                ArrayList<Integer> ids = new ArrayList<>();
+        return document.get(CoreAnnotations.TokensAnnotation.class).size();
+    }
 
+    /** The tagged text writer for the current thread; each batch worker reuses its own. */
+    static CharacterTaggedTextWriter taggedTextWriter() {
+        return TAGGED_TEXT_WRITER.get();
+    }
 
-                for (CorefChain cc : document.get(CorefCoreAnnotations.CorefChainAnnotation.class).values()) {
-                    if (!cc.character.equals("")) {
-                        idToCharacter.put(cc.getChainID(), cc.character);
-                        ids.add(cc.getChainID());
-                    }
-                }
+    /** Reads a story file, joining its lines without separators. */
+    static String readStory(File textFile) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(textFile));
+        StringBuilder textBuilder = new StringBuilder();
+        String s;
 
+        while ((s = reader.readLine()) != null) {
+            textBuilder.append(s);
+        }
+        reader.close();
+        return textBuilder.toString();
+    }
 
-                // Merging character names as post-processing
-                for (int i = 0; i < ids.size(); ++i) {
-                    for (int j = i + 1; j < ids.size(); ++j) {
-                        int id1 = ids.get(i), id2 = ids.get(j);
-                        String character1 = idToCharacter.get(id1), character2 = idToCharacter.get(id2);
-
-                        if (character1.contains(character2)) {
-                            idToCharacter.put(id2, character1);
-                        } else if (character2.contains(character1)) {
-                            idToCharacter.put(id1, character2);
-                        } else if (character1.toLowerCase().equals(character2.toLowerCase())) {
-                        	idToCharacter.put(id2, character1);
-                        }
-                    }
-                }
+    /**
+     * Maps each coref chain that has a character to that character's name, merging names
+     * where one contains the other into the longest such name (see {@link CharacterNameIndex}).
+     */
+    static Map<Integer, String> characterNames(Annotation document) {
+        HashMap<Integer, String> idToCharacter = new HashMap<>();
+        ArrayList<Integer> ids = new ArrayList<>();
+        CharacterNameIndex names = new CharacterNameIndex();
+
+        for (CorefChain cc : document.get(CorefCoreAnnotations.CorefChainAnnotation.class).values()) {
+            if (!cc.character.equals("")) {
+                idToCharacter.put(cc.getChainID(), cc.character);
+                ids.add(cc.getChainID());
+                names.add(cc.character);
+            }
+        }
 
-                int i = 1;
-
-
-                HashSet<String> characters = new HashSet<>();
-
-                // Add the character tags to the text and process the paragraph delimiter "# ."
-                for (CoreMap sentence : document.get(CoreAnnotations.SentencesAnnotation.class)) {
-                    if (sentence.get(CorefCoreAnnotations.CorefMentionsAnnotation.class).size() == 0) {
-                        String text = sentence.get(CoreAnnotations.TextAnnotation.class);
-
-                        if (text.equals("# .")) {
-                            outputBuilder.append("\n");
-                        } else if (text.endsWith(" # .")) {
-                            outputBuilder.append(text, 0, text.lastIndexOf(" # ."));
-                            outputBuilder.append("\n");
-                        } else {
-                            outputBuilder.append(sentence).append(" ");
-                        }
-
-                        continue;
-                    }
-
-                    ArrayList<String> words = null;
-                    ArrayList<Pair<Pair<Integer, Integer>, String>> replacements = new ArrayList<>();
-//                    StringBuilder replacedSentence = new StringBuilder(); // new sentence with modifications
-
-                    for (Mention m : sentence.get(CorefCoreAnnotations.CorefMentionsAnnotation.class)) {
-                        int id = m.corefClusterID;
-                        String character = "";
-
-                        if (words == null) {
-                            words = new ArrayList<String>() {
-                            };
-                            for (CoreLabel word : m.sentenceWords) {
-                                words.add(
-                                    word.get(CoreAnnotations.TextAnnotation.class)
-                                );
-                            }
-                        }
-
-                        if (idToCharacter.containsKey(id)) {
-                            character = idToCharacter.get(id);
-
-                             String processedChar = String.join("_", character.split(" ")).replaceAll("[,\\.\\!\\? \\h']", "").replaceAll("_+", "_").replaceAll("^_", "").replaceAll("_$", "");
-                            if (!character.equals("")) {
-                                replacements.add(
-                                    new Pair<>(
-                                        new Pair<>(m.startIndex, m.endIndex),
-                                        //String.join("_", character.split(" "))
-                                        processedChar
-                                    )
-                                );
-                            }
-                        }
-
-                    }
-
-                    replacements.sort(
-                        Comparator.comparingInt(o -> o.first.first)
-                    );
-
-                    List<String> replacedWords = new ArrayList<>(words); // new sentence tokens with modifications, joined to a string at end
-
-                    for (Pair<Pair<Integer, Integer>, String> replacement : replacements) {
-                    	
-                    		String begin_tag = "<character name=\"" + replacement.second + "\">"; 
-                    		String end_tag = "</character>"; 
-                    		
-                    		String taggedWord = ""; // placeholder for word to add
-                    	
-						// Add <character name=name>mention</character> tags (apostrophe s exclude from mention)
-                        if (replacement.first.first + 1 == replacement.first.second) { // 1-word mention
-                        		taggedWord = begin_tag + replacedWords.get(replacement.first.first) + end_tag;
-                        		replacedWords.set(replacement.first.first, taggedWord);
-
-                        } else { // multi-word mention
-                        	
-                        	// begin-tag first word
-                        	taggedWord = begin_tag + replacedWords.get(replacement.first.first);
-                        	replacedWords.set(replacement.first.first, taggedWord);
-                        	
-                        	// end-tag after last word
-                        if (words.get(replacement.first.second - 1).equals("'s")) {
-                        		taggedWord = replacedWords.get(replacement.first.second - 2) + end_tag;
-                            replacedWords.set(replacement.first.second - 2, taggedWord);
-
-                         } else {
-                        		taggedWord = replacedWords.get(replacement.first.second - 1) + end_tag;
-                            replacedWords.set(replacement.first.second - 1, taggedWord);
-                         }
-
-                        }
-
-                        characters.add(replacement.second);
-
-                    }
-
-                    String replacedSentence = String.join(" ", replacedWords) + " ";
-                    // Replace # . to paragraph breaks
-                    replacedSentence = replacedSentence.replaceAll("# \\.", "\n");
-
-                    outputBuilder.append(replacedSentence.toString());
-
-                    i += 1;
+        // Merging character names as post-processing
+        for (int id : ids) {
+            String character = idToCharacter.get(id);
+            int best = names.indexOf(character);
+            if (best < 0) {
+                continue;
+            }
+            for (int other : names.containing(character)) {
+                if (names.length(other) > names.length(best)) {
+                    best = other;
                 }
+            }
+            idToCharacter.put(id, names.get(best));
+        }
+        return idToCharacter;
+    }
 
-                outputWriter.write(outputBuilder.toString());
-                outputWriter.flush();
-                outputWriter.close();
-
-                BufferedWriter charListWriter = new BufferedWriter(
-                    new FileWriter(
-                        new File(charListsDir.getPath() + "/" + textFilename + ".chars")
-                    )
-                );
-                StringBuilder charListBuilder = new StringBuilder();
+    static void writeCharacterList(Set<String> characters, Writer charListWriter) throws IOException {
+        StringBuilder charListBuilder = new StringBuilder();
 
 //                for (HashMap.Entry<String, Integer> entry : perDocNerCharacterCounts.entrySet()) {
 //
@@ -384,34 +310,11 @@ public class CorefSystem {
 //                    characters.add(name);
 //                }
 
-                for (String c : characters) {
-                    charListBuilder.append(c).append("\n");
-                }
-
-                charListWriter.write(charListBuilder.toString());
-                charListWriter.flush();
-                charListWriter.close();
-
-//                ++gc_cnt;
-
-//                if (gc_cnt == max_gc_cnt) {
-//                    System.gc();
-//                    gc_cnt = 0;
-//                }
-
-            } catch (Exception e) {
-                PrintWriter errorWriter = new PrintWriter(
-                    new FileWriter(
-                        new File(textFilename + ".error"), true
-                    )
-                );
-
-                e.printStackTrace(errorWriter);
-                errorWriter.close();
-
-            }
-
+        for (String c : characters) {
+            charListBuilder.append(c).append("\n");
         }
 
+        charListWriter.write(charListBuilder.toString());
+        charListWriter.flush();
     }
 }
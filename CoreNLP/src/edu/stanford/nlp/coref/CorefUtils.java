@@ -106,43 +106,11 @@ public class CorefUtils {
 
   public static Map<Integer, List<Integer>> heuristicFilter(List<Mention> sortedMentions,
       int maxMentionDistance, int maxMentionDistanceWithStringMatch) {
-    Map<String, List<Mention>> wordToMentions = new HashMap<>();
-    for (int i = 0; i < sortedMentions.size(); i++) {
-      Mention m = sortedMentions.get(i);
-      for (String word : getContentWords(m)) {
-        wordToMentions.putIfAbsent(word, new ArrayList<>());
-        wordToMentions.get(word).add(m);
-      }
-    }
-
-    Map<Integer, List<Integer>> mentionToCandidateAntecedents = new HashMap<>();
-    for (int i = 0; i < sortedMentions.size(); i++) {
-      Mention m = sortedMentions.get(i);
-      List<Integer> candidateAntecedents = new ArrayList<>();
-      for (int j = Math.max(0, i - maxMentionDistance); j < i; j++) {
-        candidateAntecedents.add(sortedMentions.get(j).mentionID);
-      }
-      for (String word : getContentWords(m)) {
-        List<Mention> withStringMatch = wordToMentions.get(word);
-        if (withStringMatch != null) {
-          for (Mention match : withStringMatch) {
-            if (match.mentionNum < m.mentionNum
-                && match.mentionNum >= m.mentionNum - maxMentionDistanceWithStringMatch) {
-              if (!candidateAntecedents.contains(match.mentionID)) {
-                candidateAntecedents.add(match.mentionID);
-              }
-            }
-          }
-        }
-      }
-      if (!candidateAntecedents.isEmpty()) {
-        mentionToCandidateAntecedents.put(m.mentionID, candidateAntecedents);
-      }
-    }
-    return mentionToCandidateAntecedents;
+    return CandidatePairs.windowed(sortedMentions, maxMentionDistance, maxMentionDistanceWithStringMatch)
+        .toCandidateAntecedents();
   }
 
-  private static List<String> getContentWords(Mention m) {
+  static List<String> getContentWords(Mention m) {
     List<String> words = new ArrayList<>();
     for (int i = m.startIndex; i < m.endIndex; i++) {
       CoreLabel cl = m.sentenceWords.get(i);
@@ -0,0 +1,179 @@
+package edu.stanford.nlp.coref;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+import edu.stanford.nlp.coref.data.CharacterNameIndex;
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Runs character coref over a long story in overlapping windows of paragraphs (split on the
+ * "# ." paragraph delimiter) instead of annotating the whole story at once, so that the number
+ * of mentions and mention pairs, and hence memory, is proportional to the window size rather
+ * than to the story length.
+ * <br>
+ * Each window is annotated together with the last {@code overlapParagraphs} paragraphs of the
+ * previous window as context; only the new paragraphs are written out. Character state is
+ * carried from one window to the next in two ways:
+ * <ul>
+ *   <li>a chain that contains a mention which was tagged in the previous window takes on that
+ *   mention's character, so clusters continue across the window boundary; and</li>
+ *   <li>names are merged against the characters already seen in the story with a
+ *   {@link CharacterNameIndex}. Since earlier windows have already been written, an earlier
+ *   name wins over a later, longer one.</li>
+ * </ul>
+ * The output is the same {@code <character name=...>} tagged text and character list that
+ * {@link CorefSystem#writeCharacterOutput} produces.
+ */
+public class WindowedStoryCoref {
+
+  private static final String PARAGRAPH_DELIMITER = "# .";
+
+  private final StanfordCoreNLP pipeline;
+  private final int windowParagraphs;
+  private final int overlapParagraphs;
+
+  public WindowedStoryCoref(StanfordCoreNLP pipeline, int windowParagraphs, int overlapParagraphs) {
+    if (windowParagraphs <= 0) {
+      throw new IllegalArgumentException("Window must contain at least one paragraph: " + windowParagraphs);
+    }
+    if (overlapParagraphs < 0) {
+      throw new IllegalArgumentException("Overlap cannot be negative: " + overlapParagraphs);
+    }
+    this.pipeline = pipeline;
+    this.windowParagraphs = windowParagraphs;
+    this.overlapParagraphs = overlapParagraphs;
+  }
+
+  /**
+   * Splits a story into paragraphs, each ending just after its "# ." delimiter. Returns the
+   * start offset of every paragraph followed by the length of the text, so that paragraph
+   * {@code i} is {@code text.substring(bounds[i], bounds[i + 1])}.
+   */
+  static int[] paragraphBounds(String text) {
+    List<Integer> starts = new ArrayList<>();
+    starts.add(0);
+    int from = 0;
+    int delim;
+    while ((delim = text.indexOf(PARAGRAPH_DELIMITER, from)) >= 0) {
+      int end = delim + PARAGRAPH_DELIMITER.length();
+      if (end < text.length()) {
+        starts.add(end);
+      }
+      from = end;
+    }
+    int[] bounds = new int[starts.size() + 1];
+    for (int i = 0; i < starts.size(); i++) {
+      bounds[i] = starts.get(i);
+    }
+    bounds[starts.size()] = text.length();
+    return bounds;
+  }
+
+  /**
+   * Annotates a story window by window, writing the tagged text and the character list.
+   *
+   * @return the number of tokens annotated, counting the overlap context once per window
+   */
+  public int writeCharacterOutput(File textFile, Writer outputWriter, Writer charListWriter) throws IOException {
+    String text = CorefSystem.readStory(textFile);
+    int[] bounds = paragraphBounds(text);
+    int numParagraphs = bounds.length - 1;
+
+    CharacterTaggedTextWriter taggedWriter = CorefSystem.taggedTextWriter();
+    taggedWriter.startDocument(outputWriter, Collections.emptyMap());
+    CharacterNameIndex storyCharacters = new CharacterNameIndex();
+    // story offset of a tagged mention's first character -> its (unprocessed) character name,
+    // for the mentions that the next window will see again as context
+    Map<Integer, String> carried = new HashMap<>();
+    int tokens = 0;
+
+    for (int first = 0; first < numParagraphs; first += windowParagraphs) {
+      int contextFirst = Math.max(0, first - overlapParagraphs);
+      int last = Math.min(numParagraphs, first + windowParagraphs);
+      int windowStart = bounds[contextFirst];
+      int contextLength = bounds[first] - windowStart;
+      int nextContextStart = bounds[Math.max(0, last - overlapParagraphs)] - windowStart;
+
+      Annotation window = new Annotation(text.substring(windowStart, bounds[last]));
+      pipeline.annotate(window);
+      tokens += window.get(CoreAnnotations.TokensAnnotation.class).size();
+
+      List<CoreMap> sentences = window.get(CoreAnnotations.SentencesAnnotation.class);
+      Map<Integer, String> idToCharacter = CorefSystem.characterNames(window);
+      continueChains(sentences, idToCharacter, carried, windowStart);
+      for (Map.Entry<Integer, String> entry : idToCharacter.entrySet()) {
+        entry.setValue(mergeWithStory(entry.getValue(), storyCharacters));
+      }
+
+      List<CoreMap> newSentences = new ArrayList<>();
+      Map<Integer, String> nextCarried = new HashMap<>();
+      for (CoreMap sentence : sentences) {
+        int sentenceStart = sentence.get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+        if (sentenceStart >= contextLength) {
+          newSentences.add(sentence);
+        }
+        if (sentenceStart >= nextContextStart) {
+          for (Mention m : sentence.get(CorefCoreAnnotations.CorefMentionsAnnotation.class)) {
+            String character = idToCharacter.get(m.corefClusterID);
+            if (character != null) {
+              nextCarried.put(windowStart + mentionBegin(m), character);
+            }
+          }
+        }
+      }
+      carried = nextCarried;
+
+      taggedWriter.setCharacters(idToCharacter);
+      taggedWriter.writeSentences(newSentences);
+    }
+    outputWriter.flush();
+
+    CorefSystem.writeCharacterList(taggedWriter.characters(), charListWriter);
+    return tokens;
+  }
+
+  private static int mentionBegin(Mention m) {
+    return m.sentenceWords.get(m.startIndex).get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+  }
+
+  /**
+   * Gives each chain the character of the first of its mentions that was tagged in the
+   * previous window, overriding whatever name this window alone would have picked.
+   */
+  static void continueChains(List<CoreMap> sentences, Map<Integer, String> idToCharacter,
+                             Map<Integer, String> carried, int windowStart) {
+    if (carried.isEmpty()) {
+      return;
+    }
+    Set<Integer> continued = new HashSet<>();
+    for (CoreMap sentence : sentences) {
+      for (Mention m : sentence.get(CorefCoreAnnotations.CorefMentionsAnnotation.class)) {
+        String character = carried.get(windowStart + mentionBegin(m));
+        if (character != null && continued.add(m.corefClusterID)) {
+          idToCharacter.put(m.corefClusterID, character);
+        }
+      }
+    }
+  }
+
+  /** Maps a name onto a character already seen in this story, or records it as a new one. */
+  static String mergeWithStory(String character, CharacterNameIndex storyCharacters) {
+    List<Integer> known = storyCharacters.containing(character);
+    if (known.isEmpty()) {
+      known = storyCharacters.containedIn(character);
+    }
+    if ( ! known.isEmpty()) {
+      return storyCharacters.get(known.get(0));
+    }
+    storyCharacters.add(character);
+    return character;
+  }
+
+}
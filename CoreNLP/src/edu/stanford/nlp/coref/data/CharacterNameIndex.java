@@ -0,0 +1,198 @@
+package edu.stanford.nlp.coref.data;
+
+import java.io.Serializable;
+import java.util.*;
+
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.IntPair;
+
+/**
+ * An index of character names for merging aliases such as "Harry" and "Harry Potter".
+ * <br>
+ * Names are compared on their parts: whitespace-separated, lowercased tokens. One name
+ * contains another if the other's parts occur as a contiguous run in its parts, so "Harry"
+ * is contained in "Harry Potter" but "Ron" is not contained in "Ronald". Names that have the
+ * same parts are the same entry, which keeps the surface form it was first added with.
+ * <br>
+ * Lookups cost time proportional to the number of parts in the query and the number of
+ * names sharing a part with it, not to the number of names in the index: a token trie
+ * answers which indexed names occur inside a query, and a positional inverted index over
+ * parts answers which indexed names contain a query.
+ */
+public class CharacterNameIndex implements Serializable {
+
+  private static final long serialVersionUID = 6105786386384953401L;
+
+  private static class TrieNode implements Serializable {
+    private static final long serialVersionUID = -2785315318719569474L;
+
+    final Map<String, TrieNode> children = new HashMap<>(4);
+    /** Id of the name ending at this node, or -1 */
+    int nameId = -1;
+  }
+
+  private final TrieNode root = new TrieNode();
+  private final List<String> names = new ArrayList<>();
+  private final List<String[]> nameParts = new ArrayList<>();
+  /** part -> (name id, position of the part in that name) */
+  private final Map<String, List<IntPair>> postings = Generics.newHashMap();
+
+  /** Splits a name into its normalized parts. */
+  public static String[] parts(String name) {
+    String trimmed = name.trim();
+    if (trimmed.isEmpty()) {
+      return new String[0];
+    }
+    // the same as splitting on \\s+, without compiling a pattern for every name
+    int numParts = 1;
+    for (int i = 1; i < trimmed.length(); i++) {
+      if (isSpace(trimmed.charAt(i)) && ! isSpace(trimmed.charAt(i - 1))) {
+        numParts++;
+      }
+    }
+    String[] parts = new String[numParts];
+    int start = 0;
+    int part = 0;
+    for (int i = 0; i <= trimmed.length(); i++) {
+      if (i == trimmed.length() || isSpace(trimmed.charAt(i))) {
+        if (start < i) {
+          parts[part++] = trimmed.substring(start, i).toLowerCase();
+        }
+        start = i + 1;
+      }
+    }
+    return parts;
+  }
+
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\013' || c == '\f' || c == '\r';
+  }
+
+  public int size() {
+    return names.size();
+  }
+
+  /** Removes every name. */
+  public void clear() {
+    root.children.clear();
+    names.clear();
+    nameParts.clear();
+    postings.clear();
+  }
+
+  /** The surface form of the name with the given id. */
+  public String get(int id) {
+    return names.get(id);
+  }
+
+  /** The number of parts in the name with the given id. */
+  public int length(int id) {
+    return nameParts.get(id).length;
+  }
+
+  /** The id of the entry with exactly the same parts as {@code name}, or -1. */
+  public int indexOf(String name) {
+    TrieNode node = find(parts(name));
+    return node == null ? -1 : node.nameId;
+  }
+
+  private TrieNode find(String[] parts) {
+    if (parts.length == 0) {
+      return null;
+    }
+    TrieNode node = root;
+    for (String part : parts) {
+      node = node.children.get(part);
+      if (node == null) {
+        return null;
+      }
+    }
+    return node;
+  }
+
+  /**
+   * Adds a name unless an entry with the same parts exists already.
+   *
+   * @return the id of the entry for {@code name}, or -1 if it has no parts
+   */
+  public int add(String name) {
+    String[] parts = parts(name);
+    if (parts.length == 0) {
+      return -1;
+    }
+    TrieNode node = root;
+    for (String part : parts) {
+      node = node.children.computeIfAbsent(part, k -> new TrieNode());
+    }
+    if (node.nameId < 0) {
+      node.nameId = names.size();
+      names.add(name);
+      nameParts.add(parts);
+      for (int i = 0; i < parts.length; i++) {
+        postings.computeIfAbsent(parts[i], k -> new ArrayList<>(2)).add(new IntPair(node.nameId, i));
+      }
+    }
+    return node.nameId;
+  }
+
+  /**
+   * Ids, in the order they were added, of the indexed names that contain {@code name},
+   * including an entry with the same parts.
+   */
+  public List<Integer> containing(String name) {
+    String[] query = parts(name);
+    if (query.length == 0) {
+      return Collections.emptyList();
+    }
+    List<IntPair> candidates = postings.get(query[0]);
+    if (candidates == null) {
+      return Collections.emptyList();
+    }
+    List<Integer> result = new ArrayList<>();
+    int last = -1;
+    for (IntPair candidate : candidates) {
+      int id = candidate.getSource();
+      // postings are sorted by id, so a name matching at two positions is only seen twice in a row
+      if (id != last && matchesAt(nameParts.get(id), candidate.getTarget(), query)) {
+        result.add(id);
+        last = id;
+      }
+    }
+    return result;
+  }
+
+  private static boolean matchesAt(String[] parts, int start, String[] query) {
+    if (start + query.length > parts.length) {
+      return false;
+    }
+    for (int i = 1; i < query.length; i++) {
+      if ( ! parts[start + i].equals(query[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Ids, in the order they were added, of the indexed names that are contained in
+   * {@code name}, including an entry with the same parts.
+   */
+  public List<Integer> containedIn(String name) {
+    String[] query = parts(name);
+    TreeSet<Integer> result = new TreeSet<>();
+    for (int start = 0; start < query.length; start++) {
+      TrieNode node = root;
+      for (int i = start; i < query.length; i++) {
+        node = node.children.get(query[i]);
+        if (node == null) {
+          break;
+        }
+        if (node.nameId >= 0) {
+          result.add(node.nameId);
+        }
+      }
+    }
+    return new ArrayList<>(result);
+  }
+
+}
@@ -57,6 +57,8 @@ public class CorefCluster implements Serializable {
     public final Set<String> nerStrings;
     public final Set<String> heads;
     public final HashMap<String, Integer> characterCounts;
+    /** The keys of characterCounts, for finding the names that an alias should be counted under; made for the first name */
+    private CharacterNameIndex characterNames;
 
     /**
      * All words in this cluster - for word inclusion feature
@@ -99,23 +101,89 @@ public class CorefCluster implements Serializable {
     }
 
     public CorefCluster(int ID) {
+        this(ID, new StringIdSet.Ids());
+    }
+
+    /** A cluster whose word, head and named entity sets take their ids from a table, such as its document's */
+    CorefCluster(int ID, StringIdSet.Ids stringIds) {
         clusterID = ID;
         corefMentions = Generics.newHashSet();
         numbers = EnumSet.noneOf(Number.class);
         genders = EnumSet.noneOf(Gender.class);
         animacies = EnumSet.noneOf(Animacy.class);
-        nerStrings = Generics.newHashSet();
-        heads = Generics.newHashSet();
-        words = Generics.newHashSet();
+        nerStrings = new StringIdSet(stringIds);
+        heads = new StringIdSet(stringIds);
+        words = new StringIdSet(stringIds);
         firstMention = null;
         representative = null;
         character = "";
         characterCounts = new HashMap<String, Integer>();
+        characterNames = null;
         genderCounts = new HashMap<>();
     }
 
     public CorefCluster(int ID, Set<Mention> mentions) {
         this(ID);
+        initialize(mentions);
+    }
+
+    CorefCluster(int ID, Set<Mention> mentions, StringIdSet.Ids stringIds) {
+        this(ID, stringIds);
+        initialize(mentions);
+    }
+
+    /**
+     * A cluster of these mentions that takes over the sets and maps of a cluster emptied by
+     * {@link #recycle()}, with its word, head and named entity sets taking their ids from another
+     * document's table. Only {@link DocumentArena} makes these; nothing may use {@code recycled} afterwards.
+     * The character counts are taken over only if they were never used, so that ties between counts
+     * are broken in the same order as in a new cluster.
+     */
+    CorefCluster(int ID, Set<Mention> mentions, StringIdSet.Ids stringIds, CorefCluster recycled) {
+        clusterID = ID;
+        corefMentions = recycled.corefMentions;
+        numbers = recycled.numbers;
+        genders = recycled.genders;
+        animacies = recycled.animacies;
+        nerStrings = recycled.nerStrings;
+        heads = recycled.heads;
+        words = recycled.words;
+        ((StringIdSet) nerStrings).setIds(stringIds);
+        ((StringIdSet) heads).setIds(stringIds);
+        ((StringIdSet) words).setIds(stringIds);
+        firstMention = null;
+        representative = null;
+        character = "";
+        characterCounts = recycled.characterCounts.isEmpty() ? recycled.characterCounts : new HashMap<>();
+        characterNames = recycled.characterNames;
+        if (characterNames != null) {
+            characterNames.clear();
+        }
+        genderCounts = recycled.genderCounts;
+        initialize(mentions);
+    }
+
+    /**
+     * Empties the cluster of a finished document for {@link DocumentArena} to hand its sets to a
+     * new cluster, keeping the sets it has allocated but no references to the document's mentions.
+     */
+    void recycle() {
+        corefMentions.clear();
+        numbers.clear();
+        genders.clear();
+        animacies.clear();
+        nerStrings.clear();
+        heads.clear();
+        words.clear();
+        firstMention = null;
+        representative = null;
+        character = "";
+        gender = Gender.UNKNOWN;
+        genderCounts.clear();
+    }
+
+    /** Adds the mentions of a new cluster and sets its attributes from them */
+    void initialize(Set<Mention> mentions) {
         // Register mentions
         corefMentions.addAll(mentions);
         // Get list of mentions in textual order
@@ -144,30 +212,7 @@ public class CorefCluster implements Serializable {
             // Consider character name of length up to 4
             if (m.mentionType.equals(Dictionaries.MentionType.PROPER) && m.originalSpan.size() <= 4) {
                 String mentionStr = m.toString().replace(" 's", "");
-
-                if (characterCounts.containsKey(mentionStr)) {
-                    characterCounts.put(mentionStr, characterCounts.get(mentionStr) + 1);
-                } else {
-                    boolean merged = false;
-
-                    // Merged current character names based on substring
-                    for (Map.Entry<String, Integer> entry : characterCounts.entrySet()) {
-                        if (mentionStr.contains(entry.getKey())) {
-                            characterCounts.put(mentionStr, entry.getValue() + 1);
-                            merged = true;
-                            break;
-                        } else if (entry.getKey().contains(mentionStr)) {
-                            entry.setValue(entry.getValue() + 1);
-                            merged = true;
-                            break;
-                        }
-                    }
-
-                    if (!merged) {
-                        characterCounts.put(mentionStr, 1);
-                    }
-                }
-
+                addCharacterCount(mentionStr, 1);
             }
 
             genderCounts.put(m.gender, genderCounts.getOrDefault(m.gender, 0) + 1);
@@ -216,6 +261,41 @@ public class CorefCluster implements Serializable {
         }
     }
 
+    /**
+     * Counts a character name, merging it with the names already counted based on name parts:
+     * a name that contains a counted name starts from that name's count, and a name that is
+     * contained in a counted name adds to that name's count.
+     */
+    private void addCharacterCount(String name, int count) {
+        if (characterCounts.containsKey(name)) {
+            characterCounts.put(name, characterCounts.get(name) + count);
+            return;
+        }
+        if (characterNames == null) {
+            characterNames = new CharacterNameIndex();
+        }
+        int same = characterNames.indexOf(name);
+        if (same >= 0) {
+            String known = characterNames.get(same);
+            characterCounts.put(known, characterCounts.get(known) + count);
+            return;
+        }
+        List<Integer> contained = characterNames.containedIn(name);
+        if (!contained.isEmpty()) {
+            characterCounts.put(name, characterCounts.get(characterNames.get(contained.get(0))) + count);
+            characterNames.add(name);
+            return;
+        }
+        List<Integer> containing = characterNames.containing(name);
+        if (!containing.isEmpty()) {
+            String known = characterNames.get(containing.get(0));
+            characterCounts.put(known, characterCounts.get(known) + count);
+            return;
+        }
+        characterCounts.put(name, count);
+        characterNames.add(name);
+    }
+
     /**
      * merge 2 clusters: to = to + from
      */
@@ -263,35 +343,7 @@ public class CorefCluster implements Serializable {
         // Merge the character name counter for two clusters
         if (!from.characterCounts.isEmpty()) {
             for (Map.Entry<String, Integer> fromEntry : from.characterCounts.entrySet()) {
-                if (to.characterCounts.containsKey(fromEntry.getKey())) {
-                    to.characterCounts.put(
-                        fromEntry.getKey(),
-                        to.characterCounts.get(fromEntry.getKey()) + fromEntry.getValue()
-                    );
-                } else {
-                    boolean merged = false;
-
-                    for (Map.Entry<String, Integer> toEntry : to.characterCounts.entrySet()) {
-                        if (fromEntry.getKey().contains(toEntry.getKey())) {
-                            to.characterCounts.put(
-                                fromEntry.getKey(),
-                                fromEntry.getValue() + toEntry.getValue()
-                            );
-                            merged = true;
-                            break;
-                        } else if (toEntry.getKey().contains(fromEntry.getKey())) {
-                            toEntry.setValue(
-                                toEntry.getValue() + fromEntry.getValue()
-                            );
-                            merged = true;
-                            break;
-                        }
-                    }
-
-                    if (!merged) {
-                        to.characterCounts.put(fromEntry.getKey(), fromEntry.getValue());
-                    }
-                }
+                to.addCharacterCount(fromEntry.getKey(), fromEntry.getValue());
             }
         }
 
@@ -125,6 +125,13 @@ public class Document implements Serializable {
   /** Additional information about the document. Can be used as features */
   public Map<String, String> docInfo;
 
+  /** Where the clusters come from and go back to, or null to make new ones; see {@link DocumentArena} */
+  public transient DocumentArena arena;
+  /** The clusters taken from the arena */
+  transient List<CorefCluster> arenaClusters = new ArrayList<>();
+  /** The ids of the strings in the word, head and named entity sets of the clusters, made when first needed */
+  private transient StringIdSet.Ids stringIds;
+
   public Document() {
     positions = Generics.newHashMap();
     mentionheadPositions = Generics.newHashMap();
@@ -157,6 +164,17 @@ public class Document implements Serializable {
     this.conllDoc = input.conllDoc;   // null if it's not conll input
   }
 
+  /**
+   * The table of ids for the word, head and named entity sets of this document's clusters, which
+   * is dropped with the document instead of growing with every document the JVM sees
+   */
+  StringIdSet.Ids stringIds() {
+    if (stringIds == null) {
+      stringIds = new StringIdSet.Ids();
+    }
+    return stringIds;
+  }
+
   public boolean isIncompatible(CorefCluster c1, CorefCluster c2) {
     // Was any of the pairs of mentions marked as incompatible
     int cid1 = Math.min(c1.clusterID, c2.clusterID);
@@ -0,0 +1,67 @@
+package edu.stanford.nlp.coref.data;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recycles the sets and maps of the {@link CorefCluster}s of finished documents on one thread.
+ * <br>
+ * Every mention of a document starts out in a cluster of its own, with a dozen sets and maps, and
+ * all of them are garbage once the document's coref chains are made. A document made with an
+ * arena (see {@link DocumentMaker}) takes its clusters from the arena, and
+ * {@link #release(Document)} empties them and keeps them for the next document, whose new clusters
+ * take over their sets, so a worker that annotates one long story after another reuses the same sets.
+ * A cluster's id and character counts stay final: each reuse is a new {@link CorefCluster}.
+ * <br>
+ * An arena is not thread-safe; {@link #forCurrentThread()} gives each thread its own. Nothing
+ * may use a document's clusters after it is released.
+ */
+public class DocumentArena {
+
+  private static final ThreadLocal<DocumentArena> ARENAS = ThreadLocal.withInitial(DocumentArena::new);
+
+  /** The arena of the calling thread */
+  public static DocumentArena forCurrentThread() {
+    return ARENAS.get();
+  }
+
+  private final ArrayDeque<CorefCluster> free = new ArrayDeque<>();
+
+  /** The number of clusters waiting to be reused */
+  public int numFree() {
+    return free.size();
+  }
+
+  /** A cluster of one mention for the document, reusing a released cluster if there is one */
+  public CorefCluster singletonCluster(Document document, int ID, Mention mention) {
+    CorefCluster recycled = free.poll();
+    CorefCluster cluster;
+    if (recycled == null) {
+      cluster = new CorefCluster(ID, Collections.singleton(mention), document.stringIds());
+    } else {
+      cluster = new CorefCluster(ID, Collections.singleton(mention), document.stringIds(), recycled);
+    }
+    document.arenaClusters.add(cluster);
+    return cluster;
+  }
+
+  /**
+   * Empties every cluster the document took from this arena, including those merged away, and
+   * keeps them for the next document. The document's cluster map is cleared.
+   */
+  public void release(Document document) {
+    if (document.arena != this) {
+      throw new IllegalArgumentException("Document was not made with this arena");
+    }
+    document.corefClusters.clear();
+    List<CorefCluster> clusters = document.arenaClusters;
+    for (CorefCluster cluster : clusters) {
+      cluster.recycle();
+      free.push(cluster);
+    }
+    clusters.clear();
+    document.arena = null;
+  }
+
+}
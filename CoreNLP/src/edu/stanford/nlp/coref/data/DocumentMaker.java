@@ -34,6 +34,7 @@ public class DocumentMaker {
   private final HeadFinder headFinder;
   private final Dictionaries dict;
   private final CorefMentionFinder md;
+  private final boolean useArena;
 
   public DocumentMaker(Properties props, Dictionaries dictionaries)
       throws ClassNotFoundException, IOException {
@@ -43,6 +44,7 @@ public class DocumentMaker {
     headFinder = CorefProperties.getHeadFinder(props);
     md = CorefProperties.useGoldMentions(props) ?
         new RuleBasedCorefMentionFinder(headFinder, props) : null;
+    useArena = CorefProperties.useDocumentArena(props);
   }
 
   private static DocReader getDocumentReader(Properties props) {
@@ -86,6 +88,9 @@ public class DocumentMaker {
       }
     }
     Document doc = new Document(input, mentions);
+    if (useArena) {
+      doc.arena = DocumentArena.forCurrentThread();
+    }
 
     if (input.goldMentions != null) {
       findGoldMentionHeads(doc);
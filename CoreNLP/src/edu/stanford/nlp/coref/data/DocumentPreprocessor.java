@@ -101,7 +101,7 @@ public class DocumentPreprocessor  {
         }
         CorefCluster c = doc.goldCorefClusters.get(id);
         if (c == null) {
-          c = new CorefCluster(id);
+          c = new CorefCluster(id, doc.stringIds());
           doc.goldCorefClusters.put(id, c);
         }
         c.corefMentions.add(m);
@@ -400,7 +400,8 @@ public class DocumentPreprocessor  {
   private static void initializeClusters(Document doc) {
     for (List<Mention> predicted : doc.predictedMentions) {
       for (Mention p : predicted) {
-        doc.corefClusters.put(p.mentionID, new CorefCluster(p.mentionID, Generics.newHashSet(Arrays.asList(p))));
+        doc.corefClusters.put(p.mentionID, doc.arena != null ? doc.arena.singletonCluster(doc, p.mentionID, p) :
+            new CorefCluster(p.mentionID, Generics.newHashSet(Arrays.asList(p)), doc.stringIds()));
         p.corefClusterID = p.mentionID;
       }
     }
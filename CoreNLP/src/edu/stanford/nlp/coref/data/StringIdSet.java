@@ -0,0 +1,272 @@
+package edu.stanford.nlp.coref.data;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A set of strings stored as a sorted array of interned ids, for the word, head and named entity
+ * sets of a {@link CorefCluster}.
+ * <br>
+ * These sets are small and there is one of each for every cluster of a document, so a
+ * {@link HashSet} spends most of its memory on entry objects. Here a set is one {@code int[]},
+ * {@link #addAll} of another such set is a linear merge, and {@link #clear} keeps the array for
+ * reuse. The ids come from an {@link Ids} table, which the clusters of one document share (see
+ * {@link Document#stringIds()}), so the table goes away with the document. Sets of different
+ * tables are still merged and compared correctly, but string by string. A set is serialized as
+ * its strings. Iteration is in order of id, that is of when the document first saw each string.
+ */
+final class StringIdSet extends AbstractSet<String> implements Serializable {
+
+  private static final long serialVersionUID = 2390421762139852117L;
+
+  /**
+   * The ids of the strings of a group of sets, in the order they were first added. Not
+   * thread-safe: strings are only added while one thread clusters the document.
+   */
+  static final class Ids {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    /** The id of a string, which is added to the table if it is not there */
+    int id(String s) {
+      Integer id = ids.get(s);
+      if (id == null) {
+        id = strings.size();
+        strings.add(s);
+        ids.put(s, id);
+      }
+      return id;
+    }
+
+    /** The id of a string already in the table, or -1 */
+    int existingId(Object o) {
+      Integer id = ids.get(o);
+      return id == null ? -1 : id;
+    }
+
+    /** The number of strings in the table */
+    int size() {
+      return strings.size();
+    }
+
+  }
+
+  private transient Ids table;
+  private transient int[] ids = new int[4];
+  private transient int size;  // = 0
+  /** null is allowed, as in a HashSet, and kept apart from the ids */
+  private transient boolean containsNull;  // = false
+
+  /** An empty set with a table of its own */
+  StringIdSet() {
+    this(new Ids());
+  }
+
+  /** An empty set whose ids come from the given table */
+  StringIdSet(Ids table) {
+    this.table = table;
+  }
+
+  /** Changes the table of an empty set, such as a cleared set reused for another document */
+  void setIds(Ids table) {
+    if (size > 0) {
+      throw new IllegalStateException("Cannot change the ids of a set of " + size + " strings");
+    }
+    this.table = table;
+  }
+
+  /** The position of an id, or -(insertion point) - 1 */
+  private int indexOf(int id) {
+    return Arrays.binarySearch(ids, 0, size, id);
+  }
+
+  @Override
+  public int size() {
+    return size + (containsNull ? 1 : 0);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (o == null) {
+      return containsNull;
+    }
+    if ( ! (o instanceof String)) {
+      return false;
+    }
+    int id = table.existingId(o);
+    return id >= 0 && indexOf(id) >= 0;
+  }
+
+  @Override
+  public boolean add(String s) {
+    if (s == null) {
+      boolean added = ! containsNull;
+      containsNull = true;
+      return added;
+    }
+    int id = table.id(s);
+    int index = indexOf(id);
+    if (index >= 0) {
+      return false;
+    }
+    index = -index - 1;
+    if (size == ids.length) {
+      ids = Arrays.copyOf(ids, 2 * size);
+    }
+    System.arraycopy(ids, index, ids, index + 1, size - index);
+    ids[index] = id;
+    size++;
+    return true;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (o == null) {
+      boolean removed = containsNull;
+      containsNull = false;
+      return removed;
+    }
+    int id = o instanceof String ? table.existingId(o) : -1;
+    int index = id >= 0 ? indexOf(id) : -1;
+    if (index < 0) {
+      return false;
+    }
+    removeAt(index);
+    return true;
+  }
+
+  private void removeAt(int index) {
+    System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+    size--;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends String> c) {
+    if ( ! sameTable(c)) {
+      return super.addAll(c);
+    }
+    StringIdSet other = (StringIdSet) c;
+    if (other == this) {
+      return false;
+    }
+    boolean changed = other.containsNull && ! containsNull;
+    containsNull |= other.containsNull;
+    // merge the two sorted arrays from the back, in place
+    int total = size + other.size;
+    if (total > ids.length) {
+      ids = Arrays.copyOf(ids, Math.max(total, 2 * ids.length));
+    }
+    int i = size - 1;
+    int j = other.size - 1;
+    int k = total;
+    while (j >= 0) {
+      if (i >= 0 && ids[i] >= other.ids[j]) {
+        if (ids[i] == other.ids[j]) {
+          j--;
+        }
+        ids[--k] = ids[i--];
+      } else {
+        ids[--k] = other.ids[j--];
+      }
+    }
+    // ids[0, i] are already in place; close the gap left by duplicates
+    System.arraycopy(ids, k, ids, i + 1, total - k);
+    int merged = i + 1 + total - k;
+    changed |= merged > size;
+    size = merged;
+    return changed;
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    if ( ! sameTable(c)) {
+      return super.containsAll(c);
+    }
+    StringIdSet other = (StringIdSet) c;
+    if (other.containsNull && ! containsNull) {
+      return false;
+    }
+    int i = 0;
+    for (int j = 0; j < other.size; j++) {
+      while (i < size && ids[i] < other.ids[j]) {
+        i++;
+      }
+      if (i == size || ids[i] != other.ids[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether a collection is a set of the same ids, so that it can be merged or compared by id */
+  private boolean sameTable(Collection<?> c) {
+    return c instanceof StringIdSet && ((StringIdSet) c).table == table;
+  }
+
+  /** Removes every string, keeping the array for the strings added next */
+  @Override
+  public void clear() {
+    size = 0;
+    containsNull = false;
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<String>() {
+      // the null element, if any, comes first, at position -1
+      private int next = containsNull ? -1 : 0;
+      private int last = -2;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public String next() {
+        if ( ! hasNext()) {
+          throw new NoSuchElementException();
+        }
+        last = next++;
+        return last < 0 ? null : table.strings.get(ids[last]);
+      }
+
+      @Override
+      public void remove() {
+        if (last == -2) {
+          throw new IllegalStateException();
+        }
+        if (last < 0) {
+          containsNull = false;
+        } else {
+          removeAt(last);
+          next = last;
+        }
+        last = -2;
+      }
+    };
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size());
+    for (String s : this) {
+      out.writeObject(s);
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    table = new Ids();
+    ids = new int[4];
+    int n = in.readInt();
+    for (int i = 0; i < n; i++) {
+      add((String) in.readObject());
+    }
+  }
+
+}
@@ -0,0 +1,134 @@
+package edu.stanford.nlp.coref.hybrid.rf;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * A {@link RandomForest} flattened into arrays for scoring.
+ * <br>
+ * The nodes of all the trees are stored by index in parallel arrays: the feature a node splits on
+ * (-1 at a leaf), its split point (the probability of true at a leaf), and the index of its left
+ * child, with the right child just after it. The features the trees split on are numbered densely,
+ * and a datum's features are copied into a {@code double[]} by that numbering once, rather than
+ * being looked up by name at every split of every tree.
+ * <br>
+ * Scores are exactly those of {@link RandomForest#probabilityOfTrue}.
+ */
+public class CompiledForest {
+
+  private final int[] roots;
+  private final int[] featureIds;
+  private final float[] splits;
+  private final int[] children;
+  private final Map<String, Integer> features;
+
+  public CompiledForest(RandomForest forest) {
+    int numNodes = 0;
+    for (DecisionTree tree : forest.trees) {
+      numNodes += countNodes(tree.root);
+    }
+    roots = new int[forest.trees.length];
+    featureIds = new int[numNodes];
+    splits = new float[numNodes];
+    children = new int[numNodes];
+    features = new HashMap<>();
+
+    int next = 0;
+    ArrayDeque<DecisionTreeNode> queue = new ArrayDeque<>();
+    for (int t = 0; t < forest.trees.length; t++) {
+      DecisionTree tree = forest.trees[t];
+      // numbered breadth first, so the two children of a node are next to each other
+      roots[t] = next++;
+      queue.add(tree.root);
+      int position = roots[t];
+      while ( ! queue.isEmpty()) {
+        DecisionTreeNode node = queue.poll();
+        splits[position] = node.split;
+        if (node.isLeaf()) {
+          featureIds[position] = -1;
+        } else {
+          String feature = tree.featureIndex.get(node.idx);
+          Integer id = features.get(feature);
+          if (id == null) {
+            id = features.size();
+            features.put(feature, id);
+          }
+          featureIds[position] = id;
+          children[position] = next;
+          next += 2;
+          queue.add(node.children[0]);
+          queue.add(node.children[1]);
+        }
+        position++;
+      }
+    }
+  }
+
+  private static int countNodes(DecisionTreeNode node) {
+    return node.isLeaf() ? 1 : 1 + countNodes(node.children[0]) + countNodes(node.children[1]);
+  }
+
+  /** The number of distinct features the trees split on, which is the length of a feature vector */
+  public int numFeatures() {
+    return features.size();
+  }
+
+  /** Copies the features the trees split on into {@code vector}, starting at {@code offset}. */
+  public void toVector(Counter<String> datum, double[] vector, int offset) {
+    Arrays.fill(vector, offset, offset + features.size(), 0.0);
+    for (Map.Entry<String, Double> e : datum.entrySet()) {
+      Integer id = features.get(e.getKey());
+      if (id != null) {
+        vector[offset + id] = e.getValue();
+      }
+    }
+  }
+
+  public double probabilityOfTrue(Counter<String> datum) {
+    double[] vector = new double[features.size()];
+    toVector(datum, vector, 0);
+    double probTrue = 0;
+    for (int root : roots) {
+      probTrue += leaf(root, vector, 0);
+    }
+    return probTrue / roots.length;
+  }
+
+  /**
+   * Scores many data at once, such as all the candidate antecedents of a mention. Each tree is run
+   * on every datum before the next tree, so that its nodes stay in cache.
+   */
+  public double[] probabilityOfTrue(List<? extends Counter<String>> data) {
+    int n = data.size();
+    int width = features.size();
+    double[] vectors = new double[n * width];
+    for (int i = 0; i < n; i++) {
+      toVector(data.get(i), vectors, i * width);
+    }
+    double[] probTrue = new double[n];
+    for (int root : roots) {
+      for (int i = 0; i < n; i++) {
+        probTrue[i] += leaf(root, vectors, i * width);
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      probTrue[i] /= roots.length;
+    }
+    return probTrue;
+  }
+
+  /** The probability of true at the leaf the features reach from the given node; left if less than the split */
+  private double leaf(int node, double[] vector, int offset) {
+    int feature;
+    while ((feature = featureIds[node]) >= 0) {
+      node = vector[offset + feature] < splits[node] ? children[node] : children[node] + 1;
+    }
+    return splits[node];
+  }
+
+}
@@ -11,6 +11,7 @@ public class RandomForest implements Serializable {
 
   public final DecisionTree[] trees;
   public final Index<String> featureIndex;
+  private transient volatile CompiledForest compiled;
 
   public RandomForest(Index<String> featureIndex, int numTrees) {
     this.featureIndex = featureIndex;
@@ -27,4 +28,14 @@ public class RandomForest implements Serializable {
     }
     return probTrue / trees.length;
   }
+
+  /** This forest flattened for faster scoring, made the first time it is asked for, once the trees are grown */
+  public CompiledForest compiled() {
+    CompiledForest forest = compiled;
+    if (forest == null) {
+      forest = new CompiledForest(this);
+      compiled = forest;
+    }
+    return forest;
+  }
 }
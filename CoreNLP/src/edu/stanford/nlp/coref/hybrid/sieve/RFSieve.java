@@ -62,6 +62,8 @@ public class RFSieve extends Sieve  {
     int sentIdx = m.sentNum;
 
     Counter<Integer> probs = new ClassicCounter<>();
+    List<Mention> scored = new ArrayList<>();
+    List<Counter<String>> data = new ArrayList<>();
 
     int mentionDist = 0;
     for(int sentDist=0 ; sentDist <= Math.min(this.maxSentDist, sentIdx) ; sentDist++) {
@@ -81,16 +83,18 @@ public class RFSieve extends Sieve  {
         mentionDist++;
 
         RVFDatum<Boolean, String> datum = extractDatum(m, candidate, document, mentionDist, dict, props, sievename);
-
-        double probTrue = 0;
-        if(this.classifierType == ClassifierType.RF) {
-          probTrue = this.rf.probabilityOfTrue(datum);
-        }
-
-        probs.setCount(candidate.mentionID, probTrue);
+        scored.add(candidate);
+        data.add(datum.asFeaturesCounter());
       }
     }
 
+    // score all the candidates in one pass over the trees
+    double[] probTrue = this.classifierType == ClassifierType.RF ?
+        this.rf.compiled().probabilityOfTrue(data) : new double[data.size()];
+    for(int i=0 ; i < scored.size() ; i++) {
+      probs.setCount(scored.get(i).mentionID, probTrue[i]);
+    }
+
     if(HybridCorefProperties.debug(props)) {
       sbLog.append(HybridCorefPrinter.printErrorLog(m, document, probs, mIdx, dict, this));
     }
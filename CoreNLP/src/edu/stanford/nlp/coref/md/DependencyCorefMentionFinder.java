@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import edu.stanford.nlp.coref.CorefProperties;
 import edu.stanford.nlp.coref.data.Dictionaries;
@@ -17,11 +18,7 @@ import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.semgraph.SemanticGraph;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.BasicDependenciesAnnotation;
-import edu.stanford.nlp.semgraph.SemanticGraphEdge;
 import edu.stanford.nlp.semgraph.SemanticGraphUtils;
-import edu.stanford.nlp.trees.GrammaticalRelation;
-import edu.stanford.nlp.trees.Tree;
-import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
 import edu.stanford.nlp.trees.UniversalEnglishGrammaticalRelations;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Generics;
@@ -42,6 +39,12 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
 
   public MentionDetectionClassifier mdClassifier = null;
 
+  private static final Pattern NOUN_OR_PRONOUN = Pattern.compile("N.*|PRP.*|DT");    // DT is for "this, these, etc"
+  private static final Pattern SKIPPED_HEAD_RELATIONS = Pattern.compile("det|compound");
+  private static final Pattern SKIPPED_NP_RELATIONS = Pattern.compile("dep|discourse|punct");
+  private static final Pattern CONJUNCTION_TAGS = Pattern.compile("CC|,");
+  private static final Pattern PRONOUN_QUANTIFIERS = Pattern.compile("all|both");
+
   /** Main method of mention detection.
    *  Extract all NP, PRP or NE, and filter out by manually written patterns.
    */
@@ -51,16 +54,20 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
     Set<String> neStrings = Generics.newHashSet();
     List<Set<IntPair>> mentionSpanSetList = Generics.newArrayList();
     List<CoreMap> sentences = doc.get(CoreAnnotations.SentencesAnnotation.class);
+    // built once per sentence, for both finding the mentions and finding their heads
+    List<DependencyIndex> indexes = new ArrayList<>(sentences.size());
 
     for (CoreMap s : sentences) {
       List<Mention> mentions = new ArrayList<>();
       predictedMentions.add(mentions);
       Set<IntPair> mentionSpanSet = Generics.newHashSet();
       Set<IntPair> namedEntitySpanSet = Generics.newHashSet();
+      DependencyIndex index = dependencyIndex(s);
+      indexes.add(index);
 
       extractPremarkedEntityMentions(s, mentions, mentionSpanSet, namedEntitySpanSet);
       HybridCorefMentionFinder.extractNamedEntityMentions(s, mentions, mentionSpanSet, namedEntitySpanSet);
-      extractNPorPRPFromDependency(s, mentions, mentionSpanSet, namedEntitySpanSet);
+      extractNPorPRPFromDependency(s, index, mentions, mentionSpanSet, namedEntitySpanSet);
 
       addNamedEntityStrings(s, neStrings, namedEntitySpanSet);
       mentionSpanSetList.add(mentionSpanSet);
@@ -68,7 +75,7 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
 //    extractNamedEntityModifiers(sentences, mentionSpanSetList, predictedMentions, neStrings);
 
     for(int i=0 ; i<sentences.size() ; i++ ) {
-      findHead(sentences.get(i), predictedMentions.get(i));
+      findHeadInDependency(sentences.get(i), indexes.get(i), predictedMentions.get(i));
     }
     // mention selection based on document-wise info
     removeSpuriousMentions(doc, predictedMentions, dict, CorefProperties.removeNestedMentions(props), lang);
@@ -104,25 +111,21 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
     }
   }
 
-  private void extractNPorPRPFromDependency(CoreMap s, List<Mention> mentions, Set<IntPair> mentionSpanSet, Set<IntPair> namedEntitySpanSet) {
-    List<CoreLabel> sent = s.get(CoreAnnotations.TokensAnnotation.class);
-
-    SemanticGraph basic = s.get(BasicDependenciesAnnotation.class);
-
-    List<IndexedWord> nounsOrPrp = basic.getAllNodesByPartOfSpeechPattern("N.*|PRP.*|DT");    // DT is for "this, these, etc"
-    Tree tree = s.get(TreeAnnotation.class);
+  /** The index of the sentence's basic dependencies */
+  private static DependencyIndex dependencyIndex(CoreMap s) {
+    return new DependencyIndex(s.get(BasicDependenciesAnnotation.class), s.get(CoreAnnotations.TokensAnnotation.class).size());
+  }
 
-    for(IndexedWord w : nounsOrPrp) {
-      SemanticGraphEdge edge = basic.getEdge(basic.getParent(w), w);
-      GrammaticalRelation rel = null;
-      String shortname = "root";    // if edge is null, it's root
-      if(edge!=null) {
-        rel = edge.getRelation();
-        shortname = rel.getShortName();
-      }
+  private void extractNPorPRPFromDependency(CoreMap s, DependencyIndex dep, List<Mention> mentions, Set<IntPair> mentionSpanSet, Set<IntPair> namedEntitySpanSet) {
+    // the nouns and pronouns in the order of the graph's vertices
+    for(int v=0 ; v < dep.numVertices() ; v++) {
+      int w = dep.vertex(v);
+      if( ! NOUN_OR_PRONOUN.matcher(dep.tag(w)).matches()) continue;
+      String shortname = dep.parentRelation(w);
+      if(shortname==null) shortname = "root";    // if there's no parent, it's root
 
       // TODO: what to remove? remove more?
-      if(shortname.matches("det|compound")) {
+      if(SKIPPED_HEAD_RELATIONS.matcher(shortname).matches()) {
 
 //        // for debug  ---------------
 //        Tree t = tree.getLeaves().get(w.index()-1);
@@ -139,12 +142,12 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
 
         continue;
       } else {
-        extractMentionForHeadword(w, basic, s, mentions, mentionSpanSet, namedEntitySpanSet);
+        extractMentionForHeadword(w, dep, s, mentions, mentionSpanSet, namedEntitySpanSet);
       }
     }
   }
 
-  private void extractMentionForHeadword(IndexedWord headword, SemanticGraph dep, CoreMap s, List<Mention> mentions, Set<IntPair> mentionSpanSet, Set<IntPair> namedEntitySpanSet) {
+  private void extractMentionForHeadword(int headword, DependencyIndex dep, CoreMap s, List<Mention> mentions, Set<IntPair> mentionSpanSet, Set<IntPair> namedEntitySpanSet) {
     List<CoreLabel> sent = s.get(CoreAnnotations.TokensAnnotation.class);
     SemanticGraph basic = s.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
     SemanticGraph enhanced = s.get(SemanticGraphCoreAnnotations.EnhancedDependenciesAnnotation.class);
@@ -153,13 +156,13 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
     }
 
     // pronoun
-    if(headword.tag().startsWith("PRP")) {
+    if(dep.tag(headword).startsWith("PRP")) {
       extractPronounForHeadword(headword, dep, s, mentions, mentionSpanSet, namedEntitySpanSet);
       return;
     }
 
     // add NP mention
-    IntPair npSpan = getNPSpan(headword, dep, sent);
+    IntPair npSpan = getNPSpan(headword, dep);
     int beginIdx = npSpan.get(0);
     int endIdx = npSpan.get(1)+1;
     if (",".equals(sent.get(endIdx-1).word())) { endIdx--; } // try not to have span that ends with ,
@@ -171,16 +174,12 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
     //
 
     // to make sure we find the first conjunction
-    Set<IndexedWord> conjChildren = dep.getChildrenWithReln(headword, UniversalEnglishGrammaticalRelations.CONJUNCT);
-    if(conjChildren.size() > 0) {
-      IndexedWord conjChild = dep.getChildWithReln(headword, UniversalEnglishGrammaticalRelations.CONJUNCT);
-      for(IndexedWord c : conjChildren) {
-        if(c.index() < conjChild.index()) conjChild = c;
-      }
-      IndexedWord left = SemanticGraphUtils.leftMostChildVertice(conjChild, dep);
-      for(int endIdxFirstElement = left.index()-1 ; endIdxFirstElement > beginIdx ; endIdxFirstElement--) {
-        if(!sent.get(endIdxFirstElement-1).tag().matches("CC|,")) {
-          if(headword.index()-1 < endIdxFirstElement) {
+    int conjChild = dep.firstConjunct(headword);
+    if(conjChild >= 0) {
+      int left = dep.leftmost(conjChild);
+      for(int endIdxFirstElement = left ; endIdxFirstElement > beginIdx ; endIdxFirstElement--) {
+        if(!CONJUNCTION_TAGS.matcher(sent.get(endIdxFirstElement-1).tag()).matches()) {
+          if(headword < endIdxFirstElement) {
             addMention(beginIdx, endIdxFirstElement, headword, mentions, mentionSpanSet, namedEntitySpanSet, sent, basic, enhanced);
           }
           break;
@@ -193,37 +192,31 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
    *  return the left and right most node except copula relation (nsubj & cop) and some others (maybe discourse?)
    *  e.g., you are the person -> return "the person"
    */
-  private IntPair getNPSpan(IndexedWord headword, SemanticGraph dep, List<CoreLabel> sent) {
-    int headwordIdx = headword.index()-1;
-
-    List<IndexedWord> children = dep.getChildList(headword);
-//    if(children.size()==0) return new IntPair(headwordIdx, headwordIdx);    // the headword is the only word
-
-    // check if we have copula relation
-    IndexedWord cop = dep.getChildWithReln(headword, UniversalEnglishGrammaticalRelations.COPULA);
-    int startIdx = (cop==null)? 0 : children.indexOf(cop)+1;
-
-    // children which will be inside of NP
-    List<IndexedWord> insideNP = Generics.newArrayList();
+  private static IntPair getNPSpan(int headwordIdx, DependencyIndex dep) {
+    // children are in order of position; check if we have copula relation
+    int startIdx = dep.childStart(headwordIdx);
+    int cop = dep.copula(headwordIdx);
+    if(cop >= 0) {
+      while(dep.child(startIdx) != cop) startIdx++;
+      startIdx++;
+    }
 
-    for(int i=startIdx ; i < children.size() ; i++) {
-      IndexedWord child = children.get(i);
-      SemanticGraphEdge edge = dep.getEdge(headword, child);
-      if(edge.getRelation().getShortName().matches("dep|discourse|punct")) {
+    // the first and last children which will be inside of NP
+    int first = -1;
+    int last = -1;
+    for(int k=startIdx ; k < dep.childEnd(headwordIdx) ; k++) {
+      if(SKIPPED_NP_RELATIONS.matcher(dep.childRelation(k)).matches()) {
         continue;  // skip
-      } else {
-        insideNP.add(child);
       }
+      if(first < 0) first = dep.child(k);
+      last = dep.child(k);
     }
 
-    if(insideNP.size()==0) return new IntPair(headwordIdx, headwordIdx);    // the headword is the only word
-
-    Pair<IndexedWord, IndexedWord> firstChildLeftRight = SemanticGraphUtils.leftRightMostChildVertices(insideNP.get(0), dep);
-    Pair<IndexedWord, IndexedWord> lastChildLeftRight = SemanticGraphUtils.leftRightMostChildVertices(insideNP.get(insideNP.size()-1), dep);
+    if(first < 0) return new IntPair(headwordIdx, headwordIdx);    // the headword is the only word
 
     // headword can be first or last word
-    int beginIdx = Math.min(headwordIdx, firstChildLeftRight.first.index()-1);
-    int endIdx = Math.max(headwordIdx, lastChildLeftRight.second.index()-1);
+    int beginIdx = Math.min(headwordIdx, dep.leftmost(first));
+    int endIdx = Math.max(headwordIdx, dep.rightmost(last));
 
     return new IntPair(beginIdx, endIdx);
   }
@@ -252,12 +245,12 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
     return new IntPair(beginIdx, endIdx);
   }
 
-  private void addMention(int beginIdx, int endIdx, IndexedWord headword, List<Mention> mentions, Set<IntPair> mentionSpanSet, Set<IntPair> namedEntitySpanSet, List<CoreLabel> sent, SemanticGraph basic, SemanticGraph enhanced) {
+  private void addMention(int beginIdx, int endIdx, int headword, List<Mention> mentions, Set<IntPair> mentionSpanSet, Set<IntPair> namedEntitySpanSet, List<CoreLabel> sent, SemanticGraph basic, SemanticGraph enhanced) {
     IntPair mSpan = new IntPair(beginIdx, endIdx);
     if(!mentionSpanSet.contains(mSpan) && (!insideNE(mSpan, namedEntitySpanSet)) ) {
       int dummyMentionId = -1;
       Mention m = new Mention(dummyMentionId, beginIdx, endIdx, sent, basic, enhanced, new ArrayList<>(sent.subList(beginIdx, endIdx)));
-      m.headIndex = headword.index()-1;
+      m.headIndex = headword;
       m.headWord = sent.get(m.headIndex);
       m.headString = m.headWord.word().toLowerCase(Locale.ENGLISH);
       mentions.add(m);
@@ -265,28 +258,26 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
     }
   }
 
-  private void extractPronounForHeadword(IndexedWord headword, SemanticGraph dep, CoreMap s, List<Mention> mentions, Set<IntPair> mentionSpanSet, Set<IntPair> namedEntitySpanSet) {
+  private void extractPronounForHeadword(int headword, DependencyIndex dep, CoreMap s, List<Mention> mentions, Set<IntPair> mentionSpanSet, Set<IntPair> namedEntitySpanSet) {
     List<CoreLabel> sent = s.get(CoreAnnotations.TokensAnnotation.class);
     SemanticGraph basic = s.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
     SemanticGraph enhanced = s.get(SemanticGraphCoreAnnotations.EnhancedDependenciesAnnotation.class);
     if (enhanced == null) {
       enhanced = s.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
     }
-    int beginIdx = headword.index()-1;
-    int endIdx = headword.index();
+    int beginIdx = headword;
+    int endIdx = headword+1;
 
     // handle "you all", "they both" etc
-    if(sent.size() > headword.index() && sent.get(headword.index()).word().matches("all|both")) {
-      IndexedWord c = dep.getNodeByIndex(headword.index()+1);
-      SemanticGraphEdge edge = dep.getEdge(headword, c);
-      if(edge!=null) endIdx++;
+    if(sent.size() > headword+1 && PRONOUN_QUANTIFIERS.matcher(sent.get(headword+1).word()).matches()) {
+      if(dep.hasEdge(headword, headword+1)) endIdx++;
     }
 
     IntPair mSpan = new IntPair(beginIdx, endIdx);
     if(!mentionSpanSet.contains(mSpan) && (!insideNE(mSpan, namedEntitySpanSet)) ) {
       int dummyMentionId = -1;
       Mention m = new Mention(dummyMentionId, beginIdx, endIdx, sent, basic, enhanced, new ArrayList<>(sent.subList(beginIdx, endIdx)));
-      m.headIndex = headword.index()-1;
+      m.headIndex = headword;
       m.headWord = sent.get(m.headIndex);
       m.headString = m.headWord.word().toLowerCase(Locale.ENGLISH);
       mentions.add(m);
@@ -294,9 +285,8 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
     }
 
     // when pronoun is a part of conjunction (e.g., you and I)
-    Set<IndexedWord> conjChildren = dep.getChildrenWithReln(headword, UniversalEnglishGrammaticalRelations.CONJUNCT);
-    if(conjChildren.size() > 0) {
-      IntPair npSpan = getNPSpan(headword, dep, sent);
+    if(dep.firstConjunct(headword) >= 0) {
+      IntPair npSpan = getNPSpan(headword, dep);
       beginIdx = npSpan.get(0);
       endIdx = npSpan.get(1)+1;
       if (",".equals(sent.get(endIdx-1).word())) { endIdx--; } // try not to have span that ends with ,
@@ -304,37 +294,47 @@ public class DependencyCorefMentionFinder extends CorefMentionFinder  {
     }
   }
   public static void findHeadInDependency(CoreMap s, List<Mention> mentions) {
-    for (Mention m : mentions){
-      findHeadInDependency(s, m);
-    }
+    findHeadInDependency(s, null, mentions);
   }
 
   @Override
   public void findHead(CoreMap s, List<Mention> mentions) {
+    findHeadInDependency(s, null, mentions);
+  }
+
+  /** Finds the heads of the mentions that have none, with the sentence's index, which is built if null and needed */
+  private static void findHeadInDependency(CoreMap s, DependencyIndex basicDep, List<Mention> mentions) {
     for (Mention m : mentions){
-      findHeadInDependency(s, m);
+      if(m.headWord == null) {
+        if(basicDep == null) basicDep = dependencyIndex(s);
+        findHeadInDependency(s, basicDep, m);
+      }
     }
   }
 
   // TODO: still errors in head finder
   public static void findHeadInDependency(CoreMap s, Mention m) {
+    if(m.headWord == null) {
+      findHeadInDependency(s, dependencyIndex(s), m);
+    }
+  }
+
+  private static void findHeadInDependency(CoreMap s, DependencyIndex basicDep, Mention m) {
     List<CoreLabel> sent = s.get(CoreAnnotations.TokensAnnotation.class);
-    SemanticGraph basicDep = s.get(BasicDependenciesAnnotation.class);
     if(m.headWord == null) {
 
       // when there's punctuation, no node found in the dependency tree
       int curIdx;
-      IndexedWord cur = null;
+      boolean found = false;
       for(curIdx = m.endIndex-1 ; curIdx >= m.startIndex ; curIdx--) {
-        if((cur = basicDep.getNodeByIndexSafe(curIdx+1)) != null) break;
+        if(found = basicDep.contains(curIdx)) break;
       }
 
-      if(cur==null) curIdx = m.endIndex-1;
-      while(cur!=null) {
-        IndexedWord p = basicDep.getParent(cur);
-        if(p==null || p.index()-1 < m.startIndex || p.index()-1 >= m.endIndex) break;
-        curIdx = p.index()-1;
-        cur = basicDep.getNodeByIndexSafe(curIdx+1);
+      if(!found) curIdx = m.endIndex-1;
+      while(found) {
+        int p = basicDep.parent(curIdx);
+        if(p < 0 || p < m.startIndex || p >= m.endIndex) break;
+        curIdx = p;
       }
 //      for(IndexedWord p : basicDep.getPathToRoot(basicDep.getNodeByIndex(curIdx+1))) {
 //        if(p.index()-1 < m.startIndex || p.index()-1 >= m.endIndex) {
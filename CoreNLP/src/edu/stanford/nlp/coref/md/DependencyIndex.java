@@ -0,0 +1,256 @@
+package edu.stanford.nlp.coref.md;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.UniversalEnglishGrammaticalRelations;
+
+/**
+ * The parts of a sentence's basic dependency tree that mention detection needs, in {@code int}
+ * arrays indexed by token (0-based), built with one pass over the graph's vertices and one over its
+ * edges.
+ * <br>
+ * Mention detection used to ask the {@link SemanticGraph} for a word's parent, children and
+ * descendants for each candidate head, and each of those questions walks the graph again:
+ * {@link SemanticGraph#getParent} searches for a path to the root, and finding a word's node by
+ * index scans all the nodes. Here the same answers are array lookups. The parent of a word is its
+ * first parent, which is the only one in a tree, and a root has none, as with
+ * {@link SemanticGraph#getParent}. Where the graph picks the first of several matching edges, such
+ * as the copula of a word, the index keeps the edge that the graph would find first.
+ */
+public class DependencyIndex {
+
+  private final String[] tags;
+  private final int[] vertices;
+  private final int[] parents;
+  private final String[] parentRelations;
+  private final int[] childStarts;
+  private final int[] children;
+  private final String[] childRelations;
+  private final int[] copulas;
+  private final int[] firstConjuncts;
+  private final int[] leftmost;
+  private final int[] rightmost;
+
+  public DependencyIndex(SemanticGraph graph, int numTokens) {
+    int n = numTokens;
+    for (IndexedWord vertex : graph.vertexSet()) {
+      n = Math.max(n, vertex.index());
+    }
+    tags = new String[n];
+    // copies of a word share its position, so there may be fewer positions than vertices
+    int[] vertexPositions = new int[graph.size()];
+    int numVertices = 0;
+    for (IndexedWord vertex : graph.vertexSet()) {
+      int i = vertex.index() - 1;
+      if (tags[i] == null) {
+        vertexPositions[numVertices++] = i;
+      }
+      tags[i] = vertex.tag() == null ? "" : vertex.tag();
+    }
+    vertices = Arrays.copyOf(vertexPositions, numVertices);
+    parents = new int[n];
+    Arrays.fill(parents, -1);
+    parentRelations = new String[n];
+    copulas = new int[n];
+    Arrays.fill(copulas, -1);
+    firstConjuncts = new int[n];
+    Arrays.fill(firstConjuncts, -1);
+
+    // the first edge from each word to each child, in the order the graph iterates over them
+    int numEdges = 0;
+    for (SemanticGraphEdge ignored : graph.edgeIterable()) {
+      numEdges++;
+    }
+    int[] sources = new int[numEdges];
+    int[] targets = new int[numEdges];
+    String[] relations = new String[numEdges];
+    int numChildren = 0;
+    childStarts = new int[n + 1];
+    for (SemanticGraphEdge edge : graph.edgeIterable()) {
+      int source = edge.getSource().index() - 1;
+      int target = edge.getTarget().index() - 1;
+      if (parents[target] < 0) {
+        parents[target] = source;
+        parentRelations[target] = edge.getRelation().getShortName();
+      }
+      if (copulas[source] < 0 && edge.getRelation().equals(UniversalEnglishGrammaticalRelations.COPULA)) {
+        copulas[source] = target;
+      }
+      if (edge.getRelation().equals(UniversalEnglishGrammaticalRelations.CONJUNCT)
+          && (firstConjuncts[source] < 0 || target < firstConjuncts[source])) {
+        firstConjuncts[source] = target;
+      }
+      sources[numChildren] = source;
+      targets[numChildren] = target;
+      relations[numChildren++] = edge.getRelation().getShortName();
+      childStarts[source + 1]++;
+    }
+    for (IndexedWord root : graph.getRoots()) {
+      parents[root.index() - 1] = -1;
+      parentRelations[root.index() - 1] = null;
+    }
+
+    // children sorted by position, each once, with the relation of its first edge
+    for (int i = 0; i < n; i++) {
+      childStarts[i + 1] += childStarts[i];
+    }
+    int[] next = Arrays.copyOf(childStarts, n);
+    int[] allChildren = new int[numChildren];
+    String[] allRelations = new String[numChildren];
+    for (int e = 0; e < numChildren; e++) {
+      allChildren[next[sources[e]]] = targets[e];
+      allRelations[next[sources[e]]++] = relations[e];
+    }
+    int size = 0;
+    int[] sortedChildren = new int[numChildren];
+    String[] sortedRelations = new String[numChildren];
+    Integer[] order = new Integer[0];
+    for (int i = 0; i < n; i++) {
+      int start = childStarts[i];
+      int end = childStarts[i + 1];
+      childStarts[i] = size;
+      if (end - start > order.length) {
+        order = new Integer[end - start];
+      }
+      for (int k = start; k < end; k++) {
+        order[k - start] = k;
+      }
+      // stable, so each child keeps its first edge first
+      Arrays.sort(order, 0, end - start, (a, b) -> Integer.compare(allChildren[a], allChildren[b]));
+      for (int k = 0; k < end - start; k++) {
+        int child = allChildren[order[k]];
+        if (size == childStarts[i] || sortedChildren[size - 1] != child) {
+          sortedChildren[size] = child;
+          sortedRelations[size++] = allRelations[order[k]];
+        }
+      }
+    }
+    childStarts[n] = size;
+    children = Arrays.copyOf(sortedChildren, size);
+    childRelations = Arrays.copyOf(sortedRelations, size);
+
+    // the span of each word's descendants, itself included, by an iterative depth first search
+    leftmost = new int[n];
+    rightmost = new int[n];
+    byte[] state = new byte[n];  // 0 = not seen, 1 = on the stack, 2 = done
+    int[] stack = new int[n];
+    int[] position = new int[n];
+    for (int v = 0; v < numVertices; v++) {
+      int top = 0;
+      if (state[vertices[v]] != 0) {
+        continue;
+      }
+      stack[top++] = vertices[v];
+      state[vertices[v]] = 1;
+      position[vertices[v]] = childStarts[vertices[v]];
+      leftmost[vertices[v]] = rightmost[vertices[v]] = vertices[v];
+      while (top > 0) {
+        int word = stack[top - 1];
+        if (position[word] < childStarts[word + 1]) {
+          int child = children[position[word]++];
+          if (state[child] == 0) {
+            state[child] = 1;
+            position[child] = childStarts[child];
+            leftmost[child] = rightmost[child] = child;
+            stack[top++] = child;
+          } else if (state[child] == 2) {
+            leftmost[word] = Math.min(leftmost[word], leftmost[child]);
+            rightmost[word] = Math.max(rightmost[word], rightmost[child]);
+          }
+        } else {
+          state[word] = 2;
+          top--;
+          if (top > 0) {
+            int parent = stack[top - 1];
+            leftmost[parent] = Math.min(leftmost[parent], leftmost[word]);
+            rightmost[parent] = Math.max(rightmost[parent], rightmost[word]);
+          }
+        }
+      }
+    }
+  }
+
+  /** The number of positions, which is at least the number of tokens */
+  public int size() {
+    return tags.length;
+  }
+
+  /** The number of words in the graph */
+  public int numVertices() {
+    return vertices.length;
+  }
+
+  /** The position of the i-th word in the order the graph iterates over its vertices */
+  public int vertex(int i) {
+    return vertices[i];
+  }
+
+  /** Whether the graph has a word at a position */
+  public boolean contains(int word) {
+    return word >= 0 && word < tags.length && tags[word] != null;
+  }
+
+  /** The part of speech of the word in the graph */
+  public String tag(int word) {
+    return tags[word];
+  }
+
+  /** The word's parent, or -1 for a root or a word not in the graph */
+  public int parent(int word) {
+    return parents[word];
+  }
+
+  /** The short name of the relation from the word's parent, or null if it has none */
+  public String parentRelation(int word) {
+    return parentRelations[word];
+  }
+
+  /** The index of the first of the word's children in {@link #child} and {@link #childRelation} */
+  public int childStart(int word) {
+    return childStarts[word];
+  }
+
+  /** One past the index of the last of the word's children */
+  public int childEnd(int word) {
+    return childStarts[word + 1];
+  }
+
+  /** The position of a child; the children of a word are in order of position */
+  public int child(int k) {
+    return children[k];
+  }
+
+  /** The short name of the relation of the first edge to a child */
+  public String childRelation(int k) {
+    return childRelations[k];
+  }
+
+  /** Whether there is an edge from one word to another */
+  public boolean hasEdge(int source, int target) {
+    return contains(source) && Arrays.binarySearch(children, childStarts[source], childStarts[source + 1], target) >= 0;
+  }
+
+  /** The copula the graph finds first among the word's children, or -1 */
+  public int copula(int word) {
+    return copulas[word];
+  }
+
+  /** The leftmost of the word's conjuncts, or -1 */
+  public int firstConjunct(int word) {
+    return firstConjuncts[word];
+  }
+
+  /** The leftmost position among the word and its descendants */
+  public int leftmost(int word) {
+    return leftmost[word];
+  }
+
+  /** The rightmost position among the word and its descendants */
+  public int rightmost(int word) {
+    return rightmost[word];
+  }
+
+}
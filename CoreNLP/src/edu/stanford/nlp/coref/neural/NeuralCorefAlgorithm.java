@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import edu.stanford.nlp.coref.CandidatePairs;
 import edu.stanford.nlp.coref.CorefAlgorithm;
 import edu.stanford.nlp.coref.CorefProperties;
 import edu.stanford.nlp.coref.CorefUtils;
@@ -68,36 +69,57 @@ public class NeuralCorefAlgorithm implements CorefAlgorithm {
     }
 
     SimpleMatrix documentEmbedding = embeddingExtractor.getDocumentEmbedding(document);
-    Map<Integer, SimpleMatrix> antecedentEmbeddings = new HashMap<>();
-    Map<Integer, SimpleMatrix> anaphorEmbeddings = new HashMap<>();
+    PairwiseBatchScorer scorer = model.pairwiseBatchScorer();
     Counter<Integer> anaphoricityScores = new ClassicCounter<>();
     for (Mention m : sortedMentions) {
+      // the mentions are added in sorted order, so each one's row is its position
       SimpleMatrix mentionEmbedding = embeddingExtractor.getMentionEmbeddings(m, documentEmbedding);
-      antecedentEmbeddings.put(m.mentionID, model.getAntecedentEmbedding(mentionEmbedding));
-      anaphorEmbeddings.put(m.mentionID, model.getAnaphorEmbedding(mentionEmbedding));
+      scorer.addMention(mentionEmbedding);
       anaphoricityScores.incrementCount(m.mentionID,
           model.getAnaphoricityScore(mentionEmbedding,
               featureExtractor.getAnaphoricityFeatures(m, document, mentionsByHeadIndex)));
     }
 
-    Map<Integer, List<Integer>> mentionToCandidateAntecedents = CorefUtils.heuristicFilter(sortedMentions,
-        maxMentionDistance, maxMentionDistanceWithStringMatch);
-    for (Map.Entry<Integer, List<Integer>> e : mentionToCandidateAntecedents.entrySet()) {
-      double bestScore = anaphoricityScores.getCount(e.getKey()) - 50 * (greedyness - 0.5);
-      int m = e.getKey();
-      Integer antecedent = null;
-      for (int ca : e.getValue()) {
-        double score = model.getPairwiseScore(antecedentEmbeddings.get(ca),
-            anaphorEmbeddings.get(m), featureExtractor.getPairFeatures(
-                  new Pair<>(ca, m), document, mentionsByHeadIndex));
+    // Pair scores don't depend on the clusters, so the pairs of several mentions are scored
+    // together before those mentions are linked, in document order
+    CandidatePairs pairs = CandidatePairs.windowed(sortedMentions, maxMentionDistance,
+        maxMentionDistanceWithStringMatch);
+    int firstAnaphor = 0;
+    for (int m = 0; m < pairs.numMentions(); m++) {
+      for (int pair = pairs.start(m); pair < pairs.end(m); pair++) {
+        scorer.addPair(pairs.antecedent(pair), m, featureExtractor.getPairFeatures(
+            pairs.mentionIds(pair), document, mentionsByHeadIndex));
+      }
+      if (scorer.numPairs() >= PairwiseBatchScorer.BATCH_SIZE) {
+        linkMentions(pairs, firstAnaphor, m + 1, scorer.score(), anaphoricityScores, document);
+        firstAnaphor = m + 1;
+      }
+    }
+    linkMentions(pairs, firstAnaphor, pairs.numMentions(), scorer.score(), anaphoricityScores, document);
+  }
+
+  /** Links the anaphors from {@code from} up to {@code to}, whose pairs have the given scores */
+  private void linkMentions(CandidatePairs pairs, int from, int to, double[] scores,
+      Counter<Integer> anaphoricityScores, Document document) {
+    int offset = pairs.start(from);
+    for (int m = from; m < to; m++) {
+      if (pairs.start(m) == pairs.end(m)) {
+        continue;
+      }
+      int mentionID = pairs.mention(m).mentionID;
+      double bestScore = anaphoricityScores.getCount(mentionID) - 50 * (greedyness - 0.5);
+      int antecedent = -1;
+      for (int pair = pairs.start(m); pair < pairs.end(m); pair++) {
+        double score = scores[pair - offset];
         if (score > bestScore) {
           bestScore = score;
-          antecedent = ca;
+          antecedent = pairs.antecedent(pair);
         }
       }
 
-      if (antecedent != null) {
-        CorefUtils.mergeCoreferenceClusters(new Pair<>(antecedent, m), document);
+      if (antecedent >= 0) {
+        CorefUtils.mergeCoreferenceClusters(new Pair<>(pairs.mention(antecedent).mentionID, mentionID),
+            document);
       }
     }
   }
@@ -60,6 +60,12 @@ public class NeuralCorefModel implements Serializable {
     return features.elementSum();
   }
 
+  /** A scorer that runs the candidate pairs of one document through the pairwise network in batches */
+  public PairwiseBatchScorer pairwiseBatchScorer() {
+    return new PairwiseBatchScorer(antecedentMatrix, anaphorMatrix, pairFeaturesMatrix,
+        pairwiseFirstLayerBias, pairwiseModel);
+  }
+
   public SimpleMatrix getAnaphorEmbedding(SimpleMatrix mentionEmbedding) {
     return anaphorMatrix.mult(mentionEmbedding);
   }
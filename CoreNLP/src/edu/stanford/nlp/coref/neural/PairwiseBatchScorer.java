@@ -0,0 +1,208 @@
+package edu.stanford.nlp.coref.neural;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Scores the candidate antecedents of one document with the pairwise network of a
+ * {@link NeuralCorefModel}, many pairs at a time.
+ * <br>
+ * The antecedent and anaphor embeddings of the mentions are kept as rows of two arrays, and the
+ * pairs added since the last call to {@link #score()} are run through the network in batches of
+ * {@link #BATCH_SIZE}: each layer is one multiplication of the batch by the layer's weights, into
+ * buffers that are allocated once. The scores are the same as those of
+ * {@link NeuralCorefModel#getPairwiseScore}, which adds up the products in the same order.
+ * <br>
+ * A scorer holds per-document state and is not thread-safe.
+ */
+public class PairwiseBatchScorer {
+
+  /** The number of pairs run through the network at once */
+  public static final int BATCH_SIZE = 128;
+
+  private final double[] antecedentWeights;
+  private final double[] anaphorWeights;
+  private final double[] pairFeaturesWeights;
+  private final double[] firstLayerBias;
+  private final double[][] layerWeights;
+  private final double[][] layerBiases;
+  private final int[] layerSizes;
+  private final int embeddingSize;
+  private final int hiddenSize;
+  private final int numPairFeatures;
+
+  // the antecedent and anaphor embedding of each mention, by row
+  private double[] antecedents = new double[0];
+  private double[] anaphors = new double[0];
+  private int numMentions;  // = 0
+
+  // the pairs waiting to be scored
+  private int[] antecedentRows = new int[BATCH_SIZE];
+  private int[] anaphorRows = new int[BATCH_SIZE];
+  private double[] pairFeatures;
+  private int numPairs;  // = 0
+
+  private final double[] input;
+  private final double[] output;
+
+  PairwiseBatchScorer(SimpleMatrix antecedentMatrix, SimpleMatrix anaphorMatrix,
+      SimpleMatrix pairFeaturesMatrix, SimpleMatrix pairwiseFirstLayerBias, List<SimpleMatrix> pairwiseModel) {
+    antecedentWeights = antecedentMatrix.getMatrix().data;
+    anaphorWeights = anaphorMatrix.getMatrix().data;
+    pairFeaturesWeights = pairFeaturesMatrix.getMatrix().data;
+    firstLayerBias = pairwiseFirstLayerBias.getMatrix().data;
+    embeddingSize = antecedentMatrix.numCols();
+    hiddenSize = antecedentMatrix.numRows();
+    numPairFeatures = pairFeaturesMatrix.numCols();
+
+    int numLayers = pairwiseModel.size() / 2;
+    layerWeights = new double[numLayers][];
+    layerBiases = new double[numLayers][];
+    layerSizes = new int[numLayers];
+    int maxSize = hiddenSize;
+    for (int i = 0; i < numLayers; i++) {
+      layerWeights[i] = pairwiseModel.get(2 * i).getMatrix().data;
+      layerBiases[i] = pairwiseModel.get(2 * i + 1).getMatrix().data;
+      layerSizes[i] = pairwiseModel.get(2 * i).numRows();
+      maxSize = Math.max(maxSize, layerSizes[i]);
+    }
+
+    pairFeatures = new double[BATCH_SIZE * numPairFeatures];
+    input = new double[BATCH_SIZE * maxSize];
+    output = new double[BATCH_SIZE * maxSize];
+  }
+
+  /**
+   * Computes the antecedent and anaphor embeddings of a mention from its mention embedding.
+   * @return The row of the mention, to pass to {@link #addPair}
+   */
+  public int addMention(SimpleMatrix mentionEmbedding) {
+    if ((numMentions + 1) * hiddenSize > antecedents.length) {
+      int capacity = Math.max(16, 2 * numMentions) * hiddenSize;
+      antecedents = Arrays.copyOf(antecedents, capacity);
+      anaphors = Arrays.copyOf(anaphors, capacity);
+    }
+    double[] embedding = mentionEmbedding.getMatrix().data;
+    multiplyTransposed(embedding, 0, 1, embeddingSize, antecedentWeights, hiddenSize, antecedents, numMentions * hiddenSize);
+    multiplyTransposed(embedding, 0, 1, embeddingSize, anaphorWeights, hiddenSize, anaphors, numMentions * hiddenSize);
+    return numMentions++;
+  }
+
+  /** Adds a pair of mentions, given by their rows, to be scored by the next call to {@link #score()}. */
+  public void addPair(int antecedentRow, int anaphorRow, SimpleMatrix features) {
+    if (numPairs == antecedentRows.length) {
+      antecedentRows = Arrays.copyOf(antecedentRows, 2 * numPairs);
+      anaphorRows = Arrays.copyOf(anaphorRows, 2 * numPairs);
+      pairFeatures = Arrays.copyOf(pairFeatures, 2 * numPairs * numPairFeatures);
+    }
+    antecedentRows[numPairs] = antecedentRow;
+    anaphorRows[numPairs] = anaphorRow;
+    System.arraycopy(features.getMatrix().data, 0, pairFeatures, numPairs * numPairFeatures, numPairFeatures);
+    numPairs++;
+  }
+
+  /** The number of pairs added since the last call to {@link #score()} */
+  public int numPairs() {
+    return numPairs;
+  }
+
+  /** Scores the pairs added since the last call, in the order they were added, and forgets them. */
+  public double[] score() {
+    double[] scores = new double[numPairs];
+    for (int start = 0; start < numPairs; start += BATCH_SIZE) {
+      scoreBatch(start, Math.min(BATCH_SIZE, numPairs - start), scores);
+    }
+    numPairs = 0;
+    return scores;
+  }
+
+  private void scoreBatch(int start, int n, double[] scores) {
+    // first layer: relu(antecedent + anaphor + W * pairFeatures + b)
+    multiplyTransposed(pairFeatures, start * numPairFeatures, n, numPairFeatures, pairFeaturesWeights, hiddenSize,
+        input, 0);
+    for (int p = 0; p < n; p++) {
+      int antecedent = antecedentRows[start + p] * hiddenSize;
+      int anaphor = anaphorRows[start + p] * hiddenSize;
+      int row = p * hiddenSize;
+      for (int j = 0; j < hiddenSize; j++) {
+        input[row + j] = Math.max(0,
+            antecedents[antecedent + j] + anaphors[anaphor + j] + input[row + j] + firstLayerBias[j]);
+      }
+    }
+
+    double[] x = input;
+    double[] y = output;
+    int size = hiddenSize;
+    for (int i = 0; i < layerWeights.length; i++) {
+      int outSize = layerSizes[i];
+      multiplyTransposed(x, 0, n, size, layerWeights[i], outSize, y, 0);
+      double[] bias = layerBiases[i];
+      for (int p = 0; p < n; p++) {
+        int row = p * outSize;
+        for (int j = 0; j < outSize; j++) {
+          double value = y[row + j] + bias[j];
+          y[row + j] = outSize > 1 ? Math.max(0, value) : value;
+        }
+      }
+      double[] swap = x;
+      x = y;
+      y = swap;
+      size = outSize;
+    }
+
+    for (int p = 0; p < n; p++) {
+      double sum = 0;
+      for (int j = 0; j < size; j++) {
+        sum += x[p * size + j];
+      }
+      scores[start + p] = sum;
+    }
+  }
+
+  /**
+   * Sets {@code y[p][j] = sum_k x[p][k] * w[j][k]} for the {@code n} rows of {@code x}, where
+   * {@code w} is {@code out} by {@code in} and all three are stored by rows. Each block of four rows
+   * of {@code w} is read for the whole batch while it is in cache, and every sum is added up in
+   * order of {@code k}, as EJML does for a matrix times a vector.
+   */
+  private static void multiplyTransposed(double[] x, int xOffset, int n, int in, double[] w, int out,
+                                         double[] y, int yOffset) {
+    int j = 0;
+    for (; j + 4 <= out; j += 4) {
+      int w0 = j * in;
+      int w1 = w0 + in;
+      int w2 = w1 + in;
+      int w3 = w2 + in;
+      for (int p = 0; p < n; p++) {
+        int row = xOffset + p * in;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        for (int k = 0; k < in; k++) {
+          double v = x[row + k];
+          s0 += v * w[w0 + k];
+          s1 += v * w[w1 + k];
+          s2 += v * w[w2 + k];
+          s3 += v * w[w3 + k];
+        }
+        int result = yOffset + p * out + j;
+        y[result] = s0;
+        y[result + 1] = s1;
+        y[result + 2] = s2;
+        y[result + 3] = s3;
+      }
+    }
+    for (; j < out; j++) {
+      int wj = j * in;
+      for (int p = 0; p < n; p++) {
+        int row = xOffset + p * in;
+        double s = 0;
+        for (int k = 0; k < in; k++) {
+          s += x[row + k] * w[wj + k];
+        }
+        y[yOffset + p * out + j] = s;
+      }
+    }
+  }
+
+}
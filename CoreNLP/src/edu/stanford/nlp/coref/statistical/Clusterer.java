@@ -43,12 +43,20 @@ public class Clusterer {
   private static final int EARLY_STOP_THRESHOLD = 1000;
   private static final double EARLY_STOP_VAL = 1500 / 0.2;
 
-  public static int currentDocId = 0;
-  public static int isTraining = 1;
-
   private final ClustererClassifier classifier;
   private final Random random;
 
+  // caches and statistics for training, shared by the states of a rollout
+  private final Map<MergeKey, CompressedFeatureVector> featuresCache = new HashMap<>();
+  private final Compressor<String> compressor = new Compressor<>();
+  private int isTraining = 1;
+  private int featuresCacheHits;
+  private int featuresCacheMisses;
+  private int sHits;
+  private int sMisses;
+  private int ffHits;
+  private int ffMisses;
+
   public Clusterer() {
     random = new Random(0);
     classifier = new ClustererClassifier(LEARNING_RATE);
@@ -59,7 +67,16 @@ public class Clusterer {
     classifier = new ClustererClassifier(modelPath, LEARNING_RATE);
   }
 
+  /**
+   * The merges the trained policy makes on a document. This touches no state shared between
+   * documents, so it may be called for several documents at once.
+   */
   public List<Pair<Integer, Integer>> getClusterMerges(ClustererDoc doc) {
+    return new ClustererEngine(doc, classifier).getClusterMerges();
+  }
+
+  /** The same merges as {@link #getClusterMerges}, made as in training, from the features of each decision. */
+  List<Pair<Integer, Integer>> getClusterMergesFromFeatures(ClustererDoc doc) {
     List<Pair<Integer, Integer>> merges = new ArrayList<>();
     State currentState = new State(doc);
     while (!currentState.isComplete()) {
@@ -135,8 +152,8 @@ public class Clusterer {
         writeModel("last", outputPath);
 
         double timeElapsed = (System.currentTimeMillis() - start) / 1000.0;
-        double ffhr = State.ffHits / (double) (State.ffHits + State.ffMisses);
-        double shr = State.sHits / (double) (State.sHits + State.sMisses);
+        double ffhr = ffHits / (double) (ffHits + ffMisses);
+        double shr = sHits / (double) (sHits + sMisses);
         double fhr = featuresCacheHits /
             (double) (featuresCacheHits + featuresCacheMisses);
         Redwood.log("scoref.train", modelName);
@@ -226,49 +243,19 @@ public class Clusterer {
     return examples;
   }
 
-  private static class GlobalFeatures {
+  static class GlobalFeatures {
     public boolean anaphorSeen;
     public int currentIndex;
     public int size;
     public double docSize;
   }
 
-  private static class State {
-    private static int sHits;
-    private static int sMisses;
-    private static int ffHits;
-    private static int ffMisses;
-
-    private final Map<MergeKey, Boolean> hashedScores;
-    private final Map<Long, Double> hashedCosts;
-
-    private final ClustererDoc doc;
-    private final List<Cluster> clusters;
-    private final Map<Integer, Cluster> mentionToCluster;
-    private final List<Pair<Integer, Integer>> mentionPairs;
-    private final List<GlobalFeatures> globalFeatures;
-
-    private int currentIndex;
-    private Cluster c1;
-    private Cluster c2;
-    private long hash;
-
-    public State(ClustererDoc doc) {
-      currentDocId = doc.id;
-      this.doc = doc;
-      this.hashedScores = new HashMap<>();
-      this.hashedCosts = new HashMap<>();
-      this.clusters = new ArrayList<>();
-      this.hash = 0;
-
-      mentionToCluster = new HashMap<>();
-      for (int m : doc.mentions) {
-        Cluster c = new Cluster(m);
-        clusters.add(c);
-        mentionToCluster.put(m, c);
-        hash ^= c.hash * 7;
-      }
+  /** The mention pairs the policy decides on for a document, best first, and the global features of each */
+  static class MergeSchedule {
+    public final List<Pair<Integer, Integer>> mentionPairs;
+    public final List<GlobalFeatures> globalFeatures;
 
+    public MergeSchedule(ClustererDoc doc) {
       List<Pair<Integer, Integer>> allPairs = new ArrayList<>(doc.classificationScores.keySet());
 
       Counter<Pair<Integer, Integer>> scores =
@@ -323,6 +310,42 @@ public class Clusterer {
         seenAnaphors.incrementCount(mentionPair.second);
         seenAntecedents.incrementCount(mentionPair.first);
       }
+    }
+  }
+
+  private class State {
+    private final Map<MergeKey, Boolean> hashedScores;
+    private final Map<Long, Double> hashedCosts;
+
+    private final ClustererDoc doc;
+    private final List<Cluster> clusters;
+    private final Map<Integer, Cluster> mentionToCluster;
+    private final List<Pair<Integer, Integer>> mentionPairs;
+    private final List<GlobalFeatures> globalFeatures;
+
+    private int currentIndex;
+    private Cluster c1;
+    private Cluster c2;
+    private long hash;
+
+    public State(ClustererDoc doc) {
+      this.doc = doc;
+      this.hashedScores = new HashMap<>();
+      this.hashedCosts = new HashMap<>();
+      this.clusters = new ArrayList<>();
+      this.hash = 0;
+
+      mentionToCluster = new HashMap<>();
+      for (int m : doc.mentions) {
+        Cluster c = new Cluster(m, doc.id);
+        clusters.add(c);
+        mentionToCluster.put(m, c);
+        hash ^= c.hash * 7;
+      }
+
+      MergeSchedule schedule = new MergeSchedule(doc);
+      mentionPairs = schedule.mentionPairs;
+      globalFeatures = schedule.globalFeatures;
 
       currentIndex = 0;
       setClusters();
@@ -390,12 +413,12 @@ public class Clusterer {
     }
 
     public boolean doBestAction(ClustererClassifier classifier) {
-      Boolean doMerge = hashedScores.get(new MergeKey(c1, c2, currentIndex));
+      Boolean doMerge = hashedScores.get(new MergeKey(c1, c2, currentIndex, doc.id));
       if (doMerge == null) {
         Counter<String> features = getFeatures(doc, c1, c2,
             globalFeatures.get(currentIndex));
         doMerge = classifier.weightFeatureProduct(features) > 0;
-        hashedScores.put(new MergeKey(c1, c2, currentIndex), doMerge);
+        hashedScores.put(new MergeKey(c1, c2, currentIndex, doc.id), doMerge);
         sMisses += isTraining;
       } else {
         sHits += isTraining;
@@ -433,7 +456,7 @@ public class Clusterer {
       Counter<String> mergeFeatures = getFeatures(doc, c1, c2,
           globalFeatures.get(currentIndex));
       double mergeScore = Math.exp(classifier.weightFeatureProduct(mergeFeatures));
-      hashedScores.put(new MergeKey(c1, c2, currentIndex), mergeScore > 0.5);
+      hashedScores.put(new MergeKey(c1, c2, currentIndex, doc.id), mergeScore > 0.5);
 
       State merge = new State(this);
       merge.doAction(true);
@@ -454,8 +477,8 @@ public class Clusterer {
   private static class MergeKey {
     private final int hash;
 
-    public MergeKey(Cluster c1, Cluster c2, int ind) {
-      hash = (int)(c1.hash ^ c2.hash) + (2003 * ind) + currentDocId;
+    public MergeKey(Cluster c1, Cluster c2, int ind, int docId) {
+      hash = (int)(c1.hash ^ c2.hash) + (2003 * ind) + docId;
     }
 
     @Override
@@ -470,16 +493,13 @@ public class Clusterer {
   }
 
   public static class Cluster {
-    private static final Map<Pair<Integer, Integer>, Long> MENTION_HASHES = new HashMap<>();
-    private static final Random RANDOM = new Random(0);
-
     public final List<Integer> mentions;
     public long hash;
 
-    public Cluster(int m) {
+    public Cluster(int m, int docId) {
       mentions = new ArrayList<>();
       mentions.add(m);
-      hash = getMentionHash(m);
+      hash = getMentionHash(m, docId);
     }
 
     public Cluster(Cluster c) {
@@ -500,22 +520,15 @@ public class Clusterer {
       return hash;
     }
 
-    private static long getMentionHash(int m) {
-      Pair<Integer, Integer> pair = new Pair<>(m, currentDocId);
-      Long hash = MENTION_HASHES.get(pair);
-      if (hash == null) {
-        hash = RANDOM.nextLong();
-        MENTION_HASHES.put(pair, hash);
-      }
-      return hash;
+    /** A random-looking hash of a mention, the same each time without a table of them */
+    private static long getMentionHash(int m, int docId) {
+      long z = (((long) docId) << 32 | (m & 0xffffffffL)) + 0x9E3779B97F4A7C15L;
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
     }
   }
 
-  private static int featuresCacheHits;
-  private static int featuresCacheMisses;
-  private static Map<MergeKey, CompressedFeatureVector> featuresCache = new HashMap<>();
-  private static Compressor<String> compressor = new Compressor<>();
-
   private static Counter<String> getFeatures(ClustererDoc doc, Pair<Integer, Integer> mentionPair,
       Counter<Pair<Integer, Integer>> scores) {
     Counter<String> features = new ClassicCounter<>();
@@ -582,8 +595,8 @@ public class Clusterer {
     return earliest;
   }
 
-  private static Counter<String> getFeatures(ClustererDoc doc, Cluster c1, Cluster c2, GlobalFeatures gf) {
-    MergeKey key = new MergeKey(c1, c2, gf.currentIndex);
+  private Counter<String> getFeatures(ClustererDoc doc, Cluster c1, Cluster c2, GlobalFeatures gf) {
+    MergeKey key = new MergeKey(c1, c2, gf.currentIndex, doc.id);
     CompressedFeatureVector cfv = featuresCache.get(key);
     Counter<String> features = cfv == null ? null : compressor.uncompress(cfv);
     if (features != null) {
@@ -0,0 +1,305 @@
+package edu.stanford.nlp.coref.statistical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.coref.statistical.Clusterer.GlobalFeatures;
+import edu.stanford.nlp.coref.statistical.Clusterer.MergeSchedule;
+import edu.stanford.nlp.coref.statistical.ClustererDataLoader.ClustererDoc;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.Pair;
+
+/**
+ * Runs a trained {@link Clusterer} policy over one document, making the same merges as
+ * {@link Clusterer}'s training-time state without building a feature counter for each decision.
+ * <br>
+ * Clusters are kept in a union-find forest over the document's mentions. For each pair of
+ * clusters with scored mention pairs between them, the max, min, and totals of the pairwise
+ * scores are kept by conjunction of mention types, and these are added together when clusters
+ * merge. Pairs of mentions without a score count as scoring zero, as in {@link Clusterer}.
+ * Everything is per-document, so documents can be clustered concurrently; each pair of mentions is
+ * assumed to be scored in at most one order, as the feature extractor makes them.
+ */
+class ClustererEngine {
+
+  private static final String[] MODELS = { "-classification", "-ranking" };
+  private static final int NUM_CONJUNCTIONS = 4;
+  private static final String[] CONJUNCTIONS = { "_NON_PRONOMINAL_NON_PRONOMINAL",
+      "_NON_PRONOMINAL_PRONOMINAL", "_PRONOMINAL_NON_PRONOMINAL", "_PRONOMINAL_PRONOMINAL" };
+  private static final double UNSCORED_LOG = Math.log(1e-8);
+
+  /** The scored mention pairs between two clusters */
+  private static class Between {
+    /** The cluster whose mention's type is the first index of {@link #pairTypes} */
+    int anchor;
+    final double[] max = new double[MODELS.length];
+    final double[] min = new double[MODELS.length];
+    /** Totals by model and by conjunction of the types of the pair's mentions in scored order */
+    final double[][] totals = new double[MODELS.length][NUM_CONJUNCTIONS];
+    final double[][] totalsLog = new double[MODELS.length][NUM_CONJUNCTIONS];
+    final int[][] counts = new int[MODELS.length][NUM_CONJUNCTIONS];
+    /** Scored pairs by model and by the types of the mentions in the anchor and in the other cluster */
+    final int[][] pairTypes = new int[MODELS.length][NUM_CONJUNCTIONS];
+
+    Between(int anchor) {
+      this.anchor = anchor;
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
+      Arrays.fill(min, Double.POSITIVE_INFINITY);
+    }
+
+    /** Adds the pairs of another {@code Between} with one cluster in common, with its anchor there or at this one's. */
+    void add(Between other) {
+      boolean transpose = other.anchor != anchor;
+      for (int k = 0; k < MODELS.length; k++) {
+        max[k] = Math.max(max[k], other.max[k]);
+        min[k] = Math.min(min[k], other.min[k]);
+        for (int c = 0; c < NUM_CONJUNCTIONS; c++) {
+          totals[k][c] += other.totals[k][c];
+          totalsLog[k][c] += other.totalsLog[k][c];
+          counts[k][c] += other.counts[k][c];
+          pairTypes[k][c] += other.pairTypes[k][transpose ? transpose(c) : c];
+        }
+      }
+    }
+  }
+
+  private final MergeSchedule schedule;
+  private final List<Counter<Pair<Integer, Integer>>> scores;
+  private final Map<Integer, Integer> mentionIndices;
+
+  // by mention index
+  private final int[] types;
+  private final double[] anaphoricity;
+
+  // by cluster root
+  private final int[] parent;
+  private final int[] size;
+  private final int[] pronominal;
+  private final int[] earliest;
+  private final List<Map<Integer, Between>> neighbors;
+
+  // the weights of the features
+  private final double anaphorSeen, docSize, percentComplete, bias, anaphoricityWeight;
+  private final double anaphorSeenSingle, docSizeSingle, percentCompleteSingle, biasSingle, anaphoricitySingle;
+  private final double[] maxSingle = new double[MODELS.length];
+  private final double[] max = new double[MODELS.length];
+  private final double[] min = new double[MODELS.length];
+  private final double[] avg = new double[MODELS.length];
+  private final double[] avgLog = new double[MODELS.length];
+  private final double[][] avgConjunction = new double[MODELS.length][NUM_CONJUNCTIONS];
+  private final double[][] avgLogConjunction = new double[MODELS.length][NUM_CONJUNCTIONS];
+
+  ClustererEngine(ClustererDoc doc, SimpleLinearClassifier classifier) {
+    schedule = new MergeSchedule(doc);
+    scores = new ArrayList<>();
+    scores.add(doc.classificationScores);
+    scores.add(doc.rankingScores);
+    mentionIndices = doc.mentionIndices;
+
+    int n = doc.mentions.size();
+    types = new int[n];
+    anaphoricity = new double[n];
+    parent = new int[n];
+    size = new int[n];
+    pronominal = new int[n];
+    earliest = new int[n];
+    neighbors = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      int m = doc.mentions.get(i);
+      types[i] = "PRONOMINAL".equals(doc.mentionTypes.get(m)) ? 1 : 0;
+      anaphoricity[i] = doc.anaphoricityScores.getCount(m);
+      parent[i] = i;
+      size[i] = 1;
+      pronominal[i] = types[i];
+      earliest[i] = i;
+      neighbors.add(new HashMap<>());
+    }
+
+    for (int k = 0; k < MODELS.length; k++) {
+      for (Map.Entry<Pair<Integer, Integer>, Double> e : scores.get(k).entrySet()) {
+        Integer i = mentionIndices.get(e.getKey().first);
+        Integer j = mentionIndices.get(e.getKey().second);
+        if (i == null || j == null || i.equals(j)
+            || (i > j && scores.get(k).containsKey(new Pair<>(e.getKey().second, e.getKey().first)))) {
+          continue;
+        }
+        Between between = neighbors.get(i).get(j);
+        if (between == null) {
+          between = new Between(i);
+          neighbors.get(i).put(j, between);
+          neighbors.get(j).put(i, between);
+        }
+        double score = e.getValue();
+        int conjunction = 2 * types[i] + types[j];
+        between.max[k] = Math.max(between.max[k], score);
+        between.min[k] = Math.min(between.min[k], score);
+        between.totals[k][conjunction] += score;
+        between.totalsLog[k][conjunction] += cappedLog(score);
+        between.counts[k][conjunction]++;
+        between.pairTypes[k][between.anchor == i ? conjunction : transpose(conjunction)]++;
+      }
+    }
+
+    anaphorSeen = classifier.getWeight("anaphorSeen");
+    docSize = classifier.getWeight("docSize");
+    percentComplete = classifier.getWeight("percentComplete");
+    bias = classifier.getWeight("bias");
+    anaphoricityWeight = classifier.getWeight("anaphoricity");
+    anaphorSeenSingle = classifier.getWeight("anaphorSeen-single");
+    docSizeSingle = classifier.getWeight("docSize-single");
+    percentCompleteSingle = classifier.getWeight("percentComplete-single");
+    biasSingle = classifier.getWeight("bias-single");
+    anaphoricitySingle = classifier.getWeight("anaphoricity-single");
+    for (int k = 0; k < MODELS.length; k++) {
+      maxSingle[k] = classifier.getWeight("max" + MODELS[k] + "-single");
+      max[k] = classifier.getWeight("max" + MODELS[k]);
+      min[k] = classifier.getWeight("min" + MODELS[k]);
+      avg[k] = classifier.getWeight("avg" + MODELS[k]);
+      avgLog[k] = classifier.getWeight("avgLog" + MODELS[k]);
+      for (int c = 0; c < NUM_CONJUNCTIONS; c++) {
+        avgConjunction[k][c] = classifier.getWeight("avg" + CONJUNCTIONS[c] + MODELS[k]);
+        avgLogConjunction[k][c] = classifier.getWeight("avgLog" + CONJUNCTIONS[c] + MODELS[k]);
+      }
+    }
+  }
+
+  /** Decides on each of the document's candidate merges in turn, returning the pairs that merged clusters. */
+  List<Pair<Integer, Integer>> getClusterMerges() {
+    List<Pair<Integer, Integer>> merges = new ArrayList<>();
+    for (int index = 0; index < schedule.mentionPairs.size(); index++) {
+      Pair<Integer, Integer> mentionPair = schedule.mentionPairs.get(index);
+      int c1 = find(mentionIndices.get(mentionPair.first));
+      int c2 = find(mentionIndices.get(mentionPair.second));
+      if (c1 == c2) {
+        continue;
+      }
+      if (mergeScore(mentionPair, c1, c2, schedule.globalFeatures.get(index)) > 0) {
+        merge(c1, c2);
+        merges.add(mentionPair);
+      }
+    }
+    return merges;
+  }
+
+  /** The product of the classifier's weights with the features {@link Clusterer} gives merging the clusters. */
+  double mergeScore(Pair<Integer, Integer> mentionPair, int c1, int c2, GlobalFeatures gf) {
+    double a = anaphoricity[Math.max(earliest[c1], earliest[c2])];
+    double percent = gf.currentIndex / (double) gf.size;
+    if (size[c1] == 1 && size[c2] == 1) {
+      double product = (gf.anaphorSeen ? anaphorSeenSingle : 0) + docSizeSingle * gf.docSize
+          + percentCompleteSingle * percent + biasSingle + anaphoricitySingle * a;
+      Pair<Integer, Integer> reversed = new Pair<>(mentionPair.second, mentionPair.first);
+      for (int k = 0; k < MODELS.length; k++) {
+        Counter<Pair<Integer, Integer>> modelScores = scores.get(k);
+        product += maxSingle[k] * modelScores.getCount(modelScores.containsKey(mentionPair) ? mentionPair : reversed);
+      }
+      return product;
+    }
+
+    double product = (gf.anaphorSeen ? anaphorSeen : 0) + docSize * gf.docSize
+        + percentComplete * percent + bias + anaphoricityWeight * a;
+    Between between = neighbors.get(c1).get(c2);
+    int numPairs = size[c1] * size[c2];
+    for (int k = 0; k < MODELS.length; k++) {
+      double maxScore = 0;
+      double minScore = 1;
+      double total = 0;
+      double totalLog = 0;
+      int numScored = 0;
+      for (int c = 0; c < NUM_CONJUNCTIONS; c++) {
+        // pairs without a score are looked up, and so conjoined, with the second cluster's mention first
+        int unscored = count(c2, c >> 1) * count(c1, c & 1);
+        double conjunctionTotal = 0;
+        double conjunctionTotalLog = 0;
+        int conjunctionCount = 0;
+        if (between != null) {
+          unscored -= between.pairTypes[k][between.anchor == c1 ? transpose(c) : c];
+          conjunctionTotal = between.totals[k][c];
+          conjunctionTotalLog = between.totalsLog[k][c];
+          conjunctionCount = between.counts[k][c];
+          numScored += conjunctionCount;
+        }
+        conjunctionTotalLog += unscored * UNSCORED_LOG;
+        conjunctionCount += unscored;
+        if (conjunctionCount > 0) {
+          product += avgConjunction[k][c] * conjunctionTotal / numPairs
+              + avgLogConjunction[k][c] * conjunctionTotalLog / numPairs;
+        }
+        total += conjunctionTotal;
+        totalLog += conjunctionTotalLog;
+      }
+      if (between != null) {
+        maxScore = Math.max(maxScore, between.max[k]);
+        minScore = Math.min(minScore, between.min[k]);
+      }
+      if (numScored < numPairs) {
+        minScore = Math.min(minScore, 0);
+      }
+      product += max[k] * maxScore + min[k] * minScore + avg[k] * total / numPairs + avgLog[k] * totalLog / numPairs;
+    }
+    return product;
+  }
+
+  private int count(int cluster, int type) {
+    return type == 1 ? pronominal[cluster] : size[cluster] - pronominal[cluster];
+  }
+
+  int find(int mention) {
+    int root = mention;
+    while (parent[root] != root) {
+      root = parent[root];
+    }
+    while (parent[mention] != root) {
+      int next = parent[mention];
+      parent[mention] = root;
+      mention = next;
+    }
+    return root;
+  }
+
+  /** Merges two clusters, given by their roots, adding up the scores between them and every other cluster. */
+  void merge(int c1, int c2) {
+    int root = size[c1] >= size[c2] ? c1 : c2;
+    int child = root == c1 ? c2 : c1;
+    parent[child] = root;
+    size[root] += size[child];
+    pronominal[root] += pronominal[child];
+    earliest[root] = Math.min(earliest[root], earliest[child]);
+
+    Map<Integer, Between> rootNeighbors = neighbors.get(root);
+    rootNeighbors.remove(child);
+    for (Map.Entry<Integer, Between> e : neighbors.get(child).entrySet()) {
+      int other = e.getKey();
+      if (other == root) {
+        continue;
+      }
+      Between between = e.getValue();
+      Map<Integer, Between> otherNeighbors = neighbors.get(other);
+      otherNeighbors.remove(child);
+      if (between.anchor == child) {
+        between.anchor = root;
+      }
+      Between existing = rootNeighbors.get(other);
+      if (existing == null) {
+        rootNeighbors.put(other, between);
+        otherNeighbors.put(root, between);
+      } else {
+        existing.add(between);
+      }
+    }
+    neighbors.set(child, null);
+  }
+
+  /** The index of the conjunction with the types of the two mentions swapped */
+  private static int transpose(int conjunction) {
+    return ((conjunction & 1) << 1) | (conjunction >> 1);
+  }
+
+  private static double cappedLog(double x) {
+    return Math.log(Math.max(x, 1e-8));
+  }
+
+}
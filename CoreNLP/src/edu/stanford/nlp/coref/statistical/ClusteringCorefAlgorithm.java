@@ -1,10 +1,17 @@
 package edu.stanford.nlp.coref.statistical;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
+import edu.stanford.nlp.coref.CandidatePairs;
 import edu.stanford.nlp.coref.CorefAlgorithm;
+import edu.stanford.nlp.coref.CorefProperties;
 import edu.stanford.nlp.coref.CorefUtils;
 import edu.stanford.nlp.coref.data.Dictionaries;
 import edu.stanford.nlp.coref.data.Document;
@@ -12,6 +19,7 @@ import edu.stanford.nlp.coref.statistical.ClustererDataLoader.ClustererDoc;
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.concurrent.SharedForkJoinPools;
 
 /**
  * Builds up coreference clusters incrementally with agglomerative clustering.
@@ -33,6 +41,9 @@ public class ClusteringCorefAlgorithm implements CorefAlgorithm {
     private final PairwiseModel rankingModel;
     private final PairwiseModel anaphoricityModel;
     private final FeatureExtractor extractor;
+    private final ForkJoinPool pool;
+    private final int maxMentionDistance;
+    private final int maxMentionDistanceWithStringMatch;
 
     public ClusteringCorefAlgorithm(Properties props, Dictionaries dictionaries) {
         this(props, dictionaries,
@@ -57,39 +68,54 @@ public class ClusteringCorefAlgorithm implements CorefAlgorithm {
             MetaFeatureExtractor.anaphoricityMFE())
             .modelPath(anaphoricityPath).build();
         extractor = new FeatureExtractor(props, dictionaries, null, wordCountsPath);
+        int threads = StatisticalCorefProperties.threads(props);
+        pool = SharedForkJoinPools.get(threads);
+        maxMentionDistance = StatisticalCorefProperties.clusteringMaxMentionDistance(props);
+        maxMentionDistanceWithStringMatch = CorefProperties.maxMentionDistanceWithStringMatch(props);
     }
 
     @Override
     public void runCoref(Document document) {
         System.err.println("clustering coref is running");
 
-        Map<Pair<Integer, Integer>, Boolean> mentionPairs =
-            CorefUtils.getUnlabeledMentionPairs(document);
-        if (mentionPairs.size() == 0) {
+        CandidatePairs pairs = CandidatePairs.windowed(CorefUtils.getSortedMentions(document),
+            maxMentionDistance, maxMentionDistanceWithStringMatch);
+        if (pairs.size() == 0) {
             return;
         }
         Compressor<String> compressor = new Compressor<>();
-        DocumentExamples examples = extractor.extract(0, document, mentionPairs, compressor);
+        DocumentExamples examples = extractor.extract(0, document, pairs, compressor);
+
+        // the scores are independent, so they may be computed in parallel; clustering is sequential
+        List<Example> newLinks = new ArrayList<>();
+        Set<Integer> anaphors = new HashSet<>();
+        for (Example example : examples.examples) {
+            if (anaphors.add(example.mentionId2)) {
+                newLinks.add(new Example(example, false));
+            }
+        }
+        double[] classification = classificationModel.predict(examples.examples, examples.mentionFeatures,
+            compressor, pool);
+        double[] ranking = rankingModel.predict(examples.examples, examples.mentionFeatures, compressor, pool);
+        double[] anaphoricity = anaphoricityModel.predict(newLinks, examples.mentionFeatures, compressor, pool);
 
         Counter<Pair<Integer, Integer>> classificationScores = new ClassicCounter<>();
         Counter<Pair<Integer, Integer>> rankingScores = new ClassicCounter<>();
         Counter<Integer> anaphoricityScores = new ClassicCounter<>();
-        for (Example example : examples.examples) {
+        for (int i = 0; i < examples.examples.size(); i++) {
             CorefUtils.checkForInterrupt();
+            Example example = examples.examples.get(i);
             Pair<Integer, Integer> mentionPair =
                 new Pair<>(example.mentionId1, example.mentionId2);
-            classificationScores.incrementCount(mentionPair, classificationModel
-                .predict(example, examples.mentionFeatures, compressor));
-            rankingScores.incrementCount(mentionPair, rankingModel
-                .predict(example, examples.mentionFeatures, compressor));
-            if (!anaphoricityScores.containsKey(example.mentionId2)) {
-                anaphoricityScores.incrementCount(example.mentionId2, anaphoricityModel
-                    .predict(new Example(example, false), examples.mentionFeatures, compressor));
-            }
+            classificationScores.incrementCount(mentionPair, classification[i]);
+            rankingScores.incrementCount(mentionPair, ranking[i]);
+        }
+        for (int i = 0; i < newLinks.size(); i++) {
+            anaphoricityScores.incrementCount(newLinks.get(i).mentionId2, anaphoricity[i]);
         }
 
         ClustererDoc doc = new ClustererDoc(0, classificationScores, rankingScores, anaphoricityScores,
-            mentionPairs, null, document.predictedMentionsByID.entrySet().stream().collect(
+            pairs.toUnlabeledMap(), null, document.predictedMentionsByID.entrySet().stream().collect(
             Collectors.toMap(Map.Entry::getKey, e -> e.getValue().mentionType.toString())));
         for (Pair<Integer, Integer> mentionPair : clusterer.getClusterMerges(doc)) {
             CorefUtils.mergeCoreferenceClusters(mentionPair, document);
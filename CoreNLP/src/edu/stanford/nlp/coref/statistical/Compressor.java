@@ -49,6 +49,11 @@ public class Compressor<K> implements Serializable {
     return new CompressedFeatureVector(keys, values);
   }
 
+  /** The key that was compressed to the given id. */
+  public K getKey(int id) {
+    return inverse.get(id);
+  }
+
   public Counter<K> uncompress(CompressedFeatureVector cvf) {
     Counter<K> c = new ClassicCounter<>();
     for (int i = 0; i < cvf.keys.size(); i++) {
@@ -10,6 +10,7 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 
+import edu.stanford.nlp.coref.CandidatePairs;
 import edu.stanford.nlp.coref.CorefProperties;
 import edu.stanford.nlp.coref.CorefRules;
 import edu.stanford.nlp.coref.CorefUtils;
@@ -106,17 +107,6 @@ public class FeatureExtractor {
 
   public DocumentExamples extract(int id, Document document,
       Map<Pair<Integer, Integer>, Boolean> labeledPairs, Compressor<String> compressor) {
-    List<Mention> mentionsList = CorefUtils.getSortedMentions(document);
-    Map<Integer, List<Mention>> mentionsByHeadIndex = new HashMap<>();
-    for (Mention m : mentionsList) {
-      List<Mention> withIndex = mentionsByHeadIndex.get(m.headIndex);
-      if (withIndex == null) {
-        withIndex = new ArrayList<>();
-        mentionsByHeadIndex.put(m.headIndex, withIndex);
-      }
-      withIndex.add(m);
-    }
-
     Map<Integer, Mention> mentions = document.predictedMentionsByID;
     List<Example> examples = new ArrayList<>();
     Set<Integer> mentionsToExtract = new HashSet<>();
@@ -129,14 +119,47 @@ public class FeatureExtractor {
             compressor.compress(getFeatures(document, m1, m2));
         examples.add(new Example(id, m1, m2, pair.getValue() ? 1.0 : 0.0, features));
     }
+    return new DocumentExamples(id, examples,
+        extractMentionFeatures(document, mentionsToExtract, compressor));
+  }
+
+  /** Extracts unlabeled examples for candidate pairs, in the order of the pairs. */
+  public DocumentExamples extract(int id, Document document, CandidatePairs pairs,
+      Compressor<String> compressor) {
+    List<Example> examples = new ArrayList<>(pairs.size());
+    Set<Integer> mentionsToExtract = new HashSet<>();
+    for (int pair = 0; pair < pairs.size(); pair++) {
+        Mention m1 = pairs.mention(pairs.antecedent(pair));
+        Mention m2 = pairs.mention(pairs.anaphor(pair));
+        mentionsToExtract.add(m1.mentionID);
+        mentionsToExtract.add(m2.mentionID);
+        CompressedFeatureVector features =
+            compressor.compress(getFeatures(document, m1, m2));
+        examples.add(new Example(id, m1, m2, 0.0, features));
+    }
+    return new DocumentExamples(id, examples,
+        extractMentionFeatures(document, mentionsToExtract, compressor));
+  }
+
+  private Map<Integer, CompressedFeatureVector> extractMentionFeatures(Document document,
+      Set<Integer> mentionsToExtract, Compressor<String> compressor) {
+    List<Mention> mentionsList = CorefUtils.getSortedMentions(document);
+    Map<Integer, List<Mention>> mentionsByHeadIndex = new HashMap<>();
+    for (Mention m : mentionsList) {
+      List<Mention> withIndex = mentionsByHeadIndex.get(m.headIndex);
+      if (withIndex == null) {
+        withIndex = new ArrayList<>();
+        mentionsByHeadIndex.put(m.headIndex, withIndex);
+      }
+      withIndex.add(m);
+    }
 
     Map<Integer, CompressedFeatureVector> mentionFeatures = new HashMap<>();
     for (int mentionID : mentionsToExtract) {
         mentionFeatures.put(mentionID, compressor.compress(getFeatures(document,
             document.predictedMentionsByID.get(mentionID), mentionsByHeadIndex)));
     }
-
-    return new DocumentExamples(id, examples, mentionFeatures);
+    return mentionFeatures;
   }
 
   private Counter<String> getFeatures(Document doc, Mention m,
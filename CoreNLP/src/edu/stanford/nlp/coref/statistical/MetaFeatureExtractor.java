@@ -171,24 +171,48 @@ public class MetaFeatureExtractor {
 
   private List<String> identifiers(Counter<String> features, MentionType mentionType) {
     List<String> identifiers = new ArrayList<>();
+    identifiers.add(identifier(features.keySet(), mentionType));
+    return identifiers;
+  }
+
+  /** What features are conjoined with to make them specific to a mention of this type, e.g., its head word if it is a pronoun. */
+  String identifier(Iterable<String> features, MentionType mentionType) {
     if (mentionType == MentionType.PRONOMINAL) {
-      for (String feature : features.keySet()) {
+      for (String feature : features) {
         if (feature.startsWith("head-word=")) {
-          identifiers.add(feature.replace("head-word=", ""));
-          return identifiers;
+          return feature.replace("head-word=", "");
         }
       }
     } else if (neTypeConjuntion && mentionType == MentionType.PROPER) {
-      for (String feature : features.keySet()) {
+      for (String feature : features) {
         if (feature.startsWith("head-ne-type=")) {
-          identifiers.add(mentionType.toString() + "_" + feature.replace("head-ne-type=", ""));
-          return identifiers;
+          return mentionType.toString() + "_" + feature.replace("head-ne-type=", "");
         }
       }
     }
 
-    identifiers.add(mentionType.toString());
-    return identifiers;
+    return mentionType.toString();
+  }
+
+  boolean isAllowed(String feature) {
+    for (String prefix : disallowedPrefixes) {
+      if (feature.startsWith(prefix)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean filtersFeatures() {
+    return ! disallowedPrefixes.isEmpty();
+  }
+
+  boolean conjoins(PairConjunction conjunction) {
+    return pairConjunctions.contains(conjunction);
+  }
+
+  boolean conjoins(SingleConjunction conjunction) {
+    return singleConjunctions.contains(conjunction);
   }
 
   private static Counter<String> getConjunction(Counter<String> original, String suffix) {
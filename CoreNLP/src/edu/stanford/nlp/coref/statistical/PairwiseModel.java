@@ -2,18 +2,29 @@ package edu.stanford.nlp.coref.statistical;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
+import edu.stanford.nlp.coref.CorefUtils;
 import edu.stanford.nlp.coref.statistical.SimpleLinearClassifier.LearningRateSchedule;
 import edu.stanford.nlp.coref.statistical.SimpleLinearClassifier.Loss;
 
 import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
 
 /**
  * Pairwise mention-classification model.
  * @author Kevin Clark
  */
 public class PairwiseModel {
+  /** The fewest examples worth giving a thread of their own in {@link #predict(List, Map, Compressor, ForkJoinPool)} */
+  private static final int MIN_EXAMPLES_PER_THREAD = 256;
+
   public final String name;
   private final int trainingExamples;
   private final int epochs;
@@ -154,6 +165,69 @@ public class PairwiseModel {
     return classifier.label(features);
   }
 
+  /**
+   * A scorer for the examples of one document that gives the same scores as
+   * {@link PairwiseModel#predict}, but much faster when there are many examples.
+   */
+  public PairwiseScorer scorer(Map<Integer, CompressedFeatureVector> mentionFeatures, Compressor<String> compressor) {
+    return new PairwiseScorer(classifier, meta, compressor, mentionFeatures);
+  }
+
+  /**
+   * Scores the examples of one document as {@link #predict} does. If a pool is given, the examples
+   * are split into contiguous shards that are scored on it, each with its own {@link PairwiseScorer},
+   * so the scores are the same as with no pool. Interrupting the calling thread stops the scoring
+   * with a {@link RuntimeInterruptedException} either way: the pool's threads are told to stop.
+   */
+  public double[] predict(List<Example> examples, Map<Integer, CompressedFeatureVector> mentionFeatures,
+      Compressor<String> compressor, ForkJoinPool pool) {
+    double[] scores = new double[examples.size()];
+    int shards = pool == null ? 1 :
+        Math.min(pool.getParallelism(), examples.size() / MIN_EXAMPLES_PER_THREAD);
+    if (shards <= 1) {
+      scoreShard(examples, 0, examples.size(), mentionFeatures, compressor, scores, null);
+    } else {
+      // the pool's threads are not the caller's, so they look at this flag rather than at their own interrupts
+      AtomicBoolean cancelled = new AtomicBoolean();
+      ForkJoinTask<?> task = pool.submit(() -> IntStream.range(0, shards).parallel().forEach(shard ->
+          scoreShard(examples, (int) ((long) examples.size() * shard / shards),
+              (int) ((long) examples.size() * (shard + 1) / shards), mentionFeatures, compressor, scores, cancelled)));
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        cancelled.set(true);
+        task.cancel(true);
+        throw new RuntimeInterruptedException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        } else if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      }
+    }
+    return scores;
+  }
+
+  /**
+   * Scores the examples from start to end. On the calling thread, {@code cancelled} is null and
+   * an interrupt stops it; on a pool's thread, setting {@code cancelled} does.
+   */
+  private void scoreShard(List<Example> examples, int start, int end,
+      Map<Integer, CompressedFeatureVector> mentionFeatures, Compressor<String> compressor, double[] scores,
+      AtomicBoolean cancelled) {
+    PairwiseScorer scorer = scorer(mentionFeatures, compressor);
+    for (int i = start; i < end; i++) {
+      if (cancelled == null) {
+        CorefUtils.checkForInterrupt();
+      } else if (cancelled.get()) {
+        return;
+      }
+      scores[i] = scorer.predict(examples.get(i));
+    }
+  }
+
   public int getNumTrainingExamples() {
     return trainingExamples;
   }
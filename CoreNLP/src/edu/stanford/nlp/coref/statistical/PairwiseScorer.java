@@ -0,0 +1,652 @@
+package edu.stanford.nlp.coref.statistical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.coref.data.Dictionaries.MentionType;
+import edu.stanford.nlp.coref.statistical.MetaFeatureExtractor.PairConjunction;
+import edu.stanford.nlp.coref.statistical.MetaFeatureExtractor.SingleConjunction;
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * Scores the examples of one document with a {@link PairwiseModel}, giving exactly the same scores
+ * as {@link PairwiseModel#predict} without building the feature conjunctions of
+ * {@link MetaFeatureExtractor#getFeatures} as strings for every example.
+ * <br>
+ * A conjoined feature is a feature of the pair or of one of its mentions (an id of the document's
+ * {@link Compressor}) plus a suffix that depends only on the kind of conjunction and on the
+ * identifiers of the two mentions (their types, or head words of pronouns). The suffixes are
+ * interned as ints, and the weight of each (suffix, feature) the document uses is looked up in the
+ * model once and then kept in a table keyed by the two ints. The mentions' features are unpacked
+ * into arrays once rather than into a new counter for every example.
+ * <br>
+ * {@link SimpleLinearClassifier#weightFeatureProduct} adds up the products in the order that the
+ * {@link edu.stanford.nlp.stats.ClassicCounter} of the features iterates in, and a different order can round the sum
+ * differently, so the scorer adds them up in that same order. A ClassicCounter is a
+ * {@link java.util.HashMap}, whose order follows from the hash codes of the keys and the order they
+ * were added in, and the hash code of a conjoined feature follows from the hash codes of its
+ * feature and suffix, so the order of each counter that {@code getFeatures} builds is worked out
+ * without its strings (see {@link #hashMapOrder}). An example for which it can't be worked out,
+ * because two of its keys have the same hash code or a bucket of a map would have become a tree,
+ * is scored with the strings of {@code getFeatures} instead, as are all examples if {@link Generics}
+ * makes counters out of some other kind of map.
+ * <br>
+ * A scorer holds per-document state and is not thread-safe.
+ */
+public class PairwiseScorer {
+
+  /** The kinds of suffix {@link MetaFeatureExtractor#getFeatures} conjoins features with */
+  private enum Suffix {
+    PAIR, PAIR_M1, PAIR_M2, PAIR_MS,
+    FIRST, SECOND, FIRST_CURRENT, SECOND_CURRENT, FIRST_LAST, SECOND_LAST,
+    FIRST_OTHER, SECOND_OTHER, FIRST_BOTH, SECOND_BOTH,
+    NEW, NEW_M,
+    /** The suffix of the features of a new link's mention before each has {@code _NEW} added */
+    M;
+
+    String of(String id1, String id2) {
+      switch (this) {
+        case PAIR: return "";
+        case PAIR_M1: return "_m1=" + id1;
+        case PAIR_M2: return "_m2=" + id2;
+        case PAIR_MS: return "_ms=" + id1 + "_" + id2;
+        case FIRST: return "_1";
+        case SECOND: return "_2";
+        case FIRST_CURRENT: return "_1" + "_m=" + id1;
+        case SECOND_CURRENT: return "_2" + "_m=" + id2;
+        case FIRST_LAST: return "_1" + "_m2=" + id2;
+        case SECOND_LAST: return "_2" + "_m2=" + id2;
+        case FIRST_OTHER: return "_1" + "_m=" + id2;
+        case SECOND_OTHER: return "_2" + "_m=" + id1;
+        case FIRST_BOTH: return "_1" + "_ms=" + id1 + "_" + id2;
+        case SECOND_BOTH: return "_2" + "_ms=" + id1 + "_" + id2;
+        case NEW: return "_NEW";
+        case NEW_M: return "_m=" + id2 + "_NEW";
+        case M: return "_m=" + id2;
+        default: throw new IllegalStateException("Unknown suffix " + this);
+      }
+    }
+  }
+
+  private static final Suffix[] SUFFIXES = Suffix.values();
+
+  /** The {@link java.util.HashMap} constants that its iteration order depends on */
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int TREEIFY_THRESHOLD = 8;
+  private static final int MIN_TREEIFY_CAPACITY = 64;
+  /** Counters are only HashMaps unless {@link Generics} has been told to make some other kind of map */
+  private static final boolean COUNTERS_ARE_HASH_MAPS = Generics.HASH_MAP_CLASSNAME == null ||
+      Generics.HASH_MAP_CLASSNAME.equals(HashMap.class.getName());
+
+  /**
+   * The entries of a counter of features: the feature ids, the hash codes of their strings and
+   * their values, in the order they were added or, once ordered, in the order the counter iterates in
+   */
+  private static class Entries {
+    int[] features = new int[16];
+    int[] hashes = new int[16];
+    double[] values = new double[16];
+    int size;
+
+    void add(int feature, int hash, double value) {
+      if (size == features.length) {
+        features = Arrays.copyOf(features, 2 * size);
+        hashes = Arrays.copyOf(hashes, 2 * size);
+        values = Arrays.copyOf(values, 2 * size);
+      }
+      features[size] = feature;
+      hashes[size] = hash;
+      values[size] = value;
+      size++;
+    }
+  }
+
+  /** The features of a mention that survive the model's filter, and its identifier */
+  private static class MentionVector {
+    /** In the order of the mention's counter in {@code getFeatures}, or null if that couldn't be worked out */
+    final Entries entries;
+    final int identifier;
+
+    MentionVector(Entries entries, int identifier) {
+      this.entries = entries;
+      this.identifier = identifier;
+    }
+  }
+
+  /**
+   * The counter of conjoined features that {@code getFeatures} adds up: for each key, a (suffix, feature)
+   * pair, the hash code of its string and its value, in the order the keys were first added.
+   */
+  private static class Conjoined {
+    long[] keys = new long[64];
+    int[] hashes = new int[64];
+    double[] values = new double[64];
+    int size;
+    /** An open addressing table of the positions of the keys, valid in the slots stamped with {@link #stamp} */
+    long[] slotKeys = new long[128];
+    int[] slotPositions = new int[128];
+    int[] slotStamps = new int[128];
+    int stamp = 1;
+
+    void clear() {
+      size = 0;
+      stamp++;
+    }
+
+    /** As {@code ClassicCounter.incrementCount}: the value is added to the key's, or the key is added after the others */
+    void increment(long key, int hash, double value) {
+      int mask = slotKeys.length - 1;
+      int slot = (int) (mix(key) & mask);
+      while (slotStamps[slot] == stamp) {
+        if (slotKeys[slot] == key) {
+          int position = slotPositions[slot];
+          values[position] = value + values[position];
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, 2 * size);
+        hashes = Arrays.copyOf(hashes, 2 * size);
+        values = Arrays.copyOf(values, 2 * size);
+      }
+      keys[size] = key;
+      hashes[size] = hash;
+      values[size] = value;
+      slotKeys[slot] = key;
+      slotPositions[slot] = size;
+      slotStamps[slot] = stamp;
+      size++;
+      if (2 * size > slotKeys.length) {
+        slotKeys = new long[2 * slotKeys.length];
+        slotPositions = new int[slotKeys.length];
+        slotStamps = new int[slotKeys.length];
+        mask = slotKeys.length - 1;
+        for (int i = 0; i < size; i++) {
+          int s = (int) (mix(keys[i]) & mask);
+          while (slotStamps[s] == stamp) {
+            s = (s + 1) & mask;
+          }
+          slotKeys[s] = keys[i];
+          slotPositions[s] = i;
+          slotStamps[s] = stamp;
+        }
+      }
+    }
+  }
+
+  /** Stands for the "bias" feature that new links add, which needn't have an id in the compressor */
+  private static final int BIAS = -1;
+  private static final String BIAS_NAME = "bias";
+
+  private final SimpleLinearClassifier classifier;
+  private final MetaFeatureExtractor meta;
+  private final Compressor<String> compressor;
+  private final Map<Integer, CompressedFeatureVector> mentionFeatures;
+
+  private final Map<Integer, MentionVector> mentions = new HashMap<>();
+  private final Map<Integer, MentionVector> newLinkMentions = new HashMap<>();
+  private final Map<String, Integer> identifiers = new HashMap<>();
+  private final List<String> identifierNames = new ArrayList<>();
+  /** The interned suffixes for each pair of identifiers, indexed by {@link Suffix#ordinal()} */
+  private final Map<Long, int[]> suffixesByIdentifiers = new HashMap<>();
+  private final Map<String, Integer> suffixes = new HashMap<>();
+  private final List<String> suffixNames = new ArrayList<>();
+  /** For each interned suffix, the hash code of its string, and 31 to the power of its length */
+  private int[] suffixHashes = new int[16];
+  private int[] suffixPowers = new int[16];
+  /** For a model that filters out features, whether each feature id is allowed: 0 unknown, 1 yes, 2 no */
+  private byte[] allowed = new byte[0];
+  /** The hash code of the string of each feature id, where {@link #featureHashKnown} */
+  private int[] featureHashes = new int[0];
+  private boolean[] featureHashKnown = new boolean[0];
+  private final WeightTable weights = new WeightTable();
+
+  // scratch space for one example
+  private final Entries pairEntries = new Entries();
+  private final Entries filteredPairEntries = new Entries();
+  private final Entries conjunction = new Entries();
+  private final Conjoined conjoined = new Conjoined();
+  private int[] order = new int[64];
+  private long[] orderScratch = new long[64];
+  private int[] newHashes = new int[64];
+
+  PairwiseScorer(SimpleLinearClassifier classifier, MetaFeatureExtractor meta, Compressor<String> compressor,
+                 Map<Integer, CompressedFeatureVector> mentionFeatures) {
+    this.classifier = classifier;
+    this.meta = meta;
+    this.compressor = compressor;
+    this.mentionFeatures = mentionFeatures;
+  }
+
+  /** The same as {@link PairwiseModel#predict} with this scorer's mention features and compressor. */
+  public double predict(Example example) {
+    return classifier.label(weightFeatureProduct(example));
+  }
+
+  double weightFeatureProduct(Example example) {
+    if ( ! COUNTERS_ARE_HASH_MAPS) {
+      return stringProduct(example);
+    }
+    if (example.isNewLink()) {
+      MentionVector m2 = mention(example.mentionId2, example.mentionType2, true);
+      if (m2.entries == null) {
+        return stringProduct(example);
+      }
+      int[] s = suffixes(-1, m2.identifier);
+      conjoined.clear();
+      addAll(m2.entries, s[Suffix.PAIR.ordinal()]);
+      if ( ! addConjunction(m2.entries, s[Suffix.M.ordinal()])) {
+        return stringProduct(example);
+      }
+      // then each key has _NEW added, in a new counter that they are added to in the order of this one
+      if ( ! ordered(conjoined.hashes, conjoined.size)) {
+        return stringProduct(example);
+      }
+      if (newHashes.length < conjoined.size) {
+        newHashes = new int[order.length];
+      }
+      int newSuffix = s[Suffix.NEW.ordinal()];
+      int[] firstOrder = Arrays.copyOf(order, conjoined.size);
+      for (int i = 0; i < conjoined.size; i++) {
+        newHashes[i] = conjoin(conjoined.hashes[firstOrder[i]], newSuffix);
+      }
+      if ( ! ordered(newHashes, conjoined.size)) {
+        return stringProduct(example);
+      }
+      double product = 0;
+      for (int i = 0; i < conjoined.size; i++) {
+        int position = firstOrder[order[i]];
+        long key = conjoined.keys[position];
+        int suffix = (int) (key >>> 32) == s[Suffix.PAIR.ordinal()] ? newSuffix : s[Suffix.NEW_M.ordinal()];
+        product += conjoined.values[position] * weight(suffix, (int) key - 1);
+      }
+      return product;
+    }
+
+    MentionVector m1 = mention(example.mentionId1, example.mentionType1, false);
+    MentionVector m2 = mention(example.mentionId2, example.mentionType2, false);
+    Entries pair = pairFeatures(example);
+    if (m1.entries == null || m2.entries == null || pair == null) {
+      return stringProduct(example);
+    }
+    int[] s = suffixes(m1.identifier, m2.identifier);
+    conjoined.clear();
+    addAll(pair, s[Suffix.PAIR.ordinal()]);
+    boolean ok = true;
+    if (meta.conjoins(PairConjunction.FIRST)) {
+      ok &= addConjunction(pair, s[Suffix.PAIR_M1.ordinal()]);
+    }
+    if (meta.conjoins(PairConjunction.LAST)) {
+      ok &= addConjunction(pair, s[Suffix.PAIR_M2.ordinal()]);
+    }
+    if (meta.conjoins(PairConjunction.BOTH)) {
+      ok &= addConjunction(pair, s[Suffix.PAIR_MS.ordinal()]);
+    }
+    if (meta.conjoins(SingleConjunction.INDEX)) {
+      ok &= addConjunction(m1.entries, s[Suffix.FIRST.ordinal()]) && addConjunction(m2.entries, s[Suffix.SECOND.ordinal()]);
+    }
+    if (meta.conjoins(SingleConjunction.INDEX_CURRENT)) {
+      ok &= addConjunction(m1.entries, s[Suffix.FIRST_CURRENT.ordinal()]) &&
+          addConjunction(m2.entries, s[Suffix.SECOND_CURRENT.ordinal()]);
+    }
+    if (meta.conjoins(SingleConjunction.INDEX_LAST)) {
+      ok &= addConjunction(m1.entries, s[Suffix.FIRST_LAST.ordinal()]) &&
+          addConjunction(m2.entries, s[Suffix.SECOND_LAST.ordinal()]);
+    }
+    if (meta.conjoins(SingleConjunction.INDEX_OTHER)) {
+      ok &= addConjunction(m1.entries, s[Suffix.FIRST_OTHER.ordinal()]) &&
+          addConjunction(m2.entries, s[Suffix.SECOND_OTHER.ordinal()]);
+    }
+    if (meta.conjoins(SingleConjunction.INDEX_BOTH)) {
+      ok &= addConjunction(m1.entries, s[Suffix.FIRST_BOTH.ordinal()]) &&
+          addConjunction(m2.entries, s[Suffix.SECOND_BOTH.ordinal()]);
+    }
+    if ( ! ok || ! ordered(conjoined.hashes, conjoined.size)) {
+      return stringProduct(example);
+    }
+    double product = 0;
+    for (int i = 0; i < conjoined.size; i++) {
+      int position = order[i];
+      long key = conjoined.keys[position];
+      product += conjoined.values[position] * weight((int) (key >>> 32), (int) key - 1);
+    }
+    return product;
+  }
+
+  /** The product the slow way, for an example whose order of features couldn't be worked out */
+  private double stringProduct(Example example) {
+    return classifier.weightFeatureProduct(meta.getFeatures(example, mentionFeatures, compressor));
+  }
+
+  /** As {@code Counters.addInPlace}, which leaves out zero values, with the features conjoined with a suffix */
+  private void addAll(Entries entries, int suffix) {
+    for (int i = 0; i < entries.size; i++) {
+      if (entries.values[i] != 0) {
+        conjoined.increment(key(suffix, entries.features[i]), conjoin(entries.hashes[i], suffix), entries.values[i]);
+      }
+    }
+  }
+
+  /**
+   * Adds the counter {@code getConjunction} makes of the entries and a suffix, in the order it
+   * iterates in, or returns false if that couldn't be worked out
+   */
+  private boolean addConjunction(Entries entries, int suffix) {
+    conjunction.size = 0;
+    for (int i = 0; i < entries.size; i++) {
+      conjunction.add(entries.features[i], conjoin(entries.hashes[i], suffix), entries.values[i]);
+    }
+    if ( ! toIterationOrder(conjunction)) {
+      return false;
+    }
+    for (int i = 0; i < conjunction.size; i++) {
+      if (conjunction.values[i] != 0) {
+        conjoined.increment(key(suffix, conjunction.features[i]), conjunction.hashes[i], conjunction.values[i]);
+      }
+    }
+    return true;
+  }
+
+  /** The hash code of the string of a feature with a suffix added */
+  private int conjoin(int hash, int suffix) {
+    return hash * suffixPowers[suffix] + suffixHashes[suffix];
+  }
+
+  private static long key(int suffix, int feature) {
+    return ((long) suffix << 32) | (feature + 1);
+  }
+
+  /**
+   * The pair features of an example that survive the model's filter, in the order of their
+   * counter in {@code getFeatures}, or null if that couldn't be worked out
+   */
+  private Entries pairFeatures(Example example) {
+    List<Integer> keys = example.pairwiseFeatures.keys;
+    List<Double> values = example.pairwiseFeatures.values;
+    pairEntries.size = 0;
+    for (int i = 0; i < keys.size(); i++) {
+      int feature = keys.get(i);
+      pairEntries.add(feature, featureHash(feature), values.get(i));
+    }
+    if ( ! toIterationOrder(pairEntries)) {
+      return null;
+    }
+    if ( ! meta.filtersFeatures()) {
+      return pairEntries;
+    }
+    filteredPairEntries.size = 0;
+    for (int i = 0; i < pairEntries.size; i++) {
+      if (isAllowed(pairEntries.features[i])) {
+        filteredPairEntries.add(pairEntries.features[i], pairEntries.hashes[i], pairEntries.values[i]);
+      }
+    }
+    return toIterationOrder(filteredPairEntries) ? filteredPairEntries : null;
+  }
+
+  private MentionVector mention(int mentionId, MentionType mentionType, boolean newLink) {
+    Map<Integer, MentionVector> cache = newLink ? newLinkMentions : mentions;
+    MentionVector mention = cache.get(mentionId);
+    if (mention == null) {
+      // as getFeatures does: uncompress, add the bias of a new link, and filter
+      CompressedFeatureVector compressed = mentionFeatures.get(mentionId);
+      Entries uncompressed = new Entries();
+      boolean hasBias = false;
+      for (int i = 0; i < compressed.keys.size(); i++) {
+        int feature = compressed.keys.get(i);
+        double value = compressed.values.get(i);
+        if (newLink && compressor.getKey(feature).equals(BIAS_NAME)) {
+          // the bias of a new link is added to this one, which is then the feature the model knows as bias
+          feature = BIAS;
+          value = 1.0 + value;
+          hasBias = true;
+        }
+        uncompressed.add(feature, featureHash(feature), value);
+      }
+      if (newLink && ! hasBias) {
+        uncompressed.add(BIAS, BIAS_NAME.hashCode(), 1.0);
+      }
+      Entries entries = uncompressed;
+      boolean ordered = toIterationOrder(uncompressed);
+      if (ordered && meta.filtersFeatures()) {
+        entries = new Entries();
+        for (int i = 0; i < uncompressed.size; i++) {
+          if (uncompressed.features[i] == BIAS ? meta.isAllowed(BIAS_NAME) : isAllowed(uncompressed.features[i])) {
+            entries.add(uncompressed.features[i], uncompressed.hashes[i], uncompressed.values[i]);
+          }
+        }
+        ordered = toIterationOrder(entries);
+      }
+      List<String> names = new ArrayList<>(entries.size);
+      for (int i = 0; i < entries.size; i++) {
+        names.add(featureName(entries.features[i]));
+      }
+      // the identifier comes from the first feature of the counter that gives one
+      mention = new MentionVector(ordered ? entries : null, identifier(meta.identifier(names, mentionType)));
+      cache.put(mentionId, mention);
+    }
+    return mention;
+  }
+
+  private String featureName(int feature) {
+    return feature == BIAS ? BIAS_NAME : compressor.getKey(feature);
+  }
+
+  private int featureHash(int feature) {
+    if (feature == BIAS) {
+      return BIAS_NAME.hashCode();
+    }
+    if (feature >= featureHashes.length) {
+      int size = Math.max(feature + 1, 2 * featureHashes.length);
+      featureHashes = Arrays.copyOf(featureHashes, size);
+      featureHashKnown = Arrays.copyOf(featureHashKnown, size);
+    }
+    if ( ! featureHashKnown[feature]) {
+      featureHashes[feature] = compressor.getKey(feature).hashCode();
+      featureHashKnown[feature] = true;
+    }
+    return featureHashes[feature];
+  }
+
+  /** Puts the entries in the order a counter they were added to in order iterates in, or returns false */
+  private boolean toIterationOrder(Entries entries) {
+    if ( ! ordered(entries.hashes, entries.size)) {
+      return false;
+    }
+    int n = entries.size;
+    int[] features = new int[n];
+    int[] hashes = new int[n];
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      features[i] = entries.features[order[i]];
+      hashes[i] = entries.hashes[order[i]];
+      values[i] = entries.values[order[i]];
+    }
+    System.arraycopy(features, 0, entries.features, 0, n);
+    System.arraycopy(hashes, 0, entries.hashes, 0, n);
+    System.arraycopy(values, 0, entries.values, 0, n);
+    return true;
+  }
+
+  /** Puts the order of the keys with these hash codes in {@link #order}; see {@link #hashMapOrder} */
+  private boolean ordered(int[] hashCodes, int n) {
+    if (order.length < n) {
+      order = new int[Math.max(n, 2 * order.length)];
+      orderScratch = new long[order.length];
+    }
+    return hashMapOrder(hashCodes, n, order, orderScratch);
+  }
+
+  /**
+   * Puts the indices of n different keys, with these hash codes, in the order that a new
+   * {@link java.util.HashMap} that they were added to in order iterates in: by bucket of the
+   * table, which starts with 16 buckets and doubles when it is 3/4 full or when a bucket of
+   * fewer than 64 gets a 9th key, and then in the order they were added.
+   *
+   * @return False if the order isn't that simple: if a bucket of a table of 64 or more gets a
+   *     9th key, which makes it a tree, or if two keys have the same hash code, since then the
+   *     caller can't tell them apart
+   */
+  static boolean hashMapOrder(int[] hashCodes, int n, int[] order, long[] scratch) {
+    int capacity = INITIAL_CAPACITY;
+    int[] buckets = new int[capacity];
+    for (int i = 0; i < n; i++) {
+      if (buckets[spread(hashCodes[i]) & (capacity - 1)]++ >= TREEIFY_THRESHOLD) {
+        if (capacity >= MIN_TREEIFY_CAPACITY) {
+          return false;
+        }
+        capacity <<= 1;
+        buckets = buckets(hashCodes, i + 1, capacity);
+      }
+      if (i + 1 > capacity / 4 * 3) {
+        capacity <<= 1;
+        buckets = buckets(hashCodes, i + 1, capacity);
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      scratch[i] = ((long) (spread(hashCodes[i]) & (capacity - 1)) << 32) | i;
+    }
+    Arrays.sort(scratch, 0, n);
+    for (int i = 0; i < n; i++) {
+      order[i] = (int) scratch[i];
+      // keys with the same hash code are in the same bucket, so next to each other
+      for (int j = i - 1; j >= 0 && (scratch[j] >>> 32) == (scratch[i] >>> 32); j--) {
+        if (hashCodes[order[j]] == hashCodes[order[i]]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+
+  private static int[] buckets(int[] hashCodes, int n, int capacity) {
+    int[] buckets = new int[capacity];
+    for (int i = 0; i < n; i++) {
+      buckets[spread(hashCodes[i]) & (capacity - 1)]++;
+    }
+    return buckets;
+  }
+
+  private boolean isAllowed(int feature) {
+    if ( ! meta.filtersFeatures()) {
+      return true;
+    }
+    if (feature >= allowed.length) {
+      allowed = Arrays.copyOf(allowed, Math.max(feature + 1, 2 * allowed.length));
+    }
+    if (allowed[feature] == 0) {
+      allowed[feature] = (byte) (meta.isAllowed(compressor.getKey(feature)) ? 1 : 2);
+    }
+    return allowed[feature] == 1;
+  }
+
+  private int identifier(String name) {
+    Integer id = identifiers.get(name);
+    if (id == null) {
+      id = identifierNames.size();
+      identifiers.put(name, id);
+      identifierNames.add(name);
+    }
+    return id;
+  }
+
+  /** The interned suffixes of each kind for the given identifiers; -1 is no first mention. */
+  private int[] suffixes(int identifier1, int identifier2) {
+    long key = ((long) identifier1 << 32) | (identifier2 & 0xffffffffL);
+    int[] interned = suffixesByIdentifiers.get(key);
+    if (interned == null) {
+      String id1 = identifier1 < 0 ? null : identifierNames.get(identifier1);
+      String id2 = identifierNames.get(identifier2);
+      interned = new int[SUFFIXES.length];
+      for (Suffix suffix : SUFFIXES) {
+        String name = suffix.of(id1, id2);
+        Integer id = suffixes.get(name);
+        if (id == null) {
+          id = suffixNames.size();
+          suffixes.put(name, id);
+          suffixNames.add(name);
+          if (id == suffixHashes.length) {
+            suffixHashes = Arrays.copyOf(suffixHashes, 2 * id);
+            suffixPowers = Arrays.copyOf(suffixPowers, 2 * id);
+          }
+          int power = 1;
+          for (int i = 0; i < name.length(); i++) {
+            power *= 31;
+          }
+          suffixHashes[id] = name.hashCode();
+          suffixPowers[id] = power;
+        }
+        interned[suffix.ordinal()] = id;
+      }
+      suffixesByIdentifiers.put(key, interned);
+    }
+    return interned;
+  }
+
+  private double weight(int suffix, int feature) {
+    long key = ((long) suffix << 32) | (feature + 1);
+    int slot = weights.find(key);
+    if (weights.keys[slot] == WeightTable.EMPTY) {
+      String name = featureName(feature) + suffixNames.get(suffix);
+      weights.put(slot, key, classifier.getWeight(name));
+      slot = weights.find(key);
+    }
+    return weights.values[slot];
+  }
+
+  /** An open-addressing map from non-negative long keys to weights */
+  private static class WeightTable {
+    static final long EMPTY = -1;
+
+    long[] keys = new long[1 << 10];
+    double[] values = new double[1 << 10];
+    int size;  // = 0
+
+    WeightTable() {
+      Arrays.fill(keys, EMPTY);
+    }
+
+    /** The slot that holds the key, or the empty slot where it would go */
+    int find(long key) {
+      int mask = keys.length - 1;
+      int slot = (int) (mix(key) & mask);
+      while (keys[slot] != EMPTY && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    void put(int slot, long key, double value) {
+      keys[slot] = key;
+      values[slot] = value;
+      size++;
+      if (2 * size > keys.length) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new long[2 * oldKeys.length];
+        values = new double[2 * oldValues.length];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+          if (oldKeys[i] != EMPTY) {
+            int s = find(oldKeys[i]);
+            keys[s] = oldKeys[i];
+            values[s] = oldValues[i];
+          }
+        }
+      }
+    }
+  }
+
+  private static long mix(long key) {
+    key *= 0x9E3779B97F4A7C15L;
+    return key ^ (key >>> 29);
+  }
+
+}
@@ -8,7 +8,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
+import edu.stanford.nlp.coref.CandidatePairs;
 import edu.stanford.nlp.coref.CorefAlgorithm;
 import edu.stanford.nlp.coref.CorefProperties;
 import edu.stanford.nlp.coref.CorefUtils;
@@ -21,6 +23,7 @@ import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.RuntimeInterruptedException;
+import edu.stanford.nlp.util.concurrent.SharedForkJoinPools;
 
 /**
  * Does best-first coreference resolution by linking each mention to its highest scoring candidate
@@ -42,6 +45,7 @@ public class StatisticalCorefAlgorithm implements CorefAlgorithm {
     private final PairwiseModel classifier;
     private final int maxMentionDistance;
     private final int maxMentionDistanceWithStringMatch;
+    private final ForkJoinPool pool;
 
     public StatisticalCorefAlgorithm(Properties props, Dictionaries dictionaries) {
         this(props, dictionaries,
@@ -69,6 +73,8 @@ public class StatisticalCorefAlgorithm implements CorefAlgorithm {
         this.maxMentionDistance = maxMentionDistance;
         this.maxMentionDistanceWithStringMatch = maxMentionDistanceWithStringMatch;
         this.thresholds = makeThresholds(thresholds);
+        int threads = StatisticalCorefProperties.threads(props);
+        pool = SharedForkJoinPools.get(threads);
     }
 
     private static Map<Pair<Boolean, Boolean>, Double> makeThresholds(double[] thresholds) {
@@ -93,24 +99,19 @@ public class StatisticalCorefAlgorithm implements CorefAlgorithm {
                 throw new RuntimeInterruptedException();
             }
 
-            Map<Pair<Integer, Integer>, Boolean> pairs = new HashMap<>();
-
-            for (Map.Entry<Integer, List<Integer>> e : CorefUtils.heuristicFilter(
-                CorefUtils.getSortedMentions(document),
-                maxMentionDistance, maxMentionDistanceWithStringMatch).entrySet()) {
-                for (int m1 : e.getValue()) {
-                    pairs.put(new Pair<>(m1, e.getKey()), true);
-                }
-            }
+            CandidatePairs pairs = CandidatePairs.windowed(CorefUtils.getSortedMentions(document),
+                maxMentionDistance, maxMentionDistanceWithStringMatch);
 
             DocumentExamples examples = extractor.extract(0, document, pairs, compressor);
+            double[] scores = classifier.predict(examples.examples, examples.mentionFeatures, compressor, pool);
             Counter<Pair<Integer, Integer>> pairwiseScores = new ClassicCounter<>();
-            for (Example mentionPair : examples.examples) {
+            for (int i = 0; i < scores.length; i++) {
                 if (Thread.interrupted()) {  // Allow interrupting
                     throw new RuntimeInterruptedException();
                 }
+                Example mentionPair = examples.examples.get(i);
                 pairwiseScores.incrementCount(new Pair<>(mentionPair.mentionId1, mentionPair.mentionId2),
-                    classifier.predict(mentionPair, examples.mentionFeatures, compressor));
+                    scores[i]);
             }
 
             List<Pair<Integer, Integer>> mentionPairs = new ArrayList<>(pairwiseScores.keySet());
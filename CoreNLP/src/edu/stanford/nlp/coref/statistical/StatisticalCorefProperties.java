@@ -58,6 +58,19 @@ public class StatisticalCorefProperties {
     return new double[] {threshold, threshold, threshold, threshold};
   }
 
+  /** The number of threads that score the mention pairs of a document; one scores them on the calling thread */
+  public static int threads(Properties props) {
+    return PropertiesUtils.getInt(props, "coref.statistical.threads", 1);
+  }
+
+  /**
+   * How many of the closest preceding mentions the clustering algorithm scores as candidate
+   * antecedents, besides those with a matching content word; by default every preceding mention
+   */
+  public static int clusteringMaxMentionDistance(Properties props) {
+    return PropertiesUtils.getInt(props, "coref.statistical.clusteringMaxMentionDistance", Integer.MAX_VALUE);
+  }
+
   public static double minClassImbalance(Properties props) {
     return PropertiesUtils.getDouble(props, "coref.statistical.minClassImbalance", 0);
   }
@@ -12,6 +12,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 import edu.stanford.nlp.io.IOUtils;
@@ -29,6 +31,7 @@ import edu.stanford.nlp.util.ErasureUtils;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.concurrent.SharedForkJoinPools;
 import edu.stanford.nlp.util.logging.Redwood;
 
 
@@ -50,6 +53,9 @@ import edu.stanford.nlp.util.logging.Redwood;
  * <p>
  * ms 2009: removed all NER functionality (see NERClassifierCombiner), changed code so it
  * accepts an arbitrary number of base classifiers, removed dead code.
+ * <p>
+ * With {@code ner.parallelClassifiers} set to true, the base classifiers after the first
+ * classify each sentence at the same time as the first one, provided they are CRFs.
  *
  * @author Chris Cox
  * @author Mihai Surdeanu
@@ -75,6 +81,10 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
   private static final String COMBINATION_MODE_PROPERTY = "ner.combinationMode";
   private final CombinationMode combinationMode;
 
+  private static final String PARALLEL_CLASSIFIERS_PROPERTY = "ner.parallelClassifiers";
+  /** Runs the base classifiers after the first, shared with other combiners, or null if they run one after another */
+  private final ForkJoinPool pool;
+
   // keep track of properties used to initialize
   private  Properties initProps;
   // keep track of paths used to load CRFs
@@ -123,6 +133,7 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
       paths.add(DefaultPaths.DEFAULT_NER_MUC_MODEL);
       loadClassifiers(p, paths);
     }
+    this.pool = makePool(p, baseClassifiers);
     this.initLoadPaths = new ArrayList<>(paths);
     this.initProps = p;
   }
@@ -140,6 +151,7 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
     this.combinationMode = combinationMode;
     List<String> paths = new ArrayList<>(Arrays.asList(loadPaths));
     loadClassifiers(props, paths);
+    this.pool = makePool(props, baseClassifiers);
     this.initLoadPaths = new ArrayList<>(paths);
     this.initProps = props;
   }
@@ -175,6 +187,7 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
     this.combinationMode = DEFAULT_COMBINATION_MODE;
     baseClassifiers = new ArrayList<>(Arrays.asList(classifiers));
     flags.backgroundSymbol = baseClassifiers.get(0).flags.backgroundSymbol;
+    this.pool = null;
     this.initProps = new Properties();
   }
 
@@ -228,6 +241,20 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
         }
       }
     }
+    this.pool = makePool(initProps, baseClassifiers);
+  }
+
+  /**
+   * The pool for all but one of the base classifiers, if {@code ner.parallelClassifiers} is true and there are several.
+   * This is the {@link SharedForkJoinPools} pool with a thread for each of them (but at least 2, since the shared
+   * pools start at 2 threads), which every combiner with as many base classifiers shares, and which only
+   * classifiers or annotators that ask for that many threads run on, unlike the common pool.
+   */
+  private static ForkJoinPool makePool(Properties props, List<? extends AbstractSequenceClassifier<?>> baseClassifiers) {
+    if (PropertiesUtils.getBool(props, PARALLEL_CLASSIFIERS_PROPERTY, false) && baseClassifiers.size() > 1) {
+      return SharedForkJoinPools.get(Math.max(2, baseClassifiers.size() - 1));
+    }
+    return null;
   }
 
   /**
@@ -460,8 +487,26 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
     }
     List<List<IN>> baseOutputs = new ArrayList<>();
 
+    // the other base models classify their own copies of the tokens while the first one does,
+    // and the tokens are only changed once they have all finished
+    List<IN> output;
+    List<List<IN>> otherOutputs = null;
+    if (pool != null && canClassifyInParallel()) {
+      List<ForkJoinTask<List<IN>>> tasks = new ArrayList<>();
+      for (int i = 1, sz = baseClassifiers.size(); i < sz; i++) {
+        AbstractSequenceClassifier<IN> classifier = baseClassifiers.get(i);
+        tasks.add(pool.submit(() -> classifier.classifySentence(tokens)));
+      }
+      output = baseClassifiers.get(0).classifySentence(tokens);
+      otherOutputs = new ArrayList<>();
+      for (ForkJoinTask<List<IN>> task : tasks) {
+        otherOutputs.add(task.join());
+      }
+    } else {
+      output = baseClassifiers.get(0).classifySentence(tokens);
+    }
+
     // the first base model works in place, modifying the original tokens
-    List<IN> output = baseClassifiers.get(0).classifySentence(tokens);
     // classify(List<IN>) is supposed to work in place, so add AnswerAnnotation to tokens!
     for (int i = 0, sz = output.size(); i < sz; i++) {
       tokens.get(i).set(CoreAnnotations.AnswerAnnotation.class, output.get(i).get(CoreAnnotations.AnswerAnnotation.class));
@@ -473,7 +518,7 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
       //List<CoreLabel> copy = deepCopy(tokens);
       // no need for deep copy: classifySentence creates a copy of the input anyway
       // List<CoreLabel> copy = tokens;
-      output = baseClassifiers.get(i).classifySentence(tokens);
+      output = otherOutputs != null ? otherOutputs.get(i - 1) : baseClassifiers.get(i).classifySentence(tokens);
       baseOutputs.add(output);
     }
     assert(baseOutputs.size() == baseClassifiers.size());
@@ -482,6 +527,20 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
     return finalAnswer;
   }
 
+  /**
+   * Whether the base classifiers after the first give the same answers without the first one's
+   * answers on the tokens. A CRF always sets the answer and its probability on every token itself.
+   */
+  private boolean canClassifyInParallel() {
+    for (int i = 1, sz = baseClassifiers.size(); i < sz; i++) {
+      AbstractSequenceClassifier<IN> classifier = baseClassifiers.get(i);
+      if ( ! (classifier instanceof CRFClassifier) || classifier.flags.doGibbs) {
+        return false;
+      }
+    }
+    return true;
+  }
+
 
   @SuppressWarnings("unchecked")
   @Override
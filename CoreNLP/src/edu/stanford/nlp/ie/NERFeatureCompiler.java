@@ -0,0 +1,762 @@
+package edu.stanford.nlp.ie;
+
+import java.util.*;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.process.WordShapeClassifier;
+import edu.stanford.nlp.sequences.FeatureFactory;
+import edu.stanford.nlp.sequences.SeqClassifierFlags;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.PaddedList;
+import edu.stanford.nlp.util.logging.Redwood;
+
+/**
+ * Computes the test time feature indices of a {@link NERFeatureFactory} for a linear chain CRF
+ * ({@code maxLeft=1}) without building the feature Strings: the same thing as looking up
+ * each String of {@code CRFClassifier.makeDatum} in the feature index, for the feature templates
+ * that the distributed English models use (see {@link #supports} and {@link #compilesAll}).
+ * <br>
+ * The word, shape and distsim class of each token are given an id once per document. A feature
+ * is then found by its template and the ids it joins, in a table that remembers from one
+ * document to the next the feature's index and the hash code of its String. The String is built
+ * and looked up in the feature index only the first time.
+ * <br>
+ * The features of a clique come out of a {@link HashSet}, and the CRF adds up their weights in
+ * that order, so to give exactly the same scores the indices are put in the order that a
+ * {@code HashSet} of the Strings iterates in, which follows from the hash codes and the order
+ * they were added in. A clique where that order isn't simple (a bucket with 9 or more Strings,
+ * which the {@code HashSet} turns into a tree, or two features with the same hash code) builds
+ * its Strings and a real {@code HashSet} instead. The class checks once that the set of
+ * {@link NERFeatureFactory#newCliqueFeatureSet} orders Strings as expected, and compiles nothing
+ * if it doesn't. Since the order also depends on the order that {@link NERFeatureFactory} adds
+ * the features in, which this class follows, {@code CRFClassifier} also checks the first
+ * documents it compiles for a model against their feature Strings.
+ * <br>
+ * The tables are not thread safe, so each thread needs its own compiler.
+ */
+public class NERFeatureCompiler<IN extends CoreLabel> {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(NERFeatureCompiler.class);
+
+  /** Whether a HashSet of Strings iterates in the order {@link #hashSetOrder} gives */
+  private static final boolean HASH_SET_ORDER = checkHashSetOrder();
+
+  /** Clear the tables before a document when they have grown this big */
+  private static final int MAX_ENTRIES = 1 << 20;
+  private static final int MAX_ATTRIBUTES = 1 << 20;
+
+  private static final int NONE = -1;
+
+  /**
+   * The text before, between and after the attributes of each template, with the clique suffix.
+   * A feature String is {@code pieces[0] + a + pieces[1] + b + ...}.
+   */
+  private static final String[][] TEMPLATES = {
+      {"", "|C"},
+      {"", "-DISTSIM|C"},
+      {"", "-WORD|C"},
+      {"", "-PW|C"},
+      {"", "-PDISTSIM|C"},
+      {"", "-NW|C"},
+      {"", "-NDISTSIM|C"},
+      {"", "-TYPE|C"},
+      {"", "-PTYPE|C"},
+      {"", "-NTYPE|C"},
+      {"", "...", "-PW_CTYPE|C"},
+      {"", "...", "-NW_CTYPE|C"},
+      {"", "...", "-PCTYPE|C"},
+      {"", "...", "-CNTYPE|C"},
+      {"", "...", "...", "-PCNTYPE|C"},
+      {"", "...", "-PPW_CTYPE|C"},
+      {"", "...", "-NNW_CTYPE|C"},
+      {"", "-DISJN|C"},
+      {"", "-DISJP|C"},
+      {"", "|CpC"},
+      {"", "-PSEQW|CpC"},
+      {"", "-", "-PSEQW2|CpC"},
+      {"", "-PSEQpW|CpC"},
+      {"", "-PSEQpDS|CpC"},
+      {"", "-PSEQcDS|CpC"},
+      {"", "-", "-PSEQpcDS|CpC"},
+      {"", "-PSEQpS|CpC"},
+      {"", "-PSEQcS|CpC"},
+      {"", "-", "-PSEQpcS|CpC"},
+      {"", "-", "-TYPES|CpC"},
+      {"", "-TPS2|CpC"},
+      {"", "-TNS1|CpC"},
+  };
+
+  /** A constant feature, an n-gram or an occurrence pattern of the C clique */
+  private static final int C = 0;
+  private static final int DISTSIM = 1;
+  private static final int WORD = 2;
+  private static final int PW = 3;
+  private static final int PDISTSIM = 4;
+  private static final int NW = 5;
+  private static final int NDISTSIM = 6;
+  private static final int TYPE = 7;
+  private static final int PTYPE = 8;
+  private static final int NTYPE = 9;
+  private static final int PW_CTYPE = 10;
+  private static final int NW_CTYPE = 11;
+  private static final int PCTYPE = 12;
+  private static final int CNTYPE = 13;
+  private static final int PCNTYPE = 14;
+  private static final int PPW_CTYPE = 15;
+  private static final int NNW_CTYPE = 16;
+  private static final int DISJN = 17;
+  private static final int DISJP = 18;
+  /** A constant feature of the CpC clique */
+  private static final int CPC = 19;
+  private static final int PSEQW = 20;
+  private static final int PSEQW2 = 21;
+  private static final int PSEQPW = 22;
+  private static final int PSEQPDS = 23;
+  private static final int PSEQCDS = 24;
+  private static final int PSEQPCDS = 25;
+  private static final int PSEQPS = 26;
+  private static final int PSEQCS = 27;
+  private static final int PSEQPCS = 28;
+  private static final int TYPES = 29;
+  private static final int TPS2 = 30;
+  private static final int TNS1 = 31;
+
+  private static final String NO_OCCURRENCE_PATTERN = "NO-OCCURRENCE-PATTERN";
+
+  /** The attributes of the C template other than n-grams: the title and class features and the occurrence patterns */
+  private static final Set<String> C_CONSTANTS = Generics.newHashSet(Arrays.asList("IS_TITLE", "###", NO_OCCURRENCE_PATTERN,
+      "XY-NEXT-OCCURRENCE-XY", "XY-NEXT-OCCURRENCE-Y", "XY-PREV-OCCURRENCE-XY", "XY-PREV-OCCURRENCE-Y",
+      "X-NEXT-OCCURRENCE-YX", "X-NEXT-OCCURRENCE-XY", "X-NEXT-OCCURRENCE-X",
+      "X-PREV-OCCURRENCE-YX", "X-PREV-OCCURRENCE-XY", "X-PREV-OCCURRENCE-X"));
+
+  private final NERFeatureFactory<IN> factory;
+  private final SeqClassifierFlags flags;
+  private final IN pad;
+  private boolean shapes;
+
+  /** The feature index that {@link #entryFeatures} are from */
+  private Index<String> featureIndex;
+
+  /** Words, shapes, distsim classes and the text of constant features, by id */
+  private final Map<String, Integer> attributeIds = Generics.newHashMap();
+  private final List<String> attributes = new ArrayList<>();
+  /** The id of the word that the features use, by the token's text */
+  private final Map<String, Integer> wordIds = Generics.newHashMap();
+  /** For a word id, the entries of its n-grams, or null if not yet seen */
+  private int[][] nGramEntries = new int[0][];
+  /** For a word id, 1 if it is a title, 2 if not, or 0 if not yet seen */
+  private byte[] titles = new byte[0];
+  private int titleId;
+  private int classFeatureId;
+  private int pseqId;
+
+  /** Open addressing table from the template and attribute ids of a feature to its entry */
+  private int[] keys;
+  /** For each slot of {@link #keys}, one more than its entry, or 0 if empty */
+  private int[] slots;
+  private int numEntries;
+  private int[] entryKeys;
+  private int[] entryHashes;
+  private int[] entryFeatures;
+  /** The last {@link #stamp} that added each entry to the current clique */
+  private int[] entrySeen;
+  private int stamp;
+
+  /** The entries added to the current clique, in order, and which of them are distinct */
+  private int[] added = new int[64];
+  private int numAdded;
+  private int[] distinct = new int[64];
+  private int[] distinctHashes = new int[64];
+  private int[] order = new int[64];
+  private long[] orderScratch = new long[64];
+
+  /** The attribute ids of the current document's tokens, with those of the padding at index n */
+  private int n;
+  private int[] words = new int[0];
+  private int[] shapeStrings = new int[0];
+  private int[] shapeValues = new int[0];
+  private int[] distSims = new int[0];
+  private int[] distSimStrings = new int[0];
+  private boolean[] nnps = new boolean[0];
+
+  public NERFeatureCompiler(NERFeatureFactory<IN> factory, SeqClassifierFlags flags, IN pad) {
+    this.factory = factory;
+    this.flags = flags;
+    this.pad = pad;
+    clear();
+  }
+
+  /** Whether this compiles the features of this feature factory, padded with this token */
+  public boolean isFor(NERFeatureFactory<?> factory, CoreLabel pad) {
+    return factory == this.factory && pad == this.pad;
+  }
+
+  /**
+   * Whether the features of a CRF with these flags and feature factories can be compiled. Only
+   * the features that are switched on in the distributed English models (3, 4 and 7 class, with
+   * or without distsim) are compiled, and every other feature that the C and CpC cliques of
+   * {@link NERFeatureFactory} have must be off: a String feature that isn't in the feature index
+   * still changes the order that the HashSet of its clique iterates in.
+   */
+  public static boolean supports(SeqClassifierFlags flags, List<? extends FeatureFactory<?>> featureFactories, int windowSize) {
+    if ( ! HASH_SET_ORDER || windowSize != 2 || featureFactories.size() != 1 ||
+        featureFactories.get(0).getClass() != NERFeatureFactory.class) {
+      return false;
+    }
+    return flags.useInternal && flags.useExternal && ! flags.useReverse && ! flags.useEmbedding &&
+        flags.printFeatures == null && ! flags.useNextSequences &&
+        flags.slashHyphenTreatment == SeqClassifierFlags.SlashHyphenEnum.NONE &&
+        flags.binnedLengths == null && (flags.splitWordRegex == null || flags.splitWordRegex.isEmpty()) &&
+        ! (flags.useBagOfWords || flags.useMoreTags || flags.use2W || flags.useLC || flags.useUnknown ||
+           flags.useLemmas || flags.usePrevNextLemmas || flags.checkNameList || flags.useABGENE ||
+           flags.useABSTRFreqDict || flags.useABSTR || flags.useGENIA || flags.useWEBFreqDict || flags.useWEB ||
+           flags.useIsURL || flags.useEntityRule || flags.useEntityTypes || flags.useIsDateRange ||
+           flags.useABSTRFreq || flags.useFREQ || flags.usePosition || flags.useBeginSent || flags.useTags ||
+           flags.useOrdinal || flags.useEitherSideWord || flags.useWordPairs || flags.useSymTags ||
+           flags.useSymWordPairs || flags.useGazFeatures || flags.useMoreGazFeatures || flags.useAbbr ||
+           flags.useAbbr1 || flags.useMinimalAbbr || flags.useMinimalAbbr1 || flags.useChunks ||
+           flags.usePrevVB || flags.useNextVB || flags.useVB || flags.useShapeConjunctions ||
+           flags.useWordTag || flags.useNPHead || flags.useNPGovernor || flags.useHeadGov ||
+           flags.useFirstWord || flags.conjoinShapeNGrams || flags.useGazettes ||
+           flags.useDisjunctiveShapeInteraction || flags.useUndirectedDisjunctive ||
+           flags.useWideDisjunctive || flags.useEitherSideDisjunctive || flags.useDisjShape ||
+           flags.useExtraTaggySequences || flags.useMUCFeatures || flags.twoStage || flags.useIfInteger ||
+           flags.useGenericFeatures || flags.useTopics || flags.useWordnetFeatures || flags.useProtoFeatures ||
+           flags.usePhraseWordTags || flags.usePhraseWords || flags.useCommonWordsFeature || flags.useRadical ||
+           flags.useMoreNeighborNGrams || flags.noEdgeFeature || flags.transitionEdgeOnly ||
+           flags.useNeighborNGrams || flags.useChunkySequences || flags.useTypeSeqs3 ||
+           flags.useYetMoreCpCShapes || flags.useTaggySequences || flags.useParenMatching ||
+           flags.useEntityTypeSequences || flags.useURLSequences);
+  }
+
+  /**
+   * Whether every feature in this feature index is one that a compiler makes. Features that are
+   * not in the index add nothing to the scores, so the compiled features of a model whose features
+   * all pass are the String features.
+   */
+  public static boolean compilesAll(Index<String> featureIndex) {
+    for (String feature : featureIndex) {
+      if ( ! compiles(feature)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether a feature String is one of {@link #TEMPLATES} */
+  private static boolean compiles(String feature) {
+    for (int template = 0; template < TEMPLATES.length; template++) {
+      if (template != C && template != CPC && feature.endsWith(TEMPLATES[template][TEMPLATES[template].length - 1])) {
+        return true;
+      }
+    }
+    if (feature.endsWith("|C")) {
+      String attribute = feature.substring(0, feature.length() - 2);
+      // a letter n-gram, or a constant
+      return attribute.length() >= 2 && attribute.charAt(0) == '#' && attribute.charAt(attribute.length() - 1) == '#' ||
+          C_CONSTANTS.contains(attribute);
+    }
+    return feature.equals("PSEQ|CpC");
+  }
+
+  private void clear() {
+    attributeIds.clear();
+    attributes.clear();
+    wordIds.clear();
+    nGramEntries = new int[64][];
+    titles = new byte[64];
+    keys = new int[4 * 1024];
+    slots = new int[1024];
+    numEntries = 0;
+    entryKeys = new int[4 * 512];
+    entryHashes = new int[512];
+    entryFeatures = new int[512];
+    entrySeen = new int[512];
+    stamp = 0;
+    titleId = attribute("IS_TITLE");
+    classFeatureId = attribute("###");
+    pseqId = attribute("PSEQ");
+  }
+
+  private int attribute(String s) {
+    Integer id = attributeIds.get(s);
+    if (id == null) {
+      id = attributes.size();
+      attributeIds.put(s, id);
+      attributes.add(s);
+    }
+    return id;
+  }
+
+  /**
+   * The feature indices of a document, as {@code CRFClassifier.documentToDataAndLabels}
+   * gives them, or null if this document needs the String features.
+   */
+  public int[][][] documentToData(List<IN> document, Index<String> featureIndex) {
+    if (featureIndex != this.featureIndex || numEntries > MAX_ENTRIES || attributes.size() > MAX_ATTRIBUTES) {
+      this.featureIndex = featureIndex;
+      clear();
+    }
+    shapes = flags.wordShape > WordShapeClassifier.NOWORDSHAPE || flags.useShapeStrings;
+    n = document.size();
+    if (n > 0 && document.get(0).get(CoreAnnotations.DomainAnnotation.class) != null) {
+      return null;
+    }
+    for (IN token : document) {
+      if (token.get(CoreAnnotations.StackedNamedEntityTagAnnotation.class) != null) {
+        return null;
+      }
+    }
+    if (flags.useDistSim && n > 0) {
+      factory.distSimAnnotate(new PaddedList<>(document, pad));
+    }
+
+    if (words.length < n + 1) {
+      int size = Math.max(2 * words.length, n + 1);
+      words = new int[size];
+      shapeStrings = new int[size];
+      shapeValues = new int[size];
+      distSims = new int[size];
+      distSimStrings = new int[size];
+      nnps = new boolean[size];
+    }
+    for (int i = 0; i <= n; i++) {
+      CoreLabel token = i < n ? document.get(i) : pad;
+      String text = token.getString(CoreAnnotations.TextAnnotation.class);
+      Integer word = wordIds.get(text);
+      if (word == null) {
+        word = attribute(factory.featureWord(token));
+        wordIds.put(text, word);
+      }
+      words[i] = word;
+      shapeStrings[i] = attribute(token.getString(CoreAnnotations.ShapeAnnotation.class));
+      shapeValues[i] = attribute(String.valueOf(token.get(CoreAnnotations.ShapeAnnotation.class)));
+      distSims[i] = attribute(String.valueOf(token.get(CoreAnnotations.DistSimAnnotation.class)));
+      distSimStrings[i] = attribute(token.getString(CoreAnnotations.DistSimAnnotation.class));
+      nnps[i] = token.getString(CoreAnnotations.PartOfSpeechAnnotation.class).equals("NNP");
+    }
+
+    int[][][] data = new int[n][2][];
+    for (int loc = 0; loc < n; loc++) {
+      data[loc][0] = featuresC(loc);
+      data[loc][1] = featuresCpC(loc);
+    }
+    return data;
+  }
+
+  /** The index of a position in the attribute arrays, where the padding is at {@link #n} */
+  private int at(int i) {
+    return i >= 0 && i < n ? i : n;
+  }
+
+  /** As {@link NERFeatureFactory#featuresC} */
+  private int[] featuresC(int loc) {
+    int c = at(loc);
+    int p = at(loc - 1);
+    int nx = at(loc + 1);
+    startClique();
+    if (flags.useDistSim) {
+      add(DISTSIM, distSims[c], NONE, NONE);
+    }
+    if ((flags.useTitle || flags.useTitle2) && isTitle(words[c])) {
+      add(C, titleId, NONE, NONE);
+    }
+    if (flags.useWord) {
+      add(WORD, words[c], NONE, NONE);
+    }
+    if (flags.usePrev) {
+      add(PW, words[p], NONE, NONE);
+      if (flags.useDistSim) {
+        add(PDISTSIM, distSims[p], NONE, NONE);
+      }
+    }
+    if (flags.useNext) {
+      add(NW, words[nx], NONE, NONE);
+      if (flags.useDistSim) {
+        add(NDISTSIM, distSims[nx], NONE, NONE);
+      }
+    }
+    if (flags.useClassFeature) {
+      add(C, classFeatureId, NONE, NONE);
+    }
+    if (flags.useNGrams) {
+      for (int entry : nGrams(words[c])) {
+        addEntry(entry);
+      }
+    }
+    if (shapes) {
+      add(TYPE, shapeStrings[c], NONE, NONE);
+      if (flags.useTypeSeqs) {
+        add(PTYPE, shapeStrings[p], NONE, NONE);
+        add(NTYPE, shapeStrings[nx], NONE, NONE);
+        add(PW_CTYPE, words[p], shapeStrings[c], NONE);
+        add(NW_CTYPE, shapeStrings[c], words[nx], NONE);
+        add(PCTYPE, shapeStrings[p], shapeStrings[c], NONE);
+        add(CNTYPE, shapeStrings[c], shapeStrings[nx], NONE);
+        add(PCNTYPE, shapeStrings[p], shapeStrings[c], shapeStrings[nx]);
+      }
+    }
+    if (flags.useLastRealWord && attributes.get(words[p]).length() <= 3) {
+      add(PPW_CTYPE, words[at(loc - 2)], shapeStrings[c], NONE);
+    }
+    if (flags.useNextRealWord && attributes.get(words[nx]).length() <= 3) {
+      add(NNW_CTYPE, words[at(loc + 2)], shapeStrings[c], NONE);
+    }
+    if (flags.useOccurrencePatterns) {
+      for (String pattern : occurrencePatterns(loc)) {
+        add(C, attribute(pattern), NONE, NONE);
+      }
+    }
+    if (flags.useDisjunctive) {
+      for (int i = 1; i <= flags.disjunctionWidth; i++) {
+        add(DISJN, words[at(loc + i)], NONE, NONE);
+        add(DISJP, words[at(loc - i)], NONE, NONE);
+      }
+    }
+    return endClique();
+  }
+
+  /** As {@link NERFeatureFactory#featuresCpC}; {@code featuresCnC} has no features without {@code useNextSequences} */
+  private int[] featuresCpC(int loc) {
+    int c = at(loc);
+    int p = at(loc - 1);
+    int nx = at(loc + 1);
+    startClique();
+    if (flags.usePrev && flags.useSequences && flags.usePrevSequences) {
+      add(CPC, pseqId, NONE, NONE);
+      add(PSEQW, words[c], NONE, NONE);
+      if ( ! flags.strictGoodCoNLL) {
+        add(PSEQW2, words[p], words[c], NONE);
+        add(PSEQPW, words[p], NONE, NONE);
+      }
+      if (flags.useDistSim) {
+        add(PSEQPDS, distSimStrings[p], NONE, NONE);
+        add(PSEQCDS, distSimStrings[c], NONE, NONE);
+        add(PSEQPCDS, distSimStrings[p], distSimStrings[c], NONE);
+      }
+      if (shapes) {
+        if ( ! flags.strictGoodCoNLL) {
+          add(PSEQPS, shapeStrings[p], NONE, NONE);
+          add(PSEQCS, shapeStrings[c], NONE, NONE);
+        }
+        if (flags.strictGoodCoNLL && ! flags.removeStrictGoodCoNLLDuplicates) {
+          add(PSEQPCS, shapeStrings[p], shapeStrings[c], NONE);
+        }
+      }
+    }
+    if (shapes && flags.useTypeSeqs && flags.useTypeSeqs2) {
+      add(TYPES, shapeStrings[p], shapeStrings[c], NONE);
+    }
+    if (flags.useTypeySequences) {
+      add(TPS2, shapeStrings[c], NONE, NONE);
+      add(TNS1, shapeValues[nx], NONE, NONE);
+    }
+    return endClique();
+  }
+
+  private boolean isTitle(int word) {
+    if (word >= titles.length) {
+      titles = Arrays.copyOf(titles, Math.max(2 * titles.length, word + 1));
+    }
+    if (titles[word] == 0) {
+      titles[word] = factory.isTitle(attributes.get(word)) ? (byte) 1 : (byte) 2;
+    }
+    return titles[word] == 1;
+  }
+
+  private int[] nGrams(int word) {
+    if (word >= nGramEntries.length) {
+      nGramEntries = Arrays.copyOf(nGramEntries, Math.max(2 * nGramEntries.length, word + 1));
+    }
+    int[] entries = nGramEntries[word];
+    if (entries == null) {
+      Collection<String> subs = factory.nGrams(attributes.get(word));
+      entries = new int[subs.size()];
+      int i = 0;
+      for (String sub : subs) {
+        entries[i++] = entry(C, attribute(sub), NONE, NONE);
+      }
+      nGramEntries[word] = entries;
+    }
+    return entries;
+  }
+
+  /**
+   * As {@code NERFeatureFactory.occurrencePatterns} without {@code useReverse}, comparing
+   * word ids. The patterns go through a HashSet, as there, to come out in the same order.
+   */
+  private Collection<String> occurrencePatterns(int loc) {
+    int word = words[at(loc)];
+    int nWord = words[at(loc + 1)];
+    int pWord = words[at(loc - 1)];
+    String wordString = attributes.get(word);
+    String nWordString = attributes.get(nWord);
+    String pWordString = attributes.get(pWord);
+    if ( ! (NERFeatureFactory.isNameCase(wordString) && NERFeatureFactory.noUpperCase(nWordString) &&
+        NERFeatureFactory.hasLetter(nWordString) && NERFeatureFactory.hasLetter(pWordString) && loc > 0)) {
+      return Collections.singletonList(NO_OCCURRENCE_PATTERN);
+    }
+    Set<String> l = Generics.newHashSet();
+    if (NERFeatureFactory.isNameCase(pWordString) && nnps[at(loc - 1)]) {
+      for (int jump = 3; jump < 150; jump++) {
+        if (words[at(loc + jump)] == word) {
+          l.add(words[at(loc + jump - 1)] == pWord ? "XY-NEXT-OCCURRENCE-XY" : "XY-NEXT-OCCURRENCE-Y");
+        }
+      }
+      for (int jump = -3; jump > -150; jump--) {
+        if (words[at(loc + jump)] == word) {
+          l.add(words[at(loc + jump - 1)] == pWord ? "XY-PREV-OCCURRENCE-XY" : "XY-PREV-OCCURRENCE-Y");
+        }
+      }
+    } else {
+      for (int jump = 3; jump < 150; jump++) {
+        if (words[at(loc + jump)] == word) {
+          if (isNameCaseNNP(loc + jump - 1)) {
+            l.add("X-NEXT-OCCURRENCE-YX");
+          } else if (isNameCaseNNP(loc + jump + 1)) {
+            l.add("X-NEXT-OCCURRENCE-XY");
+          } else {
+            l.add("X-NEXT-OCCURRENCE-X");
+          }
+        }
+      }
+      for (int jump = -3; jump > -150; jump--) {
+        if (words[at(loc + jump)] == word) {
+          if (isNameCaseNNP(loc + jump + 1)) {
+            l.add("X-PREV-OCCURRENCE-YX");
+          } else if (isNameCaseNNP(loc + jump - 1)) {
+            l.add("X-PREV-OCCURRENCE-XY");
+          } else {
+            l.add("X-PREV-OCCURRENCE-X");
+          }
+        }
+      }
+    }
+    return l;
+  }
+
+  private boolean isNameCaseNNP(int i) {
+    return NERFeatureFactory.isNameCase(attributes.get(words[at(i)])) && nnps[at(i)];
+  }
+
+  private void startClique() {
+    numAdded = 0;
+    stamp++;
+    if (stamp == Integer.MAX_VALUE) {
+      Arrays.fill(entrySeen, 0);
+      stamp = 1;
+    }
+  }
+
+  private void add(int template, int a, int b, int c) {
+    addEntry(entry(template, a, b, c));
+  }
+
+  private void addEntry(int entry) {
+    if (numAdded == added.length) {
+      added = Arrays.copyOf(added, 2 * added.length);
+    }
+    added[numAdded++] = entry;
+  }
+
+  /** The feature indices of the entries added since {@link #startClique}, in the order of a HashSet of their Strings */
+  private int[] endClique() {
+    int numDistinct = 0;
+    if (distinct.length < numAdded) {
+      int size = Math.max(2 * distinct.length, numAdded);
+      distinct = new int[size];
+      distinctHashes = new int[size];
+      order = new int[size];
+      orderScratch = new long[size];
+    }
+    for (int i = 0; i < numAdded; i++) {
+      int entry = added[i];
+      if (entrySeen[entry] != stamp) {
+        entrySeen[entry] = stamp;
+        distinct[numDistinct] = entry;
+        distinctHashes[numDistinct] = entryHashes[entry];
+        numDistinct++;
+      }
+    }
+
+    int[] features;
+    if (hashSetOrder(distinctHashes, numDistinct, order, orderScratch)) {
+      int numFeatures = 0;
+      for (int i = 0; i < numDistinct; i++) {
+        if (entryFeatures[distinct[order[i]]] >= 0) {
+          numFeatures++;
+        }
+      }
+      features = new int[numFeatures];
+      int m = 0;
+      for (int i = 0; i < numDistinct; i++) {
+        int feature = entryFeatures[distinct[order[i]]];
+        if (feature >= 0) {
+          features[m++] = feature;
+        }
+      }
+    } else {
+      Set<String> strings = NERFeatureFactory.newCliqueFeatureSet();
+      for (int i = 0; i < numAdded; i++) {
+        strings.add(entryString(added[i]));
+      }
+      int[] f = new int[strings.size()];
+      int m = 0;
+      for (String s : strings) {
+        int index = featureIndex.indexOf(s);
+        if (index >= 0) {
+          f[m++] = index;
+        }
+      }
+      features = m == f.length ? f : Arrays.copyOf(f, m);
+    }
+    return features;
+  }
+
+  /** The entry of a feature, adding it if it is new */
+  private int entry(int template, int a, int b, int c) {
+    int mask = slots.length - 1;
+    int i = index(template, a, b, c) & mask;
+    while (slots[i] != 0) {
+      int k = 4 * i;
+      if (keys[k] == template && keys[k + 1] == a && keys[k + 2] == b && keys[k + 3] == c) {
+        return slots[i] - 1;
+      }
+      i = (i + 1) & mask;
+    }
+
+    int entry = numEntries++;
+    if (entry == entryHashes.length) {
+      int size = 2 * entryHashes.length;
+      entryKeys = Arrays.copyOf(entryKeys, 4 * size);
+      entryHashes = Arrays.copyOf(entryHashes, size);
+      entryFeatures = Arrays.copyOf(entryFeatures, size);
+      entrySeen = Arrays.copyOf(entrySeen, size);
+    }
+    int k = 4 * entry;
+    entryKeys[k] = template;
+    entryKeys[k + 1] = a;
+    entryKeys[k + 2] = b;
+    entryKeys[k + 3] = c;
+    String s = entryString(entry);
+    entryHashes[entry] = s.hashCode();
+    entryFeatures[entry] = featureIndex.indexOf(s);
+
+    k = 4 * i;
+    keys[k] = template;
+    keys[k + 1] = a;
+    keys[k + 2] = b;
+    keys[k + 3] = c;
+    slots[i] = entry + 1;
+    if (numEntries > slots.length / 2) {
+      growSlots();
+    }
+    return entry;
+  }
+
+  private String entryString(int entry) {
+    int k = 4 * entry;
+    String[] pieces = TEMPLATES[entryKeys[k]];
+    StringBuilder sb = new StringBuilder(pieces[0]);
+    for (int j = 1; j < pieces.length; j++) {
+      sb.append(attributes.get(entryKeys[k + j])).append(pieces[j]);
+    }
+    return sb.toString();
+  }
+
+  private static int index(int template, int a, int b, int c) {
+    int h = template;
+    h = h * 0x9E3779B1 + a;
+    h = h * 0x9E3779B1 + b;
+    h = h * 0x9E3779B1 + c;
+    return h ^ (h >>> 15);
+  }
+
+  private void growSlots() {
+    slots = new int[2 * slots.length];
+    keys = new int[4 * slots.length];
+    int mask = slots.length - 1;
+    for (int entry = 0; entry < numEntries; entry++) {
+      int k = 4 * entry;
+      int i = index(entryKeys[k], entryKeys[k + 1], entryKeys[k + 2], entryKeys[k + 3]) & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      System.arraycopy(entryKeys, k, keys, 4 * i, 4);
+      slots[i] = entry + 1;
+    }
+  }
+
+  /**
+   * Puts the indices of n keys, with these hash codes, in the order that a new
+   * {@link HashSet} that they were added to in order iterates in: by bucket, with the table
+   * grown at the default load factor, and then in the order they were added.
+   *
+   * @return False if the order isn't that simple: if some bucket of the smallest table holds
+   *     more than 8 keys, so that the HashSet may have grown early or made the bucket a tree,
+   *     or if two keys have the same hash code, and so may be equal
+   */
+  static boolean hashSetOrder(int[] hashCodes, int n, int[] order, long[] scratch) {
+    int capacity = 16;
+    while (n > capacity / 4 * 3) {
+      capacity <<= 1;
+    }
+    int[] smallest = new int[16];
+    for (int i = 0; i < n; i++) {
+      int h = hashCodes[i] ^ (hashCodes[i] >>> 16);
+      if (++smallest[h & 15] > 8) {
+        return false;
+      }
+      scratch[i] = ((long) (h & (capacity - 1)) << 32) | i;
+    }
+    Arrays.sort(scratch, 0, n);
+    for (int i = 0; i < n; i++) {
+      order[i] = (int) scratch[i];
+      // the keys of a bucket are next to each other, and there are at most 8 of them
+      for (int j = i - 1; j >= 0 && (scratch[j] >>> 32) == (scratch[i] >>> 32); j--) {
+        if (hashCodes[order[j]] == hashCodes[order[i]]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean checkHashSetOrder() {
+    if (NERFeatureFactory.newCliqueFeatureSet().getClass() != HashSet.class) {
+      log.warn("NERFeatureFactory does not collect features in a HashSet; NER features will not be compiled");
+      return false;
+    }
+    Random random = new Random(1);
+    for (int iter = 0; iter < 200; iter++) {
+      int size = 1 + random.nextInt(200);
+      List<String> strings = new ArrayList<>();
+      Set<String> set = NERFeatureFactory.newCliqueFeatureSet();
+      for (int i = 0; i < size; i++) {
+        String s = Integer.toString(random.nextInt(4 * size), 36) + "-X";
+        if (set.add(s)) {
+          strings.add(s);
+        }
+      }
+      int[] hashCodes = new int[strings.size()];
+      for (int i = 0; i < hashCodes.length; i++) {
+        hashCodes[i] = strings.get(i).hashCode();
+      }
+      int[] order = new int[hashCodes.length];
+      if (hashSetOrder(hashCodes, hashCodes.length, order, new long[hashCodes.length])) {
+        int i = 0;
+        for (String s : set) {
+          if ( ! s.equals(strings.get(order[i++]))) {
+            log.warn("HashSet iteration order is not as expected; NER features will not be compiled");
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+}
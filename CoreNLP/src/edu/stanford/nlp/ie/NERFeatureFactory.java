@@ -389,6 +389,17 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     }
   }
 
+  /**
+   * The set that {@link #getCliqueFeatures} collects the features of a clique in.
+   * {@link NERFeatureCompiler} computes the order that this set iterates in from the hash codes
+   * of the features and the order they are added in, so it checks its order with this method.
+   * Changing the kind of set or its initial capacity here, or the order the features are added
+   * in below, changes the order of the features, and with it the compiled features.
+   */
+  static Set<String> newCliqueFeatureSet() {
+    return Generics.newHashSet();
+  }
+
   /**
    * Extracts all the features from the input data at a certain index.
    *
@@ -397,7 +408,8 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
    */
   @Override
   public Collection<String> getCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique) {
-    Collection<String> features = Generics.newHashSet();
+    // NERFeatureCompiler depends on this exact set, and on the order the features are added to it
+    Collection<String> features = newCliqueFeatureSet();
     String domain = cInfo.get(0).get(CoreAnnotations.DomainAnnotation.class);
     final boolean doFE = domain != null;
 
@@ -514,7 +526,7 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     }
   }
 
-  private void distSimAnnotate(PaddedList<IN> info) {
+  void distSimAnnotate(PaddedList<IN> info) {
     for (CoreLabel fl : info) {
       if (fl.containsKey(CoreAnnotations.DistSimAnnotation.class)) { return; }
       String word = getWord(fl);
@@ -576,7 +588,7 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
 
   // cdm: this could be improved to handle more name types, such as
   // O'Reilly, DeGuzman, etc. (need a little classifier?!?)
-  private static boolean isNameCase(String str) {
+  static boolean isNameCase(String str) {
     if (str.length() < 2) {
       return false;
     }
@@ -591,7 +603,7 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     return true;
   }
 
-  private static boolean noUpperCase(String str) {
+  static boolean noUpperCase(String str) {
     if (str.length() < 1) {
       return false;
     }
@@ -603,7 +615,7 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     return true;
   }
 
-  private static boolean hasLetter(String str) {
+  static boolean hasLetter(String str) {
     if (str.length() < 1) {
       return false;
     }
@@ -773,6 +785,70 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
   }
 
 
+  /** Whether a word is a title, for the {@code useTitle} and {@code useTitle2} features */
+  boolean isTitle(String cWord) {
+    if (flags.useTitle) {
+      return titlePattern.matcher(cWord).matches();
+    } else if (flags.useTitle2) {
+      return titlePattern2.matcher(cWord).matches();
+    }
+    return false;
+  }
+
+  /** The letter n-gram features of a word, when {@code useInternal} and {@code useExternal} are both on */
+  Collection<String> nGrams(String cWord) {
+    Collection<String> subs = null;
+    if (flags.cacheNGrams) {
+      subs = wordToSubstrings.get(cWord);
+    }
+    if (subs == null) {
+      subs = new ArrayList<>();
+      String word = '<' + cWord + '>';
+      if (flags.lowercaseNGrams) {
+        word = word.toLowerCase();
+      }
+      if (flags.dehyphenateNGrams) {
+        word = dehyphenate(word);
+      }
+      if (flags.greekifyNGrams) {
+        word = greekify(word);
+      }
+      // minimum length substring is 2 letters (hardwired)
+      // hoist flags.noMidNGrams so only linear in word length for that case
+      if (flags.noMidNGrams) {
+        int max = flags.maxNGramLeng >= 0 ? Math.min(flags.maxNGramLeng, word.length()) :
+                                            word.length();
+        for (int j = 2; j <= max; j++) {
+          subs.add(intern('#' + word.substring(0, j) + '#'));
+        }
+        int start = flags.maxNGramLeng >= 0 ? Math.max(0, word.length() - flags.maxNGramLeng) :
+                                            0;
+        int lenM1 = word.length() - 1;
+        for (int i = start; i < lenM1; i++) {
+          subs.add(intern('#' + word.substring(i) + '#'));
+        }
+      } else {
+        for (int i = 0; i < word.length(); i++) {
+          for (int j = i + 2, max = Math.min(word.length(), i + flags.maxNGramLeng); j <= max; j++) {
+            if (flags.maxNGramLeng >= 0 && j - i > flags.maxNGramLeng) {
+              continue;
+            }
+            subs.add(intern('#' + word.substring(i, j) + '#'));
+          }
+        }
+      }
+      if (flags.cacheNGrams) {
+        wordToSubstrings.put(cWord, subs);
+      }
+    }
+    return subs;
+  }
+
+  /** The word of a token that the features use, which is {@link #getWord} */
+  String featureWord(CoreLabel label) {
+    return getWord(label);
+  }
+
   protected Collection<String> featuresC(PaddedList<IN> cInfo, int loc) {
     CoreLabel p3 = cInfo.get(loc - 3);
     CoreLabel p2 = cInfo.get(loc - 2);
@@ -810,17 +886,8 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     }
 
 
-    if (flags.useTitle) {
-      Matcher m = titlePattern.matcher(cWord);
-      if (m.matches()) {
-        featuresC.add("IS_TITLE");
-      }
-    }
-    else if (flags.useTitle2) {
-      Matcher m = titlePattern2.matcher(cWord);
-      if (m.matches()) {
-        featuresC.add("IS_TITLE");
-      }
+    if (isTitle(cWord)) {
+      featuresC.add("IS_TITLE");
     }
 
     if (flags.slashHyphenTreatment != SeqClassifierFlags.SlashHyphenEnum.NONE) {
@@ -1249,50 +1316,7 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
       }
 
       if (flags.useNGrams) {
-        Collection<String> subs = null;
-        if (flags.cacheNGrams) {
-          subs = wordToSubstrings.get(cWord);
-        }
-        if (subs == null) {
-          subs = new ArrayList<>();
-          String word = '<' + cWord + '>';
-          if (flags.lowercaseNGrams) {
-            word = word.toLowerCase();
-          }
-          if (flags.dehyphenateNGrams) {
-            word = dehyphenate(word);
-          }
-          if (flags.greekifyNGrams) {
-            word = greekify(word);
-          }
-          // minimum length substring is 2 letters (hardwired)
-          // hoist flags.noMidNGrams so only linear in word length for that case
-          if (flags.noMidNGrams) {
-            int max = flags.maxNGramLeng >= 0 ? Math.min(flags.maxNGramLeng, word.length()) :
-                                                word.length();
-            for (int j = 2; j <= max; j++) {
-              subs.add(intern('#' + word.substring(0, j) + '#'));
-            }
-            int start = flags.maxNGramLeng >= 0 ? Math.max(0, word.length() - flags.maxNGramLeng) :
-                                                0;
-            int lenM1 = word.length() - 1;
-            for (int i = start; i < lenM1; i++) {
-              subs.add(intern('#' + word.substring(i) + '#'));
-            }
-          } else {
-            for (int i = 0; i < word.length(); i++) {
-              for (int j = i + 2, max = Math.min(word.length(), i + flags.maxNGramLeng); j <= max; j++) {
-                if (flags.maxNGramLeng >= 0 && j - i > flags.maxNGramLeng) {
-                  continue;
-                }
-                subs.add(intern('#' + word.substring(i, j) + '#'));
-              }
-            }
-          }
-          if (flags.cacheNGrams) {
-            wordToSubstrings.put(cWord, subs);
-          }
-        }
+        Collection<String> subs = nGrams(cWord);
         featuresC.addAll(subs);
         if (flags.conjoinShapeNGrams) {
           for (String str : subs) {
@@ -56,6 +56,12 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN>
 
   public CRFBiasedClassifier(SeqClassifierFlags flags) {super(flags); }
 
+  /** The features of {@link #makeDatum} here include the bias features */
+  @Override
+  protected boolean canCompileFeatures() {
+    return false;
+  }
+
   @Override
   public CRFDatum<List<String>, CRFLabel> makeDatum(List<IN> info, int loc, List<FeatureFactory<IN>> featureFactories) {
 
@@ -92,6 +98,7 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN>
   }
 
   private void addBiasFeature() {
+    requireWeightsOnHeap("set a bias weight");
     if ( ! featureIndex.contains(BIAS)) {
       featureIndex.add(BIAS);
       double[][] newWeights = new double[weights.length+1][];
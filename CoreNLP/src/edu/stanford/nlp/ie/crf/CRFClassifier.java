@@ -28,6 +28,7 @@ package edu.stanford.nlp.ie.crf;
 
 import edu.stanford.nlp.ie.*;
 import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.MappedWeights;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
@@ -141,6 +142,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   /** Parameter weights of the classifier.  weights[featureIndex][labelIndex] */
   double[][] weights;
 
+  /** If not null, the weights are memory-mapped from a file rather than held in {@code weights}, which is null */
+  private MappedWeights mappedWeights;
+
   /** index the features of CRF */
   Index<String> featureIndex;
   /** caches the featureIndex */
@@ -167,6 +171,18 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   // Label dictionary for fast decoding
   private LabelDictionary labelDictionary;
 
+  /** Each thread's compiler of test time features, made when first needed; see {@link #compiledFeatures} */
+  private transient volatile ThreadLocal<NERFeatureCompiler<CoreLabel>> featureCompilers;
+  /** The feature index last checked with {@link NERFeatureCompiler#compilesAll}, and the answer */
+  private transient volatile Pair<Index<String>, Boolean> compiledFeatureIndex;
+  /** The tokens of the documents of {@link #compiledFeatureIndex} whose compiled features have been checked */
+  private transient volatile int checkedCompiledTokens;
+  /** The compiled features of documents are checked against their feature Strings until this many tokens match */
+  private static final int CHECK_COMPILED_TOKENS = 1000;
+
+  /** Each thread's decoder, made when first needed; see {@link #viterbiDecoder} */
+  private transient volatile ThreadLocal<CRFViterbiDecoder> viterbiDecoders;
+
   // List selftraindatums = new ArrayList();
 
   protected CRFClassifier() {
@@ -214,6 +230,13 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @return number of weights
    */
   public int getNumWeights() {
+    if (mappedWeights != null) {
+      int numWeights = 0;
+      for (int i = 0, numRows = mappedWeights.numRows(); i < numRows; i++) {
+        numWeights += mappedWeights.rowLength(i);
+      }
+      return numWeights;
+    }
     if (weights == null) return 0;
     int numWeights = 0;
     for (double[] wts : weights) {
@@ -264,6 +287,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param scale The scale to multiply by
    */
   public void scaleWeights(double scale) {
+    requireWeightsOnHeap("scale the weights");
     for (int i = 0; i < weights.length; i++) {
       for (int j = 0; j < weights[i].length; j++) {
         weights[i][j] *= scale;
@@ -280,6 +304,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param weight Amount to scale the other CRF's weights by
    */
   private void combineWeights(CRFClassifier<IN> crf, double weight) {
+    double[][] crfWeights = crf.weightsOnHeap();
     int numFeatures = featureIndex.size();
     int oldNumFeatures = weights.length;
 
@@ -322,21 +347,21 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     // Get original weight indices from other crf and weight them in
     // depending on the type of the feature, different number of weights is
     // associated with it
-    for (int i = 0; i < crf.weights.length; i++) {
+    for (int i = 0; i < crfWeights.length; i++) {
       String feature = crf.featureIndex.get(i);
       int newIndex = featureIndex.indexOf(feature);
       // Check weights are okay dimension
-      if (weights[newIndex].length < crf.weights[i].length) {
+      if (weights[newIndex].length < crfWeights[i].length) {
         throw new RuntimeException("Incompatible CRFClassifier: weight length mismatch for feature " + newIndex + ": "
             + featureIndex.get(newIndex) + " (also feature " + i + ": " + crf.featureIndex.get(i) + ") " + ", len1="
-            + weights[newIndex].length + ", len2=" + crf.weights[i].length);
+            + weights[newIndex].length + ", len2=" + crfWeights[i].length);
       }
       int featureTypeIndex = map[newIndex];
-      for (int j = 0; j < crf.weights[i].length; j++) {
+      for (int j = 0; j < crfWeights[i].length; j++) {
         CRFLabel labels = crf.labelIndices.get(featureTypeIndex).get(j);
         CRFLabel newLabels = crfLabelMap.get(labels);
         int k = this.labelIndices.get(featureTypeIndex).indexOf(newLabels);
-        weights[newIndex][k] += crf.weights[i][j] * weight;
+        weights[newIndex][k] += crfWeights[i][j] * weight;
       }
     }
   }
@@ -348,6 +373,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param weight Amount to scale the other CRF's weights by
    */
   public void combine(CRFClassifier<IN> crf, double weight) {
+    requireWeightsOnHeap("combine classifiers");
     Timing timer = new Timing();
 
     // Check the CRFClassifiers are compatible
@@ -391,6 +417,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void dropFeaturesBelowThreshold(double threshold) {
+    requireWeightsOnHeap("drop features");
     Index<String> newFeatureIndex = new HashIndex<>();
     for (int i = 0; i < weights.length; i++) {
       double smallest = weights[i][0];
@@ -493,6 +520,89 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return new Triple<>(data, labels, featureVals);
   }
 
+  /**
+   * Convert a document List into arrays storing the data features and labels, for classifying it.
+   * This gives the same arrays as {@link #documentToDataAndLabels}, but takes the feature indices
+   * from a {@link NERFeatureCompiler} when it can.
+   *
+   * @param document Testing document
+   * @return A Triple of the data, the labels and the feature values, as for {@link #documentToDataAndLabels}
+   */
+  public Triple<int[][][], int[], double[][][]> documentToTestDataAndLabels(List<IN> document) {
+    int[][][] compiled = compiledFeatures(document);
+    if (compiled == null) {
+      return documentToDataAndLabels(document);
+    }
+    int docSize = document.size();
+    int[] labels = new int[docSize];
+    for (int j = 0; j < docSize; j++) {
+      labels[j] = classIndex.indexOf(document.get(j).get(CoreAnnotations.AnswerAnnotation.class));
+    }
+    return new Triple<>(compiled, labels, new double[docSize][windowSize][]);
+  }
+
+  /**
+   * Whether {@link #documentToTestDataAndLabels} may take the feature indices of a document from a
+   * {@link NERFeatureCompiler}, which gives the same features, in the same order, as {@link #makeDatum}.
+   * A subclass that makes different features, or changes the arrays of {@link #documentToDataAndLabels},
+   * should return false.
+   */
+  protected boolean canCompileFeatures() {
+    return true;
+  }
+
+  /**
+   * The feature indices of a document, computed by this thread's {@link NERFeatureCompiler},
+   * or null if the features are not ones it can compile, or if {@code noCompiledFeatures} is set.
+   */
+  private int[][][] compiledFeatures(List<IN> document) {
+    if (flags.noCompiledFeatures || ! canCompileFeatures() ||
+        ! NERFeatureCompiler.supports(flags, featureFactories, windowSize)) {
+      return null;
+    }
+    Pair<Index<String>, Boolean> checked = compiledFeatureIndex;
+    if (checked == null || checked.first() != featureIndex) {
+      checked = new Pair<>(featureIndex, NERFeatureCompiler.compilesAll(featureIndex));
+      checkedCompiledTokens = 0;
+      compiledFeatureIndex = checked;
+    }
+    if ( ! checked.second()) {
+      return null;
+    }
+    ThreadLocal<NERFeatureCompiler<CoreLabel>> compilers = featureCompilers;
+    if (compilers == null) {
+      synchronized (this) {
+        compilers = featureCompilers;
+        if (compilers == null) {
+          compilers = new ThreadLocal<>();
+          featureCompilers = compilers;
+        }
+      }
+    }
+    NERFeatureFactory<CoreLabel> factory = ErasureUtils.uncheckedCast(featureFactories.get(0));
+    CoreLabel padLabel = (CoreLabel) pad;
+    NERFeatureCompiler<CoreLabel> compiler = compilers.get();
+    if (compiler == null || ! compiler.isFor(factory, padLabel)) {
+      // the first document of this thread, or a new model was loaded
+      compiler = new NERFeatureCompiler<>(factory, flags, padLabel);
+      compilers.set(compiler);
+    }
+    List<CoreLabel> tokens = ErasureUtils.uncheckedCast(document);
+    int[][][] data = compiler.documentToData(tokens, featureIndex);
+    if (checkedCompiledTokens < CHECK_COMPILED_TOKENS) {
+      // the compiler follows the order that NERFeatureFactory adds features to its HashSet in,
+      // which nothing else ties it to, so the first documents of a model are also done the slow way
+      int[][][] strings = documentToDataAndLabels(document).first();
+      if ( ! Arrays.deepEquals(data, strings)) {
+        log.warn("Compiled NER features differ from those of NERFeatureFactory; not compiling features for this model");
+        compiledFeatureIndex = new Pair<>(checked.first(), false);
+        return strings;
+      }
+      checkedCompiledTokens += document.size();
+    }
+    return data;
+  }
+
   private int[][][] transformDocData(int[][][] docData) {
     int[][][] transData = new int[docData.length][][];
     for (int i = 0; i < docData.length; i++) {
@@ -564,7 +674,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
               double[] values = new double[labelIndices.get(0).size()];
               for (CRFLabel label : labelIndices.get(k)) {
                 int[] l = label.getLabel();
-                double v = weights[index][labelIndices.get(k).indexOf(label)];
+                double v = weightRow(index)[labelIndices.get(k).indexOf(label)];
                 values[l[l.length - 1 - p]] += v;
               }
               for (double value : values) {
@@ -1182,7 +1292,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
   @Override
   public SequenceModel getSequenceModel(List<IN> doc) {
-    Triple<int[][][], int[], double[][][]> p = documentToDataAndLabels(doc);
+    Triple<int[][][], int[], double[][][]> p = documentToTestDataAndLabels(doc);
     return getSequenceModel(p, doc);
   }
 
@@ -1198,6 +1308,81 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return cliquePotentialFunction;
   }
 
+  /**
+   * Moves the weights off the heap: they are written to a file in {@code dir}, unless a file with
+   * the same weights is there already, and memory-mapped from there. Since the file is named after
+   * the SHA-256 fingerprint of the weights, every process that loads this model with the same
+   * directory maps the same file, and they share one copy of the weights in the page cache.
+   * A file that is already there is only used once its header has the fingerprint and row lengths
+   * of the weights and its values have the same fingerprint; otherwise it is written again.
+   * <br>
+   * The classifier can still classify, be serialized and print its weights, but things that change
+   * the weights (training, combining classifiers, scaling weights, dropping features) throw an
+   * IllegalStateException. The model is still read onto the heap whole before its weights are
+   * mapped, so this lowers the memory the classifier holds afterwards, not the peak while loading.
+   *
+   * @param dir The directory for weight files
+   */
+  public void mapWeights(File dir) throws IOException {
+    if (mappedWeights != null) {
+      return;
+    }
+    byte[] fingerprint = MappedWeights.fingerprint(weights);
+    StringBuilder name = new StringBuilder("crf-");
+    for (byte b : fingerprint) {
+      name.append(String.format("%02x", b));
+    }
+    File file = new File(dir, name.append(".weights").toString());
+    MappedWeights mapped = null;
+    if (file.exists()) {
+      try {
+        mapped = MappedWeights.map(file);
+      } catch (IOException e) {
+        log.warn("Could not map weights from " + file + ": " + e.getMessage());
+      }
+      if (mapped != null && ! mapped.holds(weights, fingerprint)) {
+        log.warn("Weights in " + file + " do not match this classifier's");
+        mapped = null;
+      }
+    }
+    if (mapped == null) {
+      if ( ! dir.isDirectory() && ! dir.mkdirs()) {
+        throw new IOException("Could not create directory for weights: " + dir);
+      }
+      log.info("Writing weights to " + file);
+      MappedWeights.write(weights, file);
+      mapped = MappedWeights.map(file);
+      if ( ! mapped.holds(weights, fingerprint)) {
+        throw new IOException("Weights in " + file + " do not match this classifier's after writing them");
+      }
+    }
+    mappedWeights = mapped;
+    cliquePotentialFunction = new MappedLinearCliquePotentialFunction(mapped);
+    weights = null;
+  }
+
+  /** The weights, on the heap: either {@code weights} or a copy of the memory-mapped weights. */
+  private double[][] weightsOnHeap() {
+    return mappedWeights == null ? weights : mappedWeights.toArray();
+  }
+
+  /** The weights of one feature, which for memory-mapped weights is a copy on the heap. */
+  private double[] weightRow(int feature) {
+    return mappedWeights == null ? weights[feature] : mappedWeights.row(feature);
+  }
+
+  /**
+   * Throws an IllegalStateException if the weights are memory-mapped, for things that change them.
+   *
+   * @param operation What needs to change the weights, for the message
+   */
+  void requireWeightsOnHeap(String operation) {
+    if (mappedWeights != null) {
+      throw new IllegalStateException("Cannot " + operation + ": the weights of this CRFClassifier are memory-mapped;" +
+          " load it without mappedWeightsDir to change them");
+    }
+  }
+
   public void updateWeightsForTest(double[] x) {
     cliquePotentialFunction = cliquePotentialFunctionHelper.getCliquePotentialFunction(x);
   }
@@ -1214,6 +1399,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     if (document.isEmpty()) {
       return document;
     }
+    if (viterbiDecoder() != null) {
+      return classifyMaxEnt(document, documentToTestDataAndLabels(document));
+    }
 
     SequenceModel model = getSequenceModel(document);
     return classifyMaxEnt(document, model);
@@ -1223,8 +1411,61 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     if (document.isEmpty()) {
       return document;
     }
-    SequenceModel model = getSequenceModel(documentDataAndLabels, document);
-    return classifyMaxEnt(document, model);
+    CRFViterbiDecoder decoder = viterbiDecoder();
+    if (decoder == null) {
+      SequenceModel model = getSequenceModel(documentDataAndLabels, document);
+      return classifyMaxEnt(document, model);
+    }
+
+    decoder.decode(documentDataAndLabels.first(), documentDataAndLabels.third(), getCliquePotentialFunctionForTest(),
+        labelDictionary, document);
+    int[] bestSequence = decoder.bestSequence();
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+    for (int j = 0, docSize = document.size(); j < docSize; j++) {
+      IN wi = document.get(j);
+      int label = bestSequence[j + windowSize - 1];
+      wi.set(CoreAnnotations.AnswerAnnotation.class, classIndex.get(label));
+      wi.set(CoreAnnotations.AnswerProbAnnotation.class, decoder.labelProb(j, label));
+    }
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+    return document;
+  }
+
+  /**
+   * This thread's decoder for Viterbi inference, which gives the same answers as
+   * {@link ExactBestSequenceFinder} on the clique tree without making one, or null if
+   * the inference is not Viterbi or {@code noFlatViterbi} is set.
+   */
+  private CRFViterbiDecoder viterbiDecoder() {
+    if (flags.noFlatViterbi || (flags.inferenceType != null && ! flags.inferenceType.equalsIgnoreCase("Viterbi")) ||
+        labelIndices == null || labelIndices.size() != windowSize) {
+      return null;
+    }
+    int backgroundIndex = classIndex.indexOf(flags.backgroundSymbol);
+    if (backgroundIndex < 0) {
+      return null;
+    }
+    ThreadLocal<CRFViterbiDecoder> decoders = viterbiDecoders;
+    if (decoders == null) {
+      synchronized (this) {
+        decoders = viterbiDecoders;
+        if (decoders == null) {
+          decoders = new ThreadLocal<>();
+          viterbiDecoders = decoders;
+        }
+      }
+    }
+    CRFViterbiDecoder decoder = decoders.get();
+    if (decoder == null || ! decoder.isFor(labelIndices, classIndex.size(), backgroundIndex)) {
+      // the first document of this thread, or a new model was loaded
+      decoder = new CRFViterbiDecoder(labelIndices, classIndex.size(), backgroundIndex);
+      decoders.set(decoder);
+    }
+    return decoder;
   }
 
   private List<IN> classifyMaxEnt(List<IN> document, SequenceModel model) {
@@ -1267,7 +1508,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   public List<IN> classifyGibbs(List<IN> document) throws ClassNotFoundException, SecurityException,
       NoSuchMethodException, IllegalArgumentException, InstantiationException, IllegalAccessException,
       InvocationTargetException {
-    Triple<int[][][], int[], double[][][]> p = documentToDataAndLabels(document);
+    Triple<int[][][], int[], double[][][]> p = documentToTestDataAndLabels(document);
     return classifyGibbs(document, p);
   }
 
@@ -1350,7 +1591,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     final int numBins = 10;
     boolean verbose = flags.verboseMode;
 
-    Triple<int[][][], int[], double[][][]> p = documentToDataAndLabels(document);
+    Triple<int[][][], int[], double[][][]> p = documentToTestDataAndLabels(document);
     CRFCliqueTree<String> cliqueTree = getCliqueTree(p);
 
     Counter<Integer> calibration = new ClassicCounter<>();
@@ -1405,7 +1646,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
   public List<Counter<String>> zeroOrderProbabilities(List<IN> document) {
     List<Counter<String>> ret = new ArrayList<>();
-    Triple<int[][][], int[], double[][][]> p = documentToDataAndLabels(document);
+    Triple<int[][][], int[], double[][][]> p = documentToTestDataAndLabels(document);
     CRFCliqueTree<String> cliqueTree = getCliqueTree(p);
     for (int i = 0; i < cliqueTree.length(); i++) {
       Counter<String> ctr = new ClassicCounter<>();
@@ -1503,7 +1744,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   // This method should stay public
   @SuppressWarnings("WeakerAccess")
   public CRFCliqueTree<String> getCliqueTree(List<IN> document) {
-    Triple<int[][][], int[], double[][][]> p = documentToDataAndLabels(document);
+    Triple<int[][][], int[], double[][][]> p = documentToTestDataAndLabels(document);
     return getCliqueTree(p);
   }
 
@@ -1596,6 +1837,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   /** {@inheritDoc} */
   @Override
   public void train(Collection<List<IN>> objectBankWrapper, DocumentReaderAndWriter<IN> readerAndWriter) {
+    requireWeightsOnHeap("train");
     Timing timer = new Timing();
 
     Collection<List<IN>> docs = new ArrayList<>();
@@ -2403,6 +2645,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     pw.printf("<windowSize> %d </windowSize>%n", windowSize);
 
+    double[][] weights = weightsOnHeap();
     pw.printf("weights.length=\t%d%n", weights.length);
     for (double[] ws : weights) {
       ArrayList<Double> list = new ArrayList<>();
@@ -2466,7 +2709,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     ObjectOutputStream oos = null;
     try {
       oos = IOUtils.writeStreamFromString(serializePath);
-      oos.writeObject(weights);
+      oos.writeObject(weightsOnHeap());
       log.info("Serializing weights to " + serializePath + "... done.");
     } catch (Exception e) {
       log.info("Serializing weights to " + serializePath + "... FAILED.", e);
@@ -2565,7 +2808,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
         oos.writeObject(ff);
       }
       oos.writeInt(windowSize);
-      oos.writeObject(weights);
+      oos.writeObject(weightsOnHeap());
       // oos.writeObject(WordShapeClassifier.getKnownLowerCaseWords());
 
       oos.writeObject(knownLCWords);
@@ -2655,6 +2898,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       labelDictionary = (LabelDictionary) ois.readObject();
     }
 
+    if (flags.mappedWeightsDir != null) {
+      mapWeights(new File(flags.mappedWeightsDir));
+    }
+
     if (VERBOSE) {
       log.info("windowSize=" + windowSize);
       log.info("flags=\n" + flags);
@@ -2767,7 +3014,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      double[] v = weights[index];
+      double[] v = weightRow(index);
       Index<CRFLabel> l = this.labelIndices.get(0);
       p.println(feature + "\t\t");
       for (CRFLabel label : l) {
@@ -2784,7 +3031,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      double[] v = weights[index];
+      double[] v = weightRow(index);
       Index<CRFLabel> l = this.labelIndices.get(0);
       for (CRFLabel label : l) {
         if(!w.containsKey(label.toString(classIndex)))
@@ -74,6 +74,12 @@ public class CRFClassifierNonlinear<IN extends CoreMap> extends CRFClassifier<IN
     return new Triple<>(data, result.second(), result.third());
   }
 
+  /** The compiled features would not be mapped by {@link #transformDocData} */
+  @Override
+  protected boolean canCompileFeatures() {
+    return false;
+  }
+
   private int[][][] transformDocData(int[][][] docData) {
     int[][][] transData = new int[docData.length][][];
     for (int i = 0; i < docData.length; i++) {
@@ -0,0 +1,334 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.math.ArrayMath;
+import edu.stanford.nlp.sequences.ExactBestSequenceFinder;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Finds the best labels of a document under a linear-chain CRF, and the marginal probability of
+ * each, as {@link ExactBestSequenceFinder} does over the {@link TestSequenceModel} of a
+ * {@link CRFCliqueTree#getCalibratedCliqueTree calibrated clique tree}, but without making a
+ * {@link FactorTable} for each token or arrays for each position.
+ * <br>
+ * The clique tables of all the positions are kept in one flat array, and the Viterbi lattice
+ * in three more, indexed by position and then by the labels of a clique, as the tables
+ * of {@link ExactBestSequenceFinder} are. They are only reallocated when a document is longer
+ * than any before. Every number is computed with the same operations, in the same order,
+ * as in those classes, so the labels and probabilities are exactly the same too.
+ * <br>
+ * This keeps state between calls, so it is not thread-safe: a {@link CRFClassifier} has one for
+ * each thread.
+ */
+class CRFViterbiDecoder {
+
+  private final List<Index<CRFLabel>> labelIndices;
+  private final int numClasses;
+  private final int backgroundIndex;
+  /** The clique size, which is also the size of the window */
+  private final int window;
+  /** {@code numClasses} to the power {@code window}: the size of a clique table */
+  private final int tableSize;
+  /** {@code numClasses} to the power {@code window - 1}: the size of a message */
+  private final int messageSize;
+  /** For each clique size, the index in its table of each label in its label index */
+  private final int[][] tableIndices;
+  /** The tables of the smaller cliques, from which a position's table is made */
+  private final double[][] smallTables;
+  private final double[] potentials;
+  private final double[] summedOut;
+  private final int[] allTags;
+  private final int[] backgroundTag;
+
+  private int length;
+  private double z;
+  /** The calibrated clique table of each position, one after another */
+  private double[] tables = new double[0];
+  private double[] messages = new double[0];
+
+  private int[][] tags = new int[0][];
+  private int[] tagNum = new int[0];
+  private int[] productSizes = new int[0];
+  /** Where each position's products start in {@link #windowScores}, {@link #scores} and {@link #trace} */
+  private int[] offsets = new int[0];
+  private double[] windowScores = new double[0];
+  private double[] scores = new double[0];
+  private int[] trace = new int[0];
+  private int[] sequence = new int[0];
+
+  CRFViterbiDecoder(List<Index<CRFLabel>> labelIndices, int numClasses, int backgroundIndex) {
+    this.labelIndices = labelIndices;
+    this.numClasses = numClasses;
+    this.backgroundIndex = backgroundIndex;
+    window = labelIndices.size();
+    messageSize = intPow(numClasses, window - 1);
+    tableSize = messageSize * numClasses;
+
+    tableIndices = new int[window][];
+    smallTables = new double[window - 1][];
+    int maxLabels = 0;
+    for (int j = 0; j < window; j++) {
+      Index<CRFLabel> labelIndex = labelIndices.get(j);
+      tableIndices[j] = new int[labelIndex.size()];
+      for (int k = 0; k < tableIndices[j].length; k++) {
+        int index = 0;
+        for (int label : labelIndex.get(k).getLabel()) {
+          index = index * numClasses + label;
+        }
+        tableIndices[j][k] = index;
+      }
+      if (j < window - 1) {
+        smallTables[j] = new double[intPow(numClasses, j + 1)];
+      }
+      maxLabels = Math.max(maxLabels, labelIndex.size());
+    }
+    potentials = new double[maxLabels];
+    summedOut = new double[messageSize];
+    allTags = new int[numClasses];
+    for (int i = 0; i < numClasses; i++) {
+      allTags[i] = i;
+    }
+    backgroundTag = new int[] { backgroundIndex };
+  }
+
+  private static int intPow(int b, int e) {
+    int result = 1;
+    for (int i = 0; i < e; i++) {
+      result *= b;
+    }
+    return result;
+  }
+
+  /** Whether this decodes for a classifier with these labels */
+  boolean isFor(List<Index<CRFLabel>> labelIndices, int numClasses, int backgroundIndex) {
+    return labelIndices == this.labelIndices && numClasses == this.numClasses && backgroundIndex == this.backgroundIndex;
+  }
+
+  /**
+   * Finds the best labels of a document; afterwards, {@link #bestSequence} and {@link #labelProb}
+   * give them and their probabilities.
+   *
+   * @param data The features of each clique at each position, as {@code documentToDataAndLabels} gives them
+   * @param featureVals The values of the features, or null
+   * @param labelDictionary If not null, the labels allowed for each word
+   * @param document The words, for the label dictionary
+   */
+  void decode(int[][][] data, double[][][] featureVals, CliquePotentialFunction cliquePotentialFunc,
+              LabelDictionary labelDictionary, List<? extends CoreMap> document) {
+    length = data.length;
+    calibrate(data, featureVals, cliquePotentialFunc);
+    viterbi(labelDictionary, document);
+  }
+
+  /** As {@link CRFCliqueTree#getCalibratedCliqueTree}, with each position's table at {@code i * tableSize} */
+  private void calibrate(int[][][] data, double[][][] featureVals, CliquePotentialFunction cliquePotentialFunc) {
+    if (tables.length < length * tableSize) {
+      tables = new double[Math.max(2 * tables.length, length * tableSize)];
+      messages = new double[tables.length / numClasses];
+    }
+    for (int i = 0; i < length; i++) {
+      int offset = i * tableSize;
+      factorTable(data[i], featureVals == null ? null : featureVals[i], cliquePotentialFunc, i, offset);
+      if (i > 0) {
+        // sumOutFront of the last table, and multiplyInFront of that
+        int message = (i - 1) * messageSize;
+        int last = offset - tableSize;
+        for (int s = 0; s < messageSize; s++) {
+          messages[message + s] = ArrayMath.logSum(tables, last + s, last + tableSize, messageSize);
+        }
+        for (int t = 0; t < tableSize; t++) {
+          tables[offset + t] += messages[message + t / numClasses];
+        }
+      }
+    }
+
+    for (int i = length - 2; i >= 0; i--) {
+      // sumOutEnd of the next table, divideBy the message, and multiplyInEnd of that
+      int next = (i + 1) * tableSize;
+      int message = i * messageSize;
+      for (int s = 0; s < messageSize; s++) {
+        double value = ArrayMath.logSum(tables, next + s * numClasses, next + (s + 1) * numClasses);
+        if (value != Double.NEGATIVE_INFINITY || messages[message + s] != Double.NEGATIVE_INFINITY) {
+          value -= messages[message + s];
+        }
+        summedOut[s] = value;
+      }
+      int offset = i * tableSize;
+      for (int t = 0; t < tableSize; t++) {
+        tables[offset + t] += summedOut[t % messageSize];
+      }
+    }
+    z = ArrayMath.logSum(tables, 0, tableSize);
+  }
+
+  /** As {@code CRFCliqueTree.getFactorTable}, into {@link #tables} at {@code offset} */
+  private void factorTable(int[][] data, double[][] featureValByCliqueSize, CliquePotentialFunction cliquePotentialFunc,
+                           int posInSent, int offset) {
+    for (int j = 0; j < window; j++) {
+      double[] table = j < window - 1 ? smallTables[j] : tables;
+      int start = j < window - 1 ? 0 : offset;
+      int size = intPow(numClasses, j + 1);
+      Arrays.fill(table, start, start + size, Double.NEGATIVE_INFINITY);
+      int[] indices = tableIndices[j];
+      cliquePotentialFunc.computeCliquePotentials(j + 1, indices.length, data[j],
+          featureValByCliqueSize == null ? null : featureValByCliqueSize[j], posInSent, potentials);
+      for (int k = 0; k < indices.length; k++) {
+        table[start + indices[k]] = potentials[k];
+      }
+      if (j > 0) {
+        // multiplyInEnd of the table of the smaller clique
+        double[] smaller = smallTables[j - 1];
+        int divisor = smaller.length;
+        for (int t = 0; t < size; t++) {
+          table[start + t] += smaller[t % divisor];
+        }
+      }
+    }
+  }
+
+  /** As {@link ExactBestSequenceFinder#bestSequence}, for a {@link TestSequenceModel} */
+  private void viterbi(LabelDictionary labelDictionary, List<? extends CoreMap> document) {
+    int leftWindow = window - 1;
+    int padLength = length + leftWindow;
+    if (tags.length < padLength) {
+      int size = Math.max(2 * tags.length, padLength);
+      tags = new int[size][];
+      tagNum = new int[size];
+      productSizes = new int[size];
+      offsets = new int[size + 1];
+      sequence = new int[size];
+    }
+    for (int pos = 0; pos < padLength; pos++) {
+      if (pos < leftWindow) {
+        tags[pos] = backgroundTag;
+      } else if (labelDictionary == null) {
+        tags[pos] = allTags;
+      } else {
+        String observation = document.get(pos - leftWindow).get(CoreAnnotations.TextAnnotation.class);
+        tags[pos] = labelDictionary.isConstrained(observation) ? labelDictionary.getConstrainedSet(observation) : allTags;
+      }
+      tagNum[pos] = tags[pos].length;
+    }
+
+    int curProduct = 1;
+    for (int i = 0; i < leftWindow; i++) {
+      curProduct *= tagNum[i];
+    }
+    int total = 0;
+    for (int pos = 0; pos < padLength; pos++) {
+      offsets[pos] = total;
+      if (pos >= leftWindow) {
+        if (pos > leftWindow) {
+          curProduct /= tagNum[pos - leftWindow - 1];
+        }
+        curProduct *= tagNum[pos];
+        productSizes[pos] = curProduct;
+        total += curProduct;
+      } else {
+        productSizes[pos] = 0;
+      }
+    }
+    offsets[padLength] = total;
+    if (scores.length < total) {
+      int size = Math.max(2 * scores.length, total);
+      windowScores = new double[size];
+      scores = new double[size];
+      trace = new int[size];
+    }
+
+    // the score of each tag given the tags before it, which only depends on them
+    for (int pos = leftWindow; pos < padLength; pos++) {
+      int table = (pos - leftWindow) * tableSize;
+      int[] posTags = tags[pos];
+      int num = tagNum[pos];
+      for (int shared = 0, numShared = productSizes[pos] / num; shared < numShared; shared++) {
+        int previous = 0;
+        int factor = 1;
+        for (int curPos = pos - 1, p = shared; curPos >= pos - leftWindow; curPos--) {
+          previous += tags[curPos][p % tagNum[curPos]] * factor;
+          p /= tagNum[curPos];
+          factor *= numClasses;
+        }
+        // conditionalLogProbGivenPrevious
+        int start = table + previous * numClasses;
+        double logZ = ArrayMath.logSum(tables, start, start + numClasses);
+        int base = offsets[pos] + shared * num;
+        for (int t = 0; t < num; t++) {
+          windowScores[base + t] = tables[start + posTags[t]] - logZ;
+        }
+      }
+    }
+
+    for (int pos = leftWindow; pos < padLength; pos++) {
+      int base = offsets[pos];
+      int size = productSizes[pos];
+      if (pos == leftWindow) {
+        System.arraycopy(windowScores, base, scores, base, size);
+        Arrays.fill(trace, base, base + size, -1);
+        continue;
+      }
+      Arrays.fill(scores, base, base + size, Double.NEGATIVE_INFINITY);
+      Arrays.fill(trace, base, base + size, -1);
+      int num = tagNum[pos];
+      int factor = size / num;
+      int previousBase = offsets[pos - 1];
+      int numPredecessors = tagNum[pos - leftWindow - 1];
+      // the products with the same tags before this position are next to each other, so the
+      // inner loop runs over this position's tags, and each is compared with the predecessors in order
+      for (int shared = 0; shared < factor; shared++) {
+        int row = base + shared * num;
+        for (int newTagNum = 0; newTagNum < numPredecessors; newTagNum++) {
+          int predProduct = newTagNum * factor + shared;
+          double predScore = scores[previousBase + predProduct];
+          for (int t = 0; t < num; t++) {
+            double score = predScore + windowScores[row + t];
+            if (score > scores[row + t]) {
+              scores[row + t] = score;
+              trace[row + t] = predProduct;
+            }
+          }
+        }
+      }
+    }
+
+    int lastPos = padLength - 1;
+    double bestFinalScore = Double.NEGATIVE_INFINITY;
+    int bestCurrentProduct = -1;
+    for (int product = 0; product < productSizes[lastPos]; product++) {
+      if (scores[offsets[lastPos] + product] > bestFinalScore) {
+        bestCurrentProduct = product;
+        bestFinalScore = scores[offsets[lastPos] + product];
+      }
+    }
+    int lastProduct = bestCurrentProduct;
+    for (int last = padLength - 1; last >= length - 1 && last >= 0; last--) {
+      sequence[last] = tags[last][lastProduct % tagNum[last]];
+      lastProduct /= tagNum[last];
+    }
+    for (int pos = padLength - 2; pos >= leftWindow; pos--) {
+      int bestNextProduct = bestCurrentProduct;
+      bestCurrentProduct = trace[offsets[pos + 1] + bestNextProduct];
+      sequence[pos - leftWindow] = tags[pos - leftWindow][bestCurrentProduct / (productSizes[pos] / tagNum[pos - leftWindow])];
+    }
+  }
+
+  /**
+   * The best labels of the last document, padded on the left with {@code window - 1} background
+   * labels, as {@link ExactBestSequenceFinder#bestSequence} gives them. The array is reused by the
+   * next document, and may be longer than this.
+   */
+  int[] bestSequence() {
+    return sequence;
+  }
+
+  /** As {@link CRFCliqueTree#prob(int, int)}: the marginal probability of a label at a position of the last document */
+  double labelProb(int position, int label) {
+    int table = position * tableSize;
+    return Math.exp(ArrayMath.logSum(tables, table + label, table + tableSize, numClasses) - z);
+  }
+
+}
@@ -17,4 +17,15 @@ public interface CliquePotentialFunction {
   public double computeCliquePotential(int cliqueSize, int labelIndex,
     int[] cliqueFeatures, double[] featureVal, int posInSent);
 
+  /**
+   * Puts the clique potential of each of the first {@code numLabels} labels in {@code potentials},
+   * exactly as {@link #computeCliquePotential} gives them.
+   */
+  default void computeCliquePotentials(int cliqueSize, int numLabels,
+      int[] cliqueFeatures, double[] featureVal, int posInSent, double[] potentials) {
+    for (int k = 0; k < numLabels; k++) {
+      potentials[k] = computeCliquePotential(cliqueSize, k, cliqueFeatures, featureVal, posInSent);
+    }
+  }
+
 }
@@ -1,5 +1,7 @@
 package edu.stanford.nlp.ie.crf;
 
+import java.util.Arrays;
+
 /**
  * @author Mengqiu Wang
  */
@@ -25,4 +27,24 @@ public class LinearCliquePotentialFunction implements CliquePotentialFunction {
     return output;
   }
 
+  /** Adds up the rows of the weights, which gives each label's sum in the same order as {@link #computeCliquePotential} */
+  @Override
+  public void computeCliquePotentials(int cliqueSize, int numLabels,
+      int[] cliqueFeatures, double[] featureVal, int posInSent, double[] potentials) {
+    Arrays.fill(potentials, 0, numLabels, 0.0);
+    for (int m = 0; m < cliqueFeatures.length; m++) {
+      double[] row = weights[cliqueFeatures[m]];
+      if (featureVal != null) {
+        double value = featureVal[m];
+        for (int k = 0; k < numLabels; k++) {
+          potentials[k] += row[k] * value;
+        }
+      } else {
+        for (int k = 0; k < numLabels; k++) {
+          potentials[k] += row[k];
+        }
+      }
+    }
+  }
+
 }
@@ -0,0 +1,46 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.io.MappedWeights;
+
+/**
+ * A {@link LinearCliquePotentialFunction} whose weights are memory-mapped from a file
+ * rather than kept on the heap.
+ */
+public class MappedLinearCliquePotentialFunction implements CliquePotentialFunction {
+
+  private final MappedWeights weights;
+
+  MappedLinearCliquePotentialFunction(MappedWeights weights) {
+    this.weights = weights;
+  }
+
+  @Override
+  public double computeCliquePotential(int cliqueSize, int labelIndex,
+      int[] cliqueFeatures, double[] featureVal, int posInSent) {
+    double output = 0.0;
+    for (int m = 0; m < cliqueFeatures.length; m++) {
+      double dotProd = weights.get(cliqueFeatures[m], labelIndex);
+      if (featureVal != null) {
+        dotProd *= featureVal[m];
+      }
+      output += dotProd;
+    }
+    return output;
+  }
+
+  /**
+   * Adds up the rows of the weights, as {@link LinearCliquePotentialFunction} does. A value of
+   * 1.0 for features without values multiplies exactly, so the sums are those of {@link #computeCliquePotential}.
+   */
+  @Override
+  public void computeCliquePotentials(int cliqueSize, int numLabels,
+      int[] cliqueFeatures, double[] featureVal, int posInSent, double[] potentials) {
+    Arrays.fill(potentials, 0, numLabels, 0.0);
+    for (int m = 0; m < cliqueFeatures.length; m++) {
+      weights.addRow(cliqueFeatures[m], featureVal != null ? featureVal[m] : 1.0, potentials, numLabels);
+    }
+  }
+
+}
@@ -0,0 +1,313 @@
+package edu.stanford.nlp.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A read-only, possibly ragged, two dimensional array of doubles -- the weights of a model --
+ * kept in a file and memory-mapped rather than loaded onto the heap.
+ * Several JVMs on one machine that map the same file share one copy of it in the page cache,
+ * instead of each having its own copy of the weights on its heap.
+ * <br>
+ * The file format is: the magic number {@code 0x4D575432}, the number of rows (an int),
+ * the total number of values (a long), the {@link #fingerprint(double[][]) fingerprint} of the
+ * weights (32 bytes), the offset of each row's first value and then of the end of the last row
+ * (longs), and then the values (doubles); all big-endian. Files written before there was a
+ * fingerprint, with the magic number {@code 0x4D575431} and no fingerprint, can still be mapped.
+ * Files may be larger than 2GB. The weights may also follow other data in a file, such as a
+ * model's vocabulary: see {@link #map(File, long)} and {@link #write(double[][], DataOutputStream)}.
+ * <br>
+ * Reads don't change any state, so a MappedWeights may be shared between threads.
+ */
+public class MappedWeights {
+
+  private static final int MAGIC = 0x4D575432;  // "MWT2"
+  private static final int MAGIC_WITHOUT_FINGERPRINT = 0x4D575431;  // "MWT1"
+  private static final int FINGERPRINT_BYTES = 32;
+  private static final int HEADER_BYTES = 16;
+  /** Each buffer maps this many bytes of the file (the last one maybe fewer). A multiple of 8, so no value spans two buffers. */
+  private static final int CHUNK_BITS = 30;
+  private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+  private final ByteBuffer[] chunks;
+  private final int numRows;
+  /** The fingerprint written in the file, or null for a file without one */
+  private final byte[] storedFingerprint;
+  /** Byte position in the file of the first row offset */
+  private final long offsetsStart;
+  /** Byte position in the file of the first value */
+  private final long valuesStart;
+
+  private MappedWeights(ByteBuffer[] chunks, int numRows, byte[] storedFingerprint) {
+    this.chunks = chunks;
+    this.numRows = numRows;
+    this.storedFingerprint = storedFingerprint;
+    this.offsetsStart = HEADER_BYTES + (storedFingerprint == null ? 0 : FINGERPRINT_BYTES);
+    this.valuesStart = offsetsStart + 8L * (numRows + 1);
+  }
+
+  /**
+   * Memory-map a weights file written by {@link MappedWeights#write(double[][], File)}.
+   *
+   * @throws IOException Thrown if the file cannot be mapped, or is not a weights file.
+   */
+  public static MappedWeights map(File file) throws IOException {
+    return map(file, 0);
+  }
+
+  /**
+   * Memory-map weights that start {@code offset} bytes into a file and go on to its end,
+   * as written by {@link MappedWeights#write(double[][], DataOutputStream)} after other data.
+   *
+   * @throws IOException Thrown if the file cannot be mapped, or has no weights at that offset.
+   */
+  public static MappedWeights map(File file, long offset) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size() - offset;
+      if (size < HEADER_BYTES) {
+        throw new IOException("Not a weights file: " + file);
+      }
+      int numChunks = (int) ((size + CHUNK_MASK) >>> CHUNK_BITS);
+      ByteBuffer[] chunks = new ByteBuffer[numChunks];
+      for (int i = 0; i < numChunks; i++) {
+        long start = (long) i << CHUNK_BITS;
+        // the mapping stays valid after the channel is closed
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, Math.min(1L << CHUNK_BITS, size - start));
+      }
+      int magic = chunks[0].getInt(0);
+      if (magic != MAGIC && magic != MAGIC_WITHOUT_FINGERPRINT) {
+        throw new IOException("Not a weights file: " + file);
+      }
+      int numRows = chunks[0].getInt(4);
+      long numValues = chunks[0].getLong(8);
+      byte[] fingerprint = null;
+      long headerBytes = HEADER_BYTES;
+      if (magic == MAGIC) {
+        if (size < HEADER_BYTES + FINGERPRINT_BYTES) {
+          throw new IOException("Weights file " + file + " is truncated: " + size + " bytes");
+        }
+        fingerprint = new byte[FINGERPRINT_BYTES];
+        ByteBuffer buffer = chunks[0].duplicate();
+        buffer.position(HEADER_BYTES);
+        buffer.get(fingerprint);
+        headerBytes += FINGERPRINT_BYTES;
+      }
+      if (numRows < 0 || numValues < 0 || size != headerBytes + 8L * (numRows + 1) + 8L * numValues) {
+        throw new IOException("Weights file " + file + " is truncated: " + size + " bytes for " + numRows + " rows and " + numValues + " values");
+      }
+      return new MappedWeights(chunks, numRows, fingerprint);
+    }
+  }
+
+  /**
+   * Write weights in the format that {@link MappedWeights#map(File)} reads.
+   * The file is written under a temporary name and then moved into place, so that another
+   * process never maps a partly written file.
+   */
+  public static void write(double[][] weights, File file) throws IOException {
+    File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+        write(weights, out);
+      }
+      try {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      if (tmp.exists() && ! tmp.delete()) {
+        tmp.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * Write weights to a stream, in the format that {@link MappedWeights#map(File, long)} reads
+   * from the position in the file where they start.
+   */
+  public static void write(double[][] weights, DataOutputStream out) throws IOException {
+    long numValues = 0;
+    for (double[] row : weights) {
+      numValues += row.length;
+    }
+    out.writeInt(MAGIC);
+    out.writeInt(weights.length);
+    out.writeLong(numValues);
+    out.write(fingerprint(weights));
+    long offset = 0;
+    for (double[] row : weights) {
+      out.writeLong(offset);
+      offset += row.length;
+    }
+    out.writeLong(offset);
+    byte[] bytes = new byte[0];
+    for (double[] row : weights) {
+      // a row at a time rather than a value at a time, which is much faster for large weights
+      if (bytes.length < 8 * row.length) {
+        bytes = new byte[8 * row.length];
+      }
+      ByteBuffer.wrap(bytes).asDoubleBuffer().put(row);
+      out.write(bytes, 0, 8 * row.length);
+    }
+  }
+
+  /**
+   * The SHA-256 digest of the shape and contents of some weights: of the number of rows and the
+   * length of each row (ints), and then of the values (doubles), all big-endian. It is written in
+   * the file, and can name it.
+   */
+  public static byte[] fingerprint(double[][] weights) {
+    MessageDigest digest = sha256();
+    ByteBuffer shape = ByteBuffer.allocate(4 * (weights.length + 1));
+    shape.putInt(weights.length);
+    for (double[] row : weights) {
+      shape.putInt(row.length);
+    }
+    digest.update(shape.array());
+    byte[] bytes = new byte[0];
+    for (double[] row : weights) {
+      if (bytes.length < 8 * row.length) {
+        bytes = new byte[8 * row.length];
+      }
+      ByteBuffer.wrap(bytes).asDoubleBuffer().put(row);
+      digest.update(bytes, 0, 8 * row.length);
+    }
+    return digest.digest();
+  }
+
+  /**
+   * The {@link #fingerprint(double[][]) fingerprint} of the weights as they are in the file,
+   * worked out from all of them.
+   */
+  public byte[] fingerprint() {
+    MessageDigest digest = sha256();
+    ByteBuffer shape = ByteBuffer.allocate(4 * (numRows + 1));
+    shape.putInt(numRows);
+    for (int i = 0; i < numRows; i++) {
+      shape.putInt(rowLength(i));
+    }
+    digest.update(shape.array());
+    long end = valuesStart + 8 * rowStart(numRows);
+    for (long position = valuesStart; position < end; ) {
+      int chunk = (int) (position >>> CHUNK_BITS);
+      ByteBuffer buffer = chunks[chunk].duplicate();
+      buffer.position((int) (position & CHUNK_MASK));
+      buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + (end - position)));
+      position += buffer.remaining();
+      digest.update(buffer);
+    }
+    return digest.digest();
+  }
+
+  /** The fingerprint written in the file, or null if it was written without one. */
+  public byte[] storedFingerprint() {
+    return storedFingerprint == null ? null : storedFingerprint.clone();
+  }
+
+  /**
+   * Whether the file holds exactly these weights: its header has their fingerprint and their
+   * row lengths, and its values have that fingerprint too.
+   *
+   * @param weights The weights the file should hold
+   * @param fingerprint Their {@link #fingerprint(double[][]) fingerprint}
+   */
+  public boolean holds(double[][] weights, byte[] fingerprint) {
+    if (storedFingerprint == null || ! Arrays.equals(storedFingerprint, fingerprint) || numRows != weights.length) {
+      return false;
+    }
+    for (int i = 0; i < numRows; i++) {
+      if (rowLength(i) != weights[i].length) {
+        return false;
+      }
+    }
+    return Arrays.equals(fingerprint(), fingerprint);
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM has SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private long getLong(long position) {
+    return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & CHUNK_MASK));
+  }
+
+  private double getDouble(long position) {
+    return chunks[(int) (position >>> CHUNK_BITS)].getDouble((int) (position & CHUNK_MASK));
+  }
+
+  private long rowStart(int row) {
+    return getLong(offsetsStart + 8L * row);
+  }
+
+  public int numRows() {
+    return numRows;
+  }
+
+  public int rowLength(int row) {
+    return (int) (rowStart(row + 1) - rowStart(row));
+  }
+
+  /** The weight at {@code [row][col]}. Like an array, but without bounds checks on {@code col}. */
+  public double get(int row, int col) {
+    return getDouble(valuesStart + 8 * (rowStart(row) + col));
+  }
+
+  /** A copy of one row on the heap. */
+  public double[] row(int row) {
+    double[] values = new double[rowLength(row)];
+    long start = valuesStart + 8 * rowStart(row);
+    int chunk = (int) (start >>> CHUNK_BITS);
+    if (chunk == (int) ((start + 8L * values.length - 1) >>> CHUNK_BITS)) {
+      // the whole row is in one buffer, so copy it in bulk
+      ByteBuffer buffer = chunks[chunk].duplicate();
+      buffer.position((int) (start & CHUNK_MASK));
+      buffer.asDoubleBuffer().get(values);
+    } else {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = getDouble(start + 8L * i);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Adds the first {@code length} values of a row, each times {@code scale}, to {@code sums}:
+   * {@code sums[k] += get(row, k) * scale}, but finding the row only once.
+   */
+  public void addRow(int row, double scale, double[] sums, int length) {
+    long start = valuesStart + 8 * rowStart(row);
+    int chunk = (int) (start >>> CHUNK_BITS);
+    if (chunk == (int) ((start + 8L * length - 1) >>> CHUNK_BITS)) {
+      ByteBuffer buffer = chunks[chunk];
+      int position = (int) (start & CHUNK_MASK);
+      for (int k = 0; k < length; k++) {
+        sums[k] += buffer.getDouble(position + 8 * k) * scale;
+      }
+    } else {
+      for (int k = 0; k < length; k++) {
+        sums[k] += getDouble(start + 8L * k) * scale;
+      }
+    }
+  }
+
+  /** A copy of all the weights on the heap. */
+  public double[][] toArray() {
+    double[][] weights = new double[numRows][];
+    for (int i = 0; i < numRows; i++) {
+      weights[i] = row(i);
+    }
+    return weights;
+  }
+
+}
@@ -1,5 +1,6 @@
 package edu.stanford.nlp.parser.nndep;
 
+import edu.stanford.nlp.io.MappedWeights;
 import edu.stanford.nlp.math.ArrayMath;
 import edu.stanford.nlp.util.CollectionUtils;
 import edu.stanford.nlp.util.Pair;
@@ -7,6 +8,7 @@ import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 import edu.stanford.nlp.util.logging.Redwood;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -64,6 +66,15 @@ public class Classifier  {
    */
   private double[][] saved;
 
+  /**
+   * Pre-computed activations read straight from a memory-mapped binary
+   * model instead of {@link #saved}: row {@code i} of {@link #saved} is
+   * row {@code mappedSavedStart + i} of these weights. Null unless they
+   * were given with {@link #setPreComputed(MappedWeights, int)}.
+   */
+  private MappedWeights mappedSaved;
+  private int mappedSavedStart;
+
   /**
    * Describes features which should be precomputed. Each entry maps a
    * feature ID to its destined index in the saved hidden unit
@@ -71,6 +82,17 @@ public class Classifier  {
    */
   private final Map<Integer, Integer> preMap;
 
+  /**
+   * The same mapping as {@link #preMap}, as an open-addressing table of
+   * feature IDs ({@link #EMPTY} where there is none) and their saved rows,
+   * so that looking up every feature of every transition needs no boxing.
+   *
+   * @see #savedRow(int)
+   */
+  private final int[] preKeys, preRows;
+
+  private static final int EMPTY = -1;
+
   /**
    * Initial training state is dependent on how the classifier is
    * initialized. We use this flag to determine whether calls to
@@ -145,6 +167,17 @@ public class Classifier  {
     preMap = new HashMap<>();
     for (int i = 0; i < preComputed.size() && i < config.numPreComputed; ++i)
       preMap.put(preComputed.get(i), i);
+    int capacity = Integer.highestOneBit(Math.max(2 * preMap.size(), 1)) << 1;
+    preKeys = new int[capacity];
+    preRows = new int[capacity];
+    Arrays.fill(preKeys, EMPTY);
+    for (Map.Entry<Integer, Integer> entry : preMap.entrySet()) {
+      int slot = slot(entry.getKey());
+      while (preKeys[slot] != EMPTY)
+        slot = (slot + 1) & (capacity - 1);
+      preKeys[slot] = entry.getKey();
+      preRows[slot] = entry.getValue();
+    }
 
     isTraining = dataset != null;
     if (isTraining)
@@ -210,11 +243,10 @@ public class Classifier  {
           int tok = feature.get(j);
           int index = tok * config.numTokens + j;
 
-          if (preMap.containsKey(index)) {
+          int id = savedRow(index);
+          if (id >= 0) {
             // Unit activations for this input feature value have been
             // precomputed
-            int id = preMap.get(index);
-
             // Only extract activations for those nodes which are still
             // activated (`ls`)
             for (int nodeIndex : ls)
@@ -281,8 +313,8 @@ public class Classifier  {
         for (int j = 0; j < config.numTokens; ++j) {
           int tok = feature.get(j);
           int index = tok * config.numTokens + j;
-          if (preMap.containsKey(index)) {
-            int id = preMap.get(index);
+          int id = savedRow(index);
+          if (id >= 0) {
             for (int nodeIndex : ls)
               gradSaved[id][nodeIndex] += gradHidden[nodeIndex];
           } else {
@@ -660,6 +692,7 @@ public class Classifier  {
     // actually hurt training performance! (See experiments with
     // "smallMap.")
     saved = new double[preMap.size()][config.hiddenSize];
+    mappedSaved = null;
     final int numTokens = config.numTokens;
     final int embeddingSize = config.embeddingSize;
 
@@ -674,15 +707,83 @@ public class Classifier  {
   }
 
 
-  double[] computeScores(int[] feature) {
-    return computeScores(feature, preMap);
+  /**
+   * Use hidden layer activations which were pre-computed earlier and
+   * stored in a binary model file, instead of computing them again with
+   * {@link #preCompute()}. They are read from the mapped file as they
+   * are needed, not copied to the heap, so parsers in other processes
+   * which map the same file share its pages. Row {@code firstRow + i}
+   * holds the activations of the {@code i}-th pre-computed feature.
+   *
+   * @return Whether there were rows for all the pre-computed features;
+   *         if not, nothing is changed
+   */
+  boolean setPreComputed(MappedWeights rows, int firstRow) {
+    if (rows.numRows() - firstRow < preMap.size())
+      return false;
+    for (int i = 0; i < preMap.size(); i++) {
+      if (rows.rowLength(firstRow + i) != config.hiddenSize)
+        return false;
+    }
+    saved = null;
+    mappedSaved = rows;
+    mappedSavedStart = firstRow;
+    return true;
+  }
+
+  /**
+   * Whether there are pre-computed hidden layer activations, either
+   * computed or given with {@link #setPreComputed(MappedWeights, int)}.
+   */
+  boolean hasPreComputed() {
+    return saved != null || mappedSaved != null;
+  }
+
+  /**
+   * The pre-computed hidden layer activations on the heap, or null if
+   * they have not been computed.
+   */
+  double[][] getPreComputed() {
+    return saved;
+  }
+
+  /**
+   * Adds the pre-computed activations of {@link #saved} row {@code id}
+   * to {@code hidden}, wherever they are kept.
+   */
+  private void addSaved(double[] hidden, int id) {
+    if (saved != null)
+      ArrayMath.pairwiseAddInPlace(hidden, saved[id]);
+    else
+      mappedSaved.addRow(mappedSavedStart + id, 1.0, hidden, hidden.length);
+  }
+
+  /** The table slot where a feature ID's search starts */
+  private int slot(int index) {
+    int h = index * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & (preKeys.length - 1);
+  }
+
+  /**
+   * The index into {@link #saved} of a feature ID's pre-computed
+   * activations, or -1 if they were not pre-computed.
+   */
+  private int savedRow(int index) {
+    for (int slot = slot(index); ; slot = (slot + 1) & (preKeys.length - 1)) {
+      if (preKeys[slot] == index)
+        return preRows[slot];
+      if (preKeys[slot] == EMPTY)
+        return -1;
+    }
   }
 
   /**
    * Feed a feature vector forward through the network. Returns the
    * values of the output layer.
+   *
+   * @see BatchScorer
    */
-  private double[] computeScores(int[] feature, Map<Integer, Integer> preMap) {
+  double[] computeScores(int[] feature) {
     final double[] hidden = new double[config.hiddenSize];
     final int numTokens = config.numTokens;
     final int embeddingSize = config.embeddingSize;
@@ -690,10 +791,9 @@ public class Classifier  {
     int offset = 0;
     for (int j = 0; j < feature.length; j++) {
       int tok = feature[j];
-      int index = tok * numTokens + j;
-      Integer idInteger = preMap.get(index);
-      if (idInteger != null) {
-        ArrayMath.pairwiseAddInPlace(hidden, saved[idInteger]);
+      int id = savedRow(tok * numTokens + j);
+      if (id >= 0) {
+        addSaved(hidden, id);
       } else {
         matrixMultiplySliceSum(hidden, W1, E[tok], offset);
       }
@@ -703,22 +803,146 @@ public class Classifier  {
     return matrixMultiply(W2, hidden);
   }
 
+  /**
+   * Scores many feature vectors at once, such as the next transition of
+   * each of the sentences being parsed together. The weights of each
+   * hidden unit and of each output are then read once for the whole
+   * batch, rather than once per vector, which makes each step a small
+   * matrix-matrix product. The scores are exactly those of
+   * {@link Classifier#computeScores(int[])}, since every unit adds up
+   * the same terms in the same order.
+   * <p>
+   * A scorer keeps its buffers from one batch to the next, so it is not
+   * threadsafe; each parsing thread should have its own.
+   */
+  class BatchScorer {
+
+    private final int capacity;
+    private final double[][] hidden;
+    private final double[] scores;
+    // the vectors whose current feature's activations are computed from its embedding
+    private final int[] missing;
+
+    BatchScorer(int capacity) {
+      this.capacity = capacity;
+      hidden = new double[capacity][config.hiddenSize];
+      scores = new double[capacity * numLabels];
+      missing = new int[capacity];
+    }
+
+    /** The largest number of vectors this scorer can score at once */
+    int capacity() {
+      return capacity;
+    }
+
+    /**
+     * The output layer for the first {@code n} feature vectors, with
+     * the scores of vector {@code b} at {@code b * numLabels} onward.
+     * The array is overwritten by the next call.
+     */
+    double[] computeScores(int[][] features, int n) {
+      final int numTokens = config.numTokens;
+      final int embeddingSize = config.embeddingSize;
+      for (int b = 0; b < n; b++)
+        Arrays.fill(hidden[b], 0.0);
+
+      // each unit adds up the features in order, as computeScores(int[]) does
+      for (int j = 0, offset = 0; j < numTokens; j++, offset += embeddingSize) {
+        int numMissing = 0;
+        for (int b = 0; b < n; b++) {
+          int id = savedRow(features[b][j] * numTokens + j);
+          if (id >= 0)
+            addSaved(hidden[b], id);
+          else
+            missing[numMissing++] = b;
+        }
+        // each block of rows of W1 is read once for all of them
+        for (int i = 0; numMissing > 0 && i < b1.length; i += BLOCK) {
+          for (int m = 0; m < numMissing; m++)
+            matrixMultiplySliceSum(hidden[missing[m]], W1, E[features[missing[m]][j]], offset, i);
+        }
+      }
+      for (int b = 0; b < n; b++)
+        addCubeInPlace(hidden[b], b1);
+
+      // likewise each block of rows of W2
+      for (int i = 0; i < numLabels; i += BLOCK) {
+        for (int b = 0; b < n; b++)
+          matrixMultiply(W2, hidden[b], scores, b * numLabels, i);
+      }
+      return scores;
+    }
+
+  }
+
   // extracting these small methods makes things faster; hotspot likes them
 
+  // The products below work on BLOCK rows of the matrix at a time. Each
+  // row's sum is still added up in order, so the results are exactly those
+  // of one row at a time, but the sums of a block do not wait on each other.
+
+  private static final int BLOCK = 4;
+
   private static double[] matrixMultiply(double[][] matrix, double[] vector) {
     double[] result = new double[matrix.length];
-    for (int i = 0; i < matrix.length; i++) {
-      result[i] = ArrayMath.dotProduct(matrix[i], vector);
+    for (int i = 0; i < matrix.length; i += BLOCK) {
+      matrixMultiply(matrix, vector, result, 0, i);
     }
     return result;
   }
 
+  /** The products of rows {@code [i, i + BLOCK)} of the matrix, stored from {@code result[resultOffset + i]} */
+  private static void matrixMultiply(double[][] matrix, double[] vector, double[] result, int resultOffset, int i) {
+    if (i + BLOCK > matrix.length) {
+      for (; i < matrix.length; i++) {
+        result[resultOffset + i] = ArrayMath.dotProduct(matrix[i], vector);
+      }
+      return;
+    }
+    double[] row0 = matrix[i], row1 = matrix[i + 1], row2 = matrix[i + 2], row3 = matrix[i + 3];
+    double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+    for (int j = 0; j < vector.length; j++) {
+      double v = vector[j];
+      sum0 += row0[j] * v;
+      sum1 += row1[j] * v;
+      sum2 += row2[j] * v;
+      sum3 += row3[j] * v;
+    }
+    result[resultOffset + i] = sum0;
+    result[resultOffset + i + 1] = sum1;
+    result[resultOffset + i + 2] = sum2;
+    result[resultOffset + i + 3] = sum3;
+  }
+
   private static void matrixMultiplySliceSum(double[] sum, double[][] matrix, double[] vector, int leftColumnOffset) {
-    for (int i = 0; i < matrix.length; i++) {
-      for (int j = 0; j < vector.length; j++) {
-        sum[i] += matrix[i][leftColumnOffset + j] * vector[j];
+    for (int i = 0; i < matrix.length; i += BLOCK) {
+      matrixMultiplySliceSum(sum, matrix, vector, leftColumnOffset, i);
+    }
+  }
+
+  /** Adds the products of rows {@code [i, i + BLOCK)} of a slice of the matrix to {@code sum} */
+  private static void matrixMultiplySliceSum(double[] sum, double[][] matrix, double[] vector, int leftColumnOffset, int i) {
+    if (i + BLOCK > matrix.length) {
+      for (; i < matrix.length; i++) {
+        for (int j = 0; j < vector.length; j++) {
+          sum[i] += matrix[i][leftColumnOffset + j] * vector[j];
+        }
       }
+      return;
+    }
+    double[] row0 = matrix[i], row1 = matrix[i + 1], row2 = matrix[i + 2], row3 = matrix[i + 3];
+    double sum0 = sum[i], sum1 = sum[i + 1], sum2 = sum[i + 2], sum3 = sum[i + 3];
+    for (int j = 0; j < vector.length; j++) {
+      double v = vector[j];
+      sum0 += row0[leftColumnOffset + j] * v;
+      sum1 += row1[leftColumnOffset + j] * v;
+      sum2 += row2[leftColumnOffset + j] * v;
+      sum3 += row3[leftColumnOffset + j] * v;
     }
+    sum[i] = sum0;
+    sum[i + 1] = sum1;
+    sum[i + 2] = sum2;
+    sum[i + 3] = sum3;
   }
 
   private static void addCubeInPlace(double[] vector, double [] bias) {
@@ -2,6 +2,7 @@ package edu.stanford.nlp.parser.nndep;
 
 import edu.stanford.nlp.international.Language;
 import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.MappedWeights;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
@@ -28,14 +29,23 @@ import edu.stanford.nlp.trees.international.pennchinese.ChineseGrammaticalStruct
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
-import static java.util.stream.Collectors.toList;
-
 /**
  * This class defines a transition-based dependency parser which makes
  * use of a classifier powered by a neural network. The neural network
@@ -118,6 +128,11 @@ public class DependencyParser  {
   private Classifier classifier;
   private ParsingSystem system;
 
+  /** The classifier of a loaded or trained model */
+  Classifier getClassifier() {
+    return classifier;
+  }
+
   private final Config config;
 
   /**
@@ -218,7 +233,12 @@ public class DependencyParser  {
   private static final int STACK_NUMBER = 6;
 
   private int[] getFeatureArray(Configuration c) {
-    int[] feature = new int[config.numTokens];  // positions 0-17 hold fWord, 18-35 hold fPos, 36-47 hold fLabel
+    return getFeatureArray(c, new int[config.numTokens]);
+  }
+
+  /** Fills in and returns {@code feature}, which must have {@link Config#numTokens} elements. */
+  private int[] getFeatureArray(Configuration c, int[] feature) {
+    // positions 0-17 hold fWord, 18-35 hold fPos, 36-47 hold fLabel
 
     for (int j = 2; j >= 0; --j) {
       int index = c.getStack(j);
@@ -467,6 +487,175 @@ public class DependencyParser  {
     }
   }
 
+  /** The first four bytes of a binary model file, "NND1" */
+  private static final int BINARY_MODEL_MAGIC = 0x4E4E4431;
+
+  /**
+   * Write the model in a binary format which {@link #loadModelFile(String)} reads much faster
+   * than the text format of {@link #writeModelFile(String)}: the weights are memory-mapped rather
+   * than parsed, and the pre-computed hidden layer activations are stored too, so they are not
+   * computed again at each start.
+   * <br>
+   * The file is: the magic number {@link #BINARY_MODEL_MAGIC}, the number of bytes of the header
+   * that follows, the header (language, tlp, sizes, vocabularies and the pre-computed feature IDs),
+   * zero padding to a multiple of 8 bytes, and then a {@link MappedWeights} section with the rows of
+   * E, W1, b1, W2 and the pre-computed activations, in that order. Values are doubles, so a parser
+   * loaded from either format gives the same parses.
+   */
+  public void writeBinaryModelFile(String modelFile) {
+    double[][] W1 = classifier.getW1();
+    double[] b1 = classifier.getb1();
+    double[][] W2 = classifier.getW2();
+    double[][] E = classifier.getE();
+    // compute the activations of all the pre-computed features, not only those which
+    // the last training batch needed
+    double[][] saved = new double[0][];
+    if (config.numPreComputed > 0) {
+      classifier.preCompute();
+      saved = classifier.getPreComputed();
+    }
+
+    try {
+      ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+      DataOutputStream header = new DataOutputStream(headerBytes);
+      header.writeUTF(language.name());
+      header.writeUTF(config.tlp.getClass().getCanonicalName());
+      header.writeInt(E[0].length);
+      header.writeInt(b1.length);
+      header.writeInt(W1[0].length / E[0].length);
+      for (List<String> known : Arrays.asList(knownWords, knownPos, knownLabels)) {
+        header.writeInt(known.size());
+        for (String s : known) {
+          header.writeUTF(s);
+        }
+      }
+      header.writeInt(preComputed.size());
+      for (int id : preComputed) {
+        header.writeInt(id);
+      }
+      header.writeInt(saved.length);
+      header.flush();
+
+      List<double[]> rows = new ArrayList<>(E.length + W1.length + 1 + W2.length + saved.length);
+      rows.addAll(Arrays.asList(E));
+      rows.addAll(Arrays.asList(W1));
+      rows.add(b1);
+      rows.addAll(Arrays.asList(W2));
+      rows.addAll(Arrays.asList(saved));
+
+      // written under a temporary name and then moved into place, since parsers may have the old file mapped
+      File file = new File(modelFile);
+      File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+      try {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+          output.writeInt(BINARY_MODEL_MAGIC);
+          output.writeInt(headerBytes.size());
+          headerBytes.writeTo(output);
+          output.write(new byte[binaryModelPadding(headerBytes.size())]);
+          MappedWeights.write(rows.toArray(new double[rows.size()][]), output);
+        }
+        try {
+          Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        if (tmp.exists() && ! tmp.delete()) {
+          tmp.deleteOnExit();
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /** The number of zero bytes after a binary model's header, so that its weights start at a multiple of 8 bytes */
+  private static int binaryModelPadding(int headerSize) {
+    return (8 - (8 + headerSize) % 8) % 8;
+  }
+
+  /** Whether a file is a model written by {@link #writeBinaryModelFile(String)} */
+  private static boolean isBinaryModel(File file) throws IOException {
+    if (file.length() < 4) {
+      return false;
+    }
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      return input.readInt() == BINARY_MODEL_MAGIC;
+    }
+  }
+
+  private void loadBinaryModelFile(File file) throws IOException {
+    int eSize, hSize, nTokens, nSaved;
+    long weightsStart;
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      input.readInt();
+      int headerSize = input.readInt();
+      config.language = Config.getLanguage(input.readUTF());
+      String tlpCanonicalName = input.readUTF();
+      try {
+        config.tlp = ReflectionLoading.loadByReflection(tlpCanonicalName);
+        log.info("Loaded TreebankLanguagePack: " + tlpCanonicalName);
+      } catch (Exception e) {
+        log.warn("Error: Failed to load TreebankLanguagePack: " + tlpCanonicalName);
+      }
+      eSize = input.readInt();
+      hSize = input.readInt();
+      nTokens = input.readInt();
+      knownWords = readStrings(input);
+      knownPos = readStrings(input);
+      knownLabels = readStrings(input);
+      int nPreComputed = input.readInt();
+      preComputed = new ArrayList<>(nPreComputed);
+      for (int i = 0; i < nPreComputed; i++) {
+        preComputed.add(input.readInt());
+      }
+      nSaved = input.readInt();
+      weightsStart = 8 + headerSize + binaryModelPadding(headerSize);
+    }
+    generateIDs();
+
+    MappedWeights weights = MappedWeights.map(file, weightsStart);
+    int nEmbeddings = knownWords.size() + knownPos.size() + knownLabels.size();
+    int nOutputs = knownLabels.size() * 2 - 1;
+    if (weights.numRows() != nEmbeddings + hSize + 1 + nOutputs + nSaved) {
+      throw new IOException("Binary model " + file + " has " + weights.numRows() + " rows of weights, not " + (nEmbeddings + hSize + 1 + nOutputs + nSaved));
+    }
+    int row = 0;
+    double[][] E = new double[nEmbeddings][];
+    for (int i = 0; i < E.length; i++) {
+      E[i] = weights.row(row++);
+    }
+    double[][] W1 = new double[hSize][];
+    for (int i = 0; i < W1.length; i++) {
+      W1[i] = weights.row(row++);
+    }
+    double[] b1 = weights.row(row++);
+    double[][] W2 = new double[nOutputs][];
+    for (int i = 0; i < W2.length; i++) {
+      W2[i] = weights.row(row++);
+    }
+    if (W1[0].length != eSize * nTokens || b1.length != hSize) {
+      throw new IOException("Binary model " + file + " has weights of the wrong size");
+    }
+
+    config.hiddenSize = hSize;
+    config.embeddingSize = eSize;
+    classifier = new Classifier(config, E, W1, b1, W2, preComputed);
+    // only the rows of the features that this configuration pre-computes
+    if (config.numPreComputed > 0 && nSaved > 0) {
+      classifier.setPreComputed(weights, row);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream input) throws IOException {
+    int n = input.readInt();
+    List<String> strings = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      strings.add(input.readUTF());
+    }
+    return strings;
+  }
+
   private static int writeEmbedding(double[] doubles, Writer output, int index, String word) throws IOException {
     output.write(word);
     for (double aDouble : doubles) {
@@ -489,7 +678,8 @@ public class DependencyParser  {
   /**
    * Load a saved parser model.
    *
-   * @param modelFile       Path to serialized model (may be GZipped)
+   * @param modelFile       Path to serialized model (may be GZipped), or to a binary model file
+   *                        (see {@link #writeBinaryModelFile(String)})
    * @param extraProperties Extra test-time properties not already associated with model (may be null)
    *
    * @return Loaded and initialized (see {@link #initialize(boolean)} model
@@ -519,6 +709,19 @@ public class DependencyParser  {
 
   private void loadModelFile(String modelFile, boolean verbose) {
     Timing t = new Timing();
+    File file = new File(modelFile);
+    try {
+      if (file.isFile() && isBinaryModel(file)) {
+        log.info("Loading binary depparse model: " + modelFile + " ... ");
+        loadBinaryModelFile(file);
+        initialize(verbose);
+        t.done(log, "Initializing dependency parser");
+        return;
+      }
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+
     try (BufferedReader input = IOUtils.readerFromString(modelFile)) {
 
       log.info("Loading depparse model: " + modelFile + " ... ");
@@ -730,7 +933,7 @@ public class DependencyParser  {
         // prediction, we just do this once in #initialize
         classifier.preCompute();
 
-        List<DependencyTree> predicted = devSents.stream().map(this::predictInner).collect(toList());
+        List<DependencyTree> predicted = predictInner(devSents);
 
         double uas = config.noPunc ? system.getUASnoPunc(devSents, predicted, devTrees) : system.getUAS(devSents, predicted, devTrees);
         log.info("UAS: " + uas);
@@ -755,7 +958,7 @@ public class DependencyParser  {
     if (devFile != null) {
       // Do final UAS evaluation and save if final model beats the
       // best intermediate one
-      List<DependencyTree> predicted = devSents.stream().map(this::predictInner).collect(toList());
+      List<DependencyTree> predicted = predictInner(devSents);
       double uas = config.noPunc ? system.getUASnoPunc(devSents, predicted, devTrees) : system.getUAS(devSents, predicted, devTrees);
 
       if (uas > bestUAS) {
@@ -935,30 +1138,77 @@ public class DependencyParser  {
    * for general parsing purposes.
    */
   private DependencyTree predictInner(CoreMap sentence) {
-    int numTrans = system.numTransitions();
+    return predictInner(Collections.singletonList(sentence)).get(0);
+  }
+
+  /**
+   * The maximum number of sentences parsed together by {@link #predictInner(List)}.
+   */
+  private static final int PREDICT_BATCH_SIZE = 64;
 
-    Configuration c = system.initialConfiguration(sentence);
-    while (!system.isTerminal(c)) {
+  /**
+   * Determine the dependency parses of many sentences.
+   * <p>
+   * Up to {@link #PREDICT_BATCH_SIZE} sentences are parsed in lockstep:
+   * each step scores the next transition of all of them in one call to a
+   * {@link Classifier.BatchScorer}, and a sentence that is done is replaced
+   * by the next one waiting. The parses are the same as parsing one sentence
+   * at a time.
+   */
+  private List<DependencyTree> predictInner(List<? extends CoreMap> sentences) {
+    int numTrans = system.numTransitions();
+    Classifier.BatchScorer scorer = classifier.new BatchScorer(Math.min(PREDICT_BATCH_SIZE, sentences.size()));
+
+    Configuration[] configurations = new Configuration[sentences.size()];
+    // the sentences being parsed, of which the first numActive are not yet done
+    int[] active = new int[scorer.capacity()];
+    int[][] features = new int[scorer.capacity()][config.numTokens];
+    int numActive = 0;
+    int next = 0;
+    while (numActive > 0 || next < sentences.size()) {
       if (Thread.interrupted()) {  // Allow interrupting
         throw new RuntimeInterruptedException();
       }
-      double[] scores = classifier.computeScores(getFeatureArray(c));
-
-      double optScore = Double.NEGATIVE_INFINITY;
-      String optTrans = null;
-
-      for (int j = 0; j < numTrans; ++j) {
-        if (scores[j] > optScore) {
-          String tr = system.transitions.get(j);
-          if (system.canApply(c, tr)) {
-            optScore = scores[j];
-            optTrans = tr;
+      while (numActive < active.length && next < sentences.size()) {
+        configurations[next] = system.initialConfiguration(sentences.get(next));
+        if (!system.isTerminal(configurations[next]))
+          active[numActive++] = next;
+        next++;
+      }
+      if (numActive == 0)
+        continue;
+
+      for (int b = 0; b < numActive; b++)
+        getFeatureArray(configurations[active[b]], features[b]);
+      double[] scores = scorer.computeScores(features, numActive);
+
+      int numStillActive = 0;
+      for (int b = 0; b < numActive; b++) {
+        Configuration c = configurations[active[b]];
+        double optScore = Double.NEGATIVE_INFINITY;
+        String optTrans = null;
+
+        for (int j = 0; j < numTrans; ++j) {
+          double score = scores[b * numTrans + j];
+          if (score > optScore) {
+            String tr = system.transitions.get(j);
+            if (system.canApply(c, tr)) {
+              optScore = score;
+              optTrans = tr;
+            }
           }
         }
+        system.apply(c, optTrans);
+        if (!system.isTerminal(c))
+          active[numStillActive++] = active[b];
       }
-      system.apply(c, optTrans);
+      numActive = numStillActive;
     }
-    return c.tree;
+
+    List<DependencyTree> trees = new ArrayList<>(configurations.length);
+    for (Configuration c : configurations)
+      trees.add(c.tree);
+    return trees;
   }
 
   /**
@@ -973,8 +1223,31 @@ public class DependencyParser  {
       throw new IllegalStateException("Parser has not been  " +
           "loaded and initialized; first load a model.");
 
-    DependencyTree result = predictInner(sentence);
+    return toGrammaticalStructure(sentence, predictInner(sentence));
+  }
+
+  /**
+   * Determine the dependency parses of the given sentences using the loaded
+   * model, parsing many of them together. The parses are the same as those
+   * of {@link #predict(edu.stanford.nlp.util.CoreMap)} on each sentence, but
+   * scoring the transitions of many sentences at once is faster.
+   *
+   * @throws java.lang.IllegalStateException If parser has not yet been loaded and initialized
+   *         (see {@link #initialize(boolean)}
+   */
+  public List<GrammaticalStructure> predictAll(List<? extends CoreMap> sentences) {
+    if (system == null)
+      throw new IllegalStateException("Parser has not been  " +
+          "loaded and initialized; first load a model.");
+
+    List<DependencyTree> results = predictInner(sentences);
+    List<GrammaticalStructure> parses = new ArrayList<>(results.size());
+    for (int i = 0; i < results.size(); i++)
+      parses.add(toGrammaticalStructure(sentences.get(i), results.get(i)));
+    return parses;
+  }
 
+  private GrammaticalStructure toGrammaticalStructure(CoreMap sentence, DependencyTree result) {
     // The rest of this method is just busy-work to convert the
     // package-local representation into a CoreNLP-standard
     // GrammaticalStructure.
@@ -1113,7 +1386,7 @@ public class DependencyParser  {
     }
     log.info(String.format("OOV Words: %d / %d = %.2f%%\n", numOOVWords, numWords, numOOVWords * 100.0 / numWords));
 
-    List<DependencyTree> predicted = testSents.stream().map(this::predictInner).collect(toList());
+    List<DependencyTree> predicted = predictInner(testSents);
     Map<String, Double> result = system.evaluate(testSents, predicted, testTrees);
 
     double uas = config.noPunc ? result.get("UASnoPunc") : result.get("UAS");
@@ -1184,8 +1457,8 @@ public class DependencyParser  {
 
     system = new ArcStandard(config.tlp, lDict, verbose);
 
-    // Pre-compute matrix multiplications
-    if (config.numPreComputed > 0) {
+    // Pre-compute matrix multiplications, unless they were loaded with the model
+    if (config.numPreComputed > 0 && ! classifier.hasPreComputed()) {
       classifier.preCompute();
     }
   }
@@ -1222,6 +1495,10 @@ public class DependencyParser  {
    *     <strong>Parse raw text from standard input, writing to standard output:</strong>
    *     {@code java edu.stanford.nlp.parser.nndep.DependencyParser -model modelOutputFile.txt.gz -textFile - -outFile -}
    *   </li>
+   *   <li>
+   *     <strong>Convert a model to the binary format, which loads faster:</strong>
+   *     {@code java edu.stanford.nlp.parser.nndep.DependencyParser -model modelOutputFile.txt.gz -binaryModel modelOutputFile.bin}
+   *   </li>
    * </ul>
    *
    * <p>
@@ -1231,6 +1508,7 @@ public class DependencyParser  {
    * Input / output options:
    * <table>
    *   <tr><th>Option</th><th>Required for training</th><th>Required for testing / parsing</th><th>Description</th></tr>
+   *   <tr><td><tt>-binaryModel</tt></td><td>No</td><td>No</td><td>Path to write the model given with <tt>-model</tt> to, in a binary format which loads much faster (see {@link #writeBinaryModelFile(String)}). A binary model file is then given with <tt>-model</tt> like any other, but cannot be gzipped or read from the classpath.</td></tr>
    *   <tr><td><tt>-devFile</tt></td><td>Optional</td><td>No</td><td>Path to a development-set treebank in <a href="http://ilk.uvt.nl/conll/#dataformat">CoNLL-X format</a>. If provided, the dev set performance is monitored during training.</td></tr>
    *   <tr><td><tt>-embedFile</tt></td><td>Optional (highly recommended!)</td><td>No</td><td>A word embedding file, containing distributed representations of English words. Each line of the provided file should contain a single word followed by the elements of the corresponding word embedding (space-delimited). It is not absolutely necessary that all words in the treebank be covered by this embedding file, though the parser's performance will generally improve if you are able to provide better embeddings for more words.</td></tr>
    *   <tr><td><tt>-model</tt></td><td>Yes</td><td>Yes</td><td>Path to a model file. If the path ends in <tt>.gz</tt>, the model will be read as a Gzipped model file. During training, we write to this path; at test time we read a pre-trained model from this path.</td></tr>
@@ -1279,10 +1557,19 @@ public class DependencyParser  {
     }
 
     boolean loaded = false;
-    // Test with CoNLL-X data
-    if (props.containsKey("testFile")) {
+    // Convert a model to the binary format
+    if (props.containsKey("binaryModel")) {
       parser.loadModelFile(props.getProperty("model"));
       loaded = true;
+      parser.writeBinaryModelFile(props.getProperty("binaryModel"));
+    }
+
+    // Test with CoNLL-X data
+    if (props.containsKey("testFile")) {
+      if (!loaded) {
+        parser.loadModelFile(props.getProperty("model"));
+        loaded = true;
+      }
       parser.testCoNLL(props.getProperty("testFile"), props.getProperty("outFile"));
     }
 
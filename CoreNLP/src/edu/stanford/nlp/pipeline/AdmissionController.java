@@ -0,0 +1,235 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.*;
+
+/**
+ * Admits annotation requests against a budget of heap memory, so that a few very large documents
+ * arriving at once queue up rather than run the JVM out of memory.
+ * <br>
+ * The memory a request needs is estimated from the length of its text and the annotators it runs,
+ * with rough per-character costs for each annotator (see {@link AdmissionController#estimateBytes}).
+ * Requests are admitted in the order they arrive while the sum of the estimates of the admitted
+ * requests fits in the budget; a request that would not fit waits, and so do the requests behind it,
+ * so large documents are not starved by a stream of small ones. A request whose estimate is larger
+ * than the whole budget is admitted when nothing else is running.
+ * <br>
+ * A request that waits longer than its maximum wait, or arrives when the queue is full, is rejected;
+ * the caller should answer it with 503 Service Unavailable and {@link AdmissionController#retryAfterSeconds()}.
+ */
+public class AdmissionController {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(AdmissionController.class);
+
+  /** The memory a request needs regardless of its length: the request itself, the output, etc. */
+  private static final long BASE_BYTES = 1 << 20;
+
+  /** The memory per character of text that we assume an annotator we don't know of needs. */
+  private static final long DEFAULT_BYTES_PER_CHAR = 100;
+
+  /**
+   * Rough bytes of heap per character of text for each annotator, on top of what the annotators
+   * before it need. Tokens are about 5 characters and a CoreLabel with the usual annotations is
+   * several hundred bytes; the parsers and coref also hold charts, trees, mentions and mention pairs.
+   */
+  private static final Map<String, Long> BYTES_PER_CHAR;
+  static {
+    Map<String, Long> costs = new HashMap<>();
+    costs.put("tokenize", 150L);
+    costs.put("cleanxml", 20L);
+    costs.put("ssplit", 20L);
+    costs.put("pos", 30L);
+    costs.put("lemma", 20L);
+    costs.put("ner", 150L);
+    costs.put("regexner", 20L);
+    costs.put("entitymentions", 30L);
+    costs.put("parse", 400L);
+    costs.put("depparse", 100L);
+    costs.put("dcoref", 600L);
+    costs.put("coref", 600L);
+    costs.put("mention", 100L);
+    costs.put("natlog", 50L);
+    costs.put("openie", 300L);
+    costs.put("sentiment", 300L);
+    costs.put("quote", 20L);
+    costs.put("quote.attribution", 100L);
+    BYTES_PER_CHAR = Collections.unmodifiableMap(costs);
+  }
+
+
+  /** A request waiting to be admitted. */
+  private static class Waiter {
+    final long bytes;
+    boolean admitted;  // = false
+
+    Waiter(long bytes) {
+      this.bytes = bytes;
+    }
+  }
+
+
+  /** The memory we can hand out, in bytes. */
+  private final long budget;
+  /** The most requests that can wait to be admitted. */
+  private final int maxQueued;
+
+  private final LinkedList<Waiter> queue = new LinkedList<>();
+  private long inUse;  // = 0
+  private int running;  // = 0
+  private long admitted;  // = 0
+  private long rejected;  // = 0
+  private long released;  // = 0
+  /** A moving average of how long admitted requests hold their memory, in milliseconds. */
+  private double meanHoldMillis;  // = 0.0
+
+  /**
+   * Create an admission controller.
+   *
+   * @param budget The bytes of heap that admitted requests may use in total.
+   * @param maxQueued The most requests that may wait to be admitted; any more are rejected outright.
+   */
+  public AdmissionController(long budget, int maxQueued) {
+    if (budget <= 0) {
+      throw new IllegalArgumentException("Memory budget must be positive: " + budget);
+    }
+    this.budget = budget;
+    this.maxQueued = maxQueued;
+    log.info("Admitting requests within a memory budget of " + (budget >> 20) + " MB");
+  }
+
+  /** Create an admission controller with a budget of a fraction of the maximum heap size. */
+  public static AdmissionController ofHeapFraction(double fraction, int maxQueued) {
+    return new AdmissionController((long) (fraction * Runtime.getRuntime().maxMemory()), maxQueued);
+  }
+
+  /**
+   * Estimate the heap memory that running the given annotators over a text of the given length needs.
+   *
+   * @param annotators The annotators to run, as in the "annotators" property.
+   * @param numChars The length of the text.
+   *
+   * @return An estimate of the bytes needed.
+   */
+  public static long estimateBytes(String annotators, long numChars) {
+    long perChar = 0;
+    for (String name : annotators.split("[, \t]+")) {
+      name = name.trim();
+      if ( ! name.isEmpty()) {
+        perChar += BYTES_PER_CHAR.getOrDefault(name, DEFAULT_BYTES_PER_CHAR);
+      }
+    }
+    return BASE_BYTES + perChar * numChars;
+  }
+
+  /**
+   * Wait until the given memory is available, and take it.
+   *
+   * @param bytes The estimated bytes the request needs.
+   * @param maxWaitMillis The longest to wait to be admitted.
+   *
+   * @return True if the request was admitted, in which case the caller must call
+   *         {@link AdmissionController#release(long, long)} once it is done; false if it was rejected.
+   *
+   * @throws InterruptedException Thrown if we were interrupted while waiting. The request is not admitted.
+   */
+  public synchronized boolean acquire(long bytes, long maxWaitMillis) throws InterruptedException {
+    bytes = Math.min(bytes, budget);
+    if (queue.isEmpty() && fits(bytes)) {
+      take(bytes);
+      return true;
+    }
+    if (queue.size() >= maxQueued) {
+      rejected += 1;
+      return false;
+    }
+    Waiter waiter = new Waiter(bytes);
+    queue.add(waiter);
+    long deadline = System.currentTimeMillis() + maxWaitMillis;
+    try {
+      while ( ! waiter.admitted) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          rejected += 1;
+          return false;
+        }
+        wait(remaining);
+      }
+      return true;
+    } catch (InterruptedException e) {
+      if (waiter.admitted) {
+        // We were admitted just before the interrupt, but the caller won't release: give it back
+        inUse -= bytes;
+        running -= 1;
+        admitted -= 1;
+        admitWaiting();
+      }
+      throw e;
+    } finally {
+      if ( ! waiter.admitted) {
+        // Let the requests behind us in
+        queue.remove(waiter);
+        admitWaiting();
+      }
+    }
+  }
+
+  /**
+   * Give back memory taken with {@link AdmissionController#acquire(long, long)}.
+   *
+   * @param bytes The same number of bytes that were acquired.
+   * @param heldMillis How long the request held the memory, for estimating when to retry.
+   */
+  public synchronized void release(long bytes, long heldMillis) {
+    bytes = Math.min(bytes, budget);
+    inUse -= bytes;
+    running -= 1;
+    meanHoldMillis = released == 0 ? heldMillis : 0.9 * meanHoldMillis + 0.1 * heldMillis;
+    released += 1;
+    admitWaiting();
+  }
+
+  private boolean fits(long bytes) {
+    return running == 0 || inUse + bytes <= budget;
+  }
+
+  private void take(long bytes) {
+    inUse += bytes;
+    running += 1;
+    admitted += 1;
+  }
+
+  /** Admit requests from the head of the queue for as long as they fit. */
+  private void admitWaiting() {
+    boolean any = false;
+    while ( ! queue.isEmpty() && fits(queue.getFirst().bytes)) {
+      Waiter waiter = queue.removeFirst();
+      take(waiter.bytes);
+      waiter.admitted = true;
+      any = true;
+    }
+    if (any) {
+      notifyAll();
+    }
+  }
+
+  /** How long a rejected client should wait before it tries again, for the Retry-After header. */
+  public synchronized int retryAfterSeconds() {
+    return (int) Math.max(1, Math.ceil(meanHoldMillis / 1000.0));
+  }
+
+  /** The budget, what is in use, and what is waiting, as text for a status endpoint. */
+  public synchronized String status() {
+    long queuedBytes = 0;
+    for (Waiter waiter : queue) {
+      queuedBytes += waiter.bytes;
+    }
+    Runtime runtime = Runtime.getRuntime();
+    return "memory budget: " + (inUse >> 20) + " MB of " + (budget >> 20) + " MB in use by " + running + " requests\n" +
+        "admission queue: " + queue.size() + " requests (" + (queuedBytes >> 20) + " MB) waiting, at most " + maxQueued + '\n' +
+        "admitted: " + admitted + ", rejected: " + rejected + '\n' +
+        "heap: " + ((runtime.totalMemory() - runtime.freeMemory()) >> 20) + " MB used of " + (runtime.maxMemory() >> 20) + " MB\n";
+  }
+
+}
@@ -56,6 +56,11 @@ public class AnnotationPipeline implements Annotator {
     }
   }
 
+  /** The annotators of this pipeline, in the order they run. */
+  public List<Annotator> getAnnotators() {
+    return Collections.unmodifiableList(annotators);
+  }
+
   /**
    * Run the pipeline on an input annotation.
    * The annotation is modified in place.
@@ -64,21 +69,33 @@ public class AnnotationPipeline implements Annotator {
    */
   @Override
   public void annotate(Annotation annotation) {
-    Iterator<MutableLong> it = accumulatedTime.iterator();
+    for (int i = 0; i < annotators.size(); i++) {
+      annotate(i, annotation);
+    }
+  }
+
+  /**
+   * Run just one annotator of the pipeline on an input annotation, as {@link #annotate(Annotation)}
+   * runs each of them: it first checks for an interrupt, and its time counts towards
+   * {@link #timingInformation()}. This is for running the annotators of a pipeline one
+   * at a time, as {@link StagedAnnotationPipeline} does.
+   * The annotation is modified in place.
+   *
+   * @param index The position of the annotator in the pipeline
+   * @param annotation The input annotation
+   */
+  public void annotate(int index, Annotation annotation) {
+    if (Thread.interrupted()) {  // Allow interrupting
+      throw new RuntimeInterruptedException();
+    }
     Timing t = new Timing();
-    for (Annotator annotator : annotators) {
-      if (Thread.interrupted()) {  // Allow interrupting
-        throw new RuntimeInterruptedException();
-      }
-      if (TIME) {
-        t.start();
-      }
-      annotator.annotate(annotation);
-      if (TIME) {
-        long elapsed = t.stop();
-        MutableLong m = it.next();
-        m.incValue(elapsed);
-      }
+    if (TIME) {
+      t.start();
+    }
+    annotators.get(index).annotate(annotation);
+    if (TIME) {
+      long elapsed = t.stop();
+      accumulatedTime.get(index).incValue(elapsed);
     }
   }
 
@@ -71,10 +71,30 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
     return maxTime;
   }
 
+  /**
+   * Without threads or a timeout, all the sentences of the document are
+   * parsed together (see {@link DependencyParser#predictAll}), which
+   * is faster than one at a time.
+   */
+  @Override
+  public void annotate(Annotation annotation) {
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (sentences == null || nThreads() != 1 || maxTime() > 0) {
+      super.annotate(annotation);
+      return;
+    }
+    List<GrammaticalStructure> parses = parser.predictAll(sentences);
+    for (int i = 0; i < sentences.size(); i++) {
+      setDependencies(sentences.get(i), parses.get(i));
+    }
+  }
+
   @Override
   protected void doOneSentence(Annotation annotation, CoreMap sentence) {
-    GrammaticalStructure gs = parser.predict(sentence);
+    setDependencies(sentence, parser.predict(sentence));
+  }
 
+  private void setDependencies(CoreMap sentence, GrammaticalStructure gs) {
     SemanticGraph deps = SemanticGraphFactory.makeFromTree(gs, Mode.COLLAPSED, extraDependencies, null),
                   uncollapsedDeps = SemanticGraphFactory.makeFromTree(gs, Mode.BASIC, extraDependencies, null),
                   ccDeps = SemanticGraphFactory.makeFromTree(gs, Mode.CCPROCESSED, extraDependencies, null),
@@ -2,15 +2,24 @@ package edu.stanford.nlp.pipeline;
 import edu.stanford.nlp.util.logging.Redwood;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import edu.stanford.nlp.ling.*;
 import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 import edu.stanford.nlp.util.*;
-import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
-import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
+import edu.stanford.nlp.util.concurrent.SharedForkJoinPools;
 
 /**
  * Wrapper for the maxent part of speech tagger.
+ * <br>
+ * With more than one thread, the sentences of a document are tagged in parallel on the
+ * {@link SharedForkJoinPools} pool of that many threads, which other annotators with the same
+ * number of threads also use. Short sentences are packed together into batches of about
+ * {@link #BATCH_TOKENS} tokens, so that a document of many one word sentences is not handed out
+ * a word at a time, and a longer sentence is a batch of its own. Each batch is a task of its own,
+ * submitted longest first, and the pool's threads take them in the order they were submitted,
+ * so that no thread is left with a long sentence at the end.
  *
  * @author Anna Rafferty
  */
@@ -27,6 +36,12 @@ public class POSTaggerAnnotator implements Annotator  {
 
   private final boolean reuseTags;
 
+  /** Sentences are tagged in batches of at least this many tokens, or a sentence at least this long alone */
+  static final int BATCH_TOKENS = 256;
+
+  /** The shared threads that tag the batches of sentences of a document, or null to tag them on the annotating thread */
+  private final ForkJoinPool pool;
+
   /** Create a tagger annotator using the default English tagger from the models jar
    *  (and non-verbose initialization).
    */
@@ -62,6 +77,7 @@ public class POSTaggerAnnotator implements Annotator  {
     this.maxSentenceLength = maxSentenceLength;
     this.nThreads = numThreads;
     this.reuseTags = false;
+    this.pool = SharedForkJoinPools.get(nThreads);
   }
 
   public POSTaggerAnnotator(String annotatorName, Properties props) {
@@ -74,6 +90,7 @@ public class POSTaggerAnnotator implements Annotator  {
     this.maxSentenceLength = PropertiesUtils.getInt(props, annotatorName + ".maxlen", Integer.MAX_VALUE);
     this.nThreads = PropertiesUtils.getInt(props, annotatorName + ".nthreads", PropertiesUtils.getInt(props, "nthreads", 1));
     this.reuseTags = PropertiesUtils.getBool(props, annotatorName + ".reuseTags", false);
+    this.pool = SharedForkJoinPools.get(nThreads);
   }
 
   private static MaxentTagger loadModel(String loc, boolean verbose) {
@@ -93,21 +110,22 @@ public class POSTaggerAnnotator implements Annotator  {
   public void annotate(Annotation annotation) {
     // turn the annotation into a sentence
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
-      if (nThreads == 1) {
-        for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+      List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+      if (pool == null) {
+        for (CoreMap sentence : sentences) {
           doOneSentence(sentence);
         }
       } else {
-        MulticoreWrapper<CoreMap, CoreMap> wrapper = new MulticoreWrapper<>(nThreads, new POSTaggerProcessor());
-        for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          wrapper.put(sentence);
-          while (wrapper.peek()) {
-            wrapper.poll();
-          }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (List<CoreMap> batch : batches(sentences)) {
+          tasks.add(pool.submit(() -> {
+            for (CoreMap sentence : batch) {
+              doOneSentence(sentence);
+            }
+          }));
         }
-        wrapper.join();
-        while (wrapper.peek()) {
-          wrapper.poll();
+        for (ForkJoinTask<?> task : tasks) {
+          task.join();
         }
       }
     } else {
@@ -115,16 +133,48 @@ public class POSTaggerAnnotator implements Annotator  {
     }
   }
 
-  private class POSTaggerProcessor implements ThreadsafeProcessor<CoreMap, CoreMap> {
-    @Override
-    public CoreMap process(CoreMap sentence) {
-      return doOneSentence(sentence);
+  /**
+   * Packs consecutive sentences into batches of at least {@link #BATCH_TOKENS} tokens, except
+   * perhaps the last, with each sentence of at least that many tokens in a batch of its own.
+   *
+   * @return The batches, longest first
+   */
+  static List<List<CoreMap>> batches(List<CoreMap> sentences) {
+    List<List<CoreMap>> batches = new ArrayList<>();
+    List<Integer> sizes = new ArrayList<>();
+    List<CoreMap> batch = new ArrayList<>();
+    int batchSize = 0;
+    for (CoreMap sentence : sentences) {
+      int size = sentence.get(CoreAnnotations.TokensAnnotation.class).size();
+      if (size >= BATCH_TOKENS) {
+        batches.add(Collections.singletonList(sentence));
+        sizes.add(size);
+        continue;
+      }
+      batch.add(sentence);
+      batchSize += size;
+      if (batchSize >= BATCH_TOKENS) {
+        batches.add(batch);
+        sizes.add(batchSize);
+        batch = new ArrayList<>();
+        batchSize = 0;
+      }
+    }
+    if ( ! batch.isEmpty()) {
+      batches.add(batch);
+      sizes.add(batchSize);
     }
 
-    @Override
-    public ThreadsafeProcessor<CoreMap, CoreMap> newInstance() {
-      return this;
+    Integer[] order = new Integer[batches.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (i, j) -> Integer.compare(sizes.get(j), sizes.get(i)));
+    List<List<CoreMap>> longestFirst = new ArrayList<>(order.length);
+    for (int i : order) {
+      longestFirst.add(batches.get(i));
     }
+    return longestFirst;
   }
 
   private CoreMap doOneSentence(CoreMap sentence) {
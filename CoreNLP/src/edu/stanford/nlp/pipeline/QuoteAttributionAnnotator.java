@@ -14,12 +14,15 @@ import edu.stanford.nlp.quoteattribution.Sieves.MSSieves.DeterministicSpeakerSie
 import edu.stanford.nlp.quoteattribution.Sieves.MSSieves.LooseConversationalSpeakerSieve;
 import edu.stanford.nlp.quoteattribution.Sieves.MSSieves.MSSieve;
 import edu.stanford.nlp.quoteattribution.Sieves.MSSieves.MajoritySpeakerSieve;
+import edu.stanford.nlp.quoteattribution.Sieves.MentionIndex;
 import edu.stanford.nlp.quoteattribution.Sieves.QMSieves.*;
 import edu.stanford.nlp.util.Timing;
 import edu.stanford.nlp.util.logging.Redwood;
 import edu.stanford.nlp.util.*;
+import edu.stanford.nlp.util.concurrent.SharedForkJoinPools;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -53,6 +56,10 @@ import java.util.*;
  *   <li>quoteattribution.familyWordsFile: path to file with family words list.</li>
  *   <li>quoteattribution.animacyWordsFile: path to file with animacy words list.</li>
  *   <li>quoteattribution.genderNamesFile: path to file with names list with gender information.</li>
+ *   <li>quoteattribution.nthreads: the number of threads on which sieves that label each quote on its own
+ *   (e.g. tri, dep, voc, det, and finding the candidate speakers in top) label quotes in parallel (default=1).
+ *   Sieves that read other quotes' labels, like conv and loose, still label quotes in order, so the output
+ *   is the same as with one thread.</li>
  * </ul>
  *
  * @author Grace Muzny, Michael Fang
@@ -148,6 +155,8 @@ public class QuoteAttributionAnnotator implements Annotator {
   private Map<String, List<Person>> characterMap;
   private String qmSieveList;
   private String msSieveList;
+  /** The threads that sieves label independent quotes on, or null to label them on the annotating thread */
+  private final ForkJoinPool pool;
 
   public QuoteAttributionAnnotator(Properties props) {
 
@@ -165,6 +174,8 @@ public class QuoteAttributionAnnotator implements Annotator {
     }
     qmSieveList = props.getProperty("QMSieves", DEFAULT_QMSIEVES);
     msSieveList = props.getProperty("MSSieves", DEFAULT_MSSIEVES);
+    int nThreads = PropertiesUtils.getInt(props, "nthreads", 1);
+    pool = SharedForkJoinPools.get(nThreads);
 
     if (VERBOSE) {
       timer = new Timing();
@@ -231,15 +242,26 @@ public class QuoteAttributionAnnotator implements Annotator {
     //annotate depparse of quote-removed sentences
     QuoteAttributionUtils.annotateForDependencyParse(annotation);
     Annotation preprocessed = annotation;
+    // all the sieves look for mentions in the same tokens, so find them once
+    MentionIndex mentionIndex = new MentionIndex(preprocessed.get(CoreAnnotations.TokensAnnotation.class),
+        characterMap, animacyList);
 
     // 2. Quote->Mention annotation
     Map<String, QMSieve> qmSieves = getQMMapping(preprocessed, pronounCorefMap);
+    for (QMSieve sieve : qmSieves.values()) {
+      sieve.setMentionIndex(mentionIndex);
+      sieve.setPool(pool);
+    }
     for(String sieveName : qmSieveList.split(",")) {
       qmSieves.get(sieveName).doQuoteToMention(preprocessed);
     }
 
     // 3. Mention->Speaker annotation
     Map<String, MSSieve> msSieves = getMSMapping(preprocessed, pronounCorefMap);
+    for (MSSieve sieve : msSieves.values()) {
+      sieve.setMentionIndex(mentionIndex);
+      sieve.setPool(pool);
+    }
     for(String sieveName : msSieveList.split(",")) {
       msSieves.get(sieveName).doMentionToSpeaker(preprocessed);
     }
@@ -0,0 +1,281 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs many documents through a {@link StanfordCoreNLP} pipeline at once by splitting the
+ * pipeline into stages -- groups of consecutive annotators -- each with its own bounded
+ * queue and pool of worker threads. A document moves to the next stage's queue as soon as a
+ * stage is done with it, so while one document is in a slow stage (say, parse or coref)
+ * the cheap stages keep working on the documents behind it.
+ * <br>
+ * Stages are given as a spec like {@code "tokenize,ssplit,pos,lemma;ner;parse;coref"}:
+ * stages are separated by semicolons and list the annotators they run. An annotator that is
+ * not listed runs in the stage of the annotator before it (or the first stage). Stages never
+ * go backwards, so a pipeline whose annotators are in a different order than the spec just
+ * runs more of them in a later stage.
+ * <br>
+ * When a stage's queue is full, whoever hands it a document blocks -- the submitting thread
+ * for the first stage, the previous stage's workers for later ones -- which bounds the
+ * number of documents in flight.
+ */
+public class StagedAnnotationPipeline {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(StagedAnnotationPipeline.class);
+
+  /** A document in flight, with the remaining plan for it. */
+  private static class Job {
+    final StanfordCoreNLP pipeline;
+    final Annotation annotation;
+    final CompletableFuture<Annotation> future;
+    /** Stage index and the positions in the pipeline of the annotators to run there, in order */
+    final List<Map.Entry<Integer, List<Integer>>> segments;
+    /** Called with the future once no stage is working on the document anymore */
+    final Consumer<? super CompletableFuture<Annotation>> onExit;
+    int next;  // = 0
+    long enqueuedNanos;
+    /** The worker running the document right now, if any; guarded by this job */
+    private Thread runner;
+
+    Job(StanfordCoreNLP pipeline, Annotation annotation, List<Map.Entry<Integer, List<Integer>>> segments,
+        Consumer<? super CompletableFuture<Annotation>> onExit) {
+      this.pipeline = pipeline;
+      this.annotation = annotation;
+      this.segments = segments;
+      this.onExit = onExit;
+      this.future = new CompletableFuture<Annotation>() {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+          boolean cancelled = super.cancel(mayInterruptIfRunning);
+          if (cancelled && mayInterruptIfRunning) {
+            // like a cancelled FutureTask, stop the annotator at its next interrupt check
+            synchronized (Job.this) {
+              if (runner != null) {
+                runner.interrupt();
+              }
+            }
+          }
+          return cancelled;
+        }
+      };
+    }
+
+    synchronized void setRunner(Thread thread) {
+      runner = thread;
+    }
+  }
+
+
+  /** One stage: a bounded queue of documents and the workers that take from it. */
+  private class Stage {
+    final String name;
+    final BlockingQueue<Job> queue;
+    final List<Thread> workers = new ArrayList<>();
+    final AtomicInteger busy = new AtomicInteger();
+    final AtomicLong completed = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    /** Documents that were already cancelled (or timed out) when they reached the front of the queue */
+    final AtomicLong skipped = new AtomicLong();
+    final AtomicLong totalWaitNanos = new AtomicLong();
+    final AtomicLong totalRunNanos = new AtomicLong();
+    final AtomicLong maxRunNanos = new AtomicLong();
+
+    Stage(String name, int numThreads, int queueSize) {
+      this.name = name;
+      this.queue = new ArrayBlockingQueue<>(queueSize);
+      for (int i = 0; i < numThreads; i++) {
+        Thread worker = new Thread(this::work, "stage-" + name + '-' + i);
+        worker.setDaemon(true);
+        workers.add(worker);
+        worker.start();
+      }
+    }
+
+    void work() {
+      while (true) {
+        Job job;
+        try {
+          job = queue.take();
+        } catch (InterruptedException e) {
+          return;
+        }
+        long start = System.nanoTime();
+        busy.incrementAndGet();
+        job.setRunner(Thread.currentThread());
+        boolean skip = false;
+        try {
+          // the request may have been cancelled (e.g., timed out) while it was queued
+          if (job.future.isDone()) {
+            skip = true;
+          } else {
+            // as in StanfordCoreNLP.annotate: check for an interrupt before each annotator, and time it
+            for (int index : job.segments.get(job.next).getValue()) {
+              job.pipeline.annotate(index, job.annotation);
+            }
+            job.next += 1;
+            completed.incrementAndGet();
+          }
+        } catch (Throwable t) {
+          failed.incrementAndGet();
+          job.future.completeExceptionally(t);
+        } finally {
+          // once the runner is cleared, a cancel can no longer interrupt this thread
+          job.setRunner(null);
+          if (skip) {
+            // it never ran here, so it doesn't count towards the stage's waits and latencies
+            skipped.incrementAndGet();
+          } else {
+            totalWaitNanos.addAndGet(start - job.enqueuedNanos);
+            long elapsed = System.nanoTime() - start;
+            totalRunNanos.addAndGet(elapsed);
+            maxRunNanos.accumulateAndGet(elapsed, Math::max);
+          }
+          busy.decrementAndGet();
+          // Clear the interrupt flag an annotator or a cancel may have left, so the next take() works
+          Thread.interrupted();
+        }
+        if (job.future.isDone()) {
+          job.onExit.accept(job.future);
+        } else if (job.next == job.segments.size()) {
+          job.pipeline.countWords(job.annotation);
+          job.future.complete(job.annotation);
+          job.onExit.accept(job.future);
+        } else {
+          try {
+            enqueue(job);
+          } catch (InterruptedException e) {
+            job.future.completeExceptionally(e);
+            job.onExit.accept(job.future);
+            return;
+          }
+        }
+      }
+    }
+
+    void metrics(JSONOutputter.Writer writer) {
+      long done = completed.get() + failed.get();
+      writer.set("name", name);
+      writer.set("threads", workers.size());
+      writer.set("queueDepth", queue.size());
+      writer.set("queueCapacity", queue.size() + queue.remainingCapacity());
+      writer.set("busy", busy.get());
+      writer.set("completed", completed.get());
+      writer.set("failed", failed.get());
+      writer.set("skipped", skipped.get());
+      writer.set("meanWaitMillis", done == 0 ? 0.0 : totalWaitNanos.get() / 1e6 / done);
+      writer.set("meanLatencyMillis", done == 0 ? 0.0 : totalRunNanos.get() / 1e6 / done);
+      writer.set("maxLatencyMillis", maxRunNanos.get() / 1e6);
+    }
+  }
+
+
+  private final List<Stage> stages = new ArrayList<>();
+  /** Annotator name to the index of the stage it runs in */
+  private final Map<String, Integer> stageOf = new HashMap<>();
+
+  /**
+   * Create the stages and start their workers.
+   *
+   * @param spec The stages, as semicolon-separated lists of comma-separated annotator names.
+   * @param threadsPerStage The number of workers for each stage, comma-separated. If there is
+   *                        only one number, every stage gets that many workers.
+   * @param queueSize The capacity of each stage's queue.
+   */
+  public StagedAnnotationPipeline(String spec, String threadsPerStage, int queueSize) {
+    String[] stageSpecs = spec.split(";");
+    String[] threads = threadsPerStage.split(",");
+    if (threads.length != 1 && threads.length != stageSpecs.length) {
+      throw new IllegalArgumentException("Got " + threads.length + " thread counts for " + stageSpecs.length + " stages");
+    }
+    for (int i = 0; i < stageSpecs.length; i++) {
+      String[] names = stageSpecs[i].trim().split("[, \t]+");
+      for (String name : names) {
+        if ( ! name.isEmpty()) {
+          stageOf.put(name, i);
+        }
+      }
+      int numThreads = Integer.parseInt(threads[threads.length == 1 ? 0 : i].trim());
+      stages.add(new Stage(String.join("+", names), Math.max(1, numThreads), Math.max(1, queueSize)));
+    }
+    log.info("Started " + stages.size() + " annotation stages: " + spec);
+  }
+
+  /** Splits the positions of the pipeline's annotators into the segments to run in each stage. */
+  private List<Map.Entry<Integer, List<Integer>>> plan(StanfordCoreNLP pipeline) {
+    List<Map.Entry<Integer, List<Integer>>> segments = new ArrayList<>();
+    List<String> names = pipeline.getAnnotatorNames();
+    int numAnnotators = pipeline.getAnnotators().size();
+    int stage = 0;
+    for (int i = 0; i < numAnnotators; i++) {
+      String name = i < names.size() ? names.get(i) : null;  // annotators added by hand have no name
+      stage = Math.max(stage, stageOf.getOrDefault(name, stage));
+      if (segments.isEmpty() || segments.get(segments.size() - 1).getKey() != stage) {
+        segments.add(new AbstractMap.SimpleImmutableEntry<>(stage, new ArrayList<>()));
+      }
+      segments.get(segments.size() - 1).getValue().add(i);
+    }
+    return segments;
+  }
+
+  private void enqueue(Job job) throws InterruptedException {
+    job.enqueuedNanos = System.nanoTime();
+    stages.get(job.segments.get(job.next).getKey()).queue.put(job);
+  }
+
+  /**
+   * Queue a document for annotation, blocking while the first stage it needs is full.
+   *
+   * @param pipeline The pipeline whose annotators to run.
+   * @param annotation The document to annotate in place.
+   *
+   * @return A future for the annotated document. Cancelling it stops the document from
+   *         entering any further stages.
+   */
+  public CompletableFuture<Annotation> submit(StanfordCoreNLP pipeline, Annotation annotation) throws InterruptedException {
+    return submit(pipeline, annotation, future -> {});
+  }
+
+  /**
+   * Like {@link StagedAnnotationPipeline#submit(StanfordCoreNLP, Annotation)}, but also calls
+   * {@code onExit} with the future once no stage is working on the document anymore. This is after
+   * the future is done, and for a cancelled document it may be some time after: when the stage that
+   * was running it finishes, or when it reaches the front of the queue it was waiting in.
+   */
+  public CompletableFuture<Annotation> submit(StanfordCoreNLP pipeline, Annotation annotation,
+                                              Consumer<? super CompletableFuture<Annotation>> onExit) throws InterruptedException {
+    Job job = new Job(pipeline, annotation, plan(pipeline), onExit);
+    if (job.segments.isEmpty()) {
+      job.future.complete(annotation);
+      onExit.accept(job.future);
+    } else {
+      try {
+        enqueue(job);
+      } catch (InterruptedException e) {
+        onExit.accept(job.future);
+        throw e;
+      }
+    }
+    return job.future;
+  }
+
+  /** Queue depth, throughput and latency for every stage, as a JSON object. */
+  public String metricsJSON() {
+    return JSONOutputter.JSONWriter.objectToJSON(writer -> {
+      List<Consumer<JSONOutputter.Writer>> stageMetrics = new ArrayList<>();
+      for (Stage stage : stages) {
+        stageMetrics.add(stage::metrics);
+      }
+      writer.set("stages", stageMetrics);
+    });
+  }
+
+}
@@ -167,6 +167,9 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
 
   private final Semaphore availableProcessors;
 
+  /** The names of the annotators in this pipeline, in the order they were added */
+  private final List<String> annotatorNames = new ArrayList<>();
+
   /** The annotator pool we should be using to get annotators. */
   public final AnnotatorPool pool;
 
@@ -250,6 +253,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
 
       Annotator an = pool.get(name);
       this.addAnnotator(an);
+      annotatorNames.add(name);
 
       if (enforceRequirements) {
         Set<Class<? extends CoreAnnotation>> allRequirements = an.requires();
@@ -369,6 +373,11 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   /** Fetches the Properties object used to construct this Annotator. */
   public Properties getProperties() { return properties; }
 
+  /** The names of the annotators in this pipeline, parallel to {@link #getAnnotators()}. */
+  public List<String> getAnnotatorNames() {
+    return Collections.unmodifiableList(annotatorNames);
+  }
+
   public String getEncoding() {
     return properties.getProperty("encoding", "UTF-8");
   }
@@ -635,6 +644,14 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   @Override
   public void annotate(Annotation annotation) {
     super.annotate(annotation);
+    countWords(annotation);
+  }
+
+  /**
+   * Add the tokens of an annotated document to the count in {@link #timingInformation()}.
+   * {@link #annotate(Annotation)} does this; whoever runs the annotators one at a time must do it once the document is done.
+   */
+  void countWords(Annotation annotation) {
     List<CoreLabel> words = annotation.get(CoreAnnotations.TokensAnnotation.class);
     if (words != null) {
       numWords += words.size();
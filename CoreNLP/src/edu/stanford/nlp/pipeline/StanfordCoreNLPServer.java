@@ -20,6 +20,12 @@ import edu.stanford.nlp.trees.*;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
 
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
 import javax.net.ssl.*;
 import java.io.*;
 import java.lang.ref.SoftReference;
@@ -32,6 +38,7 @@ import java.security.cert.CertificateException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -85,6 +92,18 @@ public class StanfordCoreNLPServer implements Runnable {
   protected static String blacklist = null;
   @ArgumentParser.Option(name="stanford", gloss="If true, do special options (blacklist, timeout modifications) for public Stanford server")
   protected boolean stanford = false;
+  @ArgumentParser.Option(name="stages", gloss="If set, annotate documents in a pipeline of stages, each with its own queue and threads. Stages are separated by ';' and list their annotators, e.g., 'tokenize,ssplit,pos,lemma;ner;parse;coref'")
+  protected static String stages = null;
+  @ArgumentParser.Option(name="stageThreads", gloss="The number of threads for each of the -stages, comma-separated, or a single number for all stages")
+  protected static String stageThreads = "1";
+  @ArgumentParser.Option(name="stageQueueSize", gloss="The number of documents that can wait for each of the -stages before new requests block")
+  protected static int stageQueueSize = 16;
+  @ArgumentParser.Option(name="admissionHeapFraction", gloss="If positive, admit requests only while their estimated memory use fits in this fraction of the maximum heap; others wait, and get a 503 if they wait too long")
+  protected static double admissionHeapFraction = 0.0;
+  @ArgumentParser.Option(name="admissionWait", gloss="The longest, in milliseconds, a request waits for memory before it is rejected with a 503")
+  protected static int admissionWait = 60000;
+  @ArgumentParser.Option(name="admissionQueueSize", gloss="The most requests that can wait for memory; any more are rejected with a 503 right away")
+  protected static int admissionQueueSize = 64;
 
 
 
@@ -108,6 +127,17 @@ public class StanfordCoreNLPServer implements Runnable {
    */
   private final ExecutorService corenlpExecutor;
 
+  /**
+   * If the server was started with -stages, the stages that documents are annotated in
+   * instead of on {@link StanfordCoreNLPServer#corenlpExecutor}.
+   */
+  private final Optional<StagedAnnotationPipeline> stagedPipeline;
+
+  /**
+   * If the server was started with -admissionHeapFraction, the memory budget that requests are admitted against.
+   */
+  private final Optional<AdmissionController> admission;
+
 
   /**
    * A list of blacklisted subnets -- these cannot call the server.
@@ -199,6 +229,16 @@ public class StanfordCoreNLPServer implements Runnable {
 
     this.serverExecutor = Executors.newFixedThreadPool(ArgumentParser.threads);
     this.corenlpExecutor = Executors.newFixedThreadPool(ArgumentParser.threads);
+    if (stages != null && ! stages.trim().isEmpty()) {
+      this.stagedPipeline = Optional.of(new StagedAnnotationPipeline(stages, stageThreads, stageQueueSize));
+    } else {
+      this.stagedPipeline = Optional.empty();
+    }
+    if (admissionHeapFraction > 0.0) {
+      this.admission = Optional.of(AdmissionController.ofHeapFraction(admissionHeapFraction, admissionQueueSize));
+    } else {
+      this.admission = Optional.empty();
+    }
 
     // Generate and write a shutdown key, get optional server_id from passed in properties
     // this way if multiple servers running can shut them all down with different ids
@@ -485,6 +525,26 @@ public class StanfordCoreNLPServer implements Runnable {
   }
 
 
+  /**
+   * A helper function to respond to a request with an error stating that the server is too busy
+   * to handle it right now.
+   *
+   * @param response The description of the error to send to the user.
+   * @param retryAfterSeconds How long the user should wait before trying again.
+   * @param httpExchange The exchange to send the error over.
+   *
+   * @throws IOException Thrown if the HttpExchange cannot communicate the error.
+   */
+  private static void respondUnavailable(String response, int retryAfterSeconds, HttpExchange httpExchange) throws IOException {
+    byte[] content = response.getBytes("utf-8");
+    httpExchange.getResponseHeaders().add("Content-type", "text/plain");
+    httpExchange.getResponseHeaders().add("Retry-After", Integer.toString(retryAfterSeconds));
+    httpExchange.sendResponseHeaders(HTTP_UNAVAILABLE, content.length);
+    httpExchange.getResponseBody().write(content);
+    httpExchange.close();
+  }
+
+
   /**
    * A helper function to respond to a request with an error stating that the user is not authorized
    * to make this request.
@@ -608,6 +668,129 @@ public class StanfordCoreNLPServer implements Runnable {
   }
 
 
+  /**
+   * Annotate a document in the background, either in the stages given with -stages or as a
+   * single task on the CoreNLP executor.
+   *
+   * @param pipeline The pipeline to annotate with.
+   * @param ann The document to annotate. This is annotated in place.
+   *
+   * @return A future for the annotated document, which can be cancelled if it times out.
+   *
+   * @throws InterruptedException Thrown if we were interrupted while waiting for room in the first stage.
+   */
+  private Future<Annotation> submitAnnotation(StanfordCoreNLP pipeline, Annotation ann) throws InterruptedException {
+    return submitAnnotation(pipeline, ann, future -> {});
+  }
+
+  /**
+   * Like {@link StanfordCoreNLPServer#submitAnnotation(StanfordCoreNLP, Annotation)}, but also calls
+   * {@code onDone} with the future once the document is no longer being worked on: it is annotated,
+   * it failed, or it was cancelled and the annotator that was running it has stopped.
+   */
+  private Future<Annotation> submitAnnotation(StanfordCoreNLP pipeline, Annotation ann,
+                                              Consumer<Future<Annotation>> onDone) throws InterruptedException {
+    if (stagedPipeline.isPresent()) {
+      return stagedPipeline.get().submit(pipeline, ann, onDone::accept);
+    }
+    FutureTask<Annotation> task = new FutureTask<Annotation>(() -> {
+      pipeline.annotate(ann);
+      return ann;
+    }) {
+      @Override
+      public void run() {
+        // A cancelled task still runs, and returns right away. So, this is called exactly once.
+        try {
+          super.run();
+        } finally {
+          onDone.accept(this);
+        }
+      }
+    };
+    corenlpExecutor.execute(task);
+    return task;
+  }
+
+
+  /**
+   * Wait until there is memory for a document, if the server was started with -admissionHeapFraction.
+   *
+   * @param props The properties the document is annotated with, for the annotators to run.
+   * @param ann The document.
+   *
+   * @return The bytes we took from the memory budget, which must be given back with
+   *         {@link StanfordCoreNLPServer#releaseWhenDone(long, int)}, or -1 if the document was not admitted.
+   *
+   * @throws InterruptedException Thrown if we were interrupted while waiting.
+   */
+  private long admit(Properties props, Annotation ann) throws InterruptedException {
+    if ( ! admission.isPresent()) {
+      return 0;
+    }
+    String text = ann.get(CoreAnnotations.TextAnnotation.class);
+    long numChars;
+    if (text != null) {
+      numChars = text.length();
+    } else if (ann.containsKey(CoreAnnotations.TokensAnnotation.class)) {
+      numChars = 5L * ann.get(CoreAnnotations.TokensAnnotation.class).size();  // about 5 characters a token
+    } else {
+      numChars = 0;
+    }
+    long bytes = AdmissionController.estimateBytes(props.getProperty("annotators", ""), numChars);
+    return admission.get().acquire(bytes, admissionWait) ? bytes : -1;
+  }
+
+  /**
+   * A callback for {@link StanfordCoreNLPServer#submitAnnotation(StanfordCoreNLP, Annotation, Consumer)}
+   * that gives back the memory taken by {@link StanfordCoreNLPServer#admit(Properties, Annotation)}.
+   *
+   * @param bytes The bytes that were taken.
+   * @param holders The number of calls after which the memory is given back: e.g., 2 to wait both for
+   *                the annotation to stop and for the response to be written.
+   */
+  private Consumer<Future<Annotation>> releaseWhenDone(long bytes, int holders) {
+    if ( ! admission.isPresent()) {
+      return future -> {};
+    }
+    return releaseWhenDone(admission.get(), bytes, holders);
+  }
+
+  /**
+   * Like {@link StanfordCoreNLPServer#releaseWhenDone(long, int)}, giving the memory back to this admission controller.
+   * Calls after the last holder's do nothing.
+   */
+  static Consumer<Future<Annotation>> releaseWhenDone(AdmissionController admission, long bytes, int holders) {
+    long start = System.currentTimeMillis();
+    AtomicInteger remaining = new AtomicInteger(holders);
+    return future -> {
+      if (remaining.decrementAndGet() == 0) {
+        admission.release(bytes, System.currentTimeMillis() - start);
+      }
+    };
+  }
+
+  /**
+   * Start annotating an admitted document, with {@code release} as its {@code onDone} callback.
+   * If it can't be started (e.g., the executor was shut down, or we were interrupted while waiting for a stage),
+   * {@code release} may never be called by the executor, so it is called here, with null, before the exception is rethrown.
+   *
+   * @param executor Starts the document, as {@link StanfordCoreNLPServer#submitAnnotation(StanfordCoreNLP, Annotation, Consumer)} does.
+   * @param ann The document to annotate.
+   * @param release The callback from {@link StanfordCoreNLPServer#releaseWhenDone(long, int)}.
+   *
+   * @return The future of the annotated document.
+   */
+  static Future<Annotation> submitAdmitted(BatchExecutor executor, Annotation ann,
+                                           Consumer<Future<Annotation>> release) throws InterruptedException {
+    try {
+      return executor.submit(ann, release);
+    } catch (RuntimeException | InterruptedException e) {
+      release.accept(null);
+      throw e;
+    }
+  }
+
+
   /**
    * A simple ping test. Responds with pong.
    */
@@ -633,11 +816,19 @@ public class StanfordCoreNLPServer implements Runnable {
     public final AtomicBoolean serverReady;
     /** The creation time of this handler. This is used to tell the caller how long we've been waiting for. */
     public final long startTime;
+    /** If present, the memory budget requests are admitted against, whose state we report. */
+    private final Optional<AdmissionController> admission;
 
     /** The trivial constructor. */
     public ReadyHandler(AtomicBoolean serverReady) {
+      this(serverReady, Optional.empty());
+    }
+
+    /** Create a handler that also reports the memory budget and the requests waiting for it. */
+    public ReadyHandler(AtomicBoolean serverReady, Optional<AdmissionController> admission) {
       this.serverReady = serverReady;
       this.startTime = System.currentTimeMillis();
+      this.admission = admission;
     }
 
     /** {@inheritDoc} */
@@ -648,7 +839,7 @@ public class StanfordCoreNLPServer implements Runnable {
       String response;
       int status;
       if (this.serverReady.get()) {
-        response = "ready\n";
+        response = "ready\n" + admission.map(AdmissionController::status).orElse("");
         status = HTTP_OK;
       } else {
         response = "server is not ready yet. uptime=" + Redwood.formatTimeDifference(System.currentTimeMillis() - this.startTime) + '\n';
@@ -679,6 +870,37 @@ public class StanfordCoreNLPServer implements Runnable {
   } // end static class LiveHandler
 
 
+  /**
+   * Reports how busy the annotation threads are, as JSON.
+   * If the server runs with -stages, this gives the queue depth, throughput and latency of
+   * every stage; otherwise, the queue depth and active threads of the single CoreNLP executor.
+   */
+  protected class MetricsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      String response;
+      if (stagedPipeline.isPresent()) {
+        response = stagedPipeline.get().metricsJSON();
+      } else {
+        response = JSONOutputter.JSONWriter.objectToJSON(writer -> {
+          if (corenlpExecutor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) corenlpExecutor;
+            writer.set("threads", executor.getMaximumPoolSize());
+            writer.set("queueDepth", executor.getQueue().size());
+            writer.set("busy", executor.getActiveCount());
+            writer.set("completed", executor.getCompletedTaskCount());
+          }
+        });
+      }
+      byte[] content = response.getBytes("utf-8");
+      httpExchange.getResponseHeaders().set("Content-type", "application/json;charset=utf-8");
+      httpExchange.sendResponseHeaders(HTTP_OK, content.length);
+      httpExchange.getResponseBody().write(content);
+      httpExchange.close();
+    }
+  } // end class MetricsHandler
+
+
   /**
    * Sending the appropriate shutdown key will gracefully shutdown the server.
    * This key is, by default, saved into the local file /tmp/corenlp.shutdown on the
@@ -850,14 +1072,21 @@ public class StanfordCoreNLPServer implements Runnable {
       }
 
       Future<Annotation> completedAnnotationFuture = null;
+      // Called once the annotation has stopped, and once we're done responding
+      Consumer<Future<Annotation>> release = future -> {};
       try {
         // Annotate
         StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
+        long admittedBytes = admit(props, ann);
+        if (admittedBytes < 0) {
+          respondUnavailable("Server is busy: not enough memory for this document right now. Please try again later.",
+              admission.get().retryAfterSeconds(), httpExchange);
+          return;
+        }
+        // The output can take as much memory as the annotation, so hold on to the memory until we've sent it
+        release = releaseWhenDone(admittedBytes, 2);
 		log("Annotating...");
-        completedAnnotationFuture = corenlpExecutor.submit(() -> {
-          pipeline.annotate(ann);
-          return ann;
-        });
+        completedAnnotationFuture = submitAdmitted((doc, onDone) -> submitAnnotation(pipeline, doc, onDone), ann, release);
         Annotation completedAnnotation;
         int timeoutMilliseconds;
         try {
@@ -910,6 +1139,8 @@ public class StanfordCoreNLPServer implements Runnable {
         if (completedAnnotationFuture != null) {  // just in case...
           completedAnnotationFuture.cancel(true);
         }
+      } finally {
+        release.accept(completedAnnotationFuture);
       }
     }
 
@@ -938,6 +1169,301 @@ public class StanfordCoreNLPServer implements Runnable {
   } // end class CoreNLPHandler
 
 
+  /**
+   * A handler for annotating many documents in one request.
+   * Documents are annotated concurrently with the same pipeline, and each one is written back as soon
+   * as it is done, so the results come back in the order they finished rather than the order they were sent.
+   * <br>
+   * With the default inputFormat (text), the POST body is one JSON object per line, with the document
+   * in "text" and an optional "id" (which otherwise is the line's index among the documents).
+   * With inputFormat=serialized, it is a stream of length-delimited protocol buffer documents, whose
+   * docId serves as the id.
+   * <br>
+   * With the default outputFormat (json), the response is one JSON object per line: either
+   * {"id": ..., "document": ...} with the usual JSON output, or {"id": ..., "error": ...}.
+   * With outputFormat=serialized, it is a stream of length-delimited protocol buffer documents with
+   * their docId set; documents that fail are logged and left out.
+   * <br>
+   * The timeout is how long we wait for the next document to finish; when it runs out, the documents
+   * still being annotated are cancelled.
+   */
+  protected class BatchHandler implements HttpHandler {
+    /**
+     * An authenticator to determine if we can perform this API request.
+     */
+    private final Predicate<Properties> authenticator;
+
+    /**
+     * A callback to call when an annotation job has finished.
+     */
+    private final Consumer<FinishedRequest> callback;
+
+    public BatchHandler(Predicate<Properties> authenticator, Consumer<FinishedRequest> callback) {
+      this.authenticator = authenticator;
+      this.callback = callback;
+    }
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      if (onBlacklist(httpExchange)) {
+        respondUnauthorized(httpExchange);
+        return;
+      }
+      setHttpExchangeResponseHeaders(httpExchange);
+
+      Properties props = getProperties(httpExchange);
+      if (authenticator != null && !authenticator.test(props)) {
+        respondUnauthorized(httpExchange);
+        return;
+      }
+      if ( ! "POST".equalsIgnoreCase(httpExchange.getRequestMethod())) {
+        respondBadInput("The batch endpoint only accepts POST requests", httpExchange);
+        return;
+      }
+      boolean serializedInput = "serialized".equals(props.getProperty("inputFormat", "text"));
+      boolean serializedOutput = "serialized".equalsIgnoreCase(props.getProperty("outputFormat", "json"));
+      int timeoutMilliseconds;
+      try {
+        timeoutMilliseconds = Integer.parseInt(props.getProperty("timeout",
+            Integer.toString(StanfordCoreNLPServer.this.timeoutMilliseconds)));
+      } catch (NumberFormatException e) {
+        timeoutMilliseconds = StanfordCoreNLPServer.this.timeoutMilliseconds;
+      }
+
+      StanfordCoreNLP pipeline;
+      try {
+        pipeline = mkStanfordCoreNLP(props);
+      } catch (Exception e) {
+        e.printStackTrace();
+        respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
+        return;
+      }
+      if ( ! quiet) {
+        log("[" + httpExchange.getRemoteAddress() + "] Batch API call w/annotators " + props.getProperty("annotators", "<unknown>"));
+      }
+
+      httpExchange.getResponseHeaders().add("Content-type", serializedOutput ? "application/x-protobuf" : "application/x-ndjson;charset=utf-8");
+      httpExchange.sendResponseHeaders(HTTP_OK, 0);  // chunked: we don't know the length yet
+      Properties outputProps = new Properties();
+      outputProps.putAll(pipeline.getProperties());
+      outputProps.setProperty("output.prettyPrint", "false");  // one document per line
+      AnnotationOutputter.Options options = AnnotationOutputter.getOptions(outputProps);
+
+      // There are at most twice as many documents in flight as there are annotation threads.
+      int maxInFlight = 2 * Math.max(ArgumentParser.threads, 1);
+      BatchExecutor executor = (ann, onDone) -> {
+        long admittedBytes = admit(props, ann);
+        if (admittedBytes < 0) {
+          throw new RejectedExecutionException("Server is busy: not enough memory for this document right now. Please try again in " +
+              admission.get().retryAfterSeconds() + " seconds.");
+        }
+        Consumer<Future<Annotation>> release = releaseWhenDone(admittedBytes, 1);
+        return submitAdmitted((doc, released) -> submitAnnotation(pipeline, doc, released.andThen(onDone)), ann, release);
+      };
+      Consumer<Annotation> onWritten = ann -> {
+        if ( ! StringUtils.isNullOrEmpty(props.getProperty("annotators"))) {
+          callback.accept(new FinishedRequest(props, ann));
+        }
+      };
+      OutputStream out = new BufferedOutputStream(httpExchange.getResponseBody());
+      int numDocuments = 0;
+      try {
+        numDocuments = annotateBatch(httpExchange.getRequestBody(), out, serializedInput, serializedOutput, options,
+            maxInFlight, timeoutMilliseconds, executor, onWritten);
+      } catch (Exception e) {
+        // We've already sent a 200, so the best we can do is to stop
+        e.printStackTrace();
+      } finally {
+        out.close();
+        httpExchange.close();
+      }
+      if ( ! quiet) {
+        log("[" + httpExchange.getRemoteAddress() + "] Batch API call done: " + numDocuments + " documents");
+      }
+    }
+  } // end class BatchHandler
+
+
+  /**
+   * Starts annotating a document for {@link StanfordCoreNLPServer#annotateBatch}.
+   */
+  @FunctionalInterface
+  interface BatchExecutor {
+    /**
+     * Start annotating a document.
+     *
+     * @param ann The document to annotate.
+     * @param onDone Called with the returned future once the document is done, whether or not it failed.
+     * @return The future of the annotated document.
+     * @throws RejectedExecutionException If the document can't be taken right now; its message is written back as the document's error.
+     */
+    Future<Annotation> submit(Annotation ann, Consumer<Future<Annotation>> onDone) throws InterruptedException;
+  }
+
+  /**
+   * Annotate the documents of a {@link BatchHandler} request.
+   * Documents are read and submitted on this thread, and written back on this thread as they finish,
+   * with at most maxInFlight of them in flight at once.
+   *
+   * @param onWritten Called with each document after it is written back.
+   * @return The number of documents read, including the ones that failed.
+   */
+  static int annotateBatch(InputStream in, OutputStream out, boolean serializedInput, boolean serializedOutput,
+                           AnnotationOutputter.Options options, int maxInFlight, int timeoutMilliseconds,
+                           BatchExecutor executor, Consumer<Annotation> onWritten) throws IOException, InterruptedException {
+    BatchWriter writer = new BatchWriter(out, serializedOutput, options, onWritten);
+    ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer();
+    BufferedReader lines = serializedInput ? null : new BufferedReader(new InputStreamReader(in, "utf-8"));
+    int numDocuments = 0;
+    try {
+      while (true) {
+        // Read the next document
+        String id;
+        Annotation ann;
+        if (serializedInput) {
+          CoreNLPProtos.Document proto = CoreNLPProtos.Document.parseDelimitedFrom(in);
+          if (proto == null) {
+            break;
+          }
+          ann = serializer.fromProto(proto);
+          id = ann.containsKey(CoreAnnotations.DocIDAnnotation.class) ? ann.get(CoreAnnotations.DocIDAnnotation.class) : Integer.toString(numDocuments);
+        } else {
+          String line = lines.readLine();
+          if (line == null) {
+            break;
+          }
+          if (line.trim().isEmpty()) {
+            continue;
+          }
+          try (JsonReader reader = Json.createReader(new StringReader(line))) {
+            JsonObject json = reader.readObject();
+            JsonValue jsonId = json.get("id");
+            if (jsonId == null) {
+              id = Integer.toString(numDocuments);
+            } else if (jsonId instanceof JsonString) {
+              id = ((JsonString) jsonId).getString();
+            } else {
+              id = jsonId.toString();
+            }
+            ann = new Annotation(json.getString("text", ""));
+          } catch (JsonException | ClassCastException e) {
+            writer.writeError(Integer.toString(numDocuments), "Could not parse document: " + e.getMessage());
+            numDocuments += 1;
+            continue;
+          }
+        }
+        numDocuments += 1;
+        String text = ann.get(CoreAnnotations.TextAnnotation.class);
+        if (maxCharLength > 0 && text != null && text.length() > maxCharLength) {
+          writer.writeError(id, "Document is too long to be handled by server: " + text.length() + " characters. Max length is " + maxCharLength + " characters.");
+          continue;
+        }
+        ann.set(CoreAnnotations.DocIDAnnotation.class, id);
+
+        // Make room, then submit it
+        while (writer.inFlight.size() >= maxInFlight) {
+          writer.writeNextFinished(timeoutMilliseconds);
+        }
+        try {
+          writer.inFlight.put(executor.submit(ann, writer.finished::add), id);
+        } catch (RejectedExecutionException e) {
+          writer.writeError(id, e.getMessage());
+          continue;
+        }
+        // Write whatever has finished in the meantime
+        for (Future<Annotation> done = writer.finished.poll(); done != null; done = writer.finished.poll()) {
+          writer.writeFinished(done);
+        }
+        out.flush();
+      }
+
+      // Wait for the rest
+      while ( ! writer.inFlight.isEmpty()) {
+        writer.writeNextFinished(timeoutMilliseconds);
+        out.flush();
+      }
+    } catch (Exception e) {
+      writer.inFlight.keySet().forEach(future -> future.cancel(true));
+      throw e;
+    }
+    return numDocuments;
+  }
+
+  /**
+   * Writes back the documents of {@link StanfordCoreNLPServer#annotateBatch}, and keeps track of the ones still in flight.
+   */
+  private static class BatchWriter {
+    private final OutputStream out;
+    private final boolean serializedOutput;
+    private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer();
+    private final AnnotationOutputter.Options options;
+    private final Consumer<Annotation> onWritten;
+    /** The documents which are done, as their executor reports them */
+    private final BlockingQueue<Future<Annotation>> finished = new LinkedBlockingQueue<>();
+    /** The documents in flight, with their ids */
+    private final Map<Future<Annotation>, String> inFlight = new IdentityHashMap<>();
+
+    private BatchWriter(OutputStream out, boolean serializedOutput, AnnotationOutputter.Options options, Consumer<Annotation> onWritten) {
+      this.out = out;
+      this.serializedOutput = serializedOutput;
+      this.options = options;
+      this.onWritten = onWritten;
+    }
+
+    /**
+     * Write back the next document to finish. If none finishes within the timeout, all the documents
+     * in flight are cancelled and written back as timed out, which leaves room for more.
+     */
+    private void writeNextFinished(int timeoutMilliseconds) throws IOException, InterruptedException {
+      Future<Annotation> done = finished.poll(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+      if (done != null) {
+        writeFinished(done);
+        return;
+      }
+      for (Map.Entry<Future<Annotation>, String> entry : inFlight.entrySet()) {
+        entry.getKey().cancel(true);
+        writeError(entry.getValue(), "CoreNLP request timed out. Your document may be too long.");
+      }
+      inFlight.clear();  // so that writeFinished ignores them when they stop
+    }
+
+    /** Write back a finished document, or its error. */
+    private void writeFinished(Future<Annotation> done) throws IOException {
+      String id = inFlight.remove(done);
+      if (id == null) {
+        return;  // we gave up on it already
+      }
+      Annotation ann;
+      try {
+        ann = done.get();
+      } catch (ExecutionException e) {
+        writeError(id, e.getCause().getClass().getName() + ": " + e.getCause().getMessage());
+        return;
+      } catch (InterruptedException | CancellationException e) {
+        writeError(id, "Annotation was cancelled");
+        return;
+      }
+      if (serializedOutput) {
+        serializer.write(ann, out);
+      } else {
+        out.write(("{\"id\":\"" + StringUtils.escapeJsonString(id) + "\",\"document\":").getBytes("utf-8"));
+        new JSONOutputter().print(ann, out, options);
+        out.write("}\n".getBytes("utf-8"));
+      }
+      onWritten.accept(ann);
+    }
+
+    /** Write back an error for a document. Protocol buffer output has no place for errors, so they are only logged. */
+    private void writeError(String id, String message) throws IOException {
+      if (serializedOutput) {
+        warn("Batch document " + id + " failed: " + message);
+      } else {
+        out.write(("{\"id\":\"" + StringUtils.escapeJsonString(id) + "\",\"error\":\"" + StringUtils.escapeJsonString(message) + "\"}\n").getBytes("utf-8"));
+      }
+    }
+  } // end class BatchWriter
+
+
 
   /**
    * A handler for matching TokensRegex patterns against text.
@@ -1359,7 +1885,7 @@ public class StanfordCoreNLPServer implements Runnable {
         }
         // Add the two status endpoints
         withAuth(server.createContext("/live", new LiveHandler()), Optional.empty());
-        withAuth(server.createContext("/ready", new ReadyHandler(live)), Optional.empty());
+        withAuth(server.createContext("/ready", new ReadyHandler(live, admission)), Optional.empty());
         // Start the server
         server.start();
         // Server started
@@ -1432,6 +1958,7 @@ public class StanfordCoreNLPServer implements Runnable {
         contextRoot = "/";
       }
       withAuth(server.createContext(contextRoot, new CoreNLPHandler(defaultProps, authenticator, callback, homepage)), basicAuth);
+      withAuth(server.createContext(uriContext+"/batch", new BatchHandler(authenticator, callback)), basicAuth);
       withAuth(server.createContext(uriContext+"/tokensregex", new TokensRegexHandler(authenticator, callback)), basicAuth);
       withAuth(server.createContext(uriContext+"/semgrex", new SemgrexHandler(authenticator, callback)), basicAuth);
       withAuth(server.createContext(uriContext+"/tregex", new TregexHandler(authenticator, callback)), basicAuth);
@@ -1439,10 +1966,11 @@ public class StanfordCoreNLPServer implements Runnable {
       withAuth(server.createContext(uriContext+"/corenlp-brat.cs", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.css", "text/css")), basicAuth);
       withAuth(server.createContext(uriContext+"/corenlp-parseviewer.js", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-parseviewer.js", "application/javascript")), basicAuth);
       withAuth(server.createContext(uriContext+"/ping", new PingHandler()), Optional.empty());
+      withAuth(server.createContext(uriContext+"/metrics", new MetricsHandler()), basicAuth);
       withAuth(server.createContext(uriContext+"/shutdown", new ShutdownHandler()), basicAuth);
       if (this.serverPort == this.statusPort) {
         withAuth(server.createContext(uriContext+"/live", new LiveHandler()), Optional.empty());
-        withAuth(server.createContext(uriContext+"/ready", new ReadyHandler(live)), Optional.empty());
+        withAuth(server.createContext(uriContext+"/ready", new ReadyHandler(live, admission)), Optional.empty());
 
       }
       server.setExecutor(serverExecutor);
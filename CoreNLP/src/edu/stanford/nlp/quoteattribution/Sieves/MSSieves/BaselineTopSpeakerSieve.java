@@ -56,39 +56,55 @@ public class BaselineTopSpeakerSieve extends MSSieve {
     return new MentionData(-1, -1, null, null);
   }
 
+  /**
+   * The gender of a quote's mention and the speakers mentioned around the quote, best first,
+   * or an empty list if there are none.
+   * Only reads the tokens and the quote's own mention, so may be found for all the quotes at once.
+   */
+  private Pair<Person.Gender, List<String>> getTopSpeakerCandidates(List<CoreLabel> toks, CoreMap quote) {
+    Pair<Integer, Integer> quoteRun = new Pair<>(quote.get(CoreAnnotations.TokenBeginAnnotation.class),
+            quote.get(CoreAnnotations.TokenEndAnnotation.class));
+    List<MentionData> closestMentionsBackward = findClosestMentionsInSpanBackward(
+            new Pair<>(Math.max(0, quoteRun.first - BACKWARD_WINDOW), quoteRun.first - 1));
+    List<MentionData> closestMentions = findClosestMentionsInSpanForward(new Pair<>(quoteRun.second + 1,
+            Math.min(quoteRun.second + FORWARD_WINDOW, toks.size() - 1)));
+    closestMentions.addAll(closestMentionsBackward);
+
+    Person.Gender gender = getGender(makeMentionData(quote));
+
+
+    List<String> topSpeakers = Counters.toSortedList(getTopSpeakers(closestMentions, closestMentionsBackward, gender,
+            quote, false));
+    //if none found, try again with bigger window
+    if (topSpeakers.isEmpty()) {
+      closestMentionsBackward = findClosestMentionsInSpanBackward(new Pair<>(Math.max(0,
+              quoteRun.first - BACKWARD_WINDOW_BIG), quoteRun.first - 1));
+      closestMentions = findClosestMentionsInSpanForward(new Pair<>(quoteRun.second + 1,
+              Math.min(quoteRun.second + FORWARD_WINDOW_BIG, toks.size() - 1)));
+      topSpeakers = Counters.toSortedList(getTopSpeakers(closestMentions, closestMentionsBackward, gender,
+              quote, true));
+    }
+    if ( ! topSpeakers.isEmpty()) {
+      topSpeakers = removeQuoteNames(topSpeakers, quote);
+    }
+    return new Pair<>(gender, topSpeakers);
+  }
+
   public void topSpeakerInRange(Annotation doc) {
     List<CoreLabel> toks = doc.get(CoreAnnotations.TokensAnnotation.class);
     List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
+    // the predictions below read the speakers of other quotes, which may have just been set here, so they are made in order
+    List<Pair<Person.Gender, List<String>>> candidates = mapQuotes(quotes, quote ->
+        quote.get(QuoteAttributionAnnotator.SpeakerAnnotation.class) == null ? getTopSpeakerCandidates(toks, quote) : null);
     for (int quote_idx = 0; quote_idx < quotes.size(); quote_idx++) {
       CoreMap quote = quotes.get(quote_idx);
-      if(quote.get(QuoteAttributionAnnotator.SpeakerAnnotation.class) == null) {
-        Pair<Integer, Integer> quoteRun = new Pair<>(quote.get(CoreAnnotations.TokenBeginAnnotation.class),
-                quote.get(CoreAnnotations.TokenEndAnnotation.class));
-        List<MentionData> closestMentionsBackward = findClosestMentionsInSpanBackward(
-                new Pair<>(Math.max(0, quoteRun.first - BACKWARD_WINDOW), quoteRun.first - 1));
-        List<MentionData> closestMentions = findClosestMentionsInSpanForward(new Pair<>(quoteRun.second + 1,
-                Math.min(quoteRun.second + FORWARD_WINDOW, toks.size() - 1)));
-        closestMentions.addAll(closestMentionsBackward);
-
-        Person.Gender gender = getGender(makeMentionData(quote));
-
-
-        List<String> topSpeakers = Counters.toSortedList(getTopSpeakers(closestMentions, closestMentionsBackward, gender,
-                quote, false));
-        //if none found, try again with bigger window
-        if (topSpeakers.isEmpty()) {
-          closestMentionsBackward = findClosestMentionsInSpanBackward(new Pair<>(Math.max(0,
-                  quoteRun.first - BACKWARD_WINDOW_BIG), quoteRun.first - 1));
-          closestMentions = findClosestMentionsInSpanForward(new Pair<>(quoteRun.second + 1,
-                  Math.min(quoteRun.second + FORWARD_WINDOW_BIG, toks.size() - 1)));
-          topSpeakers = Counters.toSortedList(getTopSpeakers(closestMentions, closestMentionsBackward, gender,
-                  quote, true));
-        }
+      if(candidates.get(quote_idx) != null) {
+        Person.Gender gender = candidates.get(quote_idx).first;
+        List<String> topSpeakers = candidates.get(quote_idx).second;
         if (topSpeakers.isEmpty()) {
           log.warn("Watch out, there's an empty top speakers list!");
           continue;
         }
-        topSpeakers = removeQuoteNames(topSpeakers, quote);
         String topSpeaker = topSpeakers.get(0);
 
         Pair<String, String> nextPrediction = getConversationalNextPrediction(quotes, quote_idx, gender);
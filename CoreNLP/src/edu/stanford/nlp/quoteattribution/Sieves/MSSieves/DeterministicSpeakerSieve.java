@@ -25,10 +25,10 @@ public class DeterministicSpeakerSieve extends MSSieve {
 
   public void doMentionToSpeaker(Annotation doc) {
     List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
-    for(CoreMap quote : quotes) {
+    forEachQuote(quotes, quote -> {
       String mention = quote.get(QuoteAttributionAnnotator.MentionAnnotation.class);
       if (mention == null) {
-        continue;
+        return;
       }
       int mentionBegin = quote.get(QuoteAttributionAnnotator.MentionBeginAnnotation.class);
       int mentionEnd = quote.get(QuoteAttributionAnnotator.MentionEndAnnotation.class);
@@ -47,6 +47,6 @@ public class DeterministicSpeakerSieve extends MSSieve {
           quote.set(QuoteAttributionAnnotator.SpeakerSieveAnnotation.class, "coref");
         }
       }
-    }
+    });
   }
 }
@@ -19,6 +19,13 @@ public class LooseConversationalSpeakerSieve extends MSSieve {
   public LooseConversationalSpeakerSieve(Annotation doc, Map<String, List<Person>> characterMap, Map<Integer, String> pronounCorefMap, Set<String> animacySet) {
     super(doc, characterMap, pronounCorefMap, animacySet);
   }
+
+  /** A quote's speaker depends on the speakers of the other quotes in its chain. */
+  @Override
+  protected boolean readsOtherQuotes() {
+    return true;
+  }
+
   public void doMentionToSpeaker(Annotation doc) {
     List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
     List<List<Pair<Integer, Integer>>> skipChains = new ArrayList<>();
@@ -0,0 +1,283 @@
+package edu.stanford.nlp.quoteattribution.Sieves;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.quoteattribution.Person;
+import edu.stanford.nlp.util.Pair;
+
+import java.util.*;
+
+/**
+ * The pronouns, character names and animate nouns of one document, found in a single pass over
+ * its tokens, so that the sieves can ask for the mentions in a span, or the closest one to either
+ * end of it, in logarithmic rather than linear time.
+ * <br>
+ * Names are found with the same greedy match against the character names as
+ * {@link Sieve#scanForNamesNew(Pair)}, and the answers are the same as rescanning the span:
+ * the scan of the whole document is kept, and a span is only rescanned from its start until that
+ * scan falls in step with the whole document's, which is usually at once.
+ * <br>
+ * The index doesn't change once built, so all the sieves over a document may share one.
+ */
+public class MentionIndex {
+
+  private static class TokenNode {
+    final Map<String, TokenNode> childNodes = new HashMap<>();
+    String fullName;
+    final int level;
+
+    TokenNode(int level) {
+      this.level = level;
+    }
+  }
+
+  private final List<CoreLabel> tokens;
+  private final TokenNode rootNameNode;
+
+  /** The token indices of "he" and "she", in order */
+  private final int[] pronouns;
+  /** The token indices of animate nouns, in order */
+  private final int[] animates;
+
+  /** The node of the name trie that the scan of the whole document is at before each token, and after the last */
+  private final TokenNode[] nameStates;
+  /** The names the scan of the whole document finds: the token that ended each one, and its full name and first and last token */
+  private final int[] nameFoundAt;
+  private final String[] names;
+  private final int[] nameBegins;
+  private final int[] nameEnds;
+
+  public MentionIndex(List<CoreLabel> tokens, Map<String, List<Person>> characterMap, Set<String> animacySet) {
+    this.tokens = tokens;
+    this.rootNameNode = createNameMatcher(characterMap.keySet());
+
+    int n = tokens.size();
+    int[] pronouns = new int[n];
+    int numPronouns = 0;
+    int[] animates = new int[n];
+    int numAnimates = 0;
+    nameStates = new TokenNode[n + 1];
+    List<Integer> foundAt = new ArrayList<>();
+    List<String> foundNames = new ArrayList<>();
+
+    TokenNode pointer = rootNameNode;
+    for (int index = 0; index < n; index++) {
+      String word = tokens.get(index).word();
+      if (isPronoun(word)) {
+        pronouns[numPronouns++] = index;
+      }
+      if (animacySet.contains(word)) {
+        animates[numAnimates++] = index;
+      }
+      nameStates[index] = pointer;
+      TokenNode child = pointer.childNodes.get(word);
+      if (child != null) {
+        pointer = child;
+      } else if (pointer != rootNameNode) {
+        if (pointer.fullName != null) {
+          foundAt.add(index);
+          foundNames.add(pointer.fullName);
+        }
+        pointer = rootNameNode;
+      }
+    }
+    nameStates[n] = pointer;
+
+    this.pronouns = Arrays.copyOf(pronouns, numPronouns);
+    this.animates = Arrays.copyOf(animates, numAnimates);
+    nameFoundAt = new int[foundAt.size()];
+    names = new String[foundAt.size()];
+    nameBegins = new int[foundAt.size()];
+    nameEnds = new int[foundAt.size()];
+    for (int i = 0; i < nameFoundAt.length; i++) {
+      nameFoundAt[i] = foundAt.get(i);
+      names[i] = foundNames.get(i);
+      nameEnds[i] = nameFoundAt[i] - 1;
+      nameBegins[i] = nameEnds[i] - nameStates[nameFoundAt[i]].level;
+    }
+  }
+
+  private static TokenNode createNameMatcher(Set<String> names) {
+    TokenNode rootNode = new TokenNode(-1);
+    for (String key : names) {
+      String[] tokens = key.split(" ");
+      TokenNode currNode = rootNode;
+      for (int i = 0; i < tokens.length; i++) {
+        int level = i;
+        currNode = currNode.childNodes.computeIfAbsent(tokens[i], token -> new TokenNode(level));
+        if (i == tokens.length - 1) {
+          currNode.fullName = key;
+        }
+      }
+    }
+    return rootNode;
+  }
+
+  private static boolean isPronoun(String word) {
+    return word.equalsIgnoreCase("he") || word.equalsIgnoreCase("she");
+  }
+
+  /** The first position in {@code values} (which is sorted) whose value is at least {@code key}. */
+  private static int lowerBound(int[] values, int key) {
+    int lo = 0;
+    int hi = values.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (values[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /** The last token a scan over {@code [begin, end]} looks at. */
+  private int lastToken(int end) {
+    return Math.min(end, tokens.size() - 1);
+  }
+
+  private static List<Integer> slice(int[] values, int begin, int end) {
+    List<Integer> slice = new ArrayList<>();
+    for (int i = lowerBound(values, begin); i < values.length && values[i] <= end; i++) {
+      slice.add(values[i]);
+    }
+    return slice;
+  }
+
+  /** The pronouns in {@code [begin, end]}, in order. */
+  public ArrayList<Integer> pronouns(int begin, int end) {
+    return new ArrayList<>(slice(pronouns, begin, lastToken(end)));
+  }
+
+  /** The animate nouns in {@code [begin, end]}, in order. */
+  public List<Integer> animates(int begin, int end) {
+    return slice(animates, begin, lastToken(end));
+  }
+
+  private static int first(int[] values, int begin, int end) {
+    int i = lowerBound(values, begin);
+    return i < values.length && values[i] <= end ? values[i] : -1;
+  }
+
+  private static int last(int[] values, int begin, int end) {
+    int i = lowerBound(values, end + 1) - 1;
+    return i >= 0 && values[i] >= begin ? values[i] : -1;
+  }
+
+  /** The first pronoun in {@code [begin, end]}, or -1 if there is none. */
+  public int firstPronoun(int begin, int end) {
+    return first(pronouns, begin, lastToken(end));
+  }
+
+  /** The last pronoun in {@code [begin, end]}, or -1 if there is none. */
+  public int lastPronoun(int begin, int end) {
+    return last(pronouns, begin, lastToken(end));
+  }
+
+  /** The first animate noun in {@code [begin, end]}, or -1 if there is none. */
+  public int firstAnimate(int begin, int end) {
+    return first(animates, begin, lastToken(end));
+  }
+
+  /** The last animate noun in {@code [begin, end]}, or -1 if there is none. */
+  public int lastAnimate(int begin, int end) {
+    return last(animates, begin, lastToken(end));
+  }
+
+
+  /** How a scan for names over a span differs from the scan over the whole document. */
+  private class NameScan {
+    /** The names found before the scan fell in step with the document's */
+    final List<String> headNames = new ArrayList<>();
+    final List<Pair<Integer, Integer>> headIndices = new ArrayList<>();
+    /** The document's names that the span shares are those found at tokens {@code [synced, last]} */
+    final int synced;
+    final int last;
+    /** The name that runs up to the end of the span, or null */
+    final String tailName;
+    final Pair<Integer, Integer> tailIndex;
+
+    NameScan(int begin, int end) {
+      last = lastToken(end);
+      TokenNode pointer = rootNameNode;
+      int index = begin;
+      for (; index <= last && pointer != nameStates[index]; index++) {
+        TokenNode child = pointer.childNodes.get(tokens.get(index).word());
+        if (child != null) {
+          pointer = child;
+        } else if (pointer != rootNameNode) {
+          if (pointer.fullName != null) {
+            headNames.add(pointer.fullName);
+            headIndices.add(new Pair<>(index - 1 - pointer.level, index - 1));
+          }
+          pointer = rootNameNode;
+        }
+      }
+      synced = index;
+      if (index <= last) {
+        pointer = nameStates[last + 1];
+      }
+      if (pointer != rootNameNode && pointer.fullName != null) {
+        tailName = pointer.fullName;
+        tailIndex = new Pair<>(end - pointer.level, end);
+      } else {
+        tailName = null;
+        tailIndex = null;
+      }
+    }
+
+    int sharedBegin() {
+      return lowerBound(nameFoundAt, synced);
+    }
+
+    int sharedEnd() {
+      return lowerBound(nameFoundAt, last + 1);
+    }
+  }
+
+  /**
+   * The names in {@code [begin, end]} and their token spans, in order;
+   * the same as {@link Sieve#scanForNamesNew(Pair)} finds.
+   */
+  public Pair<ArrayList<String>, ArrayList<Pair<Integer, Integer>>> names(int begin, int end) {
+    NameScan scan = new NameScan(begin, end);
+    ArrayList<String> potentialNames = new ArrayList<>(scan.headNames);
+    ArrayList<Pair<Integer, Integer>> nameIndices = new ArrayList<>(scan.headIndices);
+    for (int i = scan.sharedBegin(), stop = scan.sharedEnd(); i < stop; i++) {
+      potentialNames.add(names[i]);
+      nameIndices.add(new Pair<>(nameBegins[i], nameEnds[i]));
+    }
+    if (scan.tailName != null) {
+      potentialNames.add(scan.tailName);
+      nameIndices.add(scan.tailIndex);
+    }
+    return new Pair<>(potentialNames, nameIndices);
+  }
+
+  /** The token span of the first name in {@code [begin, end]}, or null if there is none. */
+  public Pair<Integer, Integer> firstName(int begin, int end) {
+    NameScan scan = new NameScan(begin, end);
+    if ( ! scan.headIndices.isEmpty()) {
+      return scan.headIndices.get(0);
+    }
+    int i = scan.sharedBegin();
+    if (i < scan.sharedEnd()) {
+      return new Pair<>(nameBegins[i], nameEnds[i]);
+    }
+    return scan.tailIndex;
+  }
+
+  /** The token span of the last name in {@code [begin, end]}, or null if there is none. */
+  public Pair<Integer, Integer> lastName(int begin, int end) {
+    NameScan scan = new NameScan(begin, end);
+    if (scan.tailIndex != null) {
+      return scan.tailIndex;
+    }
+    int i = scan.sharedEnd() - 1;
+    if (i >= scan.sharedBegin()) {
+      return new Pair<>(nameBegins[i], nameEnds[i]);
+    }
+    return scan.headIndices.isEmpty() ? null : scan.headIndices.get(scan.headIndices.size() - 1);
+  }
+
+}
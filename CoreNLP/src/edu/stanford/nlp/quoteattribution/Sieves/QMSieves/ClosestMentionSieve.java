@@ -34,11 +34,11 @@ public class ClosestMentionSieve extends QMSieve {
 
     public void doQuoteToMention(Annotation doc) {
         List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
-        for(CoreMap quote : quotes) {
+        forEachQuote(quotes, quote -> {
             if(quote.get(QuoteAttributionAnnotator.MentionAnnotation.class) != null) {
                 MentionData md = getClosestMention(quote);
                 fillInMention(quote, md, sieveName);
             }
-        }
+        });
     }
 }
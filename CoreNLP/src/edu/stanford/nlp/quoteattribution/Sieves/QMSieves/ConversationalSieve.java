@@ -21,10 +21,17 @@ public class ConversationalSieve extends QMSieve {
     super(doc, characterMap, pronounCorefMap, animacySet, "conv");
   }
 
+  /** A quote's label depends on the labels of the quotes before it. */
+  @Override
+  protected boolean readsOtherQuotes() {
+    return true;
+  }
+
   //attribute conversational mentions: assign the mention to the same quote as the
   //if quote X has not been labelled, has no add'l text, and quote X-2 has been labelled, and quotes X-2, X-1, and X are consecutive in paragraph,
   //and X-1's quote does not refer to a name:
   //give quote X the same mention as X-2.
+  //X-2 may have just been labelled here, so quotes are labelled in order rather than with forEachQuote.
   public void doQuoteToMention(Annotation doc) {
     List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
     List<CoreLabel> tokens = doc.get(CoreAnnotations.TokensAnnotation.class);
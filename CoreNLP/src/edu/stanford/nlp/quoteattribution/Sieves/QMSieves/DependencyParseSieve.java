@@ -42,13 +42,13 @@ public class DependencyParseSieve extends QMSieve {
     List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
     List<CoreLabel> tokens = doc.get(CoreAnnotations.TokensAnnotation.class);
     List<CoreMap> sentences = doc.get(CoreAnnotations.SentencesAnnotation.class);
-    for (CoreMap quote : quotes) {
+    forEachQuote(quotes, quote -> {
       if (quote.get(QuoteAttributionAnnotator.MentionAnnotation.class) != null) {
-        continue;
+        return;
       }
       Pair<Integer, Integer> range = QuoteAttributionUtils.getRemainderInSentence(doc, quote);
       if(range == null) {
-        continue;
+        return;
       }
 
       //search for mentions in the first run
@@ -115,6 +115,6 @@ public class DependencyParseSieve extends QMSieve {
           }
         }
       }
-    }
+    });
   }
 }
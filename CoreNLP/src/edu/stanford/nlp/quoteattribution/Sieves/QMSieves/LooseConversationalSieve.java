@@ -22,12 +22,19 @@ public class LooseConversationalSieve extends QMSieve {
     super(doc, characterMap, pronounCorefMap, animacySet, "loose");
   }
 
+  /** A quote's label depends on the other quotes in its chain. */
+  @Override
+  protected boolean readsOtherQuotes() {
+    return true;
+  }
+
   public void doQuoteToMention(Annotation doc) {
     List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
     List<List<Pair<Integer, Integer>>> skipChains = new ArrayList<>();
     List<Pair<Integer, Integer>> currChain = new ArrayList<>(); //Pairs are (quote_idx, paragraph_idx)
     //same as conversational, but make it less restrictive.
     //look for patterns: are they consecutive in paragraph? group those that are in
+    //(chains span many quotes, so quotes are labelled in order rather than with forEachQuote)
     for(int quote_idx = 0; quote_idx < quotes.size(); quote_idx++) {
       CoreMap quote = quotes.get(quote_idx);
       if(quote.get(QuoteAttributionAnnotator.MentionAnnotation.class) == null) {
@@ -29,13 +29,13 @@ public class OneNameSentenceSieve extends QMSieve {
 
   public void oneNameSentence(Annotation doc) {
     List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
-    for(CoreMap quote : quotes) {
+    forEachQuote(quotes, quote -> {
       if (quote.get(QuoteAttributionAnnotator.MentionAnnotation.class) != null) {
-        continue;
+        return;
       }
       Pair<Integer, Integer> range = QuoteAttributionUtils.getRemainderInSentence(doc, quote);
       if(range == null) {
-        continue;
+        return;
       }
 
       Pair<ArrayList<String>, ArrayList<Pair<Integer, Integer>>> namesAndNameIndices = scanForNames(range);
@@ -52,6 +52,6 @@ public class OneNameSentenceSieve extends QMSieve {
                   sieveName, NAME);
         }
       }
-    }
+    });
   }
 }
@@ -33,13 +33,13 @@ public class ParagraphEndQuoteClosestSieve extends QMSieve {
   public void paragraphEndQuoteClosestBefore(Annotation doc) {
     List<CoreLabel> tokens = doc.get(CoreAnnotations.TokensAnnotation.class);
     List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
-    for(CoreMap quote : quotes) {
+    forEachQuote(quotes, quote -> {
       if (quote.get(QuoteAttributionAnnotator.MentionAnnotation.class) != null) {
-        continue;
+        return;
       }
       Pair<Integer, Integer> range = QuoteAttributionUtils.getRemainderInSentence(doc, quote);
       if(range == null) {
-        continue;
+        return;
       }
       //search for mentions in the first run
       Pair<ArrayList<String>, ArrayList<Pair<Integer, Integer>>> namesAndNameIndices = scanForNames(range);
@@ -71,6 +71,6 @@ public class ParagraphEndQuoteClosestSieve extends QMSieve {
           fillInMention(quote, closestMention, sieveName);
         }
       }
-    }
+    });
   }
 }
@@ -31,9 +31,9 @@ public class TrigramSieve extends QMSieve {
   public void trigramPatterns(Annotation doc) {
     List<CoreLabel> docTokens = doc.get(CoreAnnotations.TokensAnnotation.class);
     List<CoreMap> docQuotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
-    for(CoreMap quote : docQuotes) {
+    forEachQuote(docQuotes, quote -> {
       if(quote.get(QuoteAttributionAnnotator.MentionAnnotation.class) != null)
-        continue;
+        return;
       int quoteBeginTokenIndex = quote.get(CoreAnnotations.TokenBeginAnnotation.class);
       int quoteEndTokenIndex = quote.get(CoreAnnotations.TokenEndAnnotation.class);
       int quoteEndSentenceIndex = quote.get(CoreAnnotations.SentenceEndAnnotation.class);
@@ -58,14 +58,14 @@ public class TrigramSieve extends QMSieve {
           if (prevToken.tag() != null && prevToken.tag().startsWith("V")  // verb!
                   && lastNameIndex.second.equals(quoteBeginTokenIndex - 2 - offset)) {
             fillInMention(quote, names.get(names.size() - 1), lastNameIndex.first, lastNameIndex.second, "trigram CVQ", NAME);
-            continue;
+            return;
           }
           //VCQ
           if (lastNameIndex.second.equals(quoteBeginTokenIndex - 1 - offset)) {
             CoreLabel secondPrevToken = docTokens.get(lastNameIndex.first - 1);
             if(secondPrevToken.tag().startsWith("V")) {
               fillInMention(quote, names.get(names.size() - 1), lastNameIndex.first, lastNameIndex.second, "trigram VCQ", NAME);
-              continue;
+              return;
             }
           }
         }
@@ -83,13 +83,13 @@ public class TrigramSieve extends QMSieve {
           if (prevToken.tag().startsWith("V")  // verb!
                   && lastPronounIndex == quoteBeginTokenIndex - 2 - offset) {
             fillInMention(quote, tokenRangeToString(lastPronounIndex), lastPronounIndex, lastPronounIndex, "trigram PVQ", PRONOUN);
-            continue;
+            return;
           }
           //VPQ
           if (lastPronounIndex == quoteBeginTokenIndex - 1 - offset
                   && docTokens.get(quoteBeginTokenIndex - 2 - offset).tag().startsWith("V")) {
             fillInMention(quote, tokenRangeToString(lastPronounIndex), lastPronounIndex, lastPronounIndex, "trigram VPQ", PRONOUN);
-            continue;
+            return;
           }
         }
       }
@@ -107,14 +107,14 @@ public class TrigramSieve extends QMSieve {
           if (nextToken.tag().startsWith("V")  // verb!
                   && firstNameIndex.first.equals(quoteEndTokenIndex + 2)) {
             fillInMention(quote, names.get(0), firstNameIndex.first, firstNameIndex.second, "trigram QVC", NAME);
-            continue;
+            return;
           }
           //QCV
           if (firstNameIndex.first.equals(quoteEndTokenIndex + 1)) {
             CoreLabel secondNextToken = docTokens.get(firstNameIndex.second + 1);
             if(secondNextToken.tag().startsWith("V")) {
               fillInMention(quote, names.get(0), firstNameIndex.first, firstNameIndex.second, "trigram QCV", NAME);
-              continue;
+              return;
             }
           }
         }
@@ -126,17 +126,17 @@ public class TrigramSieve extends QMSieve {
           if (nextToken.tag().startsWith("V")  // verb!
                   && firstPronounIndex == quoteEndTokenIndex + 2) {
             fillInMention(quote, tokenRangeToString(pronounsIndices.get(0)), firstPronounIndex, firstPronounIndex, "trigram QVP", PRONOUN);
-            continue;
+            return;
           }
           //QPV
           if (firstPronounIndex == quoteEndTokenIndex + 1
                   && docTokens.get(quoteEndTokenIndex + 2).tag().startsWith("V")) {
             fillInMention(quote, tokenRangeToString(pronounsIndices.get(pronounsIndices.size() - 1)), firstPronounIndex,
                     firstPronounIndex, "trigram QPV", PRONOUN);
-            continue;
+            return;
           }
         }
       }
-    }
+    });
   }
 }
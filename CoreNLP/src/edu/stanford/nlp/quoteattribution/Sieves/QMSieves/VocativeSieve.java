@@ -38,9 +38,9 @@ public class VocativeSieve extends QMSieve {
     List<CoreLabel> toks = doc.get(CoreAnnotations.TokensAnnotation.class);
     List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
     List<CoreMap> sentences = doc.get(CoreAnnotations.SentencesAnnotation.class);
-    for(CoreMap quote : quotes) {
+    forEachQuote(quotes, quote -> {
       if (quote.get(QuoteAttributionAnnotator.MentionAnnotation.class) != null) {
-        continue;
+        return;
       }
 
       int currQuoteIndex = quote.get(CoreAnnotations.QuotationIndexAnnotation.class);
@@ -59,7 +59,7 @@ public class VocativeSieve extends QMSieve {
         }
       }
       if(quotesInPrevParagraph.size() == 0) {
-        continue;
+        return;
       }
       boolean vocativeFound = false;
       for(CoreMap prevQuote : quotesInPrevParagraph) {
@@ -94,7 +94,7 @@ public class VocativeSieve extends QMSieve {
         }
       }
       if(vocativeFound) {
-        continue;
+        return;
       }
       for(CoreMap prevQuote : quotesInPrevParagraph) {
         Pair<Integer, Integer> quoteRun = new Pair<>(prevQuote.get(CoreAnnotations.TokenBeginAnnotation.class), prevQuote.get(CoreAnnotations.TokenEndAnnotation.class));
@@ -123,6 +123,6 @@ public class VocativeSieve extends QMSieve {
           break;
         }
       }
-    }
+    });
   }
 }
@@ -9,6 +9,10 @@ import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Pair;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /**
  * Created by mjfang on 7/8/16.
@@ -27,7 +31,9 @@ public class Sieve {
   public static final String ANIMATE_NOUN = "animate noun";
 
 
-  protected TokenNode rootNameNode;
+  private MentionIndex mentionIndex;
+  /** The threads to label quotes on, or null to label them one at a time on the calling thread */
+  private ForkJoinPool pool;
 
   public Sieve(Annotation doc,
                Map<String, List<Person>> characterMap,
@@ -37,7 +43,6 @@ public class Sieve {
     this.characterMap = characterMap;
     this.pronounCorefMap = pronounCorefMap;
     this.animacySet = animacySet;
-    this.rootNameNode = createNameMatcher();
   }
 
 
@@ -107,82 +112,67 @@ public class Sieve {
     return null;
   }
 
-  private class TokenNode {
-    public List<Person> personList;
-    public HashMap<String, TokenNode> childNodes;
-    public String token;
-    public String fullName;
-    int level;
-
-    public TokenNode(String token, int level) {
-      this.token = token;
-      this.level = level;
-      childNodes = new HashMap<>();
+  /** The mentions in {@link Sieve#doc}, built on first use if not given to {@link Sieve#setMentionIndex}. */
+  protected MentionIndex mentionIndex() {
+    if (mentionIndex == null) {
+      mentionIndex = new MentionIndex(doc.get(CoreAnnotations.TokensAnnotation.class), characterMap, animacySet);
     }
+    return mentionIndex;
+  }
 
+  /** Use an index of the mentions in the document that is shared with other sieves over the same document. */
+  public void setMentionIndex(MentionIndex mentionIndex) {
+    this.mentionIndex = mentionIndex;
   }
 
-  protected TokenNode createNameMatcher() {
-    TokenNode rootNode = new TokenNode("$ROOT", -1);
+  /** Label quotes on the given threads, where a sieve labels quotes independently of each other; null for one at a time. */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
 
-    for(String key : characterMap.keySet()) {
-      String[] tokens = key.split(" ");
-      TokenNode currNode = rootNode;
-      for(int i = 0; i < tokens.length; i++) {
-        String tok = tokens[i];
-        if(currNode.childNodes.keySet().contains(tok)) {
-          currNode = currNode.childNodes.get(tok);
-        }
-        else {
-          TokenNode newNode = new TokenNode(tok, i);
-          currNode.childNodes.put(tok, newNode);
-          currNode = newNode;
-        }
+  /**
+   * Whether this sieve reads the labels it sets on other quotes while labelling a quote, as the
+   * conversational sieves do with the quotes before it. Such a sieve labels quotes in order, on the
+   * calling thread, even if it was given threads.
+   */
+  protected boolean readsOtherQuotes() {
+    return false;
+  }
 
-        if(i == tokens.length - 1) {
-          currNode.personList = characterMap.get(key);
-          currNode.fullName = key;
-        }
+  /**
+   * Compute something for each quote, in parallel if this sieve was given threads.
+   * {@code perQuote} may set annotations on the quote it is given, but must not read any annotation
+   * that another call sets: the quotes are done in no particular order. Sieves that read the labels
+   * they set on other quotes say so with {@link Sieve#readsOtherQuotes}, and get them in order.
+   *
+   * @return The results, in the order of the quotes.
+   */
+  protected <T> List<T> mapQuotes(List<CoreMap> quotes, Function<CoreMap, T> perQuote) {
+    mentionIndex();  // build it before the threads need it
+    List<T> results = new ArrayList<>(Collections.nCopies(quotes.size(), null));
+    if (pool == null || quotes.size() < 2 || readsOtherQuotes()) {
+      for (int i = 0; i < quotes.size(); i++) {
+        results.set(i, perQuote.apply(quotes.get(i)));
       }
+    } else {
+      pool.submit(() -> IntStream.range(0, quotes.size()).parallel()
+          .forEach(i -> results.set(i, perQuote.apply(quotes.get(i))))).join();
     }
-    return rootNode;
+    return results;
+  }
+
+  /** Label each quote, in parallel if this sieve was given threads; see {@link Sieve#mapQuotes}. */
+  protected void forEachQuote(List<CoreMap> quotes, Consumer<CoreMap> labelQuote) {
+    mapQuotes(quotes, quote -> {
+      labelQuote.accept(quote);
+      return null;
+    });
   }
 
   //Note: this doesn't necessarily find all possible candidates, but is kind of a greedy version.
   // E.g. "Elizabeth and Jane" will return only "Elizabeth and Jane", but not "Elizabeth", and "Jane" as well.
   public Pair<ArrayList<String>, ArrayList<Pair<Integer, Integer>>> scanForNamesNew(Pair<Integer, Integer> textRun) {
-    ArrayList<String> potentialNames = new ArrayList<>();
-    ArrayList<Pair<Integer, Integer>> nameIndices = new ArrayList<>();
-    List<CoreLabel> tokens = doc.get(CoreAnnotations.TokensAnnotation.class);
-
-    TokenNode pointer = rootNameNode;
-    for(int index = textRun.first; index <= textRun.second && index < tokens.size(); index++) {
-      CoreLabel token = tokens.get(index);
-      String tokenText = token.word();
-//      System.out.println(token);
-
-      if(pointer.childNodes.keySet().contains(tokenText)) {
-        pointer = pointer.childNodes.get(tokenText);
-      }
-      else {
-        if(!pointer.token.equals("$ROOT")) {
-          if(pointer.fullName != null) {
-            potentialNames.add(pointer.fullName);
-            nameIndices.add(new Pair<>(index - 1 - pointer.level, index - 1));
-          }
-          pointer = rootNameNode;
-        }
-      }
-    }
-    int index = textRun.second + 1;
-    if(!pointer.token.equals("$ROOT")) { //catch the end case
-      if(pointer.fullName != null) {
-        potentialNames.add(pointer.fullName);
-        nameIndices.add(new Pair<>(index - 1 - pointer.level, index - 1));
-      }
-      pointer = rootNameNode;
-    }
-    return new Pair<>(potentialNames, nameIndices);
+    return mentionIndex().names(textRun.first, textRun.second);
   }
 
 
@@ -243,17 +233,7 @@ public class Sieve {
   }
 
   protected ArrayList<Integer> scanForPronouns(Pair<Integer, Integer> nonQuoteRun) {
-    List<CoreLabel> tokens = doc.get(CoreAnnotations.TokensAnnotation.class);
-    ArrayList<Integer> pronounList = new ArrayList<>();
-
-
-    for(int i = nonQuoteRun.first; i <= nonQuoteRun.second && i < tokens.size() ; i++)
-    {
-      if(tokens.get(i).word().equalsIgnoreCase("he") || tokens.get(i).word().equalsIgnoreCase("she"))
-        pronounList.add(i);
-    }
-
-    return pronounList;
+    return mentionIndex().pronouns(nonQuoteRun.first, nonQuoteRun.second);
   }
 
   protected ArrayList<Integer> scanForPronouns(ArrayList<Pair<Integer, Integer>> nonQuoteRuns) {
@@ -293,19 +273,20 @@ public class Sieve {
   }
 
   public MentionData findClosestMentionInSpanForward(Pair<Integer, Integer> span) {
-    List<Integer> pronounIndices = scanForPronouns(span);
-    List<Pair<Integer, Integer>> nameIndices = scanForNamesNew(span).second;
-    List<Integer> animacyIndices = scanForAnimates(span);
+    MentionIndex index = mentionIndex();
+    int pronounIndex = index.firstPronoun(span.first, span.second);
+    Pair<Integer, Integer> nameIndex = index.firstName(span.first, span.second);
+    int animateIndex = index.firstAnimate(span.first, span.second);
 
     int closestPronounIndex = Integer.MAX_VALUE, closestAnimate = Integer.MAX_VALUE;
     Pair<Integer, Integer> closestNameIndex = new Pair<>(Integer.MAX_VALUE, 0);
 
-    if(pronounIndices.size() > 0)
-      closestPronounIndex = pronounIndices.get(0);
-    if(nameIndices.size() > 0)
-      closestNameIndex = nameIndices.get(0);
-    if(animacyIndices.size() > 0)
-      closestAnimate = animacyIndices.get(0);
+    if(pronounIndex >= 0)
+      closestPronounIndex = pronounIndex;
+    if(nameIndex != null)
+      closestNameIndex = nameIndex;
+    if(animateIndex >= 0)
+      closestAnimate = animateIndex;
     MentionData md = null;
     if(closestPronounIndex < closestNameIndex.first) {
       md = (closestAnimate < closestPronounIndex) ? new MentionData(closestAnimate, closestAnimate, tokenRangeToString(closestAnimate), ANIMATE_NOUN)
@@ -351,15 +332,7 @@ public class Sieve {
 
 
   public List<Integer> scanForAnimates(Pair<Integer, Integer> span) {
-    List<Integer> animateIndices = new ArrayList<>();
-    List<CoreLabel> tokens = doc.get(CoreAnnotations.TokensAnnotation.class);
-    for(int i = span.first; i <= span.second && i < tokens.size() ; i++)
-    {
-      CoreLabel token = tokens.get(i);
-      if(animacySet.contains(token.word()))
-        animateIndices.add(i);
-    }
-    return animateIndices;
+    return mentionIndex().animates(span.first, span.second);
   }
 
   public class MentionData {
@@ -377,21 +350,22 @@ public class Sieve {
   }
 
   public MentionData findClosestMentionInSpanBackward(Pair<Integer, Integer> span) {
-    List<Integer> pronounIndices = scanForPronouns(span);
-    List<Pair<Integer, Integer>> nameIndices = scanForNamesNew(span).second;
-    List<Integer> animateIndices = scanForAnimates(span);
+    MentionIndex index = mentionIndex();
+    int pronounIndex = index.lastPronoun(span.first, span.second);
+    Pair<Integer, Integer> nameIndex = index.lastName(span.first, span.second);
+    int animateIndex = index.lastAnimate(span.first, span.second);
 
     int closestPronounIndex = Integer.MIN_VALUE, closestAnimate = Integer.MIN_VALUE;
     Pair<Integer, Integer> closestNameIndex = new Pair<>(0, Integer.MIN_VALUE);
 
-    if(pronounIndices.size() > 0) {
-      closestPronounIndex = pronounIndices.get(pronounIndices.size() - 1);
+    if(pronounIndex >= 0) {
+      closestPronounIndex = pronounIndex;
     }
-    if(nameIndices.size() > 0) {
-      closestNameIndex = nameIndices.get(nameIndices.size() - 1);
+    if(nameIndex != null) {
+      closestNameIndex = nameIndex;
     }
-    if(animateIndices.size() > 0) {
-      closestAnimate = animateIndices.get(animateIndices.size() - 1);
+    if(animateIndex >= 0) {
+      closestAnimate = animateIndex;
     }
 
     MentionData md = null;
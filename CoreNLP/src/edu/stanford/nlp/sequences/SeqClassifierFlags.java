@@ -446,6 +446,25 @@ public class SeqClassifierFlags implements Serializable  {
   public transient String serializeToText = null;
   public transient int interimOutputFreq = 0;
   public transient String initialWeights = null;
+  /**
+   * If set, a directory to keep the weights of loaded CRF classifiers in, as files that are
+   * memory-mapped instead of being held on the heap. Processes that load the same model from
+   * the same directory share one copy of its weights.
+   */
+  public transient String mappedWeightsDir = null;
+  /**
+   * If true, a CRF classifier always builds the String features of a document at test time,
+   * rather than computing the feature indices of the templates that {@code NERFeatureCompiler}
+   * supports directly. The results are the same either way.
+   */
+  public transient boolean noCompiledFeatures = false;
+
+  /**
+   * If true, a CRF classifier doing Viterbi inference builds a clique tree and runs the general
+   * {@code ExactBestSequenceFinder} on it, rather than decoding on its own reusable arrays.
+   * The answers are the same either way.
+   */
+  public transient boolean noFlatViterbi = false;
   public transient List<String> gazettes = new ArrayList<>();
   public transient String selfTrainFile = null;
 
@@ -1620,6 +1639,12 @@ public class SeqClassifierFlags implements Serializable  {
         readStdin = Boolean.parseBoolean(val);
       } else if (key.equalsIgnoreCase("initialWeights")) {
         initialWeights = val;
+      } else if (key.equalsIgnoreCase("mappedWeightsDir")) {
+        mappedWeightsDir = val;
+      } else if (key.equalsIgnoreCase("noCompiledFeatures")) {
+        noCompiledFeatures = Boolean.parseBoolean(val);
+      } else if (key.equalsIgnoreCase("noFlatViterbi")) {
+        noFlatViterbi = Boolean.parseBoolean(val);
       } else if (key.equalsIgnoreCase("interimOutputFreq")) {
         interimOutputFreq = Integer.parseInt(val);
       } else if (key.equalsIgnoreCase("inputEncoding")) {
@@ -2632,6 +2657,8 @@ public class SeqClassifierFlags implements Serializable  {
         combinationMode = val;
       } else if (key.equalsIgnoreCase("ner.model")) {
         nerModel = val;
+      } else if (key.equalsIgnoreCase("ner.parallelClassifiers")) {
+        // read by ClassifierCombiner
       } else if (key.equalsIgnoreCase("sutime.language")) {
         // ADD VALUE ABOVE HERE
       } else if ( ! key.isEmpty() && ! key.equals("prop")) {
@@ -0,0 +1,280 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.util.Pair;
+
+/**
+ * Remembers the feature weights of the dynamic extractors: those that look at tags, which the
+ * tag inference asks for again for every combination of tags in the window around each word.
+ * <br>
+ * Without this table each request builds the extractor's value as a String, looks it up in
+ * {@link MaxentTagger#fAssociations}, and then looks up the lambda of each tag's feature.
+ * An extractor whose value depends only on the words and on the tags within its own
+ * {@link Extractor#leftContext()} and {@link Extractor#rightContext()} (see
+ * {@link Extractor#isContextual()}) is instead looked up once for each combination of those
+ * tags, and the lambdas for each tag are copied into a dense row, with 0 where the model has no
+ * feature. Adding 0 leaves a score as it was, so tagging gives the same tags as without the table.
+ * <ul>
+ * <li> If the value depends on the tags only (see {@link Extractor#isTagsOnly()}), the tag indices
+ * index its row directly, and the rows are kept from one sentence to the next.
+ * <li> Otherwise the extractor, the position and the tag indices are packed exactly into a
+ * {@code long} key, and an open addressing table maps the keys to their rows until the next
+ * sentence. An extractor which looks at all the tags of the tagger's window is left out, since
+ * the inference scores each combination of those once.
+ * </ul>
+ * Other extractors are evaluated each time, as before.
+ * <br>
+ * A table is not thread safe; {@link MaxentTagger#borrowDynamicFeatureTable()} lends it to one
+ * sentence at a time. It doesn't keep a reference to its tagger, which is passed to each call
+ * instead, so that only the tagger keeps its tables, and not the threads that tagged with them.
+ */
+final class DynamicFeatureTable {
+
+  private static final long EMPTY = -1;
+  private static final int UNSEEN = -2;
+  /** The row of an extractor value that the model has no features for */
+  private static final int NO_FEATURES = -1;
+  private static final int MIN_CAPACITY = 64;
+  /** The most combinations of tags of an extractor whose rows are indexed by its tags */
+  private static final int MAX_TAG_COMBINATIONS = 1 << 20;
+
+  private final int numTags;
+  /** One more than the number of tags, since a tag index may be -1 */
+  private final int radix;
+  /** For each extractor number in {@code fAssociations}, its slot here, or -1 if it isn't remembered */
+  private final int[] slots;
+  private final int[] leftContexts;
+  private final int[] rightContexts;
+  private final int numSlots;
+
+  /** The lambdas that the rows were copied from */
+  private double[] lambda;
+
+  /** For the slots of extractors which look at tags only, the row of each combination of tags, or null */
+  private final int[][] tagRows;
+  private double[] tagWeights;
+  private int tagWeightsSize;
+
+  /** Whether the keys of each slot fit in a long for the current sentence */
+  private final boolean[] packable;
+  private long[] keys;
+  /** For each key, the start of its row in {@link #weights} */
+  private int[] rows;
+  private int size;
+  private double[] weights;
+  private int weightsSize;
+
+  DynamicFeatureTable(MaxentTagger tagger) {
+    numTags = tagger.ySize;
+    radix = tagger.tags.getSize() + 1;
+    int numCommon = tagger.extractors.size();
+    int numRare = tagger.extractorsRare == null ? 0 : tagger.extractorsRare.size();
+    slots = new int[numCommon + numRare];
+    Arrays.fill(slots, -1);
+    leftContexts = new int[slots.length];
+    rightContexts = new int[slots.length];
+    tagRows = new int[slots.length][];
+    int n = addSlots(tagger, tagger.extractors.dynamic, 0, 0);
+    if (tagger.extractorsRare != null) {
+      n = addSlots(tagger, tagger.extractorsRare.dynamic, numCommon, n);
+    }
+    numSlots = n;
+    packable = new boolean[n];
+  }
+
+  private int addSlots(MaxentTagger tagger, List<Pair<Integer, Extractor>> extractors, int offset, int n) {
+    for (Pair<Integer, Extractor> e : extractors) {
+      Extractor extractor = e.second();
+      if ( ! extractor.isContextual()) {
+        continue;
+      }
+      double combinations = Math.pow(radix, extractor.leftContext() + extractor.rightContext() + 1);
+      if (extractor.isTagsOnly() && combinations <= MAX_TAG_COMBINATIONS) {
+        tagRows[n] = new int[(int) combinations];
+      } else if (extractor.leftContext() == tagger.leftContext && extractor.rightContext() == tagger.rightContext) {
+        continue;
+      }
+      slots[offset + e.first()] = n;
+      leftContexts[n] = extractor.leftContext();
+      rightContexts[n] = extractor.rightContext();
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Forget the rows of the last sentence.
+   *
+   * @param tagger The tagger this table was made for
+   * @param numPositions The length of the tag sequences of the next sentence, padding included
+   */
+  void reset(MaxentTagger tagger, int numPositions) {
+    if (numSlots == 0) {
+      return;
+    }
+    double[] currentLambda = tagger.getLambdaSolve().lambda;
+    if (lambda != currentLambda) {
+      // a new model, or the first sentence: the rows kept between sentences are copied again
+      lambda = currentLambda;
+      for (int[] r : tagRows) {
+        if (r != null) {
+          Arrays.fill(r, UNSEEN);
+        }
+      }
+      tagWeights = new double[MIN_CAPACITY * numTags];
+      tagWeightsSize = 0;
+    }
+
+    double bits = log2(numPositions) + log2(numSlots);
+    for (int slot = 0; slot < numSlots; slot++) {
+      packable[slot] = bits + (leftContexts[slot] + rightContexts[slot] + 1) * log2(radix) < 62;
+    }
+    // room for a few rows of each extractor at each position, which is about what
+    // the tag inference asks for, so that a sentence seldom needs to grow the table
+    int expected = numPositions * numSlots;
+    if (keys == null || keys.length < 4 * expected) {
+      int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, 4 * expected - 1)) << 1);
+      keys = new long[capacity];
+      rows = new int[capacity];
+      Arrays.fill(keys, EMPTY);
+    } else if (size > 0) {
+      Arrays.fill(keys, EMPTY);
+    }
+    if (weights == null || weights.length < expected * numTags) {
+      weights = new double[Math.max(MIN_CAPACITY, expected) * numTags];
+    }
+    size = 0;
+    weightsSize = 0;
+  }
+
+  private static double log2(double x) {
+    return Math.log(Math.max(x, 1)) / Math.log(2);
+  }
+
+  /** Whether the weights of an extractor, by its number in {@code fAssociations}, are remembered here */
+  boolean remembers(int kf) {
+    int slot = slots[kf];
+    return slot >= 0 && (tagRows[slot] != null || packable[slot]);
+  }
+
+  /**
+   * Adds the lambdas of an extractor's value to the score of each tag: of all the tags,
+   * or if {@code tagIndices} is not null, of the tags with those indices.
+   *
+   * @param tagger The tagger this table was made for
+   * @param kf The extractor's number in {@code fAssociations}; it must be one this table {@link #remembers}
+   * @param extractor The extractor
+   * @param h The history, with the tags of {@code tags} set around the current word
+   * @param tags The tag indices of the whole sentence, as given to {@link TestSentence#scoresOf}
+   * @param pos The position of the current word in {@code tags}
+   */
+  void addScores(MaxentTagger tagger, double[] scores, int[] tagIndices, int kf, Extractor extractor, History h, int[] tags, int pos) {
+    int slot = slots[kf];
+    double[] w;
+    int row;
+    if (tagRows[slot] != null) {
+      int index = 0;
+      for (int j = pos - leftContexts[slot], end = pos + rightContexts[slot]; j <= end; j++) {
+        index = index * radix + tags[j] + 1;
+      }
+      row = tagRows[slot][index];
+      if (row == UNSEEN) {
+        int[] fAssociations = tagger.fAssociations.get(kf).get(extractor.extract(h));
+        row = NO_FEATURES;
+        if (fAssociations != null) {
+          if (tagWeightsSize + numTags > tagWeights.length) {
+            tagWeights = Arrays.copyOf(tagWeights, 2 * tagWeights.length);
+          }
+          row = copyRow(fAssociations, tagWeights, tagWeightsSize);
+          tagWeightsSize += numTags;
+        }
+        tagRows[slot][index] = row;
+      }
+      w = tagWeights;
+    } else {
+      row = row(tagger, kf, slot, extractor, h, tags, pos);
+      w = weights;
+    }
+
+    if (row == NO_FEATURES) {
+      return;
+    }
+    if (tagIndices == null) {
+      for (int i = 0; i < scores.length; i++) {
+        scores[i] += w[row + i];
+      }
+    } else {
+      for (int j = 0; j < scores.length; j++) {
+        scores[j] += w[row + tagIndices[j]];
+      }
+    }
+  }
+
+  private int copyRow(int[] fAssociations, double[] w, int row) {
+    for (int t = 0; t < numTags; t++) {
+      int fNum = fAssociations[t];
+      w[row + t] = fNum > -1 ? lambda[fNum] : 0.0;
+    }
+    return row;
+  }
+
+  /** The start in {@link #weights} of the row of an extractor's value in the current sentence */
+  private int row(MaxentTagger tagger, int kf, int slot, Extractor extractor, History h, int[] tags, int pos) {
+    long key = pos;
+    for (int j = pos - leftContexts[slot], end = pos + rightContexts[slot]; j <= end; j++) {
+      key = key * radix + tags[j] + 1;
+    }
+    key = key * numSlots + slot;
+
+    int mask = keys.length - 1;
+    int i = index(key, mask);
+    while (keys[i] != EMPTY) {
+      if (keys[i] == key) {
+        return rows[i];
+      }
+      i = (i + 1) & mask;
+    }
+    int[] fAssociations = tagger.fAssociations.get(kf).get(extractor.extract(h));
+    int row = NO_FEATURES;
+    if (fAssociations != null) {
+      if (weightsSize + numTags > weights.length) {
+        weights = Arrays.copyOf(weights, 2 * weights.length);
+      }
+      row = copyRow(fAssociations, weights, weightsSize);
+      weightsSize += numTags;
+    }
+    keys[i] = key;
+    rows[i] = row;
+    if (++size > keys.length / 2) {
+      grow();
+    }
+    return row;
+  }
+
+  private static int index(long key, int mask) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    int[] oldRows = rows;
+    keys = new long[2 * oldKeys.length];
+    rows = new int[keys.length];
+    Arrays.fill(keys, EMPTY);
+    int mask = keys.length - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] != EMPTY) {
+        int i = index(oldKeys[j], mask);
+        while (keys[i] != EMPTY) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        rows[i] = oldRows[j];
+      }
+    }
+  }
+
+}
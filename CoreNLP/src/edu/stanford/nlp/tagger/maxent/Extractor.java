@@ -178,6 +178,26 @@ public class Extractor implements Serializable  {
     return isTag ? pH.getTag(h, position) : pH.getWord(h, position);
   }
 
+  /**
+   * @return Returns true if the value is a function only of the words of the sentence
+   * and of the tags within {@link #leftContext()} and {@link #rightContext()} of the
+   * current word, so that a tagger may remember it for each position and combination of
+   * those tags (see {@link DynamicFeatureTable}). Subclasses which override extract
+   * should override this if that holds for them.
+   */
+  boolean isContextual() {
+    return getClass() == Extractor.class;
+  }
+
+  /**
+   * @return Returns true if the value is a function only of the tags within
+   * {@link #leftContext()} and {@link #rightContext()}, and so is the same in any sentence
+   * for the same tags. This implies {@link #isContextual()}.
+   */
+  boolean isTagsOnly() {
+    return getClass() == Extractor.class && isTag;
+  }
+
   @SuppressWarnings({"MethodMayBeStatic"})
   String extractLV(History h, PairsHolder pH) {
     // should extract last verbal word and also the current word
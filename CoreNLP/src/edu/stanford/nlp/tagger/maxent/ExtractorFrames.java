@@ -334,6 +334,8 @@ public class ExtractorFrames  {
       return pH.getTag(h, position) + '!' + pH.getWord(h, wordPosition);
     }
 
+    @Override boolean isContextual() { return true; }
+
     @Override
     public String toString() {
       return (getClass().getName() + "(w" + wordPosition +
@@ -476,6 +478,8 @@ public class ExtractorFrames  {
 
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
+    @Override boolean isContextual() { return true; }
+    @Override boolean isTagsOnly() { return true; }
 
     @Override
     public String toString() {
@@ -522,6 +526,7 @@ public class ExtractorFrames  {
 
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
+    @Override boolean isContextual() { return true; }
 
     @Override
     public String toString() {
@@ -566,6 +571,9 @@ public class ExtractorFrames  {
       return sb.toString();
     }
 
+    @Override boolean isContextual() { return true; }
+    @Override boolean isTagsOnly() { return true; }
+
     @Override
     public String toString() {
       return "ExtractorContinuousTagConjunction(" + (position < 0 ? position + " ... -1": "1 ... " + position) + ')';
@@ -633,6 +641,8 @@ public class ExtractorFrames  {
 
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
+    @Override boolean isContextual() { return true; }
+    @Override boolean isTagsOnly() { return true; }
 
     @Override
     public String toString() {
@@ -690,6 +700,7 @@ public class ExtractorFrames  {
 
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
+    @Override boolean isContextual() { return true; }
 
     @Override
     public String toString() {
@@ -814,6 +825,9 @@ class ExtractorSpanishAuxiliaryTag extends Extractor {
     return tag.startsWith("va") ? "1" : "0";
   }
 
+  @Override boolean isContextual() { return true; }
+  @Override boolean isTagsOnly() { return true; }
+
   @Override
   public String toString() {
     return "ExtractorSpanishAuxiliaryTag";
@@ -840,6 +854,9 @@ class ExtractorSpanishSemiauxiliaryTag extends Extractor {
     return tag.startsWith("vs") ? "1" : "0";
   }
 
+  @Override boolean isContextual() { return true; }
+  @Override boolean isTagsOnly() { return true; }
+
   @Override
   public String toString() {
     return "ExtractorSpanishSemiauxiliaryTag";
@@ -58,6 +58,7 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.lang.reflect.Method;
@@ -460,11 +461,82 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   Function<String, String> wordFunction;
 
 
+  /**
+   * The dynamic feature tables that no sentence is using now. They are lent to one sentence at a
+   * time, rather than kept per thread, so that a thread which has tagged doesn't keep them, and
+   * the tagger with them, once the tagger is no longer used.
+   */
+  private transient volatile Queue<DynamicFeatureTable> dynamicFeatureTables;
+  /**
+   * The TestSentences that no thread is tagging with now, which are lent out for one sentence
+   * at a time, like {@link #dynamicFeatureTables}, since a TestSentence refers to its tagger
+   */
+  private transient volatile Queue<TestSentence> taggingContexts;
+
+
   /* Package access - shouldn't be part of public API. */
   LambdaSolve getLambdaSolve() {
     return prob;
   }
 
+  /**
+   * A {@link DynamicFeatureTable} for the sentence being tagged, which keeps its rows from one
+   * sentence to the next. Give it back with {@link #returnDynamicFeatureTable} when the sentence is done.
+   */
+  DynamicFeatureTable borrowDynamicFeatureTable() {
+    Queue<DynamicFeatureTable> tables = dynamicFeatureTables;
+    if (tables == null) {
+      synchronized (this) {
+        if (dynamicFeatureTables == null) {
+          dynamicFeatureTables = new ConcurrentLinkedQueue<>();
+        }
+        tables = dynamicFeatureTables;
+      }
+    }
+    DynamicFeatureTable table = tables.poll();
+    return table != null ? table : new DynamicFeatureTable(this);
+  }
+
+  /** Lets the next sentence use a table from {@link #borrowDynamicFeatureTable} */
+  void returnDynamicFeatureTable(DynamicFeatureTable table) {
+    dynamicFeatureTables.add(table);
+  }
+
+  /**
+   * A {@link TestSentence} to tag one sentence with, which keeps its tables and the local scores
+   * of the words it has seen from one sentence to the next, rather than building them for each
+   * sentence. Give it back with {@link #returnTaggingContext} when the sentence is done.
+   */
+  TestSentence borrowTaggingContext() {
+    Queue<TestSentence> contexts = taggingContexts;
+    if (contexts == null) {
+      synchronized (this) {
+        if (taggingContexts == null) {
+          taggingContexts = new ConcurrentLinkedQueue<>();
+        }
+        contexts = taggingContexts;
+      }
+    }
+    TestSentence context = contexts.poll();
+    return context != null ? context : new TestSentence(this);
+  }
+
+  /** Lets go of the sentence a context from {@link #borrowTaggingContext} tagged, and lets the next sentence use it */
+  void returnTaggingContext(TestSentence context) {
+    context.endSentence();
+    taggingContexts.add(context);
+  }
+
+  /** Tags a sentence with a context from {@link #borrowTaggingContext} */
+  private List<TaggedWord> tagWithContext(List<? extends HasWord> sentence, boolean reuseTags) {
+    TestSentence testSentence = borrowTaggingContext();
+    try {
+      return testSentence.tagSentence(sentence, reuseTags);
+    } finally {
+      returnTaggingContext(testSentence);
+    }
+  }
+
   // TODO: make these constructors instead of init methods?
   void init(TaggerConfig config) {
     if (initted) return;  // TODO: why not reinit?
@@ -967,9 +1039,13 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   public String tagTokenizedString(String toTag) {
     List<Word> sent = SentenceUtils.toUntaggedList(Arrays.asList(toTag.split("\\s+")));
-    TestSentence testSentence = new TestSentence(this);
-    testSentence.tagSentence(sent, false);
-    return testSentence.getTaggedNice();
+    TestSentence testSentence = borrowTaggingContext();
+    try {
+      testSentence.tagSentence(sent, false);
+      return testSentence.getTaggedNice();
+    } finally {
+      returnTaggingContext(testSentence);
+    }
   }
 
 
@@ -995,8 +1071,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   @Override
   public List<TaggedWord> apply(List<? extends HasWord> in) {
-    TestSentence testSentence = new TestSentence(this);
-    return testSentence.tagSentence(in, false);
+    return tagWithContext(in, false);
   }
 
 
@@ -1015,9 +1090,8 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   public List<List<TaggedWord>> process(List<? extends List<? extends HasWord>> sentences) {
     List<List<TaggedWord>> taggedSentences = Generics.newArrayList();
 
-    TestSentence testSentence = new TestSentence(this);
     for (List<? extends HasWord> sentence : sentences) {
-      taggedSentences.add(testSentence.tagSentence(sentence, false));
+      taggedSentences.add(tagWithContext(sentence, false));
     }
     return taggedSentences;
   }
@@ -1031,8 +1105,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    * @return tagged sentence
    */
   public List<TaggedWord> tagSentence(List<? extends HasWord> sentence) {
-    TestSentence testSentence = new TestSentence(this);
-    return testSentence.tagSentence(sentence, false);
+    return tagWithContext(sentence, false);
   }
 
   /**
@@ -1048,8 +1121,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   public List<TaggedWord> tagSentence(List<? extends HasWord> sentence,
                                            boolean reuseTags) {
-    TestSentence testSentence = new TestSentence(this);
-    return testSentence.tagSentence(sentence, reuseTags);
+    return tagWithContext(sentence, reuseTags);
   }
 
   /**
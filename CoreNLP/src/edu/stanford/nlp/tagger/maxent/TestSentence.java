@@ -63,6 +63,12 @@ public class TestSentence implements SequenceModel  {
   private static final String[] naTagArr = { naTag };
   protected static final boolean DBG = false;
   protected static final int kBestSize = 1;
+  /**
+   * The most words whose local scores are kept from one sentence to the next: with a score for
+   * each of 45 tags, as in English, that is under a megabyte for each tagging context, of which
+   * a tagger keeps as many as it has tagged sentences with at the same time
+   */
+  private static final int MAX_LOCAL_SCORES = 2000;
 
   protected final String tagSeparator;
   protected final String encoding;
@@ -84,8 +90,18 @@ public class TestSentence implements SequenceModel  {
 
   private volatile History history;
   private volatile Map<String,double[]> localScores = Generics.newHashMap();
+  /** Whether localScores has scores of words that were given a tag to reuse */
+  private boolean forcedLocalScores;
   private volatile double[][] localContextScores;
 
+  /** Whether to take the weights of dynamic features from the tagger's {@link DynamicFeatureTable} */
+  boolean rememberDynamicFeatures = true;
+  /** The table borrowed from the tagger while scoring this sentence, or null to look up each feature */
+  private DynamicFeatureTable dynamicFeatures;
+  /** The tags and position being scored by {@link #scoresOf}, or null when not scoring for tag inference */
+  private int[] scoredTags;
+  private int scoredPos;
+
   protected final MaxentTagger maxentTagger;
 
   public TestSentence(MaxentTagger maxentTagger) {
@@ -142,6 +158,8 @@ public class TestSentence implements SequenceModel  {
         }
       }
       originalTags.add(Tagger.EOS_TAG);
+    } else {
+      this.originalTags = null;
     }
     size = sz + 1;
     if (VERBOSE) {
@@ -158,13 +176,42 @@ public class TestSentence implements SequenceModel  {
   }
 
 
+  /**
+   * Lets go of the sentence just tagged and resets the counts of right, wrong and unknown words,
+   * for a TestSentence which tags one sentence after another (see {@link MaxentTagger#borrowTaggingContext()})
+   * and would otherwise keep the last sentence until the next one. Only the local scores are kept.
+   */
+  void endSentence() {
+    sent = null;
+    origWords = null;
+    originalTags = null;
+    correctTags = null;
+    finalTags = null;
+    localContextScores = null;
+    returnDynamicFeatures();
+    scoredTags = null;
+    numRight = 0;
+    numWrong = 0;
+    numUnknown = 0;
+    numWrongUnknown = 0;
+  }
+
   protected void revert(int prevSize) {
     endSizePairs = prevSize;
   }
 
   protected void init() {
     //the eos are assumed already there
+    // a sentence that threw an exception part way may not have cleaned up after itself
+    endSizePairs = 0;
     localContextScores = new double[size][];
+    // The local scores of a word depend only on the word, so a TestSentence that tags one
+    // sentence after another keeps them, except those of words given a tag to reuse, and
+    // except when there are so many words that memory would grow without bound
+    if (forcedLocalScores || originalTags != null || localScores.size() > MAX_LOCAL_SCORES) {
+      localScores.clear();
+    }
+    forcedLocalScores = originalTags != null;
     for (int i = 0; i < size - 1; i++) {
       if (maxentTagger.dict.isUnknown(sent.get(i))) {
         numUnknown++;
@@ -338,7 +385,12 @@ public class TestSentence implements SequenceModel  {
     BestSequenceFinder ti = new ExactBestSequenceFinder();
       //new BeamBestSequenceFinder(50);
       //new KBestSequenceFinder()
-    int[] bestTags = ti.bestSequence(this);
+    int[] bestTags;
+    try {
+      bestTags = ti.bestSequence(this);
+    } finally {
+      cleanUpScorer();
+    }
     finalTags = new String[bestTags.length];
     for (int j = 0; j < size; j++) {
       finalTags[j] = maxentTagger.tags.getTag(bestTags[j + leftWindow()]);
@@ -347,7 +399,6 @@ public class TestSentence implements SequenceModel  {
     if (Thread.interrupted()) {  // Allow interrupting
       throw new RuntimeInterruptedException();
     }
-    cleanUpScorer();
   }
 
 
@@ -376,6 +427,12 @@ public class TestSentence implements SequenceModel  {
     for (int i = 0; i < size; i++)
       pairs.setWord(i,sent.get(i));
     endSizePairs += size;
+    if (rememberDynamicFeatures && dynamicFeatures == null) {
+      dynamicFeatures = maxentTagger.borrowDynamicFeatureTable();
+    }
+    if (dynamicFeatures != null) {
+      dynamicFeatures.reset(maxentTagger, size + leftWindow() + rightWindow());
+    }
   }
 
 
@@ -384,6 +441,16 @@ public class TestSentence implements SequenceModel  {
    */
   protected void cleanUpScorer() {
     revert(0);
+    scoredTags = null;
+    returnDynamicFeatures();
+  }
+
+  /** Gives the table borrowed by {@link #initializeScorer} back to the tagger */
+  private void returnDynamicFeatures() {
+    if (dynamicFeatures != null) {
+      maxentTagger.returnDynamicFeatureTable(dynamicFeatures);
+      dynamicFeatures = null;
+    }
   }
 
   // This scores the current assignment in PairsHolder at
@@ -436,9 +503,10 @@ public class TestSentence implements SequenceModel  {
     if (lS == null) {
       lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
       localScores.put(w,lS);
-    } else if (lS.length != tags.length) {
+    } else if (maxentTagger.hasApproximateScoring() && lS.length != tags.length) {
       // This case can occur when a word was given a specific forced
       // tag, and then later it shows up without the forced tag.
+      // (Exact scores are for every tag, so they are always the same length.)
       // TODO: if a word is given a forced tag, we should always get
       // its features rather than use the cache, just in case the tag
       // given is not the same tag as before
@@ -468,83 +536,62 @@ public class TestSentence implements SequenceModel  {
     int szCommon = maxentTagger.extractors.size();
 
     for (Pair<Integer,Extractor> e : extractors) {
-      int kf = e.first();
-      Extractor ex = e.second();
-      String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int i = 0; i < maxentTagger.ySize; i++) {
-          int fNum = fAssociations[i];
-          if (fNum > -1) {
-            scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
-        }
-      }
+      addScores(scores, null, e.first(), e.second(), h);
     }
     if (extractorsRare != null) {
       for (Pair<Integer,Extractor> e : extractorsRare) {
-        int kf = e.first();
-        Extractor ex = e.second();
-        String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(kf+szCommon).get(val);
-        if (fAssociations != null) {
-          for (int i = 0; i < maxentTagger.ySize; i++) {
-            int fNum = fAssociations[i];
-            if (fNum > -1) {
-              scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
-          }
-        }
+        addScores(scores, null, e.first() + szCommon, e.second(), h);
       }
     }
     return scores;
   }
 
-  // todo [cdm 2016]: Could this be sped up a bit by caching lambda array, extracting method for shared code?
   // todo [cdm 2016]: Also it's allocating java.util.ArrayList$Itr for for loop - why can't it just random access array?
   /** Returns an unnormalized score (in log space) for each tag. */
   private double[] getApproximateHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
 
     double[] scores = new double[tags.length];
     int szCommon = maxentTagger.extractors.size();
+    int[] tagIndices = new int[tags.length];
+    for (int j = 0; j < tags.length; j++) {
+      tagIndices[j] = maxentTagger.tags.getIndex(tags[j]);
+    }
 
     for (Pair<Integer,Extractor> e : extractors) {
-      int kf = e.first();
-      Extractor ex = e.second();
-      String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int j = 0; j < tags.length; j++) {
-          String tag = tags[j];
-          int tagIndex = maxentTagger.tags.getIndex(tag);
-          int fNum = fAssociations[tagIndex];
-          if (fNum > -1) {
-            scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
-        }
-      }
+      addScores(scores, tagIndices, e.first(), e.second(), h);
     }
     if (extractorsRare != null) {
       for (Pair<Integer,Extractor> e : extractorsRare) {
-        int kf = e.first();
-        Extractor ex = e.second();
-        String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(szCommon+kf).get(val);
-        if (fAssociations != null) {
-          for (int j = 0; j < tags.length; j++) {
-            String tag = tags[j];
-            int tagIndex = maxentTagger.tags.getIndex(tag);
-            int fNum = fAssociations[tagIndex];
-            if (fNum > -1) {
-              scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
-          }
-        }
+        addScores(scores, tagIndices, szCommon + e.first(), e.second(), h);
       }
     }
     return scores;
   }
 
+  /**
+   * Adds the weights of an extractor's features to the score of each tag: of all the tags,
+   * or if {@code tagIndices} is not null, of the tags with those indices. During tag inference,
+   * the weights of a dynamic feature come from {@link #dynamicFeatures} once they have been
+   * looked up for the same tags around the current word.
+   */
+  private void addScores(double[] scores, int[] tagIndices, int kf, Extractor ex, History h) {
+    if (scoredTags != null && dynamicFeatures != null && dynamicFeatures.remembers(kf)) {
+      dynamicFeatures.addScores(maxentTagger, scores, tagIndices, kf, ex, h, scoredTags, scoredPos);
+      return;
+    }
+
+    int[] fAssociations = maxentTagger.fAssociations.get(kf).get(ex.extract(h));
+    if (fAssociations != null) {
+      double[] lambda = maxentTagger.getLambdaSolve().lambda;
+      for (int j = 0; j < scores.length; j++) {
+        int fNum = fAssociations[tagIndices == null ? j : tagIndices[j]];
+        if (fNum > -1) {
+          scores[j] += lambda[fNum];
+        }
+      }
+    }
+  }
+
 
   /**
    * This method should be called after the sentence has been tagged.
@@ -735,6 +782,8 @@ public class TestSentence implements SequenceModel  {
     }
     history.init(endSizePairs - size, endSizePairs - 1, endSizePairs - size + pos - leftWindow());
     setHistory(pos, history, tags);
+    scoredTags = tags;
+    scoredPos = pos;
     return getScores(history);
   }
 
@@ -0,0 +1,30 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * One {@link ForkJoinPool} per parallelism, shared by everything in the JVM that asks for that many threads.
+ * Like {@link ForkJoinPool#commonPool()}, these pools are never shut down: their workers are daemon threads
+ * that exit on their own once they have been idle for a while, so an annotator or classifier can hold on to
+ * one without having to release it.
+ */
+public class SharedForkJoinPools {
+
+  private static final Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+  private SharedForkJoinPools() {} // static methods
+
+  /**
+   * The shared pool with this many threads, or null if there is no point in a pool
+   * and the work should just be done on the calling thread.
+   */
+  public static ForkJoinPool get(int parallelism) {
+    if (parallelism <= 1) {
+      return null;
+    }
+    return pools.computeIfAbsent(parallelism, ForkJoinPool::new);
+  }
+
+}
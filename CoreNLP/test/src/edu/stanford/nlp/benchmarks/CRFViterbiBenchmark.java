@@ -0,0 +1,67 @@
+package edu.stanford.nlp.benchmarks;
+
+import java.util.*;
+
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.StringUtils;
+
+/**
+ * Reports the classifying speed of a CRF classifier with Viterbi inference, in tokens per second,
+ * decoding a clique tree with {@code ExactBestSequenceFinder} against decoding on the
+ * classifier's reusable flat arrays. It also checks that both ways give the same answers and
+ * probabilities.
+ * <br>
+ * The test file is read with the classifier's own reader, as in {@link NERFeatureBenchmark}.
+ * <br>
+ * Usage: {@code CRFViterbiBenchmark -loadClassifier model.ser.gz -testFile file}
+ */
+public class CRFViterbiBenchmark {
+
+  private static final int ITERATIONS = 5;
+
+  private static List<String> classifyAll(CRFClassifier<CoreLabel> crf, List<List<CoreLabel>> documents) {
+    List<String> answers = new ArrayList<>();
+    for (List<CoreLabel> document : documents) {
+      for (CoreLabel token : crf.classify(document)) {
+        answers.add(token.get(CoreAnnotations.AnswerAnnotation.class) + ' ' + token.get(CoreAnnotations.AnswerProbAnnotation.class));
+      }
+    }
+    return answers;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Properties props = StringUtils.argsToProperties(args);
+    CRFClassifier<CoreLabel> crf = CRFClassifier.getClassifier(props.getProperty("loadClassifier"));
+    List<List<CoreLabel>> documents = new ArrayList<>();
+    int numTokens = 0;
+    for (List<CoreLabel> document : crf.makeObjectBankFromFile(props.getProperty("testFile"), crf.makeReaderAndWriter())) {
+      documents.add(document);
+      numTokens += document.size();
+    }
+    System.out.printf("%d documents, %d tokens%n", documents.size(), numTokens);
+
+    crf.flags.noFlatViterbi = true;
+    List<String> expected = classifyAll(crf, documents);
+    int differences = 0;
+    long[] nanos = new long[2];
+    for (int iter = 0; iter <= ITERATIONS; iter++) {  // the first is a warm up
+      for (int flat = 0; flat < 2; flat++) {
+        crf.flags.noFlatViterbi = flat == 0;
+        long start = System.nanoTime();
+        List<String> answers = classifyAll(crf, documents);
+        if (iter > 0) {
+          nanos[flat] += System.nanoTime() - start;
+        }
+        differences += answers.equals(expected) ? 0 : 1;
+      }
+    }
+    crf.flags.noFlatViterbi = false;
+
+    System.out.printf("clique tree: %.0f tokens/sec%n", ITERATIONS * numTokens / (nanos[0] / 1e9));
+    System.out.printf("flat arrays: %.0f tokens/sec%n", ITERATIONS * numTokens / (nanos[1] / 1e9));
+    System.out.printf("runs with different answers: %d%n", differences);
+  }
+
+}
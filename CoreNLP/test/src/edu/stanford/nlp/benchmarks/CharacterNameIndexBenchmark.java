@@ -0,0 +1,103 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.coref.data.CharacterNameIndex;
+
+import java.util.*;
+
+/**
+ * Compares the pairwise {@code String.contains} merge of character names that CorefSystem used
+ * to do against {@link CharacterNameIndex} on an ensemble cast: many characters sharing family
+ * names, each referred to by first name, last name and full name.
+ */
+public class CharacterNameIndexBenchmark {
+
+  private static final int ITERATIONS = 20;
+
+  private static List<String> makeCast(int families, int membersPerFamily, Random r) {
+    List<String> names = new ArrayList<>();
+    for (int f = 0; f < families; f++) {
+      String family = "Family" + f;
+      for (int m = 0; m < membersPerFamily; m++) {
+        String first = "First" + f + "x" + m;
+        names.add(first + " " + family);
+        names.add(first);
+        if (m == 0) {
+          names.add(family);
+        }
+        if (r.nextBoolean()) {
+          names.add("Mr. " + first + " " + family);
+        }
+      }
+    }
+    Collections.shuffle(names, r);
+    return names;
+  }
+
+  private static int pairwise(List<String> names) {
+    String[] merged = names.toArray(new String[0]);
+    int changes = 0;
+    for (int i = 0; i < merged.length; ++i) {
+      for (int j = i + 1; j < merged.length; ++j) {
+        if (merged[i].contains(merged[j])) {
+          merged[j] = merged[i];
+          changes++;
+        } else if (merged[j].contains(merged[i])) {
+          merged[i] = merged[j];
+          changes++;
+        } else if (merged[i].toLowerCase().equals(merged[j].toLowerCase())) {
+          merged[j] = merged[i];
+          changes++;
+        }
+      }
+    }
+    return changes;
+  }
+
+  private static int indexed(List<String> names) {
+    CharacterNameIndex index = new CharacterNameIndex();
+    for (String name : names) {
+      index.add(name);
+    }
+    int changes = 0;
+    for (String name : names) {
+      int best = index.indexOf(name);
+      for (int other : index.containing(name)) {
+        if (index.length(other) > index.length(best)) {
+          best = other;
+        }
+      }
+      if ( ! index.get(best).equals(name)) {
+        changes++;
+      }
+    }
+    return changes;
+  }
+
+  public static void main(String[] args) {
+    int families = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    List<String> cast = makeCast(families, 5, new Random(42));
+    System.out.println(cast.size() + " character names");
+
+    // warm up
+    pairwise(cast);
+    indexed(cast);
+
+    long start = System.nanoTime();
+    int checksum = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      checksum += pairwise(cast);
+    }
+    double pairwiseMs = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+    start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      checksum += indexed(cast);
+    }
+    double indexedMs = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+    System.out.printf("pairwise contains: %.2f ms/doc%n", pairwiseMs);
+    System.out.printf("CharacterNameIndex: %.2f ms/doc%n", indexedMs);
+    System.out.println("(checksum " + checksum + ")");
+  }
+
+}
@@ -0,0 +1,75 @@
+package edu.stanford.nlp.benchmarks;
+
+import java.util.*;
+
+import edu.stanford.nlp.ie.ClassifierCombiner;
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.StringUtils;
+
+/**
+ * Reports the classifying speed of a {@link ClassifierCombiner}, in tokens per second, running its
+ * base classifiers one after another against running them at the same time. It also checks that
+ * both ways give the same answers and probabilities.
+ * <br>
+ * The test file is read with the first classifier's own reader, as in {@link NERFeatureBenchmark}.
+ * <br>
+ * Usage: {@code ClassifierCombinerBenchmark -ner.model model1.ser.gz,model2.ser.gz -testFile file}
+ */
+public class ClassifierCombinerBenchmark {
+
+  private static final int ITERATIONS = 5;
+
+  private static List<String> classifyAll(ClassifierCombiner<CoreLabel> combiner, List<List<CoreLabel>> documents) {
+    List<String> answers = new ArrayList<>();
+    for (List<CoreLabel> document : documents) {
+      List<CoreLabel> copy = new ArrayList<>();
+      for (CoreLabel token : document) {
+        copy.add(new CoreLabel(token));
+      }
+      for (CoreLabel token : combiner.classify(copy)) {
+        answers.add(token.get(CoreAnnotations.AnswerAnnotation.class) + ' ' + token.get(CoreAnnotations.AnswerProbAnnotation.class));
+      }
+    }
+    return answers;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Properties props = StringUtils.argsToProperties(args);
+    String[] models = props.getProperty("ner.model").split(",");
+    List<ClassifierCombiner<CoreLabel>> combiners = new ArrayList<>();
+    for (String parallel : new String[] {"false", "true"}) {
+      Properties combinerProps = new Properties();
+      combinerProps.setProperty("ner.parallelClassifiers", parallel);
+      combiners.add(new ClassifierCombiner<>(combinerProps, ClassifierCombiner.extractCombinationModeSafe(props), models));
+    }
+    CRFClassifier<CoreLabel> crf = CRFClassifier.getClassifier(models[0]);
+    List<List<CoreLabel>> documents = new ArrayList<>();
+    int numTokens = 0;
+    for (List<CoreLabel> document : crf.makeObjectBankFromFile(props.getProperty("testFile"), crf.makeReaderAndWriter())) {
+      documents.add(document);
+      numTokens += document.size();
+    }
+    System.out.printf("%d models, %d documents, %d tokens%n", models.length, documents.size(), numTokens);
+
+    List<String> expected = classifyAll(combiners.get(0), documents);
+    int differences = 0;
+    long[] nanos = new long[2];
+    for (int iter = 0; iter <= ITERATIONS; iter++) {  // the first is a warm up
+      for (int parallel = 0; parallel < 2; parallel++) {
+        long start = System.nanoTime();
+        List<String> answers = classifyAll(combiners.get(parallel), documents);
+        if (iter > 0) {
+          nanos[parallel] += System.nanoTime() - start;
+        }
+        differences += answers.equals(expected) ? 0 : 1;
+      }
+    }
+
+    System.out.printf("one after another: %.0f tokens/sec%n", ITERATIONS * numTokens / (nanos[0] / 1e9));
+    System.out.printf("at the same time:  %.0f tokens/sec%n", ITERATIONS * numTokens / (nanos[1] / 1e9));
+    System.out.printf("runs with different answers: %d%n", differences);
+  }
+
+}
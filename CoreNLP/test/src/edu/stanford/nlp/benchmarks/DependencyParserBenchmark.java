@@ -0,0 +1,88 @@
+package edu.stanford.nlp.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import edu.stanford.nlp.parser.nndep.DependencyParser;
+import edu.stanford.nlp.parser.nndep.DependencyParserTest;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Compares parsing a fixed corpus one sentence at a time with
+ * {@link DependencyParser#predict(CoreMap)} against parsing it with
+ * {@link DependencyParser#predictAll}, which advances many sentences together, and reports
+ * sentences per second for each. The model has random weights with the sizes of the English
+ * models (50-dimensional embeddings, 200 hidden units, 100,000 pre-computed features) over a
+ * vocabulary of the given size, and the corpus is random sentences of its words.
+ * <br>
+ * Usage: {@code DependencyParserBenchmark [numSentences] [vocabularySize]}
+ */
+public class DependencyParserBenchmark {
+
+  private static final int ITERATIONS = 5;
+  private static final int NUM_TAGS = 45;
+  private static final int NUM_LABELS = 40;
+
+  public static void main(String[] args) throws IOException {
+    int numSentences = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int vocabularySize = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+    Random random = new Random(42);
+
+    String[] words = new String[vocabularySize];
+    String[] tags = new String[vocabularySize];
+    for (int i = 0; i < vocabularySize; i++) {
+      words[i] = "word" + i;
+      tags[i] = "TAG" + random.nextInt(NUM_TAGS);
+    }
+    String[] labels = new String[NUM_LABELS];
+    for (int i = 0; i < NUM_LABELS; i++) {
+      labels[i] = "label" + i;
+    }
+    File model = File.createTempFile("nndep-benchmark", ".txt.gz");
+    model.deleteOnExit();
+    DependencyParserTest.writeRandomModel(model, words, tags, labels, 50, 200, 100000, random);
+    DependencyParser parser = DependencyParser.loadFromModelFile(model.getPath());
+
+    List<CoreMap> sentences = new ArrayList<>();
+    int numTokens = 0;
+    for (int i = 0; i < numSentences; i++) {
+      int length = 5 + random.nextInt(40);
+      sentences.add(DependencyParserTest.randomSentence(words, tags, length, random));
+      numTokens += length;
+    }
+    System.out.printf("%d sentences, %d tokens%n", numSentences, numTokens);
+
+    long oneNanos = 0;
+    long allNanos = 0;
+    int differences = 0;
+    for (int iter = 0; iter <= ITERATIONS; iter++) {  // the first is a warm up
+      long start = System.nanoTime();
+      List<GrammaticalStructure> one = new ArrayList<>();
+      for (CoreMap sentence : sentences) {
+        one.add(parser.predict(sentence));
+      }
+      long oneTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      List<GrammaticalStructure> all = parser.predictAll(sentences);
+      long allTime = System.nanoTime() - start;
+
+      if (iter > 0) {
+        oneNanos += oneTime;
+        allNanos += allTime;
+      }
+      for (int i = 0; i < numSentences; i++) {
+        if ( ! one.get(i).typedDependencies().equals(all.get(i).typedDependencies())) {
+          differences++;
+        }
+      }
+    }
+
+    System.out.printf("one at a time: %.1f sentences/sec%n", ITERATIONS * numSentences / (oneNanos / 1e9));
+    System.out.printf("together:      %.1f sentences/sec%n", ITERATIONS * numSentences / (allNanos / 1e9));
+    System.out.printf("different parses: %d%n", differences);
+  }
+
+}
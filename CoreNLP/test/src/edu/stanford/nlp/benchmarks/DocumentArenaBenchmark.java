@@ -0,0 +1,111 @@
+package edu.stanford.nlp.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import edu.stanford.nlp.coref.data.CorefCluster;
+import edu.stanford.nlp.coref.data.Dictionaries.Animacy;
+import edu.stanford.nlp.coref.data.Dictionaries.Gender;
+import edu.stanford.nlp.coref.data.Dictionaries.MentionType;
+import edu.stanford.nlp.coref.data.Dictionaries.Number;
+import edu.stanford.nlp.coref.data.Document;
+import edu.stanford.nlp.coref.data.DocumentArena;
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+
+/**
+ * Measures the bytes allocated and the time taken to make the clusters of a long story, one per
+ * mention, and merge them as coref would, with new clusters for every document or with clusters
+ * reused through a {@link DocumentArena}.
+ * <br>
+ * Usage: {@code DocumentArenaBenchmark [new|arena|both] [numMentions]}
+ */
+public class DocumentArenaBenchmark {
+
+  private static final int DOCUMENTS = 200;
+  private static final String[] NER = { "O", "PERSON", "LOCATION", "ORGANIZATION", "MISC" };
+
+  private static List<Mention> makeStory(Random random, int numMentions) {
+    List<Mention> mentions = new ArrayList<>();
+    for (int i = 0; i < numMentions; i++) {
+      List<CoreLabel> span = new ArrayList<>();
+      int length = 1 + random.nextInt(4);
+      for (int w = 0; w < length; w++) {
+        CoreLabel word = new CoreLabel();
+        word.set(CoreAnnotations.TextAnnotation.class, "Word" + random.nextInt(2000));
+        span.add(word);
+      }
+      Mention m = new Mention(i, 3 * i, 3 * i + length, span, null, null, span);
+      m.sentNum = i / 4;
+      m.headIndex = m.startIndex + length - 1;
+      m.headString = span.get(length - 1).word().toLowerCase();
+      m.mentionType = random.nextInt(3) == 0 ? MentionType.PRONOMINAL :
+          random.nextBoolean() ? MentionType.PROPER : MentionType.NOMINAL;
+      m.number = random.nextBoolean() ? Number.SINGULAR : Number.PLURAL;
+      m.gender = Gender.values()[random.nextInt(Gender.values().length)];
+      m.animacy = random.nextBoolean() ? Animacy.ANIMATE : Animacy.INANIMATE;
+      m.nerString = NER[random.nextInt(NER.length)];
+      mentions.add(m);
+    }
+    return mentions;
+  }
+
+  /** Clusters the story once, linking about half of the mentions to an earlier one */
+  private static int clusterStory(List<Mention> mentions, DocumentArena arena, Random random) {
+    Document document = new Document();
+    document.arena = arena;
+    for (Mention m : mentions) {
+      document.corefClusters.put(m.mentionID, arena != null ? arena.singletonCluster(document, m.mentionID, m) :
+          new CorefCluster(m.mentionID, new HashSet<>(Collections.singletonList(m))));
+      m.corefClusterID = m.mentionID;
+    }
+    for (int i = 1; i < mentions.size(); i++) {
+      if (random.nextBoolean()) {
+        Mention antecedent = mentions.get(Math.max(0, i - 1 - random.nextInt(30)));
+        Mention m = mentions.get(i);
+        if (antecedent.corefClusterID != m.corefClusterID) {
+          CorefCluster.mergeClusters(document.corefClusters.get(antecedent.corefClusterID),
+              document.corefClusters.remove(m.corefClusterID));
+        }
+      }
+    }
+    int numClusters = document.corefClusters.size();
+    if (arena != null) {
+      arena.release(document);
+    }
+    return numClusters;
+  }
+
+  private static void run(String name, List<Mention> mentions, DocumentArena arena) {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    Random random = new Random(1);
+    for (int i = 0; i < DOCUMENTS / 4; i++) {  // warm up
+      clusterStory(mentions, arena, random);
+    }
+    long bytes = threads.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    long numClusters = 0;
+    for (int i = 0; i < DOCUMENTS; i++) {
+      numClusters += clusterStory(mentions, arena, random);
+    }
+    long nanos = System.nanoTime() - start;
+    bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+    System.out.printf("%-6s %8.1f KB allocated/document  %6.2f ms/document  (%d clusters)%n", name,
+        bytes / 1024.0 / DOCUMENTS, nanos / 1e6 / DOCUMENTS, numClusters / DOCUMENTS);
+  }
+
+  public static void main(String[] args) {
+    String mode = args.length > 0 ? args[0] : "both";
+    int numMentions = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+    List<Mention> mentions = makeStory(new Random(42), numMentions);
+    if ( ! mode.equals("arena")) {
+      run("new", mentions, null);
+    }
+    if ( ! mode.equals("new")) {
+      run("arena", mentions, new DocumentArena());
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+package edu.stanford.nlp.benchmarks;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.ling.Word;
+import edu.stanford.nlp.tagger.maxent.DynamicFeatureTableTest;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import edu.stanford.nlp.util.StringUtils;
+
+/**
+ * Reports the tagging speed of a tagger, in tokens per second, looking up each dynamic feature
+ * as a String against taking its weights from the {@code DynamicFeatureTable}, first in one
+ * thread and then, like {@code TestThreadedTagger}, with several threads sharing the tagger.
+ * It also checks that every way gives the same tags.
+ * <br>
+ * The test file has a sentence on each line, of tokens separated by spaces;
+ * anything after the tagger's tag separator in a token is ignored.
+ * <br>
+ * Usage: {@code MaxentTaggerBenchmark -model tagger -testFile file [-numThreads 4]}
+ */
+public class MaxentTaggerBenchmark {
+
+  private static final int ITERATIONS = 5;
+
+  public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+    Properties props = StringUtils.argsToProperties(args);
+    MaxentTagger tagger = new MaxentTagger(props.getProperty("model"));
+    int numThreads = Integer.parseInt(props.getProperty("numThreads", "4"));
+    String tagSeparator = DynamicFeatureTableTest.tagSeparator(tagger);
+
+    List<List<HasWord>> sentences = new ArrayList<>();
+    int numTokens = 0;
+    for (String line : IOUtils.readLines(props.getProperty("testFile"))) {
+      List<HasWord> sentence = new ArrayList<>();
+      for (String token : line.trim().split("\\s+")) {
+        if ( ! token.isEmpty()) {
+          int separator = token.lastIndexOf(tagSeparator);
+          sentence.add(new Word(separator > 0 ? token.substring(0, separator) : token));
+        }
+      }
+      if ( ! sentence.isEmpty()) {
+        sentences.add(sentence);
+        numTokens += sentence.size();
+      }
+    }
+    System.out.printf("%d sentences, %d tokens%n", sentences.size(), numTokens);
+
+    List<List<TaggedWord>> expected = DynamicFeatureTableTest.tagAll(tagger, sentences, false);
+    int differences = 0;
+    long stringNanos = 0;
+    long tableNanos = 0;
+    for (int iter = 0; iter <= ITERATIONS; iter++) {  // the first is a warm up
+      long start = System.nanoTime();
+      List<List<TaggedWord>> strings = DynamicFeatureTableTest.tagAll(tagger, sentences, false);
+      long stringTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      List<List<TaggedWord>> table = DynamicFeatureTableTest.tagAll(tagger, sentences, true);
+      long tableTime = System.nanoTime() - start;
+
+      if (iter > 0) {
+        stringNanos += stringTime;
+        tableNanos += tableTime;
+      }
+      differences += strings.equals(expected) ? 0 : 1;
+      differences += table.equals(expected) ? 0 : 1;
+    }
+    System.out.printf("1 thread, looking up each feature: %.0f tokens/sec%n", ITERATIONS * numTokens / (stringNanos / 1e9));
+    System.out.printf("1 thread, with the feature table:  %.0f tokens/sec%n", ITERATIONS * numTokens / (tableNanos / 1e9));
+
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    long threadedNanos = 0;
+    for (int iter = 0; iter <= ITERATIONS; iter++) {
+      List<Future<List<List<TaggedWord>>>> results = new ArrayList<>();
+      long start = System.nanoTime();
+      for (int t = 0; t < numThreads; t++) {
+        results.add(pool.submit(() -> DynamicFeatureTableTest.tagAll(tagger, sentences, true)));
+      }
+      for (Future<List<List<TaggedWord>>> result : results) {
+        differences += result.get().equals(expected) ? 0 : 1;
+      }
+      if (iter > 0) {
+        threadedNanos += System.nanoTime() - start;
+      }
+    }
+    pool.shutdown();
+    System.out.printf("%d threads, with the feature table: %.0f tokens/sec%n", numThreads,
+        ITERATIONS * numThreads * numTokens / (threadedNanos / 1e9));
+    System.out.printf("runs with different tags: %d%n", differences);
+  }
+
+}
@@ -0,0 +1,91 @@
+package edu.stanford.nlp.benchmarks;
+
+import java.util.*;
+
+import edu.stanford.nlp.ie.NERFeatureCompiler;
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.StringUtils;
+
+/**
+ * Reports the speed of a CRF NER classifier, in tokens per second, building the String
+ * features of each document against taking the feature indices from a {@link NERFeatureCompiler},
+ * both for the features alone and for classifying. It also checks that both ways give the same
+ * features and answers.
+ * <br>
+ * The test file is read with the classifier's own reader, so for most models it has a token
+ * on each line, with the word in the first column and documents separated by blank lines.
+ * <br>
+ * Usage: {@code NERFeatureBenchmark -loadClassifier model.ser.gz -testFile file}
+ */
+public class NERFeatureBenchmark {
+
+  private static final int ITERATIONS = 5;
+
+  private static List<String> classifyAll(CRFClassifier<CoreLabel> crf, List<List<CoreLabel>> documents) {
+    List<String> answers = new ArrayList<>();
+    for (List<CoreLabel> document : documents) {
+      for (CoreLabel token : crf.classify(document)) {
+        answers.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+      }
+    }
+    return answers;
+  }
+
+  private static List<int[][][]> featuresAll(CRFClassifier<CoreLabel> crf, List<List<CoreLabel>> documents) {
+    List<int[][][]> features = new ArrayList<>();
+    for (List<CoreLabel> document : documents) {
+      features.add(crf.documentToTestDataAndLabels(document).first());
+    }
+    return features;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Properties props = StringUtils.argsToProperties(args);
+    CRFClassifier<CoreLabel> crf = CRFClassifier.getClassifier(props.getProperty("loadClassifier"));
+    List<List<CoreLabel>> documents = new ArrayList<>();
+    int numTokens = 0;
+    for (List<CoreLabel> document : crf.makeObjectBankFromFile(props.getProperty("testFile"), crf.makeReaderAndWriter())) {
+      documents.add(document);
+      numTokens += document.size();
+    }
+    System.out.printf("%d documents, %d tokens%n", documents.size(), numTokens);
+
+    crf.flags.noCompiledFeatures = true;
+    List<int[][][]> expectedFeatures = featuresAll(crf, documents);
+    List<String> expected = classifyAll(crf, documents);
+    int differences = 0;
+    long[] featureNanos = new long[2];
+    long[] classifyNanos = new long[2];
+    for (int iter = 0; iter <= ITERATIONS; iter++) {  // the first is a warm up
+      for (int compiled = 0; compiled < 2; compiled++) {
+        crf.flags.noCompiledFeatures = compiled == 0;
+        long start = System.nanoTime();
+        List<int[][][]> features = featuresAll(crf, documents);
+        long featureTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        List<String> answers = classifyAll(crf, documents);
+        long classifyTime = System.nanoTime() - start;
+        if (iter > 0) {
+          featureNanos[compiled] += featureTime;
+          classifyNanos[compiled] += classifyTime;
+        }
+        for (int i = 0; i < documents.size(); i++) {
+          if ( ! Arrays.deepEquals(expectedFeatures.get(i), features.get(i))) {
+            differences++;
+          }
+        }
+        differences += answers.equals(expected) ? 0 : 1;
+      }
+    }
+    crf.flags.noCompiledFeatures = false;
+
+    System.out.printf("String features:   %.0f tokens/sec, classifying %.0f tokens/sec%n",
+        ITERATIONS * numTokens / (featureNanos[0] / 1e9), ITERATIONS * numTokens / (classifyNanos[0] / 1e9));
+    System.out.printf("compiled features: %.0f tokens/sec, classifying %.0f tokens/sec%n",
+        ITERATIONS * numTokens / (featureNanos[1] / 1e9), ITERATIONS * numTokens / (classifyNanos[1] / 1e9));
+    System.out.printf("different features or answers: %d%n", differences);
+  }
+
+}
@@ -0,0 +1,103 @@
+package edu.stanford.nlp.benchmarks;
+
+import java.util.*;
+
+import edu.stanford.nlp.coref.hybrid.rf.CompiledForest;
+import edu.stanford.nlp.coref.hybrid.rf.DecisionTree;
+import edu.stanford.nlp.coref.hybrid.rf.DecisionTreeNode;
+import edu.stanford.nlp.coref.hybrid.rf.RandomForest;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Compares scoring the candidate antecedents of many mentions as RFSieve used to, one
+ * {@link RandomForest#probabilityOfTrue} per candidate, against one {@link CompiledForest} call per
+ * mention. The forest and the features are random, with about as many trees, features and
+ * candidates as the hybrid coref models use.
+ * <br>
+ * Usage: {@code RandomForestBenchmark [numTrees] [numMentions] [candidatesPerMention]}
+ */
+public class RandomForestBenchmark {
+
+  private static final int ITERATIONS = 10;
+  private static final int NUM_FEATURES = 300;
+  private static final int FEATURES_PER_DATUM = 120;
+
+  private static DecisionTreeNode randomNode(Random random, int depth) {
+    if (depth == 0 || (depth < 12 && random.nextInt(6) == 0)) {
+      return new DecisionTreeNode(random.nextInt(2), random.nextFloat());
+    }
+    return new DecisionTreeNode(random.nextInt(NUM_FEATURES), random.nextFloat(), new DecisionTreeNode[] {
+        randomNode(random, depth - 1), randomNode(random, depth - 1)});
+  }
+
+  public static void main(String[] args) {
+    int numTrees = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int numMentions = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int candidates = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+    Random random = new Random(42);
+
+    Index<String> featureIndex = new HashIndex<>();
+    for (int i = 0; i < NUM_FEATURES; i++) {
+      featureIndex.add("FEATURE-" + i);
+    }
+    RandomForest forest = new RandomForest(featureIndex, numTrees);
+    for (int t = 0; t < numTrees; t++) {
+      forest.trees[t] = new DecisionTree(featureIndex);
+      forest.trees[t].root = randomNode(random, 16);
+    }
+
+    List<List<Counter<String>>> mentions = new ArrayList<>();
+    for (int m = 0; m < numMentions; m++) {
+      List<Counter<String>> data = new ArrayList<>();
+      for (int c = 0; c < candidates; c++) {
+        Counter<String> datum = new ClassicCounter<>();
+        for (int f = 0; f < FEATURES_PER_DATUM; f++) {
+          datum.setCount("FEATURE-" + random.nextInt(NUM_FEATURES), random.nextFloat());
+        }
+        data.add(datum);
+      }
+      mentions.add(data);
+    }
+
+    long start = System.nanoTime();
+    CompiledForest compiled = forest.compiled();
+    System.out.printf("compiled %d trees in %.1f ms%n", numTrees, (System.nanoTime() - start) / 1e6);
+
+    double maxDifference = 0;
+    double checksum = 0;
+    long forestNanos = 0;
+    long compiledNanos = 0;
+    for (int iter = 0; iter <= ITERATIONS; iter++) {  // the first is a warm up
+      double[][] expected = new double[numMentions][];
+      start = System.nanoTime();
+      for (int m = 0; m < numMentions; m++) {
+        List<Counter<String>> data = mentions.get(m);
+        expected[m] = new double[data.size()];
+        for (int c = 0; c < data.size(); c++) {
+          expected[m][c] = forest.probabilityOfTrue(data.get(c));
+        }
+      }
+      long middle = System.nanoTime();
+      for (int m = 0; m < numMentions; m++) {
+        double[] probs = compiled.probabilityOfTrue(mentions.get(m));
+        for (int c = 0; c < probs.length; c++) {
+          maxDifference = Math.max(maxDifference, Math.abs(probs[c] - expected[m][c]));
+          checksum += probs[c];
+        }
+      }
+      long end = System.nanoTime();
+      if (iter > 0) {
+        forestNanos += middle - start;
+        compiledNanos += end - middle;
+      }
+    }
+
+    System.out.printf("RandomForest:   %.1f ms/iteration%n", forestNanos / 1e6 / ITERATIONS);
+    System.out.printf("CompiledForest: %.1f ms/iteration%n", compiledNanos / 1e6 / ITERATIONS);
+    System.out.println("largest difference in probabilities: " + maxDifference + " (checksum " + checksum + ")");
+  }
+
+}
@@ -0,0 +1,131 @@
+package edu.stanford.nlp.benchmarks;
+
+import java.util.*;
+
+import edu.stanford.nlp.coref.data.Dictionaries.MentionType;
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.coref.statistical.*;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Compares scoring the mention pairs of a long document with {@link PairwiseModel#predict},
+ * which builds every conjoined feature as a string, against a {@link PairwiseScorer}, for the three
+ * models that {@link ClusteringCorefAlgorithm} runs.
+ * The document is synthetic, with about as many features per mention and per pair as
+ * {@link FeatureExtractor} makes, and the models have a weight for most features.
+ * <br>
+ * Usage: {@code StatisticalCorefScoringBenchmark [numMentions] [maxMentionDistance]}
+ */
+public class StatisticalCorefScoringBenchmark {
+
+  private static final int ITERATIONS = 5;
+  private static final String[] PRONOUNS = { "he", "she", "it", "they", "him", "her", "his", "them", "i", "you" };
+  private static final String[] NE_TYPES = { "PERSON", "ORGANIZATION", "LOCATION", "MISC", "O" };
+
+  private static Counter<String> mentionFeatures(Mention m, Random random) {
+    Counter<String> features = new ClassicCounter<>();
+    if (m.mentionType == MentionType.PRONOMINAL) {
+      features.incrementCount("head-word=" + PRONOUNS[random.nextInt(PRONOUNS.length)]);
+    } else {
+      features.incrementCount("head-word=w" + random.nextInt(2000));
+    }
+    features.incrementCount("head-ne-type=" + NE_TYPES[random.nextInt(NE_TYPES.length)]);
+    features.incrementCount("first-word=w" + random.nextInt(2000));
+    features.incrementCount("last-word=w" + random.nextInt(2000));
+    features.incrementCount("parent-word=w" + random.nextInt(2000));
+    for (int i = 0; i < 35; i++) {
+      features.incrementCount("template" + i + "=" + random.nextInt(8), random.nextBoolean() ? 1.0 : random.nextDouble());
+    }
+    return features;
+  }
+
+  private static Counter<String> pairFeatures(int distance, Random random) {
+    Counter<String> features = new ClassicCounter<>();
+    features.incrementCount("bias");
+    features.incrementCount("mention-distance=" + Math.min(distance, 20));
+    features.incrementCount("head-words=w" + random.nextInt(500) + "_w" + random.nextInt(500));
+    for (int i = 0; i < 25; i++) {
+      features.incrementCount("pair-template" + i + "=" + random.nextInt(4), random.nextBoolean() ? 1.0 : random.nextDouble());
+    }
+    return features;
+  }
+
+  public static void main(String[] args) {
+    int numMentions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int maxDistance = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+    Random random = new Random(42);
+
+    Compressor<String> compressor = new Compressor<>();
+    Map<Integer, CompressedFeatureVector> mentionFeatures = new HashMap<>();
+    List<Mention> mentions = new ArrayList<>();
+    MentionType[] types = MentionType.values();
+    for (int i = 0; i < numMentions; i++) {
+      Mention m = new Mention();
+      m.mentionID = i;
+      m.mentionType = types[random.nextInt(types.length)];
+      mentions.add(m);
+      mentionFeatures.put(i, compressor.compress(mentionFeatures(m, random)));
+    }
+    List<Example> examples = new ArrayList<>();
+    for (int j = 0; j < numMentions; j++) {
+      for (int i = Math.max(0, j - maxDistance); i < j; i++) {
+        examples.add(new Example(0, mentions.get(i), mentions.get(j), 0.0,
+            compressor.compress(pairFeatures(j - i, random))));
+      }
+    }
+    System.out.println(numMentions + " mentions, " + examples.size() + " mention pairs");
+
+    MetaFeatureExtractor pairMeta = MetaFeatureExtractor.newBuilder().build();
+    MetaFeatureExtractor anaphoricityMeta = MetaFeatureExtractor.anaphoricityMFE();
+    PairwiseModel classification = PairwiseModel.newBuilder("classification", pairMeta).build();
+    PairwiseModel ranking = PairwiseModel.newBuilder("ranking", pairMeta).build();
+    PairwiseModel anaphoricity = PairwiseModel.newBuilder("anaphoricity", anaphoricityMeta).build();
+    for (int i = 0; i < examples.size(); i += 97) {
+      Example example = examples.get(i);
+      for (String feature : pairMeta.getFeatures(example, mentionFeatures, compressor).keySet()) {
+        classification.getClassifier().setWeight(feature, random.nextGaussian());
+        ranking.getClassifier().setWeight(feature, random.nextGaussian());
+      }
+      for (String feature : anaphoricityMeta.getFeatures(new Example(example, false), mentionFeatures, compressor).keySet()) {
+        anaphoricity.getClassifier().setWeight(feature, random.nextGaussian());
+      }
+    }
+
+    double checksum = 0;
+    double maxDifference = 0;
+    long stringsNanos = 0;
+    long scorerNanos = 0;
+    for (int iter = 0; iter <= ITERATIONS; iter++) {  // the first is a warm up
+      long start = System.nanoTime();
+      double[] expected = new double[examples.size()];
+      for (int i = 0; i < examples.size(); i++) {
+        Example example = examples.get(i);
+        expected[i] = classification.predict(example, mentionFeatures, compressor)
+            + ranking.predict(example, mentionFeatures, compressor)
+            + anaphoricity.predict(new Example(example, false), mentionFeatures, compressor);
+      }
+      long middle = System.nanoTime();
+      PairwiseScorer classificationScorer = classification.scorer(mentionFeatures, compressor);
+      PairwiseScorer rankingScorer = ranking.scorer(mentionFeatures, compressor);
+      PairwiseScorer anaphoricityScorer = anaphoricity.scorer(mentionFeatures, compressor);
+      for (int i = 0; i < examples.size(); i++) {
+        Example example = examples.get(i);
+        double score = classificationScorer.predict(example) + rankingScorer.predict(example)
+            + anaphoricityScorer.predict(new Example(example, false));
+        maxDifference = Math.max(maxDifference, Math.abs(score - expected[i]));
+        checksum += score;
+      }
+      long end = System.nanoTime();
+      if (iter > 0) {
+        stringsNanos += middle - start;
+        scorerNanos += end - middle;
+      }
+    }
+
+    System.out.printf("PairwiseModel.predict: %.1f ms/doc%n", stringsNanos / 1e6 / ITERATIONS);
+    System.out.printf("PairwiseScorer:        %.1f ms/doc%n", scorerNanos / 1e6 / ITERATIONS);
+    System.out.println("largest difference in scores: " + maxDifference + " (checksum " + checksum + ")");
+  }
+
+}
@@ -0,0 +1,115 @@
+package edu.stanford.nlp.coref;
+
+import java.util.*;
+
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.Pair;
+import junit.framework.TestCase;
+
+/**
+ * Test that {@link CandidatePairs} chooses the same candidate antecedents, in the same order, as
+ * the all-pairs enumeration and the list-based heuristic filter it replaces.
+ */
+public class CandidatePairsTest extends TestCase {
+
+  private static final String[] WORDS = { "dog", "cat", "house", "Dog", "man" };
+  private static final String[] TAGS = { "NN", "NNS", "NNP", "NNPS", "DT", "PRP", "VB" };
+
+  private static List<Mention> randomMentions(Random random, int n) {
+    List<Mention> mentions = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      List<CoreLabel> words = new ArrayList<>();
+      int length = 1 + random.nextInt(4);
+      for (int w = 0; w < length; w++) {
+        CoreLabel word = new CoreLabel();
+        word.setWord(WORDS[random.nextInt(WORDS.length)]);
+        word.set(CoreAnnotations.PartOfSpeechAnnotation.class, TAGS[random.nextInt(TAGS.length)]);
+        words.add(word);
+      }
+      // mention ids in a different order than the mentions
+      Mention m = new Mention(1000 - 3 * i, 0, length, words, null, null);
+      m.mentionNum = i;
+      mentions.add(m);
+    }
+    return mentions;
+  }
+
+  /** The candidates as the heuristic filter used to find them */
+  private static Map<Integer, List<Integer>> heuristicFilter(List<Mention> sortedMentions,
+      int maxMentionDistance, int maxMentionDistanceWithStringMatch) {
+    Map<String, List<Mention>> wordToMentions = new HashMap<>();
+    for (Mention m : sortedMentions) {
+      for (String word : CorefUtils.getContentWords(m)) {
+        wordToMentions.computeIfAbsent(word, k -> new ArrayList<>()).add(m);
+      }
+    }
+
+    Map<Integer, List<Integer>> mentionToCandidateAntecedents = new HashMap<>();
+    for (int i = 0; i < sortedMentions.size(); i++) {
+      Mention m = sortedMentions.get(i);
+      List<Integer> candidateAntecedents = new ArrayList<>();
+      for (int j = Math.max(0, i - maxMentionDistance); j < i; j++) {
+        candidateAntecedents.add(sortedMentions.get(j).mentionID);
+      }
+      for (String word : CorefUtils.getContentWords(m)) {
+        for (Mention match : wordToMentions.get(word)) {
+          if (match.mentionNum < m.mentionNum
+              && match.mentionNum >= m.mentionNum - maxMentionDistanceWithStringMatch
+              && !candidateAntecedents.contains(match.mentionID)) {
+            candidateAntecedents.add(match.mentionID);
+          }
+        }
+      }
+      if (!candidateAntecedents.isEmpty()) {
+        mentionToCandidateAntecedents.put(m.mentionID, candidateAntecedents);
+      }
+    }
+    return mentionToCandidateAntecedents;
+  }
+
+  public void testSameAsHeuristicFilter() {
+    Random random = new Random(5);
+    int[][] distances = { {0, 0}, {1, 3}, {5, 20}, {10, 5}, {3, Integer.MAX_VALUE}, {Integer.MAX_VALUE, 0} };
+    for (int trial = 0; trial < 20; trial++) {
+      List<Mention> mentions = randomMentions(random, random.nextInt(60));
+      for (int[] d : distances) {
+        CandidatePairs pairs = CandidatePairs.windowed(mentions, d[0], d[1]);
+        assertEquals(heuristicFilter(mentions, d[0], d[1]), pairs.toCandidateAntecedents());
+        assertEquals(pairs.toCandidateAntecedents(), CorefUtils.heuristicFilter(mentions, d[0], d[1]));
+        for (int m = 0; m < pairs.numMentions(); m++) {
+          for (int pair = pairs.start(m); pair < pairs.end(m); pair++) {
+            assertEquals(m, pairs.anaphor(pair));
+            assertTrue(pairs.antecedent(pair) < m);
+          }
+        }
+      }
+    }
+  }
+
+  public void testAllPairs() {
+    List<Mention> mentions = randomMentions(new Random(6), 25);
+    CandidatePairs pairs = CandidatePairs.all(mentions);
+    List<Pair<Integer, Integer>> expected = new ArrayList<>();
+    for (int i = 0; i < mentions.size(); i++) {
+      for (int j = 0; j < i; j++) {
+        expected.add(new Pair<>(mentions.get(j).mentionID, mentions.get(i).mentionID));
+      }
+    }
+    List<Pair<Integer, Integer>> actual = new ArrayList<>();
+    for (int pair = 0; pair < pairs.size(); pair++) {
+      actual.add(pairs.mentionIds(pair));
+    }
+    assertEquals(expected, actual);
+    assertEquals(expected.size(), pairs.toUnlabeledMap().size());
+    assertFalse(pairs.toUnlabeledMap().containsValue(true));
+  }
+
+  public void testNoMentions() {
+    CandidatePairs pairs = CandidatePairs.windowed(Collections.emptyList(), 50, 500);
+    assertEquals(0, pairs.size());
+    assertTrue(pairs.toCandidateAntecedents().isEmpty());
+  }
+
+}
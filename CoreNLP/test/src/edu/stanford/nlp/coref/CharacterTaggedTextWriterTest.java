@@ -0,0 +1,158 @@
+package edu.stanford.nlp.coref;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Pair;
+
+public class CharacterTaggedTextWriterTest extends TestCase {
+
+  private static final String[] VOCAB = {"Harry", "Potter", "'s", "#", ".", "said", "C#", ".#", "the", "Ron"};
+
+  private static CoreMap sentence(List<String> words, List<int[]> mentionSpans) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (String word : words) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(word);
+      token.setValue(word);
+      tokens.add(token);
+    }
+    Annotation sentence = new Annotation(String.join(" ", words));
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    List<Mention> mentions = new ArrayList<>();
+    for (int[] span : mentionSpans) {
+      Mention m = new Mention();
+      m.startIndex = span[0];
+      m.endIndex = span[1];
+      m.corefClusterID = span[2];
+      m.sentenceWords = tokens;
+      mentions.add(m);
+    }
+    sentence.set(CorefCoreAnnotations.CorefMentionsAnnotation.class, mentions);
+    return sentence;
+  }
+
+  /** The string-based tagging that CorefSystem used before this writer. */
+  private static String reference(List<CoreMap> sentences, Map<Integer, String> idToCharacter, Set<String> characters) {
+    StringBuilder outputBuilder = new StringBuilder();
+    for (CoreMap sentence : sentences) {
+      if (sentence.get(CorefCoreAnnotations.CorefMentionsAnnotation.class).size() == 0) {
+        String text = sentence.get(CoreAnnotations.TextAnnotation.class);
+        if (text.equals("# .")) {
+          outputBuilder.append("\n");
+        } else if (text.endsWith(" # .")) {
+          outputBuilder.append(text, 0, text.lastIndexOf(" # ."));
+          outputBuilder.append("\n");
+        } else {
+          outputBuilder.append(sentence).append(" ");
+        }
+        continue;
+      }
+      ArrayList<String> words = null;
+      ArrayList<Pair<Pair<Integer, Integer>, String>> replacements = new ArrayList<>();
+      for (Mention m : sentence.get(CorefCoreAnnotations.CorefMentionsAnnotation.class)) {
+        if (words == null) {
+          words = new ArrayList<>();
+          for (CoreLabel word : m.sentenceWords) {
+            words.add(word.get(CoreAnnotations.TextAnnotation.class));
+          }
+        }
+        if (idToCharacter.containsKey(m.corefClusterID)) {
+          String character = idToCharacter.get(m.corefClusterID);
+          String processedChar = String.join("_", character.split(" ")).replaceAll("[,\\.\\!\\? \\h']", "")
+              .replaceAll("_+", "_").replaceAll("^_", "").replaceAll("_$", "");
+          if (!character.equals("")) {
+            replacements.add(new Pair<>(new Pair<>(m.startIndex, m.endIndex), processedChar));
+          }
+        }
+      }
+      replacements.sort(Comparator.comparingInt(o -> o.first.first));
+      List<String> replacedWords = new ArrayList<>(words);
+      for (Pair<Pair<Integer, Integer>, String> replacement : replacements) {
+        String beginTag = "<character name=\"" + replacement.second + "\">";
+        String endTag = "</character>";
+        int start = replacement.first.first;
+        int end = replacement.first.second;
+        if (start + 1 == end) {
+          replacedWords.set(start, beginTag + replacedWords.get(start) + endTag);
+        } else {
+          replacedWords.set(start, beginTag + replacedWords.get(start));
+          if (words.get(end - 1).equals("'s")) {
+            replacedWords.set(end - 2, replacedWords.get(end - 2) + endTag);
+          } else {
+            replacedWords.set(end - 1, replacedWords.get(end - 1) + endTag);
+          }
+        }
+        characters.add(replacement.second);
+      }
+      String replacedSentence = String.join(" ", replacedWords) + " ";
+      outputBuilder.append(replacedSentence.replaceAll("# \\.", "\n"));
+    }
+    return outputBuilder.toString();
+  }
+
+  private static String write(CharacterTaggedTextWriter writer, List<CoreMap> sentences,
+                              Map<Integer, String> idToCharacter) throws IOException {
+    StringWriter out = new StringWriter();
+    writer.startDocument(out, idToCharacter);
+    writer.writeSentences(sentences);
+    return out.toString();
+  }
+
+  public void testSimpleSentence() throws IOException {
+    Map<Integer, String> idToCharacter = Collections.singletonMap(1, "Harry Potter");
+    List<CoreMap> sentences = Arrays.asList(
+        sentence(Arrays.asList("Harry", "Potter", "'s", "wand", ".", "#", "."),
+            Collections.singletonList(new int[] {0, 3, 1})),
+        sentence(Arrays.asList("Nothing", "here", "# ."), Collections.emptyList()));
+    CharacterTaggedTextWriter writer = new CharacterTaggedTextWriter();
+    assertEquals("<character name=\"Harry_Potter\">Harry Potter</character> 's wand . \n Nothing here\n",
+        write(writer, sentences, idToCharacter));
+    assertEquals(Collections.singleton("Harry_Potter"), writer.characters());
+  }
+
+  public void testNormalizeName() {
+    assertEquals("Mr_Harry_Potter", CharacterTaggedTextWriter.normalizeName("Mr. Harry  Potter "));
+    assertEquals("Rons", CharacterTaggedTextWriter.normalizeName(" Ron's"));
+  }
+
+  public void testMatchesStringTagging() throws IOException {
+    Random random = new Random(1234);
+    Map<Integer, String> idToCharacter = new HashMap<>();
+    idToCharacter.put(1, "Harry Potter");
+    idToCharacter.put(2, "Mr. Weasley's");
+    idToCharacter.put(3, " C# ");
+    CharacterTaggedTextWriter writer = new CharacterTaggedTextWriter();
+    for (int doc = 0; doc < 200; doc++) {
+      List<CoreMap> sentences = new ArrayList<>();
+      for (int s = 0; s < 5; s++) {
+        List<String> words = new ArrayList<>();
+        int length = 1 + random.nextInt(10);
+        for (int w = 0; w < length; w++) {
+          words.add(VOCAB[random.nextInt(VOCAB.length)]);
+        }
+        List<int[]> spans = new ArrayList<>();
+        int numMentions = random.nextInt(4);
+        for (int i = 0; i < numMentions; i++) {
+          int start = random.nextInt(length);
+          int end = start + 1 + random.nextInt(length - start);
+          spans.add(new int[] {start, end, random.nextInt(5)});
+        }
+        sentences.add(sentence(words, spans));
+      }
+      Set<String> expectedCharacters = new HashSet<>();
+      String expected = reference(sentences, idToCharacter, expectedCharacters);
+      assertEquals(expected, write(writer, sentences, idToCharacter));
+      assertEquals(expectedCharacters, writer.characters());
+    }
+  }
+
+}
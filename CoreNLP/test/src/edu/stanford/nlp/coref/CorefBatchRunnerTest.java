@@ -0,0 +1,175 @@
+package edu.stanford.nlp.coref;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.io.IOUtils;
+
+/**
+ * Tests the bookkeeping of {@link CorefBatchRunner}, with stories that are "annotated" by copying
+ * their text, so that no models are needed.
+ */
+public class CorefBatchRunnerTest extends TestCase {
+
+  private File root;
+  private File textsDir;
+  private File charListsDir;
+  private File outputsDir;
+  private File manifest;
+
+  /** A runner which writes each story's text as its outputs and fails on a story that says FAIL */
+  private class CopyingRunner extends CorefBatchRunner {
+
+    final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+
+    CopyingRunner() {
+      super(null, charListsDir, outputsDir, 2, manifest);
+    }
+
+    @Override
+    int writeCharacterOutput(File textFile, Writer storyWriter, Writer charsWriter) throws IOException {
+      processed.add(textFile.getName());
+      String text = IOUtils.slurpFile(textFile);
+      storyWriter.write(text);
+      if (text.contains("FAIL")) {
+        throw new IOException("could not annotate " + textFile);
+      }
+      charsWriter.write(textFile.getName());
+      return text.split(" ").length;
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    root = Files.createTempDirectory("coref-batch").toFile();
+    textsDir = new File(root, "texts");
+    charListsDir = new File(root, "chars");
+    outputsDir = new File(root, "outputs");
+    charListsDir.mkdirs();
+    outputsDir.mkdirs();
+    manifest = new File(charListsDir, CorefBatchRunner.DEFAULT_MANIFEST_NAME);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(root);
+    super.tearDown();
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private File story(String path, String text) throws IOException {
+    File file = new File(textsDir, path);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private List<String> manifestLines() throws IOException {
+    return manifest.exists() ? Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8) : Collections.emptyList();
+  }
+
+  /** No temporary files are left in a directory */
+  private static void assertNoTemporaryFiles(File dir) {
+    for (String name : dir.list()) {
+      assertFalse(name, name.endsWith(".tmp"));
+    }
+  }
+
+  public void testWritesOutputsAndManifest() throws Exception {
+    story("split1/a.txt", "Harry ran .");
+    story("split1/b.txt", "Ron followed him .");
+    story("split2/c.txt", "They stopped .");
+    List<File> stories = CorefBatchRunner.listStories(textsDir);
+    assertEquals(3, stories.size());
+    new CopyingRunner().run(stories);
+
+    for (String name : new String[] {"a.txt", "b.txt", "c.txt"}) {
+      assertEquals(name, IOUtils.slurpFile(new File(charListsDir, name + ".chars")));
+      assertTrue(new File(outputsDir, name + ".coref.txt").exists());
+    }
+    assertEquals("Ron followed him .", IOUtils.slurpFile(new File(outputsDir, "b.txt.coref.txt")));
+    assertNoTemporaryFiles(charListsDir);
+    assertNoTemporaryFiles(outputsDir);
+
+    Set<String> done = new HashSet<>();
+    for (String line : manifestLines()) {
+      String[] fields = line.split("\t");
+      assertEquals("done", fields[0]);
+      done.add(fields[1] + ' ' + fields[2]);
+    }
+    assertEquals(new HashSet<>(Arrays.asList("a.txt 3", "b.txt 4", "c.txt 3")), done);
+  }
+
+  /** Stories in the manifest or with a .chars file are skipped; a line cut short by a kill is not trusted */
+  public void testResume() throws Exception {
+    story("a.txt", "one");
+    story("b.txt", "two");
+    story("c.txt", "three");
+    story("d.txt", "four");
+    Files.write(manifest.toPath(), Arrays.asList("done\ta.txt\t1\t5", "done\td.txt"), StandardCharsets.UTF_8);
+    Files.write(new File(charListsDir, "b.txt.chars").toPath(), Collections.singletonList("b"), StandardCharsets.UTF_8);
+
+    CopyingRunner runner = new CopyingRunner();
+    runner.run(CorefBatchRunner.listStories(textsDir));
+    assertEquals(new HashSet<>(Arrays.asList("c.txt", "d.txt")), new HashSet<>(runner.processed));
+
+    CopyingRunner again = new CopyingRunner();
+    again.run(CorefBatchRunner.listStories(textsDir));
+    assertTrue(again.processed.isEmpty());
+  }
+
+  /** A story that fails part way leaves neither output, and is tried again on the next run */
+  public void testFailureLeavesNoOutputs() throws Exception {
+    String name = "fails" + System.nanoTime() + ".txt";
+    File failing = story(name, "this story will FAIL");
+    File error = new File(name + ".error");
+    try {
+      CopyingRunner runner = new CopyingRunner();
+      runner.run(Collections.singletonList(failing));
+      assertEquals(Collections.singletonList(name), runner.processed);
+      assertFalse(new File(outputsDir, name + ".coref.txt").exists());
+      assertFalse(new File(charListsDir, name + ".chars").exists());
+      assertNoTemporaryFiles(charListsDir);
+      assertNoTemporaryFiles(outputsDir);
+      assertTrue(manifestLines().isEmpty());
+      assertTrue(error.exists());
+
+      CopyingRunner again = new CopyingRunner();
+      again.run(Collections.singletonList(failing));
+      assertEquals(Collections.singletonList(name), again.processed);
+    } finally {
+      error.delete();
+    }
+  }
+
+  /** Two stories of the same name in different splits would write the same outputs */
+  public void testRejectsDuplicateNames() throws Exception {
+    story("split1/a.txt", "one");
+    story("split2/a.txt", "two");
+    CopyingRunner runner = new CopyingRunner();
+    try {
+      runner.run(CorefBatchRunner.listStories(textsDir));
+      fail("ran two stories with the same name");
+    } catch (IllegalArgumentException e) {
+      // as expected
+    }
+    assertTrue(runner.processed.isEmpty());
+  }
+
+}
@@ -0,0 +1,113 @@
+package edu.stanford.nlp.coref;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.coref.data.CharacterNameIndex;
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Tests the paragraph splitting that {@link WindowedStoryCoref} builds its windows from, and how
+ * it carries character names from one window to the next.
+ */
+public class WindowedStoryCorefTest extends TestCase {
+
+  private static String[] paragraphs(String text) {
+    int[] bounds = WindowedStoryCoref.paragraphBounds(text);
+    String[] result = new String[bounds.length - 1];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = text.substring(bounds[i], bounds[i + 1]);
+    }
+    return result;
+  }
+
+  public void testSplitsAfterDelimiter() {
+    String text = "Harry ran . # . Ron followed . # . They stopped . # . ";
+    assertEquals(new String[] {"Harry ran . # .", " Ron followed . # .", " They stopped . # .", " "},
+        paragraphs(text));
+  }
+
+  public void testNoTrailingEmptyParagraph() {
+    String text = "One . # . Two . # .";
+    assertEquals(new String[] {"One . # .", " Two . # ."}, paragraphs(text));
+  }
+
+  public void testNoDelimiter() {
+    assertEquals(new String[] {"Just one paragraph ."}, paragraphs("Just one paragraph ."));
+  }
+
+  public void testParagraphsCoverText() {
+    String text = "A . # . B . # . # . C .";
+    assertEquals(text, String.join("", paragraphs(text)));
+  }
+
+  private static void assertEquals(String[] expected, String[] actual) {
+    assertEquals(java.util.Arrays.asList(expected), java.util.Arrays.asList(actual));
+  }
+
+  /** A sentence of words at the given offsets in the window, with a mention of each given word in the given chain */
+  private static CoreMap sentence(String[] words, int[] offsets, int[] mentionWords, int[] chains) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (int i = 0; i < words.length; i++) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(words[i]);
+      token.set(CoreAnnotations.CharacterOffsetBeginAnnotation.class, offsets[i]);
+      tokens.add(token);
+    }
+    List<Mention> mentions = new ArrayList<>();
+    for (int i = 0; i < mentionWords.length; i++) {
+      Mention m = new Mention();
+      m.sentenceWords = tokens;
+      m.startIndex = mentionWords[i];
+      m.endIndex = mentionWords[i] + 1;
+      m.corefClusterID = chains[i];
+      mentions.add(m);
+    }
+    CoreMap sentence = new Annotation(String.join(" ", words));
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    sentence.set(CorefCoreAnnotations.CorefMentionsAnnotation.class, mentions);
+    return sentence;
+  }
+
+  /** A chain with a mention tagged in the previous window keeps that mention's name */
+  public void testContinueChains() {
+    // "Harry ran . He saw Ron ." starting at story offset 100; chain 5 is Harry, chain 7 is Ron
+    List<CoreMap> sentences = Arrays.asList(
+        sentence(new String[] {"Harry", "ran", "."}, new int[] {0, 6, 10}, new int[] {0}, new int[] {5}),
+        sentence(new String[] {"He", "saw", "Ron", "."}, new int[] {12, 15, 19, 23}, new int[] {0, 2}, new int[] {5, 7}));
+    Map<Integer, String> idToCharacter = new HashMap<>();
+    idToCharacter.put(5, "He");
+    idToCharacter.put(7, "Ron");
+
+    // the previous window called Harry "Harry Potter", and "He" something else, but the first mention wins
+    Map<Integer, String> carried = new HashMap<>();
+    carried.put(100, "Harry Potter");
+    carried.put(112, "Harry");
+    WindowedStoryCoref.continueChains(sentences, idToCharacter, carried, 100);
+    assertEquals("Harry Potter", idToCharacter.get(5));
+    assertEquals("Ron", idToCharacter.get(7));
+
+    // a mention at another story offset is a different one
+    idToCharacter.put(5, "He");
+    WindowedStoryCoref.continueChains(sentences, idToCharacter, Collections.singletonMap(100, "Harry Potter"), 50);
+    assertEquals("He", idToCharacter.get(5));
+  }
+
+  /** A name is merged with a character the story has already seen, whose name wins */
+  public void testMergeWithStory() {
+    CharacterNameIndex storyCharacters = new CharacterNameIndex();
+    assertEquals("Harry Potter", WindowedStoryCoref.mergeWithStory("Harry Potter", storyCharacters));
+    assertEquals("Ron", WindowedStoryCoref.mergeWithStory("Ron", storyCharacters));
+    // a shorter name and a longer one both take the earlier name
+    assertEquals("Harry Potter", WindowedStoryCoref.mergeWithStory("Harry", storyCharacters));
+    assertEquals("Ron", WindowedStoryCoref.mergeWithStory("Ron Weasley", storyCharacters));
+    assertEquals("Hermione", WindowedStoryCoref.mergeWithStory("Hermione", storyCharacters));
+    assertEquals(3, storyCharacters.size());
+  }
+
+}
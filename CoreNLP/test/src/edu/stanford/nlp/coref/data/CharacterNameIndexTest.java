@@ -0,0 +1,77 @@
+package edu.stanford.nlp.coref.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class CharacterNameIndexTest extends TestCase {
+
+  private CharacterNameIndex index;
+
+  @Override
+  protected void setUp() {
+    index = new CharacterNameIndex();
+    index.add("Harry Potter");      // 0
+    index.add("Harry");             // 1
+    index.add("Ron Weasley");       // 2
+    index.add("Ginny Weasley");     // 3
+    index.add("Harry James Potter"); // 4
+  }
+
+  public void testAddIsIdempotentOnParts() {
+    assertEquals(1, index.add("HARRY"));
+    assertEquals(1, index.indexOf("  harry "));
+    assertEquals("Harry", index.get(1));
+    assertEquals(5, index.size());
+    assertEquals(-1, index.add(" "));
+  }
+
+  public void testContaining() {
+    assertEquals(Arrays.asList(0, 1, 4), index.containing("Harry"));
+    assertEquals(Arrays.asList(2, 3), index.containing("weasley"));
+    assertEquals(Arrays.asList(0), index.containing("Harry Potter"));
+    assertEquals(Arrays.asList(4), index.containing("James Potter"));
+    assertEquals(Collections.emptyList(), index.containing("Hermione"));
+  }
+
+  public void testContainingIsTokenLevel() {
+    assertEquals(Collections.emptyList(), index.containing("Ro"));
+    assertEquals(Collections.emptyList(), index.containing("Harry Weasley"));
+  }
+
+  public void testContainedIn() {
+    assertEquals(Arrays.asList(1, 4), index.containedIn("Harry James Potter"));
+    assertEquals(Arrays.asList(0, 1), index.containedIn("Harry Potter"));
+    assertEquals(Arrays.asList(1), index.containedIn("Harry Styles"));
+    assertEquals(Arrays.asList(2), index.containedIn("Mr. Ron Weasley"));
+    assertEquals(Collections.emptyList(), index.containedIn("Ronald"));
+  }
+
+  public void testLength() {
+    assertEquals(2, index.length(0));
+    assertEquals(3, index.length(4));
+  }
+
+  public void testPartsSplitOnWhitespace() {
+    String[] names = { "Harry", "  Harry   Potter ", "Mr.\tRon\n\nWeasley", "\u0001Ron\u0001 X", "HERMIONE  \f granger\r" };
+    for (String name : names) {
+      String trimmed = name.trim();
+      String[] expected = trimmed.split("\\s+");
+      for (int i = 0; i < expected.length; i++) {
+        expected[i] = expected[i].toLowerCase();
+      }
+      assertEquals(Arrays.asList(expected), Arrays.asList(CharacterNameIndex.parts(name)));
+    }
+    assertEquals(0, CharacterNameIndex.parts(" \t ").length);
+  }
+
+  public void testClear() {
+    index.clear();
+    assertEquals(0, index.size());
+    assertEquals(-1, index.indexOf("Harry"));
+    assertEquals(Collections.emptyList(), index.containing("Harry"));
+    assertEquals(0, index.add("Ron"));
+  }
+
+}
@@ -0,0 +1,105 @@
+package edu.stanford.nlp.coref.data;
+
+import java.util.*;
+
+import edu.stanford.nlp.coref.data.Dictionaries.Animacy;
+import edu.stanford.nlp.coref.data.Dictionaries.Gender;
+import edu.stanford.nlp.coref.data.Dictionaries.MentionType;
+import edu.stanford.nlp.coref.data.Dictionaries.Number;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import junit.framework.TestCase;
+
+/**
+ * Test that clusters reused through a {@link DocumentArena} end up the same as new ones.
+ */
+public class DocumentArenaTest extends TestCase {
+
+  private static final String[] WORDS = { "Harry", "Potter", "Ron", "the", "wizard", "he", "Hermione" };
+  private static final String[] NER = { "O", "MISC", "PERSON", "LOCATION" };
+
+  static List<Mention> randomMentions(Random random, int n) {
+    List<Mention> mentions = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      List<CoreLabel> span = new ArrayList<>();
+      int length = 1 + random.nextInt(3);
+      for (int w = 0; w < length; w++) {
+        CoreLabel word = new CoreLabel();
+        word.set(CoreAnnotations.TextAnnotation.class, WORDS[random.nextInt(WORDS.length)]);
+        span.add(word);
+      }
+      Mention m = new Mention(i, 2 * i, 2 * i + length, span, null, null, span);
+      m.sentNum = i / 5;
+      m.headIndex = m.startIndex + random.nextInt(length);
+      m.headString = span.get(m.headIndex - m.startIndex).word().toLowerCase();
+      m.mentionType = MentionType.values()[random.nextInt(MentionType.values().length)];
+      m.number = Number.values()[random.nextInt(Number.values().length)];
+      m.gender = Gender.values()[random.nextInt(Gender.values().length)];
+      m.animacy = Animacy.values()[random.nextInt(Animacy.values().length)];
+      m.nerString = NER[random.nextInt(NER.length)];
+      mentions.add(m);
+    }
+    return mentions;
+  }
+
+  /** Makes a cluster for each mention, either new or from the arena, and merges them at random */
+  private static List<String> cluster(List<Mention> mentions, DocumentArena arena, long seed) {
+    Document document = new Document();
+    document.arena = arena;
+    for (Mention m : mentions) {
+      document.corefClusters.put(m.mentionID, arena != null ? arena.singletonCluster(document, m.mentionID, m) :
+          new CorefCluster(m.mentionID, new HashSet<>(Collections.singletonList(m))));
+      m.corefClusterID = m.mentionID;
+    }
+    Random random = new Random(seed);
+    for (int i = 0; i < mentions.size(); i++) {
+      Mention m1 = mentions.get(random.nextInt(mentions.size()));
+      Mention m2 = mentions.get(random.nextInt(mentions.size()));
+      if (m1.corefClusterID != m2.corefClusterID) {
+        CorefCluster.mergeClusters(document.corefClusters.get(m1.corefClusterID),
+            document.corefClusters.remove(m2.corefClusterID));
+      }
+    }
+
+    List<String> description = new ArrayList<>();
+    for (CorefCluster c : new TreeMap<>(document.corefClusters).values()) {
+      description.add(c.clusterID + " " + new TreeSet<>(c.getCorefMentions().stream().map(m -> m.mentionID)
+          .collect(java.util.stream.Collectors.toSet())) + " " + c.numbers + c.genders + c.animacies
+          + new TreeSet<>(c.nerStrings) + new TreeSet<>(c.heads) + new TreeSet<>(c.words) + " "
+          + c.getFirstMention().mentionID + " " + c.getRepresentativeMention().mentionID + " "
+          + c.character + " " + c.gender);
+    }
+    if (arena != null) {
+      arena.release(document);
+      assertTrue(document.corefClusters.isEmpty());
+    }
+    return description;
+  }
+
+  public void testSameClusters() {
+    Random random = new Random(7);
+    DocumentArena arena = new DocumentArena();
+    int largest = 0;
+    for (int doc = 0; doc < 20; doc++) {
+      List<Mention> mentions = randomMentions(random, 1 + random.nextInt(40));
+      long seed = random.nextLong();
+      List<String> expected = cluster(mentions, null, seed);
+      assertEquals(expected, cluster(mentions, arena, seed));
+      // the arena holds as many clusters as the largest document needed
+      largest = Math.max(largest, mentions.size());
+      assertEquals(largest, arena.numFree());
+    }
+  }
+
+  public void testReleaseOtherArena() {
+    Document document = new Document();
+    document.arena = new DocumentArena();
+    try {
+      new DocumentArena().release(document);
+      fail("released a document to the wrong arena");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+package edu.stanford.nlp.coref.data;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test that {@link StringIdSet} behaves as a {@link HashSet} of strings.
+ */
+public class StringIdSetTest extends TestCase {
+
+  private static final String[] STRINGS = { "O", "MISC", "PERSON", "harry", "potter", "ron", "the", "wand", null };
+
+  private static String randomString(Random random) {
+    return random.nextInt(4) == 0 ? "word" + random.nextInt(50) : STRINGS[random.nextInt(STRINGS.length)];
+  }
+
+  public void testRandomOperations() {
+    Random random = new Random(11);
+    for (int trial = 0; trial < 200; trial++) {
+      // sets of one table are merged and compared by id, and of different tables by string
+      StringIdSet.Ids ids = new StringIdSet.Ids();
+      Set<String> expected = new HashSet<>();
+      Set<String> actual = new StringIdSet(ids);
+      Set<String> otherExpected = new HashSet<>();
+      Set<String> other = trial % 2 == 0 ? new StringIdSet(ids) : new StringIdSet();
+      for (int op = 0; op < 60; op++) {
+        String s = randomString(random);
+        switch (random.nextInt(7)) {
+          case 0:
+          case 1:
+            assertEquals(expected.add(s), actual.add(s));
+            break;
+          case 2:
+            assertEquals(expected.remove(s), actual.remove(s));
+            break;
+          case 3:
+            otherExpected.add(s);
+            other.add(s);
+            break;
+          case 4:
+            assertEquals(expected.addAll(otherExpected), actual.addAll(other));
+            break;
+          case 5:
+            assertEquals(expected.containsAll(otherExpected), actual.containsAll(other));
+            assertEquals(otherExpected.containsAll(expected), other.containsAll(actual));
+            break;
+          default:
+            assertEquals(expected.contains(s), actual.contains(s));
+        }
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+      }
+    }
+  }
+
+  public void testRemoveWhileIterating() {
+    Set<String> set = new StringIdSet();
+    set.addAll(Arrays.asList(STRINGS));
+    for (Iterator<String> it = set.iterator(); it.hasNext(); ) {
+      String s = it.next();
+      if (s == null || s.length() > 3) {
+        it.remove();
+      }
+    }
+    assertEquals(new HashSet<>(Arrays.asList("O", "ron", "the")), set);
+
+    set.removeAll(new HashSet<>(Arrays.asList("O", "MISC")));
+    assertEquals(new HashSet<>(Arrays.asList("ron", "the")), set);
+  }
+
+  public void testClear() {
+    Set<String> set = new StringIdSet();
+    set.addAll(Arrays.asList("a", "b", null));
+    set.clear();
+    assertTrue(set.isEmpty());
+    assertFalse(set.contains("a"));
+    assertFalse(set.contains(null));
+    set.add("c");
+    assertEquals(Collections.singleton("c"), set);
+  }
+
+  public void testSerialization() throws Exception {
+    Set<String> set = new StringIdSet();
+    set.addAll(Arrays.asList(STRINGS));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(set);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      @SuppressWarnings("unchecked")
+      Set<String> read = (Set<String>) in.readObject();
+      assertEquals(set, read);
+    }
+  }
+
+  /** Each table holds only the strings of its own sets, so it goes away with them */
+  public void testIdsPerTable() {
+    StringIdSet.Ids first = new StringIdSet.Ids();
+    StringIdSet.Ids second = new StringIdSet.Ids();
+    new StringIdSet(first).addAll(Arrays.asList("harry", "potter", "ron"));
+    StringIdSet set = new StringIdSet(second);
+    set.add("wand");
+    assertEquals(3, first.size());
+    assertEquals(1, second.size());
+    assertEquals(0, second.existingId("wand"));
+    assertEquals(-1, second.existingId("harry"));
+
+    // a cleared set can move to another table, but a set with strings cannot
+    try {
+      set.setIds(first);
+      fail("moved a set of strings to another table");
+    } catch (IllegalStateException e) {
+      // as expected
+    }
+    set.clear();
+    set.setIds(first);
+    set.add("ron");
+    assertEquals(3, first.size());
+    assertEquals(Collections.singleton("ron"), set);
+  }
+
+}
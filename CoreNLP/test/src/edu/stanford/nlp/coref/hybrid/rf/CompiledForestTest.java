@@ -0,0 +1,79 @@
+package edu.stanford.nlp.coref.hybrid.rf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import junit.framework.TestCase;
+
+/**
+ * Test that {@link CompiledForest} scores data exactly as {@link RandomForest} does.
+ */
+public class CompiledForestTest extends TestCase {
+
+  private static DecisionTreeNode randomNode(Random random, int depth, int numFeatures) {
+    if (depth == 0 || random.nextInt(5) == 0) {
+      return new DecisionTreeNode(random.nextInt(2), random.nextFloat());
+    }
+    return new DecisionTreeNode(random.nextInt(numFeatures), random.nextFloat(), new DecisionTreeNode[] {
+        randomNode(random, depth - 1, numFeatures), randomNode(random, depth - 1, numFeatures)});
+  }
+
+  private static RandomForest randomForest(Random random, int numTrees, int numFeatures) {
+    Index<String> featureIndex = new HashIndex<>();
+    for (int i = 0; i < numFeatures; i++) {
+      featureIndex.add("FEATURE-" + i);
+    }
+    RandomForest forest = new RandomForest(featureIndex, numTrees);
+    for (int t = 0; t < numTrees; t++) {
+      forest.trees[t] = new DecisionTree(featureIndex);
+      forest.trees[t].root = randomNode(random, 10, numFeatures);
+    }
+    return forest;
+  }
+
+  private static Counter<String> randomDatum(Random random, int numFeatures) {
+    Counter<String> datum = new ClassicCounter<>();
+    for (int i = 0; i < numFeatures; i++) {
+      if (random.nextBoolean()) {
+        datum.setCount("FEATURE-" + i, random.nextBoolean() ? random.nextFloat() : random.nextInt(3));
+      }
+    }
+    datum.setCount("UNUSED", 1.0);
+    return datum;
+  }
+
+  public void testSameProbabilities() {
+    Random random = new Random(42);
+    RandomForest forest = randomForest(random, 30, 40);
+    CompiledForest compiled = forest.compiled();
+    assertSame(compiled, forest.compiled());
+    assertTrue(compiled.numFeatures() <= 40);
+
+    List<Counter<String>> data = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      data.add(randomDatum(random, 40));
+    }
+    double[] batch = compiled.probabilityOfTrue(data);
+    assertEquals(data.size(), batch.length);
+    for (int i = 0; i < data.size(); i++) {
+      double expected = forest.probabilityOfTrue(data.get(i));
+      assertEquals(expected, compiled.probabilityOfTrue(data.get(i)), 0.0);
+      assertEquals(expected, batch[i], 0.0);
+    }
+  }
+
+  public void testSingleLeaf() {
+    Index<String> featureIndex = new HashIndex<>();
+    RandomForest forest = new RandomForest(featureIndex, 1);
+    forest.trees[0] = new DecisionTree(featureIndex);
+    forest.trees[0].root = new DecisionTreeNode(1, 0.75f);
+    assertEquals(0, forest.compiled().numFeatures());
+    assertEquals(0.75, forest.compiled().probabilityOfTrue(new ClassicCounter<>()), 0.0);
+  }
+
+}
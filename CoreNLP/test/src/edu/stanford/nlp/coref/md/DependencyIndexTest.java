@@ -0,0 +1,111 @@
+package edu.stanford.nlp.coref.md;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphUtils;
+import edu.stanford.nlp.trees.UniversalEnglishGrammaticalRelations;
+import edu.stanford.nlp.util.Pair;
+
+public class DependencyIndexTest extends TestCase {
+
+  // words are numbered from 1 in sentence order
+  private static final String[] GRAPHS = {
+    "[ate/VBD-2 nsubj>Bill/NNP-1 dobj>[muffins/NNS-5 compound>blueberry/NN-4 det>the/DT-3]]",
+    "[person/NN-4 nsubj>you/PRP-1 cop>are/VBP-2 det>the/DT-3 punct>./.-5]",
+    "[loved/VBD-2 nsubj>Hughes/NNP-1 dobj>[wife/NN-4 nmod:poss>his/PRP$-3 appos>Gracia/NNP-5] conj>[obsessed/JJ-8 cop>was/VBD-6 advmod>absolutely/RB-7 nmod>[Elicia/NN-12 nmod:poss>his/PRP$-9 amod>little/JJ-10 compound>daughter/NN-11]]]",
+    "[saw/VBD-3 nsubj>[you/PRP-1 det>all/DT-2] dobj>[cats/NNS-4 conj>birds/NNS-7 cc>and/CC-6 conj>dogs/NNS-5]]",
+  };
+
+  /** Every answer the index gives is the one the graph gives */
+  public void testSameAsGraph() {
+    for (String s : GRAPHS) {
+      SemanticGraph graph = SemanticGraph.valueOf(s);
+      DependencyIndex index = new DependencyIndex(graph, graph.size());
+      assertEquals(graph.size(), index.numVertices());
+      int v = 0;
+      for (IndexedWord word : graph.vertexSet()) {
+        int i = word.index() - 1;
+        assertEquals(i, index.vertex(v++));
+        assertTrue(index.contains(i));
+        assertEquals(word.tag(), index.tag(i));
+
+        IndexedWord parent = graph.getParent(word);
+        assertEquals(parent == null ? -1 : parent.index() - 1, index.parent(i));
+        assertEquals(parent == null ? null : graph.getEdge(parent, word).getRelation().getShortName(),
+            index.parentRelation(i));
+
+        List<IndexedWord> children = graph.getChildList(word);
+        assertEquals(children.size(), index.childEnd(i) - index.childStart(i));
+        for (int k = 0; k < children.size(); k++) {
+          IndexedWord child = children.get(k);
+          assertEquals(child.index() - 1, index.child(index.childStart(i) + k));
+          assertEquals(graph.getEdge(word, child).getRelation().getShortName(),
+              index.childRelation(index.childStart(i) + k));
+          assertTrue(index.hasEdge(i, child.index() - 1));
+          assertFalse(index.hasEdge(child.index() - 1, i));
+        }
+
+        IndexedWord cop = graph.getChildWithReln(word, UniversalEnglishGrammaticalRelations.COPULA);
+        assertEquals(cop == null ? -1 : cop.index() - 1, index.copula(i));
+        int firstConjunct = -1;
+        for (IndexedWord c : graph.getChildrenWithReln(word, UniversalEnglishGrammaticalRelations.CONJUNCT)) {
+          if (firstConjunct < 0 || c.index() - 1 < firstConjunct) {
+            firstConjunct = c.index() - 1;
+          }
+        }
+        assertEquals(firstConjunct, index.firstConjunct(i));
+
+        Pair<IndexedWord, IndexedWord> leftRight = SemanticGraphUtils.leftRightMostChildVertices(word, graph);
+        assertEquals(leftRight.first.index() - 1, index.leftmost(i));
+        assertEquals(leftRight.second.index() - 1, index.rightmost(i));
+      }
+    }
+  }
+
+  public void testCopulaAndConjuncts() {
+    SemanticGraph graph = SemanticGraph.valueOf(GRAPHS[1]);
+    DependencyIndex index = new DependencyIndex(graph, graph.size());
+    int person = graph.getFirstRoot().index() - 1;
+    assertTrue(index.copula(person) >= 0);
+    assertEquals("are", graph.getNodeByIndex(index.copula(person) + 1).word());
+
+    graph = SemanticGraph.valueOf(GRAPHS[3]);
+    index = new DependencyIndex(graph, graph.size());
+    int cats = graph.getNodeByWordPattern("cats").index() - 1;
+    assertEquals("dogs", graph.getNodeByIndex(index.firstConjunct(cats) + 1).word());
+  }
+
+  /** Positions past the graph's words, such as punctuation left out of it, are not in the index */
+  public void testMissingWords() {
+    SemanticGraph graph = SemanticGraph.valueOf(GRAPHS[0]);
+    DependencyIndex index = new DependencyIndex(graph, graph.size() + 2);
+    assertEquals(graph.size() + 2, index.size());
+    assertFalse(index.contains(graph.size()));
+    assertFalse(index.contains(-1));
+    assertFalse(index.contains(graph.size() + 2));
+    assertEquals(-1, index.parent(graph.size()));
+    assertEquals(0, index.childEnd(graph.size()) - index.childStart(graph.size()));
+    assertFalse(index.hasEdge(graph.size(), 0));
+  }
+
+  /** A copy of a word, as for an elided verb, shares its position and is counted once */
+  public void testCopiedWord() {
+    SemanticGraph graph = SemanticGraph.valueOf(GRAPHS[0]);
+    IndexedWord ate = graph.getFirstRoot();
+    IndexedWord copy = ate.makeSoftCopy(1);
+    graph.addVertex(copy);
+    graph.addEdge(ate, copy, UniversalEnglishGrammaticalRelations.CONJUNCT, Double.NEGATIVE_INFINITY, false);
+    DependencyIndex index = new DependencyIndex(graph, graph.size());
+    assertEquals(graph.size() - 1, index.numVertices());
+    boolean[] seen = new boolean[index.size()];
+    for (int v = 0; v < index.numVertices(); v++) {
+      assertFalse(seen[index.vertex(v)]);
+      seen[index.vertex(v)] = true;
+    }
+  }
+
+}
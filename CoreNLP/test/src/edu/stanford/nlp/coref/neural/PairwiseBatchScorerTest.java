@@ -0,0 +1,79 @@
+package edu.stanford.nlp.coref.neural;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Test that {@link PairwiseBatchScorer} gives the same scores as {@link NeuralCorefModel#getPairwiseScore}.
+ */
+public class PairwiseBatchScorerTest extends TestCase {
+
+  private static final int EMBEDDING_SIZE = 30;
+  private static final int HIDDEN_SIZE = 22;
+  private static final int NUM_PAIR_FEATURES = 9;
+
+  private static NeuralCorefModel randomModel(Random random, int... layerSizes) {
+    List<SimpleMatrix> pairwiseModel = new ArrayList<>();
+    int size = HIDDEN_SIZE;
+    for (int layerSize : layerSizes) {
+      pairwiseModel.add(SimpleMatrix.random(layerSize, size, -1, 1, random));
+      pairwiseModel.add(SimpleMatrix.random(layerSize, 1, -1, 1, random));
+      size = layerSize;
+    }
+    return new NeuralCorefModel(
+        SimpleMatrix.random(HIDDEN_SIZE, EMBEDDING_SIZE, -1, 1, random),
+        SimpleMatrix.random(HIDDEN_SIZE, EMBEDDING_SIZE, -1, 1, random),
+        SimpleMatrix.random(HIDDEN_SIZE, NUM_PAIR_FEATURES, -1, 1, random),
+        SimpleMatrix.random(HIDDEN_SIZE, 1, -1, 1, random),
+        null, pairwiseModel, null);
+  }
+
+  private static void checkScores(NeuralCorefModel model, Random random) {
+    List<SimpleMatrix> embeddings = new ArrayList<>();
+    PairwiseBatchScorer scorer = model.pairwiseBatchScorer();
+    for (int i = 0; i < 40; i++) {
+      SimpleMatrix embedding = SimpleMatrix.random(EMBEDDING_SIZE, 1, -1, 1, random);
+      embeddings.add(embedding);
+      assertEquals(i, scorer.addMention(embedding));
+    }
+
+    // more pairs than fit in one batch
+    for (int round = 0; round < 2; round++) {
+      double[] expected = new double[3 * PairwiseBatchScorer.BATCH_SIZE + 5];
+      for (int i = 0; i < expected.length; i++) {
+        int antecedent = random.nextInt(embeddings.size());
+        int anaphor = random.nextInt(embeddings.size());
+        SimpleMatrix features = new SimpleMatrix(NUM_PAIR_FEATURES, 1);
+        for (int j = 0; j < NUM_PAIR_FEATURES; j++) {
+          features.set(j, random.nextBoolean() ? 0 : random.nextDouble());
+        }
+        scorer.addPair(antecedent, anaphor, features);
+        expected[i] = model.getPairwiseScore(model.getAntecedentEmbedding(embeddings.get(antecedent)),
+            model.getAnaphorEmbedding(embeddings.get(anaphor)), features);
+      }
+      assertEquals(expected.length, scorer.numPairs());
+      double[] scores = scorer.score();
+      assertEquals(0, scorer.numPairs());
+      assertEquals(expected.length, scores.length);
+      for (int i = 0; i < scores.length; i++) {
+        assertEquals(expected[i], scores[i], 0.0);
+      }
+    }
+    assertEquals(0, scorer.score().length);
+  }
+
+  public void testScores() {
+    Random random = new Random(3);
+    checkScores(randomModel(random, 13, 7, 1), random);
+  }
+
+  public void testWideLastLayer() {
+    Random random = new Random(4);
+    checkScores(randomModel(random, 8, 3), random);
+  }
+
+}
@@ -0,0 +1,96 @@
+package edu.stanford.nlp.coref.statistical;
+
+import java.io.File;
+import java.util.*;
+
+import edu.stanford.nlp.coref.statistical.ClustererDataLoader.ClustererDoc;
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.Pair;
+import junit.framework.TestCase;
+
+/**
+ * Test that {@link ClustererEngine} makes the same merges as running {@link Clusterer}'s policy
+ * with a feature counter for each decision.
+ */
+public class ClustererEngineTest extends TestCase {
+
+  private static final String[] SUFFIXES = { "-classification", "-ranking" };
+  private static final String[] CONJUNCTIONS = { "", "_NON_PRONOMINAL_NON_PRONOMINAL", "_NON_PRONOMINAL_PRONOMINAL",
+      "_PRONOMINAL_NON_PRONOMINAL", "_PRONOMINAL_PRONOMINAL" };
+
+  private static Clusterer randomClusterer(Random random) throws Exception {
+    List<String> features = new ArrayList<>(Arrays.asList("anaphorSeen", "docSize", "percentComplete", "bias",
+        "anaphoricity"));
+    for (String suffix : SUFFIXES) {
+      features.add("max" + suffix);
+      features.add("min" + suffix);
+      for (String conjunction : CONJUNCTIONS) {
+        features.add("avg" + conjunction + suffix);
+        features.add("avgLog" + conjunction + suffix);
+      }
+    }
+    Counter<String> weights = new ClassicCounter<>();
+    for (String feature : features) {
+      weights.setCount(feature, random.nextGaussian());
+      weights.setCount(feature + "-single", random.nextGaussian());
+    }
+    weights.setCount("bias", weights.getCount("bias") + 1);
+    weights.setCount("bias-single", weights.getCount("bias-single") + 1);
+
+    File file = File.createTempFile("clusterer", ".ser");
+    file.deleteOnExit();
+    IOUtils.writeObjectToFile(weights, file);
+    return new Clusterer(file.getPath());
+  }
+
+  private static ClustererDoc randomDoc(int id, Random random) {
+    int numMentions = 5 + random.nextInt(25);
+    Counter<Pair<Integer, Integer>> classificationScores = new ClassicCounter<>();
+    Counter<Pair<Integer, Integer>> rankingScores = new ClassicCounter<>();
+    Counter<Integer> anaphoricityScores = new ClassicCounter<>();
+    Map<Pair<Integer, Integer>, Boolean> pairs = new HashMap<>();
+    Map<Integer, String> mentionTypes = new HashMap<>();
+    for (int m2 = 0; m2 < numMentions; m2++) {
+      mentionTypes.put(m2, random.nextInt(3) == 0 ? "PRONOMINAL" : random.nextBoolean() ? "NOMINAL" : "PROPER");
+      anaphoricityScores.setCount(m2, random.nextDouble());
+      for (int m1 = 0; m1 < m2; m1++) {
+        if (random.nextInt(3) != 0) {
+          Pair<Integer, Integer> pair = new Pair<>(m1, m2);
+          classificationScores.setCount(pair, random.nextDouble());
+          rankingScores.setCount(pair, random.nextInt(10) == 0 ? 1e-10 : random.nextDouble());
+          pairs.put(pair, false);
+        }
+      }
+    }
+    return new ClustererDoc(id, classificationScores, rankingScores, anaphoricityScores, pairs, null, mentionTypes);
+  }
+
+  public void testSameMerges() throws Exception {
+    Random random = new Random(17);
+    int numMerges = 0;
+    int numPairs = 0;
+    for (int trial = 0; trial < 20; trial++) {
+      Clusterer clusterer = randomClusterer(random);
+      for (int d = 0; d < 10; d++) {
+        ClustererDoc doc = randomDoc(d, random);
+        List<Pair<Integer, Integer>> merges = clusterer.getClusterMerges(doc);
+        assertEquals(clusterer.getClusterMergesFromFeatures(doc), merges);
+        numMerges += merges.size();
+        numPairs += doc.classificationScores.size();
+      }
+    }
+    // there were decisions both ways
+    assertTrue(numMerges > 0);
+    assertTrue(numMerges < numPairs);
+  }
+
+  public void testEmptyDocument() throws Exception {
+    Clusterer clusterer = randomClusterer(new Random(3));
+    ClustererDoc doc = new ClustererDoc(0, new ClassicCounter<>(), new ClassicCounter<>(), new ClassicCounter<>(),
+        new HashMap<>(), null, new HashMap<>());
+    assertTrue(clusterer.getClusterMerges(doc).isEmpty());
+  }
+
+}
@@ -0,0 +1,221 @@
+package edu.stanford.nlp.coref.statistical;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import edu.stanford.nlp.coref.data.Dictionaries.MentionType;
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.coref.statistical.MetaFeatureExtractor.PairConjunction;
+import edu.stanford.nlp.coref.statistical.MetaFeatureExtractor.SingleConjunction;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+import junit.framework.TestCase;
+
+/**
+ * Test that {@link PairwiseScorer} scores examples as {@link PairwiseModel#predict} does.
+ */
+public class PairwiseScorerTest extends TestCase {
+
+  private static final String[] PRONOUNS = { "he", "she", "it", "they", "him" };
+  private static final String[] NE_TYPES = { "PERSON", "ORGANIZATION", "LOCATION" };
+
+  private Compressor<String> compressor;
+  private Map<Integer, CompressedFeatureVector> mentionFeatures;
+  private List<Example> examples;
+
+  @Override
+  protected void setUp() {
+    Random random = new Random(7);
+    compressor = new Compressor<>();
+    mentionFeatures = new HashMap<>();
+    List<Mention> mentions = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      Mention m = new Mention();
+      m.mentionID = i;
+      m.mentionType = MentionType.values()[random.nextInt(MentionType.values().length)];
+      mentions.add(m);
+      Counter<String> features = new ClassicCounter<>();
+      if (m.mentionType == MentionType.PRONOMINAL) {
+        features.incrementCount("head-word=" + PRONOUNS[random.nextInt(PRONOUNS.length)]);
+      } else {
+        features.incrementCount("head-word=w" + random.nextInt(10));
+      }
+      features.incrementCount("head-ne-type=" + NE_TYPES[random.nextInt(NE_TYPES.length)]);
+      features.incrementCount("parent-word=p" + random.nextInt(5));
+      for (int j = 0; j < 10; j++) {
+        features.incrementCount("mention-feature=" + random.nextInt(40), random.nextDouble());
+      }
+      mentionFeatures.put(i, compressor.compress(features));
+    }
+    examples = new ArrayList<>();
+    for (int i = 0; i < mentions.size(); i++) {
+      for (int j = i + 1; j < mentions.size(); j++) {
+        Counter<String> features = new ClassicCounter<>();
+        features.incrementCount("bias");
+        features.incrementCount("distance=" + Math.min(j - i, 10));
+        for (int k = 0; k < 5; k++) {
+          features.incrementCount("pair-feature=" + random.nextInt(30), random.nextDouble());
+        }
+        if (random.nextBoolean()) {
+          features.incrementCount("parent-word-match");
+        }
+        examples.add(new Example(0, mentions.get(i), mentions.get(j), 0.0, compressor.compress(features)));
+      }
+    }
+  }
+
+  /** Give most of the features the model could see a weight, and leave the rest out. */
+  private void randomWeights(PairwiseModel model, List<Example> examples, Random random) {
+    for (Example example : examples) {
+      for (String feature : model.meta.getFeatures(example, mentionFeatures, compressor).keySet()) {
+        if (random.nextInt(4) != 0) {
+          model.getClassifier().setWeight(feature, random.nextGaussian());
+        }
+      }
+    }
+  }
+
+  private void checkScores(PairwiseModel model, List<Example> examples) {
+    randomWeights(model, examples, new Random(11));
+    PairwiseScorer scorer = model.scorer(mentionFeatures, compressor);
+    for (Example example : examples) {
+      double expected = model.getClassifier().weightFeatureProduct(
+          model.meta.getFeatures(example, mentionFeatures, compressor));
+      assertEquals(expected, scorer.weightFeatureProduct(example), 0.0);
+      assertEquals(model.predict(example, mentionFeatures, compressor), scorer.predict(example), 0.0);
+    }
+  }
+
+  public void testClassification() {
+    checkScores(PairwiseModel.newBuilder("classification", MetaFeatureExtractor.newBuilder().build()).build(), examples);
+  }
+
+  public void testAllConjunctions() {
+    MetaFeatureExtractor meta = MetaFeatureExtractor.newBuilder()
+        .pairConjunctions(PairConjunction.values())
+        .singleConjunctions(SingleConjunction.values())
+        .disallowedPrefixes(new String[] {"parent-word"})
+        .build();
+    checkScores(PairwiseModel.newBuilder("all", meta).build(), examples);
+  }
+
+  public void testAnaphoricity() {
+    List<Example> newLinks = new ArrayList<>();
+    for (Example example : examples) {
+      newLinks.add(new Example(example, false));
+    }
+    checkScores(PairwiseModel.newBuilder("anaphoricity", MetaFeatureExtractor.anaphoricityMFE()).build(), newLinks);
+  }
+
+  /**
+   * Features whose hash codes are the same ("Aa" and "BB"), and conjoined features that come out
+   * as the same string ("x_2" with no suffix, and "x" with "_2"), are scored the slow way.
+   */
+  public void testCollidingFeatures() {
+    List<Example> colliding = new ArrayList<>();
+    for (Example example : examples) {
+      Counter<String> features = compressor.uncompress(example.pairwiseFeatures);
+      features.incrementCount("Aa", 0.25);
+      features.incrementCount("BB", 0.5);
+      features.incrementCount("mention-feature=" + example.mentionId2 % 40 + "_2", 0.125);
+      colliding.add(new Example(0, mention(example.mentionId1, example.mentionType1),
+          mention(example.mentionId2, example.mentionType2), 0.0, compressor.compress(features)));
+    }
+    MetaFeatureExtractor meta = MetaFeatureExtractor.newBuilder()
+        .singleConjunctions(new SingleConjunction[] {SingleConjunction.INDEX})
+        .build();
+    checkScores(PairwiseModel.newBuilder("colliding", meta).build(), colliding);
+  }
+
+  private static Mention mention(int id, MentionType type) {
+    Mention m = new Mention();
+    m.mentionID = id;
+    m.mentionType = type;
+    return m;
+  }
+
+  /** A key with a given hash code */
+  private static class Key {
+    final int hash;
+
+    Key(int hash) {
+      this.hash = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /** The order is that of a HashMap, through resizes and crowded buckets, or else there is none. */
+  public void testHashMapOrder() {
+    Random random = new Random(17);
+    int fallbacks = 0;
+    for (int trial = 0; trial < 2000; trial++) {
+      int n = 1 + random.nextInt(200);
+      int[] hashCodes = new int[n];
+      Map<Key, Integer> map = new HashMap<>();
+      for (int i = 0; i < n; i++) {
+        // different hash codes in a few buckets crowd them, so some tables grow early and some get trees
+        hashCodes[i] = trial % 2 == 0 ? (i << 12) | (random.nextInt(4) << 7) : random.nextInt();
+        map.put(new Key(hashCodes[i]), i);
+      }
+      int[] order = new int[n];
+      if ( ! PairwiseScorer.hashMapOrder(hashCodes, n, order, new long[n])) {
+        fallbacks++;
+        continue;
+      }
+      int i = 0;
+      for (int index : map.values()) {
+        assertEquals(index, order[i++]);
+      }
+    }
+    assertTrue(fallbacks > 0);
+    assertTrue(fallbacks < 2000);
+  }
+
+  public void testParallelPredict() {
+    List<Example> manyExamples = new ArrayList<>(examples);
+    manyExamples.addAll(examples);
+    PairwiseModel model = PairwiseModel.newBuilder("classification", MetaFeatureExtractor.newBuilder().build()).build();
+    randomWeights(model, manyExamples, new Random(13));
+    double[] sequential = model.predict(manyExamples, mentionFeatures, compressor, null);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    double[] parallel;
+    try {
+      parallel = model.predict(manyExamples, mentionFeatures, compressor, pool);
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(manyExamples.size(), parallel.length);
+    for (int i = 0; i < manyExamples.size(); i++) {
+      assertEquals(model.predict(manyExamples.get(i), mentionFeatures, compressor), sequential[i], 1e-9);
+      assertEquals(sequential[i], parallel[i], 0.0);
+    }
+  }
+
+  /** Interrupting the thread that waits for the pool stops the scoring */
+  public void testInterruptParallelPredict() {
+    List<Example> manyExamples = new ArrayList<>(examples);
+    manyExamples.addAll(examples);
+    PairwiseModel model = PairwiseModel.newBuilder("classification", MetaFeatureExtractor.newBuilder().build()).build();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Thread.currentThread().interrupt();
+      try {
+        model.predict(manyExamples, mentionFeatures, compressor, pool);
+        fail("scoring was not interrupted");
+      } catch (RuntimeInterruptedException e) {
+        // as expected
+      }
+      assertFalse(Thread.interrupted());
+      assertTrue(pool.awaitQuiescence(10, TimeUnit.SECONDS));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+}
@@ -1,9 +1,16 @@
 package edu.stanford.nlp.ie;
 
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Properties;
+import java.util.Random;
 import java.util.Set;
 
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.CoreUtilities;
@@ -129,4 +136,53 @@ public class ClassifierCombinerTest extends TestCase {
     assertEquals(result, input1);
   }
 
+  /**
+   * Running the base classifiers at the same time gives exactly the answers and probabilities
+   * of running them one after another, for base classifiers that each know one of the labels
+   */
+  public void testParallelClassifiers() throws Exception {
+    Random random = new Random(2017);
+    String[] labels = { "PERSON", "LOCATION", "ORGANIZATION" };
+    String[] paths = new String[labels.length];
+    for (int i = 0; i < paths.length; i++) {
+      File train = File.createTempFile("classifier-combiner", ".tsv");
+      train.deleteOnExit();
+      try (PrintWriter out = IOUtils.getPrintWriter(train.getPath())) {
+        for (String line : IOUtils.readLines(NERFeatureCompilerTest.randomDocuments(100, 40, false, random))) {
+          out.println(line.isEmpty() || line.endsWith(labels[i]) ? line : line.substring(0, line.lastIndexOf('\t')) + "\tO");
+        }
+      }
+      Properties props = new Properties();
+      props.setProperty("trainFile", train.getPath());
+      File model = File.createTempFile("classifier-combiner", ".ser.gz");
+      model.deleteOnExit();
+      NERFeatureCompilerTest.trainClassifier(random, props).serializeClassifier(model.getPath());
+      paths[i] = model.getPath();
+    }
+    ClassifierCombiner<CoreLabel> sequential = new ClassifierCombiner<>(new Properties(),
+        ClassifierCombiner.CombinationMode.NORMAL, paths);
+    Properties props = new Properties();
+    props.setProperty("ner.parallelClassifiers", "true");
+    ClassifierCombiner<CoreLabel> parallel = new ClassifierCombiner<>(props,
+        ClassifierCombiner.CombinationMode.NORMAL, paths);
+
+    CRFClassifier<CoreLabel> crf = CRFClassifier.getClassifier(paths[0]);
+    File test = NERFeatureCompilerTest.randomDocuments(60, 100, true, random);
+    for (List<CoreLabel> document : crf.makeObjectBankFromFile(test.getPath(), crf.makeReaderAndWriter())) {
+      List<CoreLabel> copy = new ArrayList<>();
+      for (CoreLabel token : document) {
+        copy.add(new CoreLabel(token));
+      }
+      assertEquals(answers(sequential.classify(document)), answers(parallel.classify(copy)));
+    }
+  }
+
+  private static List<String> answers(List<CoreLabel> document) {
+    List<String> answers = new ArrayList<>();
+    for (CoreLabel token : document) {
+      answers.add(token.get(CoreAnnotations.AnswerAnnotation.class) + ' ' + token.get(CoreAnnotations.AnswerProbAnnotation.class));
+    }
+    return answers;
+  }
+
 }
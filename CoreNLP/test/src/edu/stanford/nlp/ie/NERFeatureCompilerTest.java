@@ -0,0 +1,198 @@
+package edu.stanford.nlp.ie;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.Triple;
+
+public class NERFeatureCompilerTest extends TestCase {
+
+  private static final String[][] NAMES = {
+      {"John", "PERSON"}, {"Smith", "PERSON"}, {"Mary", "PERSON"}, {"O'Brien", "PERSON"},
+      {"Acme", "ORGANIZATION"}, {"Corp.", "ORGANIZATION"}, {"McDonald", "ORGANIZATION"},
+      {"Paris", "LOCATION"}, {"London", "LOCATION"}, {"New", "LOCATION"}, {"York", "LOCATION"},
+  };
+  private static final String[][] WORDS = {
+      {"the", "DT"}, {"a", "DT"}, {"said", "VBD"}, {"went", "VBD"}, {"to", "TO"}, {"of", "IN"},
+      {"in", "IN"}, {"colour", "NN"}, {"centre", "NN"}, {"well-known", "JJ"}, {"1984", "CD"},
+      {"3.5", "CD"}, {",", ","}, {"--", ":"}, {".", "."}, {"The", "DT"}, {"Mr.", "NNP"},
+      {"Dr", "NNP"}, {"President", "NNP"}, {"US", "NNP"},
+  };
+
+  /** A word, its tag and its answer, with the names mostly after titles and in pairs */
+  private static String randomToken(Random random, boolean unseen) {
+    if (random.nextInt(3) == 0) {
+      String[] name = NAMES[random.nextInt(NAMES.length)];
+      return name[0] + '\t' + "NNP" + '\t' + name[1];
+    }
+    if (unseen && random.nextInt(10) == 0) {
+      return (random.nextBoolean() ? "Unseen" : "unseen") + random.nextInt(20) + "\tNN\tO";
+    }
+    String[] word = WORDS[random.nextInt(WORDS.length)];
+    return word[0] + '\t' + word[1] + "\tO";
+  }
+
+  /** Documents of random tokens, in three columns of word, tag and answer */
+  public static File randomDocuments(int numDocuments, int maxLength, boolean unseen, Random random) throws Exception {
+    File file = File.createTempFile("ner-compiler", ".tsv");
+    file.deleteOnExit();
+    try (PrintWriter out = IOUtils.getPrintWriter(file.getPath())) {
+      for (int i = 0; i < numDocuments; i++) {
+        int length = 1 + random.nextInt(maxLength);
+        for (int j = 0; j < length; j++) {
+          out.println(randomToken(random, unseen));
+        }
+        out.println();
+      }
+    }
+    return file;
+  }
+
+  /** A CRF with the features of the English NER models, trained for a few iterations on random documents */
+  private static CRFClassifier<CoreLabel> trainClassifier(Random random) throws Exception {
+    return trainClassifier(random, new Properties());
+  }
+
+  /**
+   * A CRF with the features of the English NER models, trained for a few iterations on random documents;
+   * {@code extra} can change or add to its properties
+   */
+  public static CRFClassifier<CoreLabel> trainClassifier(Random random, Properties extra) throws Exception {
+    File distSim = File.createTempFile("ner-compiler", ".distsim");
+    distSim.deleteOnExit();
+    try (PrintWriter out = IOUtils.getPrintWriter(distSim.getPath())) {
+      for (String[] name : NAMES) {
+        out.println(name[0] + '\t' + random.nextInt(5));
+      }
+      for (int i = 0; i < WORDS.length; i += 2) {
+        out.println(WORDS[i][0].toLowerCase() + '\t' + (5 + random.nextInt(5)));
+      }
+      out.println("0000\t10");
+    }
+    Properties props = new Properties();
+    props.setProperty("trainFile", randomDocuments(100, 40, false, random).getPath());
+    props.setProperty("map", "word=0,tag=1,answer=2");
+    props.setProperty("wordFunction", "edu.stanford.nlp.process.AmericanizeFunction");
+    props.setProperty("distSimLexicon", distSim.getPath());
+    props.setProperty("numberEquivalenceDistSim", "true");
+    props.setProperty("unknownWordDistSimClass", "0");
+    for (String flag : new String[] {"useDistSim", "useTitle", "useClassFeature", "useWord", "useNGrams",
+        "noMidNGrams", "usePrev", "useNext", "useLongSequences", "useSequences", "usePrevSequences",
+        "useTypeSeqs", "useTypeSeqs2", "useTypeySequences", "useOccurrencePatterns", "useLastRealWord",
+        "useNextRealWord", "normalize", "useDisjunctive", "useObservedSequencesOnly", "useQN"}) {
+      props.setProperty(flag, "true");
+    }
+    props.setProperty("maxNGramLeng", "6");
+    props.setProperty("wordShape", "chris2useLC");
+    props.setProperty("disjunctionWidth", "5");
+    props.setProperty("maxLeft", "1");
+    props.setProperty("maxIterations", "10");
+    props.putAll(extra);
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    crf.train();
+    return crf;
+  }
+
+  /**
+   * The compiled features are exactly the String features, in the same order, for documents
+   * with unseen words and long enough to have far occurrences of a word
+   */
+  public void testSameFeatures() throws Exception {
+    Random random = new Random(4321);
+    CRFClassifier<CoreLabel> crf = trainClassifier(random);
+    assertTrue(NERFeatureCompiler.supports(crf.flags, crf.featureFactories, 2));
+    NERFeatureCompiler<CoreLabel> compiler = new NERFeatureCompiler<>(
+        (NERFeatureFactory<CoreLabel>) crf.featureFactories.get(0), crf.flags, crf.pad);
+
+    File test = randomDocuments(60, 300, true, random);
+    for (int iter = 0; iter < 2; iter++) {  // the second time through, the entries are remembered
+      for (List<CoreLabel> document : crf.makeObjectBankFromFile(test.getPath(), crf.makeReaderAndWriter())) {
+        assertNotNull(compiler.documentToData(document, new HashIndex<>()));
+        Triple<int[][][], int[], double[][][]> compiled = crf.documentToTestDataAndLabels(document);
+        crf.flags.noCompiledFeatures = true;
+        Triple<int[][][], int[], double[][][]> strings = crf.documentToDataAndLabels(document);
+        List<String> expected = answers(crf.classify(document));
+        crf.flags.noCompiledFeatures = false;
+
+        assertTrue(Arrays.deepEquals(strings.first(), compiled.first()));
+        assertTrue(Arrays.equals(strings.second(), compiled.second()));
+        assertEquals(expected, answers(crf.classify(document)));
+      }
+    }
+  }
+
+  private static List<String> answers(List<CoreLabel> document) {
+    List<String> answers = new ArrayList<>();
+    for (CoreLabel token : document) {
+      answers.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+    }
+    return answers;
+  }
+
+  public void testCompilesAll() {
+    Index<String> featureIndex = new HashIndex<>(Arrays.asList("Paris-WORD|C", "#<Pa#|C", "IS_TITLE|C",
+        "X-NEXT-OCCURRENCE-X|C", "XXxx-XXxx-TYPES|CpC", "PSEQ|CpC"));
+    assertTrue(NERFeatureCompiler.compilesAll(featureIndex));
+    featureIndex.add("Paris-P2W|C");
+    assertFalse(NERFeatureCompiler.compilesAll(featureIndex));
+  }
+
+  /** A model with a feature the compiler doesn't make uses the String features */
+  public void testOtherFeatures() throws Exception {
+    Random random = new Random(4322);
+    Properties props = new Properties();
+    props.setProperty("use2W", "true");
+    CRFClassifier<CoreLabel> crf = trainClassifier(random, props);
+    assertFalse(NERFeatureCompiler.supports(crf.flags, crf.featureFactories, 2));
+
+    File test = randomDocuments(20, 100, true, random);
+    for (List<CoreLabel> document : crf.makeObjectBankFromFile(test.getPath(), crf.makeReaderAndWriter())) {
+      Triple<int[][][], int[], double[][][]> features = crf.documentToTestDataAndLabels(document);
+      Triple<int[][][], int[], double[][][]> strings = crf.documentToDataAndLabels(document);
+      assertTrue(Arrays.deepEquals(strings.first(), features.first()));
+    }
+  }
+
+  /** The order agrees with a HashSet's whenever it says it can be worked out */
+  public void testHashSetOrder() {
+    Random random = new Random(77);
+    int numSimple = 0;
+    for (int iter = 0; iter < 1000; iter++) {
+      int size = 1 + random.nextInt(100);
+      List<String> strings = new ArrayList<>();
+      Set<String> set = new HashSet<>();
+      for (int i = 0; i < size; i++) {
+        // some sets with colliding hash codes, like "Aa" and "BB", and some with crowded buckets
+        String prefix = iter % 4 == 0 ? (random.nextBoolean() ? "Aa" : "BB") : "W";
+        String s = prefix + random.nextInt(iter % 4 == 1 ? 10 : 3 * size) + "|C";
+        if (set.add(s)) {
+          strings.add(s);
+        }
+      }
+      int[] hashCodes = new int[strings.size()];
+      for (int i = 0; i < hashCodes.length; i++) {
+        hashCodes[i] = strings.get(i).hashCode();
+      }
+      int[] order = new int[hashCodes.length];
+      if (NERFeatureCompiler.hashSetOrder(hashCodes, hashCodes.length, order, new long[hashCodes.length])) {
+        numSimple++;
+        List<String> ordered = new ArrayList<>();
+        for (int i : order) {
+          ordered.add(strings.get(i));
+        }
+        assertEquals(new ArrayList<>(set), ordered);
+      }
+    }
+    assertTrue(numSimple > 500);
+  }
+
+}
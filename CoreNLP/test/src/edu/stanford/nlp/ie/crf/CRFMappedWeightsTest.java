@@ -0,0 +1,96 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ie.NERFeatureCompilerTest;
+import edu.stanford.nlp.io.MappedWeights;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+
+public class CRFMappedWeightsTest extends TestCase {
+
+  /** Map the weights of a classifier from a new temporary directory */
+  static void mapWeights(CRFClassifier<CoreLabel> crf) throws Exception {
+    File dir = Files.createTempDirectory("crf-weights").toFile();
+    dir.deleteOnExit();
+    crf.mapWeights(dir);
+    for (File file : dir.listFiles()) {
+      file.deleteOnExit();
+    }
+  }
+
+  /** Memory-mapped weights can still be looked at, but not changed */
+  public void testMappedWeights() throws Exception {
+    CRFClassifier<CoreLabel> crf = NERFeatureCompilerTest.trainClassifier(new Random(31), new Properties());
+    int numWeights = crf.getNumWeights();
+    String topWeights = crf.topWeights().toString();
+    mapWeights(crf);
+
+    assertTrue(numWeights > 0);
+    assertEquals(numWeights, crf.getNumWeights());
+    assertEquals(topWeights, crf.topWeights().toString());
+    try {
+      crf.scaleWeights(2.0);
+      fail("scaled memory-mapped weights");
+    } catch (IllegalStateException e) {
+      // as expected
+    }
+  }
+
+  /** Classifying with memory-mapped weights gives the same answers as with the weights on the heap */
+  public void testSameAnswers() throws Exception {
+    Random random = new Random(17);
+    CRFClassifier<CoreLabel> crf = NERFeatureCompilerTest.trainClassifier(random, new Properties());
+    File test = NERFeatureCompilerTest.randomDocuments(20, 100, true, random);
+    List<String> expected = answers(crf, test);
+    mapWeights(crf);
+    assertEquals(expected, answers(crf, test));
+  }
+
+  /** A weights file with the right name but other weights in it is written again */
+  public void testRewritesMismatchedFile() throws Exception {
+    File dir = Files.createTempDirectory("crf-weights").toFile();
+    dir.deleteOnExit();
+    File test = NERFeatureCompilerTest.randomDocuments(20, 100, true, new Random(5));
+    CRFClassifier<CoreLabel> crf = NERFeatureCompilerTest.trainClassifier(new Random(23), new Properties());
+    List<String> expected = answers(crf, test);
+    crf.mapWeights(dir);
+    File[] files = dir.listFiles();
+    assertEquals(1, files.length);
+    File file = files[0];
+    file.deleteOnExit();
+    // the same weights as a different file, but for one value
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(raf.length() - 8);
+      double last = raf.readDouble();
+      raf.seek(raf.length() - 8);
+      raf.writeDouble(last + 1.0);
+    }
+    MappedWeights corrupted = MappedWeights.map(file);
+    assertFalse(Arrays.equals(corrupted.storedFingerprint(), corrupted.fingerprint()));
+
+    crf = NERFeatureCompilerTest.trainClassifier(new Random(23), new Properties());
+    crf.mapWeights(dir);
+    MappedWeights rewritten = MappedWeights.map(file);
+    assertTrue(Arrays.equals(rewritten.storedFingerprint(), rewritten.fingerprint()));
+    assertEquals(expected, answers(crf, test));
+    assertEquals(1, dir.listFiles().length);
+  }
+
+  private static List<String> answers(CRFClassifier<CoreLabel> crf, File file) {
+    List<String> answers = new ArrayList<>();
+    for (List<CoreLabel> document : crf.makeObjectBankFromFile(file.getPath(), crf.makeReaderAndWriter())) {
+      double totalMass = crf.getCliqueTree(document).totalMass();
+      for (CoreLabel token : crf.classify(document)) {
+        answers.add(token.get(CoreAnnotations.AnswerAnnotation.class) + ' ' + totalMass);
+      }
+    }
+    return answers;
+  }
+
+}
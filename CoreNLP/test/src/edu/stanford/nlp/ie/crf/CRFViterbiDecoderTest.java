@@ -0,0 +1,57 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.File;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ie.NERFeatureCompilerTest;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+
+public class CRFViterbiDecoderTest extends TestCase {
+
+  /**
+   * Decoding on the flat arrays gives exactly the answers and probabilities of
+   * decoding the clique tree, for documents of all lengths, the longer ones after the shorter
+   */
+  private static void checkSameAnswers(CRFClassifier<CoreLabel> crf, Random random) throws Exception {
+    File test = NERFeatureCompilerTest.randomDocuments(60, 200, true, random);
+    for (List<CoreLabel> document : crf.makeObjectBankFromFile(test.getPath(), crf.makeReaderAndWriter())) {
+      crf.flags.noFlatViterbi = true;
+      crf.classify(document);
+      List<String> expected = new ArrayList<>();
+      for (CoreLabel token : document) {
+        expected.add(token.get(CoreAnnotations.AnswerAnnotation.class) + ' ' + token.get(CoreAnnotations.AnswerProbAnnotation.class));
+      }
+      crf.flags.noFlatViterbi = false;
+      crf.classify(document);
+      List<String> answers = new ArrayList<>();
+      for (CoreLabel token : document) {
+        answers.add(token.get(CoreAnnotations.AnswerAnnotation.class) + ' ' + token.get(CoreAnnotations.AnswerProbAnnotation.class));
+      }
+      assertEquals(expected, answers);
+    }
+  }
+
+  public void testFirstOrder() throws Exception {
+    Random random = new Random(97);
+    checkSameAnswers(NERFeatureCompilerTest.trainClassifier(random, new Properties()), random);
+  }
+
+  /**
+   * A second order model, where some words may only have the labels they were seen with.
+   * Every label sequence is allowed, or a word's labels may not be able to follow the last word's.
+   */
+  public void testSecondOrderLabelDictionary() throws Exception {
+    Random random = new Random(98);
+    Properties props = new Properties();
+    props.setProperty("maxLeft", "2");
+    props.setProperty("labelDictionaryCutoff", "3");
+    props.setProperty("useObservedSequencesOnly", "false");
+    CRFClassifier<CoreLabel> crf = NERFeatureCompilerTest.trainClassifier(random, props);
+    assertEquals(3, crf.windowSize);
+    checkSameAnswers(crf, random);
+  }
+
+}
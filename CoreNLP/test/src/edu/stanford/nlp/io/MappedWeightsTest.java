@@ -0,0 +1,137 @@
+package edu.stanford.nlp.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MappedWeightsTest extends TestCase {
+
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    file = File.createTempFile("MappedWeightsTest", ".weights");
+    file.deleteOnExit();
+  }
+
+  private static double[][] randomWeights(Random r) {
+    double[][] weights = new double[500][];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = new double[r.nextBoolean() ? 9 : 81];  // ragged, like CRF clique weights
+      for (int j = 0; j < weights[i].length; j++) {
+        weights[i][j] = r.nextGaussian();
+      }
+    }
+    return weights;
+  }
+
+  public void testRoundTrip() throws IOException {
+    double[][] weights = randomWeights(new Random(42));
+    MappedWeights.write(weights, file);
+    MappedWeights mapped = MappedWeights.map(file);
+    assertEquals(weights.length, mapped.numRows());
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals(weights[i].length, mapped.rowLength(i));
+      for (int j = 0; j < weights[i].length; j++) {
+        assertEquals(weights[i][j], mapped.get(i, j), 0.0);
+      }
+    }
+    double[][] copy = mapped.toArray();
+    for (int i = 0; i < weights.length; i++) {
+      assertTrue(java.util.Arrays.equals(weights[i], copy[i]));
+    }
+  }
+
+  /** Adding up rows gives exactly the sums of the values one at a time */
+  public void testAddRow() throws IOException {
+    double[][] weights = randomWeights(new Random(11));
+    MappedWeights.write(weights, file);
+    MappedWeights mapped = MappedWeights.map(file);
+    double[] sums = new double[9];
+    double[] expected = new double[9];
+    for (int i = 0; i < weights.length; i++) {
+      double scale = i % 2 == 0 ? 1.0 : 0.5 + i;
+      mapped.addRow(i, scale, sums, sums.length);
+      for (int k = 0; k < expected.length; k++) {
+        expected[k] += mapped.get(i, k) * scale;
+      }
+    }
+    assertTrue(java.util.Arrays.equals(expected, sums));
+  }
+
+  public void testEmptyRows() throws IOException {
+    double[][] weights = { {}, { 1.0, 2.0 }, {} };
+    MappedWeights.write(weights, file);
+    MappedWeights mapped = MappedWeights.map(file);
+    assertEquals(3, mapped.numRows());
+    assertEquals(0, mapped.rowLength(0));
+    assertEquals(2.0, mapped.get(1, 1), 0.0);
+    assertEquals(0, mapped.rowLength(2));
+  }
+
+  /** Weights written to a stream after other data are mapped from where they start */
+  public void testMapAtOffset() throws IOException {
+    double[][] weights = randomWeights(new Random(7));
+    try (java.io.DataOutputStream out = new java.io.DataOutputStream(new java.io.FileOutputStream(file))) {
+      out.writeUTF("a header");
+      MappedWeights.write(weights, out);
+    }
+    MappedWeights mapped = MappedWeights.map(file, 2 + "a header".length());
+    assertEquals(weights.length, mapped.numRows());
+    for (int i = 0; i < weights.length; i++) {
+      assertTrue(java.util.Arrays.equals(weights[i], mapped.row(i)));
+    }
+  }
+
+  public void testFingerprint() {
+    double[][] weights = randomWeights(new Random(42));
+    byte[] fingerprint = MappedWeights.fingerprint(weights);
+    assertEquals(32, fingerprint.length);
+    assertTrue(Arrays.equals(fingerprint, MappedWeights.fingerprint(randomWeights(new Random(42)))));
+    weights[10][3] += 1e-9;
+    assertFalse(Arrays.equals(fingerprint, MappedWeights.fingerprint(weights)));
+    // the same values in rows of other lengths
+    assertFalse(Arrays.equals(MappedWeights.fingerprint(new double[][] { { 1.0 }, { 2.0, 3.0 } }),
+        MappedWeights.fingerprint(new double[][] { { 1.0, 2.0 }, { 3.0 } })));
+  }
+
+  /** The file keeps the fingerprint of the weights, and it is worked out again from what is mapped */
+  public void testHolds() throws IOException {
+    double[][] weights = randomWeights(new Random(42));
+    byte[] fingerprint = MappedWeights.fingerprint(weights);
+    MappedWeights.write(weights, file);
+    MappedWeights mapped = MappedWeights.map(file);
+    assertTrue(Arrays.equals(fingerprint, mapped.storedFingerprint()));
+    assertTrue(Arrays.equals(fingerprint, mapped.fingerprint()));
+    assertTrue(mapped.holds(weights, fingerprint));
+
+    double[][] other = randomWeights(new Random(43));
+    assertFalse(mapped.holds(other, MappedWeights.fingerprint(other)));
+    // a value changed in the file but not in its header
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(raf.length() - 1);
+      int last = raf.read();
+      raf.seek(raf.length() - 1);
+      raf.write(last ^ 1);
+    }
+    mapped = MappedWeights.map(file);
+    assertTrue(Arrays.equals(fingerprint, mapped.storedFingerprint()));
+    assertFalse(mapped.holds(weights, fingerprint));
+  }
+
+  public void testRejectsOtherFiles() throws IOException {
+    IOUtils.writeStringToFile("not a weights file at all", file.getPath(), "utf-8");
+    try {
+      MappedWeights.map(file);
+      fail("Expected an IOException");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+}
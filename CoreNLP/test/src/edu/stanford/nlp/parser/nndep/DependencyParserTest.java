@@ -0,0 +1,215 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.util.CoreMap;
+
+public class DependencyParserTest extends TestCase {
+
+  private static final String[] WORDS = {"the", "cat", "sat", "on", "a", "mat", "and", "dog", "ran", "."};
+  private static final String[] TAGS = {"DT", "NN", "VBD", "IN", "DT", "NN", "CC", "NN", "VBD", "."};
+  private static final String[] LABELS = {"root", "det", "nsubj", "case", "nmod", "cc", "conj", "punct"};
+
+  /**
+   * Writes a parser model with random weights over the given words, their tags
+   * and labels and the given sizes, in the format {@link DependencyParser#loadModelFile} reads.
+   */
+  public static void writeRandomModel(File file, String[] words, String[] tags, String[] labels,
+                                      int embeddingSize, int hiddenSize, int numPreComputed, Random random) throws IOException {
+    List<String> knownWords = new ArrayList<>(Arrays.asList(Config.UNKNOWN, Config.NULL, Config.ROOT));
+    knownWords.addAll(Arrays.asList(words));
+    List<String> knownPos = new ArrayList<>(Arrays.asList(Config.UNKNOWN, Config.NULL, Config.ROOT));
+    knownPos.addAll(new LinkedHashSet<>(Arrays.asList(tags)));
+    List<String> knownLabels = new ArrayList<>(Collections.singletonList(Config.NULL));
+    knownLabels.addAll(Arrays.asList(labels));
+    int numEmbeddings = knownWords.size() + knownPos.size() + knownLabels.size();
+    numPreComputed = Math.min(numPreComputed, numEmbeddings * Config.numTokens);
+
+    try (PrintWriter out = IOUtils.getPrintWriter(file.getPath())) {
+      out.println("dict=" + knownWords.size());
+      out.println("pos=" + knownPos.size());
+      out.println("label=" + knownLabels.size());
+      out.println("embeddingSize=" + embeddingSize);
+      out.println("hiddenSize=" + hiddenSize);
+      out.println("numTokens=" + Config.numTokens);
+      out.println("preComputed=" + numPreComputed);
+      for (List<String> known : Arrays.asList(knownWords, knownPos, knownLabels)) {
+        for (String s : known) {
+          out.println(s + randomLine(embeddingSize, random));
+        }
+      }
+      for (int j = 0; j < embeddingSize * Config.numTokens; j++) {
+        out.println(randomLine(hiddenSize, random).trim());
+      }
+      out.println(randomLine(hiddenSize, random).trim());
+      for (int j = 0; j < hiddenSize; j++) {
+        out.println(randomLine(2 * knownLabels.size() - 1, random).trim());
+      }
+      // like a trained model, pre-compute the commonest features: those of the special words,
+      // the tags and the labels, then those of the words in order (see randomSentence)
+      List<Integer> ids = new ArrayList<>();
+      for (int tok = 0; tok < numEmbeddings; tok++) {
+        if (tok < 3 || tok >= knownWords.size()) {
+          addFeatureIds(ids, tok);
+        }
+      }
+      for (int tok = 3; tok < knownWords.size(); tok++) {
+        addFeatureIds(ids, tok);
+      }
+      for (int i = 0; i < numPreComputed; i++) {
+        out.print(ids.get(i));
+        out.print((i + 1) % 100 == 0 || i == numPreComputed - 1 ? "\n" : " ");
+      }
+    }
+  }
+
+  private static void addFeatureIds(List<Integer> ids, int tok) {
+    for (int j = 0; j < Config.numTokens; j++) {
+      ids.add(tok * Config.numTokens + j);
+    }
+  }
+
+  /** Random numbers, each after a space */
+  private static String randomLine(int n, Random random) {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < n; i++) {
+      line.append(' ').append(random.nextGaussian() * 0.5);
+    }
+    return line.toString();
+  }
+
+  /**
+   * A tagged sentence of random words from the model's vocabulary, with a few unknown ones.
+   * The words are drawn with a Zipfian distribution, so that the first are the commonest.
+   */
+  public static CoreMap randomSentence(String[] words, String[] tags, int length, Random random) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (int i = 0; i < length; i++) {
+      CoreLabel token = new CoreLabel();
+      int w = (int) Math.exp(random.nextDouble() * Math.log(words.length + 1)) - 1;
+      token.setWord(random.nextInt(10) == 0 ? "unknown" + i : words[w]);
+      token.setValue(token.word());
+      token.setTag(tags[w]);
+      token.setIndex(i + 1);
+      tokens.add(token);
+    }
+    CoreMap sentence = new Annotation("");
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    return sentence;
+  }
+
+  private static DependencyParser randomParser(Random random) throws IOException {
+    File model = File.createTempFile("nndep", ".txt");
+    model.deleteOnExit();
+    writeRandomModel(model, WORDS, TAGS, LABELS, 8, 16, 300, random);
+    return DependencyParser.loadFromModelFile(model.getPath());
+  }
+
+  /** Parsing sentences together gives the parses of parsing them one at a time */
+  public void testPredictAll() throws IOException {
+    Random random = new Random(1234);
+    DependencyParser parser = randomParser(random);
+    List<CoreMap> sentences = new ArrayList<>();
+    for (int i = 0; i < 150; i++) {
+      sentences.add(randomSentence(WORDS, TAGS, random.nextInt(25), random));
+    }
+    List<GrammaticalStructure> parses = parser.predictAll(sentences);
+    assertEquals(sentences.size(), parses.size());
+    for (int i = 0; i < sentences.size(); i++) {
+      assertEquals(parser.predict(sentences.get(i)).typedDependencies().toString(),
+          parses.get(i).typedDependencies().toString());
+    }
+    assertTrue(parser.predictAll(Collections.emptyList()).isEmpty());
+  }
+
+  /** A model converted to the binary format has the same weights and gives the same parses */
+  public void testBinaryModel() throws IOException {
+    Random random = new Random(5678);
+    DependencyParser parser = randomParser(random);
+    File binary = File.createTempFile("nndep", ".bin");
+    binary.deleteOnExit();
+    parser.writeBinaryModelFile(binary.getPath());
+    DependencyParser loaded = DependencyParser.loadFromModelFile(binary.getPath());
+
+    assertEquals(parser.getPosSet(), loaded.getPosSet());
+    Classifier expected = parser.getClassifier();
+    Classifier actual = loaded.getClassifier();
+    assertTrue(Arrays.deepEquals(expected.getE(), actual.getE()));
+    assertTrue(Arrays.deepEquals(expected.getW1(), actual.getW1()));
+    assertTrue(Arrays.equals(expected.getb1(), actual.getb1()));
+    assertTrue(Arrays.deepEquals(expected.getW2(), actual.getW2()));
+    // the pre-computed activations are read from the mapped file rather than copied to the heap
+    assertNull(actual.getPreComputed());
+    assertTrue(actual.hasPreComputed());
+
+    // with fewer pre-computed features than the file has, only the rows they need are used
+    Properties props = new Properties();
+    props.setProperty("numPreComputed", "100");
+    DependencyParser fewer = DependencyParser.loadFromModelFile(binary.getPath(), props);
+    assertTrue(fewer.getClassifier().hasPreComputed());
+
+    // the file is replaced, not overwritten, so a parser which has it mapped is not disturbed
+    randomParser(new Random(1234)).writeBinaryModelFile(binary.getPath());
+
+    for (int i = 0; i < 50; i++) {
+      CoreMap sentence = randomSentence(WORDS, TAGS, 1 + random.nextInt(25), random);
+      String dependencies = parser.predict(sentence).typedDependencies().toString();
+      assertEquals(dependencies, loaded.predict(sentence).typedDependencies().toString());
+      assertEquals(dependencies, fewer.predict(sentence).typedDependencies().toString());
+    }
+  }
+
+  private static double[][] randomMatrix(int rows, int columns, Random random) {
+    double[][] matrix = new double[rows][columns];
+    for (double[] row : matrix) {
+      for (int i = 0; i < columns; i++) {
+        row[i] = random.nextGaussian();
+      }
+    }
+    return matrix;
+  }
+
+  /** Scoring many feature vectors at once gives exactly the scores of scoring each alone */
+  public void testBatchScorer() {
+    Random random = new Random(99);
+    Config config = new Config(new Properties());
+    config.embeddingSize = 8;
+    config.hiddenSize = 16;
+    int numEmbeddings = 30;
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < numEmbeddings * Config.numTokens; i += 1 + random.nextInt(3)) {
+      preComputed.add(i);
+    }
+    Classifier classifier = new Classifier(config, randomMatrix(numEmbeddings, 8, random),
+        randomMatrix(16, 8 * Config.numTokens, random), randomMatrix(1, 16, random)[0],
+        randomMatrix(5, 16, random), preComputed);
+    classifier.preCompute();
+
+    Classifier.BatchScorer scorer = classifier.new BatchScorer(7);
+    int[][] features = new int[7][Config.numTokens];
+    for (int iter = 0; iter < 20; iter++) {
+      int n = 1 + random.nextInt(7);
+      for (int b = 0; b < n; b++) {
+        for (int j = 0; j < Config.numTokens; j++) {
+          features[b][j] = random.nextInt(numEmbeddings);
+        }
+      }
+      double[] scores = scorer.computeScores(features, n);
+      for (int b = 0; b < n; b++) {
+        double[] expected = classifier.computeScores(features[b]);
+        assertTrue(Arrays.equals(expected, Arrays.copyOfRange(scores, b * 5, (b + 1) * 5)));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+package edu.stanford.nlp.pipeline;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the memory accounting of {@link AdmissionController}.
+ */
+public class AdmissionControllerTest {
+
+  @Test
+  public void testEstimateGrowsWithAnnotators() {
+    long tokenize = AdmissionController.estimateBytes("tokenize,ssplit", 10000);
+    long coref = AdmissionController.estimateBytes("tokenize,ssplit,pos,lemma,ner,parse,coref", 10000);
+    assertTrue(tokenize < coref);
+    assertTrue(AdmissionController.estimateBytes("tokenize", 10000) < AdmissionController.estimateBytes("tokenize", 20000));
+  }
+
+  @Test
+  public void testAdmitsWithinBudget() throws InterruptedException {
+    AdmissionController admission = new AdmissionController(100, 4);
+    assertTrue(admission.acquire(60, 0));
+    assertTrue(admission.acquire(40, 0));
+    assertFalse(admission.acquire(10, 10));
+    admission.release(40, 5);
+    assertTrue(admission.acquire(10, 0));
+  }
+
+  @Test
+  public void testOversizedRequestRunsAlone() throws InterruptedException {
+    AdmissionController admission = new AdmissionController(100, 4);
+    assertTrue(admission.acquire(1000, 0));
+    assertFalse(admission.acquire(1, 10));
+    admission.release(1000, 5);
+    assertTrue(admission.acquire(1, 0));
+  }
+
+  @Test
+  public void testRejectsWhenQueueIsFull() throws InterruptedException {
+    AdmissionController admission = new AdmissionController(100, 0);
+    assertTrue(admission.acquire(100, 0));
+    long start = System.currentTimeMillis();
+    assertFalse(admission.acquire(10, 10000));
+    assertTrue("should not have waited", System.currentTimeMillis() - start < 5000);
+    assertTrue(admission.status(), admission.status().contains("rejected: 1"));
+  }
+
+  @Test
+  public void testWaiterIsAdmittedOnRelease() throws InterruptedException {
+    AdmissionController admission = new AdmissionController(100, 4);
+    assertTrue(admission.acquire(100, 0));
+    AtomicBoolean admitted = new AtomicBoolean(false);
+    CountDownLatch done = new CountDownLatch(1);
+    Thread waiter = new Thread(() -> {
+      try {
+        admitted.set(admission.acquire(50, 10000));
+      } catch (InterruptedException ignored) {
+      }
+      done.countDown();
+    });
+    waiter.start();
+    Thread.sleep(100);
+    assertFalse(admitted.get());
+    admission.release(100, 2000);
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(admitted.get());
+    assertEquals(2, admission.retryAfterSeconds());
+  }
+
+  /** A waiter that is interrupted just after it was admitted doesn't keep its memory */
+  @Test
+  public void testInterruptedAfterAdmission() throws InterruptedException {
+    AdmissionController admission = new AdmissionController(100, 4);
+    assertTrue(admission.acquire(100, 0));
+    Thread waiter = new Thread(() -> {
+      try {
+        if (admission.acquire(50, 10000)) {
+          admission.release(50, 0);  // it may also be admitted with the interrupt still pending
+        }
+      } catch (InterruptedException ignored) {
+      }
+    });
+    waiter.start();
+    Thread.sleep(100);
+    synchronized (admission) {
+      // interrupt the waiter and admit it before it can wake up
+      waiter.interrupt();
+      Thread.sleep(100);
+      admission.release(100, 0);
+    }
+    waiter.join(10000);
+    assertFalse(waiter.isAlive());
+    assertTrue(admission.status(), admission.acquire(100, 0));
+  }
+
+}
@@ -0,0 +1,100 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.tagger.maxent.DynamicFeatureTableTest;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import edu.stanford.nlp.tagger.maxent.TestSentence;
+import edu.stanford.nlp.util.CoreMap;
+
+public class POSTaggerAnnotatorTest extends TestCase {
+
+  /** Mostly one and two word sentences, like dialogue, with a few long ones */
+  private static Annotation randomDocument(int numSentences, Random random) {
+    List<CoreMap> sentences = new ArrayList<>();
+    for (int i = 0; i < numSentences; i++) {
+      int length = random.nextInt(20) == 0 ? 1 + random.nextInt(2 * POSTaggerAnnotator.BATCH_TOKENS) : 1 + random.nextInt(2);
+      List<CoreLabel> tokens = new ArrayList<>();
+      for (int j = 0; j < length; j++) {
+        String word = DynamicFeatureTableTest.randomWord(random);
+        CoreLabel token = new CoreLabel();
+        token.setWord(word.substring(0, word.indexOf('_')));
+        token.setValue(token.word());
+        tokens.add(token);
+      }
+      CoreMap sentence = new Annotation("");
+      sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+      sentences.add(sentence);
+    }
+    Annotation document = new Annotation("");
+    document.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+    return document;
+  }
+
+  private static List<String> tags(Annotation document) {
+    List<String> tags = new ArrayList<>();
+    for (CoreMap sentence : document.get(CoreAnnotations.SentencesAnnotation.class)) {
+      for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+        tags.add(token.tag());
+        token.remove(CoreAnnotations.PartOfSpeechAnnotation.class);
+      }
+    }
+    return tags;
+  }
+
+  public void testBatches() {
+    Random random = new Random(31);
+    List<CoreMap> sentences = randomDocument(500, random).get(CoreAnnotations.SentencesAnnotation.class);
+    List<List<CoreMap>> batches = POSTaggerAnnotator.batches(sentences);
+
+    Set<CoreMap> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    int previous = Integer.MAX_VALUE;
+    int numShort = 0;
+    for (List<CoreMap> batch : batches) {
+      int size = 0;
+      for (CoreMap sentence : batch) {
+        assertTrue(seen.add(sentence));
+        size += sentence.get(CoreAnnotations.TokensAnnotation.class).size();
+      }
+      assertTrue(size <= previous);
+      previous = size;
+      if (batch.size() > 1) {
+        // packed short sentences, which take no more than one more sentence than needed
+        assertTrue(size < 2 * POSTaggerAnnotator.BATCH_TOKENS);
+      }
+      if (size < POSTaggerAnnotator.BATCH_TOKENS) {
+        numShort++;
+      }
+    }
+    assertEquals(sentences.size(), seen.size());
+    assertTrue(numShort <= 1);
+  }
+
+  /** Tagging a document on many threads gives the tags of tagging each sentence on its own */
+  public void testThreadsSameTags() throws Exception {
+    Random random = new Random(1357);
+    MaxentTagger tagger = DynamicFeatureTableTest.trainTagger("left3words,naacl2003unknowns", random);
+    Annotation document = randomDocument(1000, random);
+
+    List<String> expected = new ArrayList<>();
+    for (CoreMap sentence : document.get(CoreAnnotations.SentencesAnnotation.class)) {
+      for (TaggedWord word : new TestSentence(tagger).tagSentence(sentence.get(CoreAnnotations.TokensAnnotation.class), false)) {
+        expected.add(word.tag());
+      }
+    }
+
+    new POSTaggerAnnotator(tagger).annotate(document);
+    assertEquals(expected, tags(document));
+    POSTaggerAnnotator threaded = new POSTaggerAnnotator(tagger, Integer.MAX_VALUE, 4);
+    for (int i = 0; i < 2; i++) {
+      threaded.annotate(document);
+      assertEquals(expected, tags(document));
+    }
+  }
+
+}
@@ -0,0 +1,152 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test that {@link StagedAnnotationPipeline} annotates documents like the pipeline itself does.
+ */
+public class StagedAnnotationPipelineTest {
+
+  private static StanfordCoreNLP tokenizeAndSplit() {
+    return new StanfordCoreNLP(PropertiesUtils.asProperties("annotators", "tokenize,ssplit"));
+  }
+
+  @Test
+  public void testMatchesPipeline() throws Exception {
+    StanfordCoreNLP pipeline = tokenizeAndSplit();
+    StagedAnnotationPipeline staged = new StagedAnnotationPipeline("tokenize;ssplit", "2,3", 2);
+    List<Annotation> docs = new ArrayList<>();
+    List<CompletableFuture<Annotation>> futures = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      Annotation doc = new Annotation("Document " + i + " has two sentences. This is the second one.");
+      docs.add(doc);
+      futures.add(staged.submit(pipeline, doc));
+    }
+    for (int i = 0; i < docs.size(); i++) {
+      Annotation done = futures.get(i).get(10, TimeUnit.SECONDS);
+      assertSame(docs.get(i), done);
+      Annotation expected = new Annotation(done.get(CoreAnnotations.TextAnnotation.class));
+      pipeline.annotate(expected);
+      assertEquals(expected.get(CoreAnnotations.TokensAnnotation.class).size(), done.get(CoreAnnotations.TokensAnnotation.class).size());
+      assertEquals(2, done.get(CoreAnnotations.SentencesAnnotation.class).size());
+    }
+    String metrics = staged.metricsJSON();
+    assertTrue(metrics, metrics.contains("\"name\": \"tokenize\""));
+    assertTrue(metrics, metrics.contains("\"name\": \"ssplit\""));
+    assertTrue(metrics, metrics.contains("\"completed\": 20"));
+  }
+
+  @Test
+  public void testUnlistedAnnotatorsRunInEarlierStage() throws Exception {
+    StanfordCoreNLP pipeline = tokenizeAndSplit();
+    // ssplit is not listed, so it runs after tokenize in the first stage
+    StagedAnnotationPipeline staged = new StagedAnnotationPipeline("tokenize;parse", "1", 4);
+    Annotation doc = staged.submit(pipeline, new Annotation("One sentence. Two sentences.")).get(10, TimeUnit.SECONDS);
+    assertEquals(2, doc.get(CoreAnnotations.SentencesAnnotation.class).size());
+    String metrics = staged.metricsJSON();
+    assertTrue(metrics, metrics.contains("\"completed\": 1"));
+    assertTrue(metrics, metrics.contains("\"completed\": 0"));
+  }
+
+  @Test
+  public void testKeepsPipelineTiming() throws Exception {
+    StanfordCoreNLP pipeline = tokenizeAndSplit();
+    StagedAnnotationPipeline staged = new StagedAnnotationPipeline("tokenize;ssplit", "1", 4);
+    int numTokens = 0;
+    for (int i = 0; i < 3; i++) {
+      Annotation doc = staged.submit(pipeline, new Annotation("Document number " + i + " .")).get(10, TimeUnit.SECONDS);
+      numTokens += doc.get(CoreAnnotations.TokensAnnotation.class).size();
+    }
+    String timing = pipeline.timingInformation();
+    assertTrue(timing, timing.contains("TokenizerAnnotator: "));
+    assertTrue(timing, timing.contains(" for " + numTokens + " tokens"));
+  }
+
+  /** An annotator that waits until it is interrupted */
+  private static class WaitingAnnotator implements Annotator {
+    final CountDownLatch started = new CountDownLatch(1);
+
+    @Override
+    public void annotate(Annotation annotation) {
+      started.countDown();
+      try {
+        new CountDownLatch(1).await();
+      } catch (InterruptedException e) {
+        throw new RuntimeInterruptedException(e);
+      }
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  @Test
+  public void testCancelInterruptsAnnotator() throws Exception {
+    StanfordCoreNLP pipeline = tokenizeAndSplit();
+    WaitingAnnotator waiting = new WaitingAnnotator();
+    pipeline.addAnnotator(waiting);
+    StagedAnnotationPipeline staged = new StagedAnnotationPipeline("tokenize;ssplit", "1", 4);
+    CountDownLatch exited = new CountDownLatch(1);
+    CompletableFuture<Annotation> future = staged.submit(pipeline, new Annotation("Wait here."), f -> exited.countDown());
+    assertTrue(waiting.started.await(10, TimeUnit.SECONDS));
+    assertTrue(future.cancel(true));
+    assertTrue("the annotator should have been interrupted", exited.await(10, TimeUnit.SECONDS));
+    // the stage's worker is free for the next document
+    pipeline = tokenizeAndSplit();
+    Annotation doc = staged.submit(pipeline, new Annotation("One sentence. Two sentences.")).get(10, TimeUnit.SECONDS);
+    assertEquals(2, doc.get(CoreAnnotations.SentencesAnnotation.class).size());
+  }
+
+  /** A document cancelled while it waits in a queue is counted as skipped, not as completed */
+  @Test
+  public void testCancelledWhileQueuedIsSkipped() throws Exception {
+    StanfordCoreNLP pipeline = tokenizeAndSplit();
+    WaitingAnnotator waiting = new WaitingAnnotator();
+    pipeline.addAnnotator(waiting);
+    StagedAnnotationPipeline staged = new StagedAnnotationPipeline("tokenize,ssplit", "1", 4);
+    CompletableFuture<Annotation> running = staged.submit(pipeline, new Annotation("Wait here."));
+    assertTrue(waiting.started.await(10, TimeUnit.SECONDS));
+    // the only worker is busy, so this one stays in the queue
+    CountDownLatch exited = new CountDownLatch(1);
+    CompletableFuture<Annotation> queued = staged.submit(pipeline, new Annotation("Never run."), f -> exited.countDown());
+    assertTrue(queued.cancel(true));
+    assertTrue(running.cancel(true));
+    assertTrue(exited.await(10, TimeUnit.SECONDS));
+    String metrics = staged.metricsJSON();
+    assertTrue(metrics, metrics.contains("\"completed\": 0"));
+    assertTrue(metrics, metrics.contains("\"failed\": 1"));
+    assertTrue(metrics, metrics.contains("\"skipped\": 1"));
+  }
+
+  @Test
+  public void testBadThreadCounts() {
+    try {
+      new StagedAnnotationPipeline("tokenize;ssplit;pos", "1,2", 4);
+      fail("Expected an exception for mismatched thread counts");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+package edu.stanford.nlp.pipeline;
+
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test that the server gives back the memory of an admitted document that it could not start annotating.
+ */
+public class StanfordCoreNLPServerAdmissionTest {
+
+  /** Runs documents on this executor, like the server does without a staged pipeline */
+  private static StanfordCoreNLPServer.BatchExecutor executor(ExecutorService pool) {
+    return (ann, onDone) -> {
+      FutureTask<Annotation> task = new FutureTask<Annotation>(() -> ann) {
+        @Override
+        public void run() {
+          try {
+            super.run();
+          } finally {
+            onDone.accept(this);
+          }
+        }
+      };
+      pool.execute(task);
+      return task;
+    };
+  }
+
+  /** Submit a document admitted with all of the budget to a shut-down executor */
+  private static void submitToShutDownExecutor(AdmissionController admission, int holders,
+                                               Consumer<Consumer<Future<Annotation>>> afterwards) throws InterruptedException {
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    pool.shutdown();
+    assertTrue(admission.acquire(100, 0));
+    Consumer<Future<Annotation>> release = StanfordCoreNLPServer.releaseWhenDone(admission, 100, holders);
+    try {
+      StanfordCoreNLPServer.submitAdmitted(executor(pool), new Annotation("text"), release);
+      fail("a shut-down executor should reject the document");
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    afterwards.accept(release);
+  }
+
+  @Test
+  public void testRejectedDocumentIsReleased() throws InterruptedException {
+    AdmissionController admission = new AdmissionController(100, 4);
+    submitToShutDownExecutor(admission, 1, release -> {});
+    assertTrue("the budget should be back to full", admission.acquire(100, 0));
+  }
+
+  /** As for a single document, where the response also holds the memory until it is written */
+  @Test
+  public void testRejectedDocumentIsReleasedWithResponse() throws InterruptedException {
+    AdmissionController admission = new AdmissionController(100, 4);
+    // the request handler gives back its own hold when it is done responding
+    submitToShutDownExecutor(admission, 2, release -> release.accept(null));
+    assertTrue("the budget should be back to full", admission.acquire(100, 0));
+  }
+
+  @Test
+  public void testReleasedOnce() throws InterruptedException {
+    AdmissionController admission = new AdmissionController(100, 4);
+    assertTrue(admission.acquire(100, 0));
+    Consumer<Future<Annotation>> release = StanfordCoreNLPServer.releaseWhenDone(admission, 100, 1);
+    release.accept(null);
+    release.accept(null);
+    assertTrue(admission.acquire(100, 0));
+    assertFalse("a second call should not give the memory back again", admission.acquire(1, 0));
+  }
+
+}
@@ -0,0 +1,144 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.PropertiesUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test how {@link StanfordCoreNLPServer#annotateBatch} reads, dispatches and writes back the documents
+ * of a batch request, with an executor that "annotates" a document by looking at its text, so that no
+ * models are needed.
+ */
+public class StanfordCoreNLPServerBatchTest {
+
+  private final ExecutorService pool = Executors.newCachedThreadPool();
+
+  /** Released once the document "b" is written back */
+  private final CountDownLatch bWritten = new CountDownLatch(1);
+
+  @After
+  public void shutdown() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * Runs documents on the pool, like the server does without a staged pipeline.
+   * A document "hang" never finishes unless it is interrupted, and a document "after b" waits for "b" to be written.
+   */
+  private StanfordCoreNLPServer.BatchExecutor executor() {
+    return (ann, onDone) -> {
+      FutureTask<Annotation> task = new FutureTask<Annotation>(() -> {
+        String text = ann.get(CoreAnnotations.TextAnnotation.class);
+        if (text.equals("hang")) {
+          new CountDownLatch(1).await();
+        } else if (text.equals("after b")) {
+          bWritten.await();
+        }
+        return ann;
+      }) {
+        @Override
+        public void run() {
+          try {
+            super.run();
+          } finally {
+            onDone.accept(this);
+          }
+        }
+      };
+      pool.execute(task);
+      return task;
+    };
+  }
+
+  /** Run a batch of JSON lines, and return the JSON lines written back */
+  private List<JsonObject> annotate(String input, int timeoutMilliseconds) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AnnotationOutputter.Options options = AnnotationOutputter.getOptions(PropertiesUtils.asProperties("output.prettyPrint", "false"));
+    StanfordCoreNLPServer.annotateBatch(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out,
+        false, false, options, 4, timeoutMilliseconds, executor(), ann -> {
+          if ("b".equals(ann.get(CoreAnnotations.DocIDAnnotation.class))) {
+            bWritten.countDown();
+          }
+        });
+    List<JsonObject> lines = new ArrayList<>();
+    for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+      try (JsonReader reader = Json.createReader(new StringReader(line))) {
+        lines.add(reader.readObject());
+      }
+    }
+    return lines;
+  }
+
+  private static List<String> ids(List<JsonObject> lines) {
+    List<String> ids = new ArrayList<>();
+    for (JsonObject line : lines) {
+      ids.add(line.getString("id"));
+    }
+    return ids;
+  }
+
+  @Test
+  public void testBadLine() throws Exception {
+    List<JsonObject> lines = annotate("{\"id\": \"a\", \"text\": \"one\"}\n" +
+        "{\"id\": \"b\", \"text\": \n" +
+        "\n" +
+        "{\"text\": \"three\"}\n", 10000);
+    assertEquals(3, lines.size());
+    for (JsonObject line : lines) {
+      switch (line.getString("id")) {
+        case "a":
+          assertEquals("a", line.getJsonObject("document").getString("docId"));
+          break;
+        case "1":
+          assertTrue(line.getString("error").startsWith("Could not parse document"));
+          break;
+        case "2":
+          assertEquals("2", line.getJsonObject("document").getString("docId"));
+          break;
+        default:
+          fail("Unexpected line " + line);
+      }
+    }
+  }
+
+  @Test
+  public void testHangingDocument() throws Exception {
+    List<JsonObject> lines = annotate("{\"id\": \"a\", \"text\": \"one\"}\n" +
+        "{\"id\": \"stuck\", \"text\": \"hang\"}\n" +
+        "{\"id\": \"c\", \"text\": \"three\"}\n", 500);
+    assertEquals(3, lines.size());
+    JsonObject last = lines.get(2);
+    assertEquals("stuck", last.getString("id"));
+    assertTrue(last.getString("error").contains("timed out"));
+    for (JsonObject line : lines.subList(0, 2)) {
+      assertTrue(line.containsKey("document"));
+    }
+  }
+
+  @Test
+  public void testCompletionOrder() throws Exception {
+    List<JsonObject> lines = annotate("{\"id\": \"a\", \"text\": \"after b\"}\n" +
+        "{\"id\": \"b\", \"text\": \"two\"}\n", 10000);
+    assertEquals(2, lines.size());
+    assertEquals("b", ids(lines).get(0));
+    assertEquals("a", ids(lines).get(1));
+    for (JsonObject line : lines) {
+      assertTrue(line.containsKey("document"));
+    }
+  }
+
+}
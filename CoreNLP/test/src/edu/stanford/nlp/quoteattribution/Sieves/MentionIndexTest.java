@@ -0,0 +1,123 @@
+package edu.stanford.nlp.quoteattribution.Sieves;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.quoteattribution.Person;
+import edu.stanford.nlp.util.Pair;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test that {@link MentionIndex} finds the same mentions in a span as scanning the span does.
+ */
+public class MentionIndexTest {
+
+  private static final String[] WORDS = { "Elizabeth", "Jane", "Bennet", "Mr.", "Darcy", "said", "he", "She",
+      "the", "girl", "and", "Miss" };
+
+  private static final Map<String, List<Person>> characterMap = new HashMap<>();
+  static {
+    for (String name : new String[] { "Elizabeth", "Elizabeth Bennet", "Jane", "Jane Bennet", "Mr. Darcy", "Miss Jane Bennet" }) {
+      characterMap.put(name, Collections.singletonList(new Person(name, "female", null)));
+    }
+  }
+
+  private static final Set<String> animacySet = new HashSet<>(Arrays.asList("girl", "man"));
+
+  private static List<CoreLabel> randomTokens(Random random, int n) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(WORDS[random.nextInt(WORDS.length)]);
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  /** Greedily match names starting in the span, as the sieves used to on every query. */
+  private static List<Pair<Integer, Integer>> scanForNames(List<CoreLabel> tokens, int begin, int end) {
+    List<Pair<Integer, Integer>> nameIndices = new ArrayList<>();
+    List<String> prefix = new ArrayList<>();
+    for (int index = begin; index <= end && index < tokens.size(); index++) {
+      prefix.add(tokens.get(index).word());
+      if ( ! isNamePrefix(prefix)) {
+        prefix.remove(prefix.size() - 1);
+        if ( ! prefix.isEmpty()) {
+          if (characterMap.containsKey(String.join(" ", prefix))) {
+            nameIndices.add(new Pair<>(index - prefix.size(), index - 1));
+          }
+          prefix.clear();
+        }
+      }
+    }
+    if ( ! prefix.isEmpty() && characterMap.containsKey(String.join(" ", prefix))) {
+      nameIndices.add(new Pair<>(end + 1 - prefix.size(), end));
+    }
+    return nameIndices;
+  }
+
+  private static boolean isNamePrefix(List<String> words) {
+    String prefix = String.join(" ", words);
+    for (String name : characterMap.keySet()) {
+      if (name.equals(prefix) || name.startsWith(prefix + ' ')) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void testMatchesScanning() {
+    Random random = new Random(1234);
+    for (int trial = 0; trial < 20; trial++) {
+      List<CoreLabel> tokens = randomTokens(random, 200);
+      MentionIndex index = new MentionIndex(tokens, characterMap, animacySet);
+      for (int query = 0; query < 200; query++) {
+        int begin = random.nextInt(tokens.size());
+        int end = Math.min(tokens.size() - 1, begin + random.nextInt(30));
+        List<Pair<Integer, Integer>> expected = scanForNames(tokens, begin, end);
+        Pair<ArrayList<String>, ArrayList<Pair<Integer, Integer>>> names = index.names(begin, end);
+        assertEquals(expected, names.second);
+        for (int i = 0; i < expected.size(); i++) {
+          Pair<Integer, Integer> span = expected.get(i);
+          String text = String.join(" ", tokens.subList(span.first, span.second + 1).stream().map(CoreLabel::word).toArray(String[]::new));
+          assertEquals(text, names.first.get(i));
+        }
+        assertEquals(expected.isEmpty() ? null : expected.get(0), index.firstName(begin, end));
+        assertEquals(expected.isEmpty() ? null : expected.get(expected.size() - 1), index.lastName(begin, end));
+
+        List<Integer> pronouns = new ArrayList<>();
+        List<Integer> animates = new ArrayList<>();
+        for (int i = begin; i <= end; i++) {
+          String word = tokens.get(i).word();
+          if (word.equalsIgnoreCase("he") || word.equalsIgnoreCase("she")) {
+            pronouns.add(i);
+          }
+          if (animacySet.contains(word)) {
+            animates.add(i);
+          }
+        }
+        assertEquals(pronouns, index.pronouns(begin, end));
+        assertEquals(animates, index.animates(begin, end));
+        assertEquals(pronouns.isEmpty() ? -1 : (int) pronouns.get(0), index.firstPronoun(begin, end));
+        assertEquals(pronouns.isEmpty() ? -1 : (int) pronouns.get(pronouns.size() - 1), index.lastPronoun(begin, end));
+        assertEquals(animates.isEmpty() ? -1 : (int) animates.get(0), index.firstAnimate(begin, end));
+        assertEquals(animates.isEmpty() ? -1 : (int) animates.get(animates.size() - 1), index.lastAnimate(begin, end));
+      }
+    }
+  }
+
+  @Test
+  public void testEmptySpan() {
+    List<CoreLabel> tokens = randomTokens(new Random(5), 20);
+    MentionIndex index = new MentionIndex(tokens, characterMap, animacySet);
+    assertTrue(index.names(10, 9).first.isEmpty());
+    assertNull(index.firstName(10, 9));
+    assertNull(index.lastName(0, -1));
+    assertEquals(-1, index.firstPronoun(10, 9));
+    assertTrue(index.pronouns(10, 9).isEmpty());
+  }
+
+}
@@ -0,0 +1,110 @@
+package edu.stanford.nlp.quoteattribution.Sieves;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.quoteattribution.Sieves.MSSieves.LooseConversationalSpeakerSieve;
+import edu.stanford.nlp.quoteattribution.Sieves.QMSieves.ConversationalSieve;
+import edu.stanford.nlp.quoteattribution.Sieves.QMSieves.LooseConversationalSieve;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.concurrent.SharedForkJoinPools;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test that {@link Sieve} labels quotes in parallel with the same results as one at a time.
+ */
+public class SieveTest {
+
+  private static Annotation document(int numQuotes) {
+    Annotation doc = new Annotation("");
+    doc.set(CoreAnnotations.TokensAnnotation.class, new ArrayList<CoreLabel>());
+    List<CoreMap> quotes = new ArrayList<>();
+    for (int i = 0; i < numQuotes; i++) {
+      CoreMap quote = new ArrayCoreMap();
+      quote.set(CoreAnnotations.QuotationIndexAnnotation.class, i);
+      quotes.add(quote);
+    }
+    doc.set(CoreAnnotations.QuotationsAnnotation.class, quotes);
+    return doc;
+  }
+
+  @Test
+  public void testMapQuotesKeepsOrder() {
+    Annotation doc = document(1000);
+    List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
+    Sieve sieve = new Sieve(doc, new HashMap<>(), null, new HashSet<>());
+    List<Integer> sequential = sieve.mapQuotes(quotes, quote -> quote.get(CoreAnnotations.QuotationIndexAnnotation.class) * 2);
+
+    sieve.setPool(SharedForkJoinPools.get(4));
+    List<Integer> parallel = sieve.mapQuotes(quotes, quote -> quote.get(CoreAnnotations.QuotationIndexAnnotation.class) * 2);
+    assertEquals(sequential, parallel);
+    for (int i = 0; i < parallel.size(); i++) {
+      assertEquals(2 * i, (int) parallel.get(i));
+    }
+  }
+
+  @Test
+  public void testForEachQuoteLabelsEveryQuote() {
+    Annotation doc = document(500);
+    List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
+    Sieve sieve = new Sieve(doc, new HashMap<>(), null, new HashSet<>());
+    sieve.setPool(SharedForkJoinPools.get(4));
+    sieve.forEachQuote(quotes, quote -> quote.set(CoreAnnotations.TextAnnotation.class,
+        "quote " + quote.get(CoreAnnotations.QuotationIndexAnnotation.class)));
+    for (int i = 0; i < quotes.size(); i++) {
+      assertEquals("quote " + i, quotes.get(i).get(CoreAnnotations.TextAnnotation.class));
+    }
+  }
+
+  /** A sieve which reads the labels of other quotes gets its quotes one at a time, in order, even with threads */
+  @Test
+  public void testReadsOtherQuotesInOrder() {
+    Annotation doc = document(500);
+    List<CoreMap> quotes = doc.get(CoreAnnotations.QuotationsAnnotation.class);
+    Sieve sieve = new Sieve(doc, new HashMap<>(), null, new HashSet<>()) {
+      @Override
+      protected boolean readsOtherQuotes() {
+        return true;
+      }
+    };
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      sieve.setPool(pool);
+      AtomicInteger running = new AtomicInteger();
+      List<Integer> order = new ArrayList<>();
+      Thread caller = Thread.currentThread();
+      sieve.forEachQuote(quotes, quote -> {
+        assertEquals(1, running.incrementAndGet());
+        assertSame(caller, Thread.currentThread());
+        order.add(quote.get(CoreAnnotations.QuotationIndexAnnotation.class));
+        running.decrementAndGet();
+      });
+      for (int i = 0; i < quotes.size(); i++) {
+        assertEquals(i, (int) order.get(i));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testConversationalSievesReadOtherQuotes() {
+    Annotation doc = document(0);
+    List<Sieve> conversational = Arrays.asList(
+        new ConversationalSieve(doc, new HashMap<>(), null, new HashSet<>()),
+        new LooseConversationalSieve(doc, new HashMap<>(), null, new HashSet<>()),
+        new LooseConversationalSpeakerSieve(doc, new HashMap<>(), null, new HashSet<>()));
+    for (Sieve sieve : conversational) {
+      assertTrue(sieve.getClass().getSimpleName(), sieve.readsOtherQuotes());
+    }
+    assertFalse(new Sieve(doc, new HashMap<>(), null, new HashSet<>()).readsOtherQuotes());
+  }
+
+}
@@ -0,0 +1,127 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.ling.Word;
+
+public class DynamicFeatureTableTest extends TestCase {
+
+  private static final String[] TAGS = {"DT", "NN", "NNS", "VBZ", "VBP", "VBD", "JJ", "RB", "IN", "PRP", "CC", "."};
+  private static final String OPEN_TAGS = "NN NNS VBZ VBP VBD JJ RB";
+
+  /**
+   * A tagged word of each tag, and of a second tag for some words, so that the tagger
+   * has to choose between tags
+   */
+  public static String randomWord(Random random) {
+    int tag = random.nextInt(TAGS.length);
+    int word = random.nextInt(20);
+    if (word < 5 && tag + 1 < TAGS.length) {
+      // a word seen with this tag and the next one
+      return "w" + word + '_' + TAGS[tag + random.nextInt(2)];
+    }
+    return (random.nextInt(4) == 0 ? "W" : "w") + tag + 'x' + word + '_' + TAGS[tag];
+  }
+
+  /** A tagger with the given architecture, trained for a few iterations on random sentences of {@link #randomWord}s */
+  public static MaxentTagger trainTagger(String arch, Random random) throws Exception {
+    File train = File.createTempFile("tagger-train", ".txt");
+    train.deleteOnExit();
+    try (PrintWriter out = IOUtils.getPrintWriter(train.getPath())) {
+      for (int i = 0; i < 300; i++) {
+        int length = 1 + random.nextInt(12);
+        for (int j = 0; j < length; j++) {
+          out.print(randomWord(random));
+          out.print(' ');
+        }
+        out.println("._.");
+      }
+    }
+    File model = File.createTempFile("tagger", ".tagger");
+    model.deleteOnExit();
+    new File(model.getPath() + ".props").deleteOnExit();
+    MaxentTagger.main(new String[] {"-trainFile", train.getPath(), "-model", model.getPath(),
+        "-arch", arch, "-iterations", "20", "-lang", "", "-openClassTags", OPEN_TAGS,
+        "-search", "qn", "-tagSeparator", "_"});
+    return new MaxentTagger(model.getPath());
+  }
+
+  public static List<List<HasWord>> randomSentences(int n, Random random) {
+    List<List<HasWord>> sentences = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      List<HasWord> sentence = new ArrayList<>();
+      // some sentences longer than any in training, and some unseen words
+      for (int j = 0, length = 1 + random.nextInt(30); j < length; j++) {
+        String word = randomWord(random);
+        sentence.add(new Word(random.nextInt(10) == 0 ? "Unseen" + j : word.substring(0, word.indexOf('_'))));
+      }
+      sentences.add(sentence);
+    }
+    return sentences;
+  }
+
+  /**
+   * Tag each sentence with a new {@link TestSentence}, which takes the weights of dynamic features
+   * from the tagger's {@link DynamicFeatureTable} if {@code remember}, or else looks up each feature
+   */
+  public static List<List<TaggedWord>> tagAll(MaxentTagger tagger, List<List<HasWord>> sentences, boolean remember) {
+    List<List<TaggedWord>> tagged = new ArrayList<>();
+    for (List<HasWord> sentence : sentences) {
+      TestSentence testSentence = new TestSentence(tagger);
+      testSentence.rememberDynamicFeatures = remember;
+      tagged.add(testSentence.tagSentence(sentence, false));
+    }
+    return tagged;
+  }
+
+  /** The separator between a word and its tag in the tagger's training files */
+  public static String tagSeparator(MaxentTagger tagger) {
+    return tagger.config.getTagSeparator();
+  }
+
+  /**
+   * With the weights remembered, the tagger gives the tags, and indeed exactly the scores,
+   * of looking up each feature
+   */
+  public void testSameScores() throws Exception {
+    Random random = new Random(2468);
+    MaxentTagger tagger = trainTagger("bidirectional5words,naacl2003unknowns,wordshapes(-1,1)", random);
+    List<List<HasWord>> sentences = randomSentences(100, random);
+    // the second time through, the rows of the tags only extractors are remembered from before
+    for (int iter = 0; iter < 2; iter++) {
+      for (List<HasWord> sentence : sentences) {
+        TestSentence strings = new TestSentence(tagger);
+        strings.rememberDynamicFeatures = false;
+        TestSentence table = new TestSentence(tagger);
+        assertEquals(strings.tagSentence(sentence, false), table.tagSentence(sentence, false));
+
+        // score random sequences of the possible tags
+        strings.initializeScorer();
+        table.initializeScorer();
+        int[] tags = new int[table.length()];
+        for (int k = 0; k < 10; k++) {
+          for (int pos = 0; pos < tags.length; pos++) {
+            int[] values = table.getPossibleValues(pos);
+            tags[pos] = values[random.nextInt(values.length)];
+          }
+          for (int pos = table.leftWindow(); pos < tags.length - table.rightWindow(); pos++) {
+            assertTrue(Arrays.equals(strings.scoresOf(tags, pos), table.scoresOf(tags, pos)));
+          }
+        }
+        strings.cleanUpScorer();
+        table.cleanUpScorer();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,62 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.HasWord;
+
+public class TestSentenceTest extends TestCase {
+
+  /**
+   * The TestSentence a tagger lends out for tagging gives the tags of a new one for each sentence,
+   * and holds on to neither the last sentence nor its counts
+   */
+  public void testTaggingContext() throws Exception {
+    Random random = new Random(1357);
+    MaxentTagger tagger = DynamicFeatureTableTest.trainTagger("bidirectional5words,naacl2003unknowns", random);
+    TestSentence context = tagger.borrowTaggingContext();
+    tagger.returnTaggingContext(context);
+    for (List<HasWord> sentence : DynamicFeatureTableTest.randomSentences(50, random)) {
+      assertEquals(new TestSentence(tagger).tagSentence(sentence, false), tagger.tagSentence(sentence));
+      assertSame(context, tagger.borrowTaggingContext());
+      tagger.returnTaggingContext(context);
+      assertNull(context.sent);
+      assertNull(context.origWords);
+      assertNull(context.finalTags);
+      assertEquals(0, context.numUnknown);
+    }
+  }
+
+  /** Trains a tagger and tags some sentences with it on the pool, keeping only a weak reference to it */
+  private static WeakReference<MaxentTagger> tagOn(ExecutorService pool, Random random) throws Exception {
+    List<List<HasWord>> sentences = DynamicFeatureTableTest.randomSentences(20, random);
+    MaxentTagger tagger = DynamicFeatureTableTest.trainTagger("bidirectional5words,naacl2003unknowns", random);
+    pool.submit(() -> {
+      for (List<HasWord> sentence : sentences) {
+        tagger.tagSentence(sentence);
+      }
+    }).get();
+    return new WeakReference<>(tagger);
+  }
+
+  /** A thread which has tagged with a tagger doesn't keep the tagger once nothing else uses it */
+  public void testDroppedTaggerIsCollected() throws Exception {
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      WeakReference<MaxentTagger> dropped = tagOn(pool, new Random(2468));
+      for (int i = 0; i < 50 && dropped.get() != null; i++) {
+        System.gc();
+        Thread.sleep(20);
+      }
+      assertNull("the thread that tagged still keeps the tagger", dropped.get());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,22 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+public class SharedForkJoinPoolsTest extends TestCase {
+
+  public void testNoPoolForOneThread() {
+    assertNull(SharedForkJoinPools.get(1));
+    assertNull(SharedForkJoinPools.get(0));
+  }
+
+  public void testSharedByParallelism() {
+    ForkJoinPool pool = SharedForkJoinPools.get(3);
+    assertEquals(3, pool.getParallelism());
+    assertSame(pool, SharedForkJoinPools.get(3));
+    assertNotSame(pool, SharedForkJoinPools.get(5));
+    assertEquals(5, SharedForkJoinPools.get(5).getParallelism());
+  }
+
+}